@@ -1,4 +1,4 @@
-import React, { useEffect, useState } from 'react'
+import React, { useEffect, useRef, useState } from 'react'
 
 const API = '/api'
 
@@ -14,6 +14,13 @@ export default function App() {
   const [rowItems, setRowItems] = useState({}) // { [invoiceId]: { desc, price } }
   const [detailsOpen, setDetailsOpen] = useState(null) // invoice or null
   const [detailsItems, setDetailsItems] = useState([])
+  // True while the table shows search results, so pushed changes don't add non-matching invoices
+  const searching = useRef(false)
+  // Largest changeSeq seen per invoice id. Events are published after their write commits,
+  // so two changes to one invoice can arrive in the opposite order; the older one is dropped.
+  const changeSeqs = useRef(new Map())
+  // Ids deleted while this page was open, so a change published after its delete is dropped
+  const deletedIds = useRef(new Set())
 
   async function fetchInvoices() {
     setLoading(true)
@@ -21,6 +28,7 @@ export default function App() {
     try {
       const res = await fetch(`${API}/invoices`)
       const data = await res.json()
+      searching.current = false
       setInvoices(data)
     } catch (e) {
       setError('Failed to load invoices')
@@ -29,8 +37,51 @@ export default function App() {
     }
   }
 
+  // Returns false if the invoice is older than the copy already shown
+  function isNewest(invoice) {
+    const seq = invoice.changeSeq
+    if (!seq) return true
+    const known = changeSeqs.current.get(invoice.id)
+    if (known !== undefined && seq <= known) return false
+    changeSeqs.current.set(invoice.id, seq)
+    return true
+  }
+
+  function upsertInvoice(invoice) {
+    if (!isNewest(invoice)) return
+    setInvoices(list => {
+      const index = list.findIndex(inv => inv.id === invoice.id)
+      if (index >= 0) return list.map((inv, i) => i === index ? invoice : inv)
+      return searching.current ? list : [...list, invoice]
+    })
+  }
+
+  function removeInvoice(id) {
+    deletedIds.current.add(id)
+    setInvoices(list => list.filter(inv => inv.id !== id))
+  }
+
+  // Live updates: the server pushes each change, so the list is loaded once and then patched.
+  // A reset event means some changes were missed and the list has to be reloaded.
   useEffect(() => {
-    fetchInvoices()
+    const events = new EventSource(`${API}/events`)
+    let loaded = false
+    const loadOnce = () => {
+      if (!loaded) {
+        loaded = true
+        fetchInvoices()
+      }
+    }
+    events.onopen = loadOnce
+    // Still show the list if the stream is refused, e.g. when the server is at its subscriber limit
+    events.onerror = loadOnce
+    events.addEventListener('invoice-changed', e => {
+      const invoice = JSON.parse(e.data)
+      if (!deletedIds.current.has(invoice.id)) upsertInvoice(invoice)
+    })
+    events.addEventListener('invoice-deleted', e => removeInvoice(JSON.parse(e.data).id))
+    events.addEventListener('reset', () => fetchInvoices())
+    return () => events.close()
   }, [])
 
   function openDetails(inv) {
@@ -72,8 +123,8 @@ export default function App() {
         body: JSON.stringify({ items: payloadItems })
       })
       if (!res.ok) throw new Error()
+      upsertInvoice(await res.json())
       closeDetails()
-      fetchInvoices()
     } catch {
       setError('Failed to save changes')
     }
@@ -108,9 +159,9 @@ export default function App() {
         body: JSON.stringify({ customerName, items: newItems })
       })
       if (!res.ok) throw new Error()
+      upsertInvoice(await res.json())
       setCustomerName('')
       setNewItems([])
-      fetchInvoices()
     } catch {
       setError('Failed to create invoice')
     }
@@ -137,7 +188,7 @@ export default function App() {
         throw new Error(errorData.error || 'Failed to process payment')
       }
       
-      fetchInvoices()
+      upsertInvoice(await res.json())
     } catch (err) {
       setError(err.message || 'Failed to pay invoice')
     }
@@ -148,6 +199,7 @@ export default function App() {
     try {
       const res = await fetch(`${API}/search?q=${encodeURIComponent(search)}`)
       const data = await res.json()
+      searching.current = true
       setInvoices(data)
     } catch {
       setError('Search failed')
@@ -174,8 +226,8 @@ export default function App() {
         body: JSON.stringify({ description: desc, price: priceNum })
       })
       if (!res.ok) throw new Error()
+      upsertInvoice(await res.json())
       setRowItems(prev => ({ ...prev, [invId]: { desc: '', price: '' } }))
-      fetchInvoices()
     } catch {
       setError('Failed to add item')
     }
@@ -186,7 +238,7 @@ export default function App() {
     try {
       const res = await fetch(`${API}/invoices/${id}`, { method: 'DELETE' })
       if (!res.ok && res.status !== 204) throw new Error()
-      fetchInvoices()
+      removeInvoice(id)
     } catch {
       setError('Failed to delete invoice')
     }
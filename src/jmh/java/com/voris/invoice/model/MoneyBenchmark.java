@@ -0,0 +1,78 @@
+package com.voris.invoice.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares summing invoice amounts as {@link BigDecimal} (the previous model code)
+ * with summing them as {@link Money}, and measures the getters a DTO calls.
+ * Run with {@code ./gradlew jmh}; add {@code -prof gc} via the jmh block to see
+ * allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoneyBenchmark {
+    @Param({"4", "32"})
+    private int itemCount;
+
+    private List<LineItem> items;
+    private Invoice invoice;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        items = new ArrayList<>(itemCount);
+        invoice = new Invoice("Benchmark Customer");
+        for (int i = 0; i < itemCount; i++) {
+            LineItem item = new LineItem("Item " + i, BigDecimal.valueOf(random.nextInt(100_000), 2));
+            items.add(item);
+            invoice.addItem(item);
+        }
+        invoice.addPayment(invoice.getTotal().divide(BigDecimal.valueOf(3), 2, RoundingMode.DOWN),
+                "CARD", LocalDate.of(2024, 1, 1), null);
+    }
+
+    @Benchmark
+    public BigDecimal sumBigDecimal() {
+        return items.stream()
+                .map(LineItem::getPrice)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Benchmark
+    public Money sumMoney() {
+        return Invoice.sumPrices(items);
+    }
+
+    @Benchmark
+    public int dtoGettersBigDecimal() {
+        // What toDto did before running totals: every getter re-summed the lists
+        BigDecimal total = sumBigDecimal();
+        BigDecimal paid = invoice.getPaymentHistory().stream()
+                .map(Payment::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal remaining = total.subtract(paid);
+        return total.scale() + paid.scale() + remaining.signum();
+    }
+
+    @Benchmark
+    public int dtoGettersMoney() {
+        return invoice.getTotal().scale() + invoice.getAmountPaid().scale() + invoice.getRemainingBalance().signum()
+                + (invoice.isPaid() ? 1 : 0);
+    }
+}
@@ -2,92 +2,406 @@ package com.voris.invoice;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import com.voris.invoice.jfr.HttpRequestEvent;
+import com.voris.invoice.metrics.JvmMetrics;
+import com.voris.invoice.metrics.MetricsRegistry;
+import com.voris.invoice.metrics.RequestTiming;
+import com.voris.invoice.metrics.SlowRequestLog;
+import com.voris.invoice.model.IdGenerator;
 import com.voris.invoice.model.Invoice;
 import com.voris.invoice.model.LineItem;
 import com.voris.invoice.model.Payment;
+import com.voris.invoice.repo.ChangeSet;
+import com.voris.invoice.repo.IdStorage;
+import com.voris.invoice.repo.InvoiceProjection;
 import com.voris.invoice.repo.JdbcInvoiceRepository;
+import com.voris.invoice.repo.TimedInvoiceRepository;
 import com.voris.invoice.service.InvoiceService;
+import com.voris.invoice.service.RecordedInvoiceService;
+import com.voris.invoice.web.AdmissionController;
+import com.voris.invoice.web.BatchRequests;
+import com.voris.invoice.web.ChangeFeed;
+import com.voris.invoice.web.DataVersions;
+import com.voris.invoice.web.IdempotencyStore;
+import com.voris.invoice.web.InvoiceJsonWriter;
+import com.voris.invoice.web.JdbcIdempotencyPersistence;
+import com.voris.invoice.web.ResponseCompression;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
 
 import static spark.Spark.*;
 
 public class ApiServer {
+	// Each /events subscriber holds a request thread for as long as it stays connected
+	private static final int DEFAULT_EVENT_SUBSCRIBERS = 64;
+	private static final long EVENT_HEARTBEAT_MILLIS = 15_000;
+	private static final String PERMIT = "admission.permit";
+	private static final String TIMING = "metrics.timing";
+	private static final String HTTP_EVENT = "jfr.request";
+	private static final String ROUTE = "metrics.route";
+	private static final String IDEMPOTENT = "idempotency.claimed";
+	private static final String IDEMPOTENT_BODY = "idempotency.body";
+	private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+	private static final String REQUESTS = "invoice_http_requests_total";
+	private static final String REQUEST_DURATION = "invoice_http_request_duration_seconds";
+
 	private final Gson gson = new GsonBuilder().create();
 	private final InvoiceService service;
+	private final DataVersions versions = new DataVersions();
+	private final ResponseCompression compression;
+	private final BatchRequests batches;
+	private final ChangeFeed changeFeed;
+	private final AdmissionController admission;
+	private final MetricsRegistry metrics;
+	private final SlowRequestLog slowRequests;
+	private final IdempotencyStore idempotency;
 	
 	public ApiServer(InvoiceService service) {
+		this(service, new ResponseCompression(),
+				new ChangeFeed(ChangeFeed.DEFAULT_HISTORY, ChangeFeed.DEFAULT_BUFFER, DEFAULT_EVENT_SUBSCRIBERS),
+				AdmissionController.withLimits(AdmissionController.DEFAULT_READ_LIMIT,
+						AdmissionController.DEFAULT_WRITE_LIMIT, AdmissionController.DEFAULT_QUEUE,
+						AdmissionController.DEFAULT_MAX_WAIT_MILLIS, AdmissionController.DEFAULT_TARGET_MILLIS),
+				new MetricsRegistry(), new SlowRequestLog(SlowRequestLog.DEFAULT_THRESHOLD_MILLIS),
+				new IdempotencyStore(IdempotencyStore.DEFAULT_MAX_ENTRIES, IdempotencyStore.DEFAULT_TTL_MILLIS,
+						IdempotencyStore.DEFAULT_MAX_WAIT_MILLIS, null));
+	}
+
+	public ApiServer(InvoiceService service, ResponseCompression compression, ChangeFeed changeFeed,
+			AdmissionController admission, MetricsRegistry metrics, SlowRequestLog slowRequests,
+			IdempotencyStore idempotency) {
 		this.service = service;
+		this.compression = compression;
+		this.batches = new BatchRequests(service);
+		this.changeFeed = changeFeed;
+		this.admission = admission;
+		this.metrics = metrics;
+		this.slowRequests = slowRequests;
+		this.idempotency = idempotency;
+		service.addListener(versions);
+		service.addListener(changeFeed);
+		registerGauges();
+	}
+
+	private void registerGauges() {
+		for (String kind : List.of("read", "write")) {
+			Supplier<AdmissionController.Limiter.Stats> stats =
+					kind.equals("read") ? admission::readStats : admission::writeStats;
+			metrics.gauge("invoice_admission_limit", "Current adaptive concurrency limit",
+					() -> stats.get().getLimit(), "kind", kind);
+			metrics.gauge("invoice_admission_in_flight", "Requests holding an admission slot",
+					() -> stats.get().getInFlight(), "kind", kind);
+			metrics.gauge("invoice_admission_queued", "Requests waiting for an admission slot",
+					() -> stats.get().getQueued(), "kind", kind);
+			metrics.counter("invoice_admission_rejected_total", "Requests shed because the queue was full",
+					() -> stats.get().getRejected(), "kind", kind);
+			metrics.counter("invoice_admission_timed_out_total", "Requests shed after waiting the maximum time",
+					() -> stats.get().getTimedOut(), "kind", kind);
+		}
+		metrics.gauge("invoice_event_subscribers", "Open server-sent event streams", changeFeed::subscriberCount);
+		metrics.gauge("invoice_etag_versions", "Invoices with a cached ETag version", versions::trackedInvoices);
+		metrics.gauge("invoice_gzip_pooled_compressors", "Idle compressors in the pool", compression::pooledCompressors);
+		metrics.counter("invoice_gzip_responses_total", "Responses that went through compression",
+				() -> compression.stats().getResponses());
+		metrics.counter("invoice_gzip_compressed_responses_total", "Responses sent gzipped",
+				() -> compression.stats().getCompressedResponses());
+		metrics.counter("invoice_gzip_bytes_in_total", "Response bytes before compression",
+				() -> compression.stats().getBytesIn());
+		metrics.counter("invoice_gzip_bytes_out_total", "Response bytes after compression",
+				() -> compression.stats().getBytesOut());
+		metrics.gauge("invoice_idempotency_keys", "Idempotency keys held in memory", idempotency::size);
+		metrics.counter("invoice_idempotency_replayed_total", "Retries answered with a stored response",
+				idempotency::getReplayed);
+		metrics.counter("invoice_idempotency_conflicts_total", "Keys reused for a different request or still in progress",
+				() -> idempotency.getMismatched() + idempotency.getBusy());
+		JvmMetrics.register(metrics);
 	}
 	
 	public static void start() {
+		MetricsRegistry metrics = new MetricsRegistry();
+		// invoice.server.threads=virtual runs each request on its own virtual thread instead of Jetty's bounded pool
+		if ("virtual".equals(System.getProperty("invoice.server.threads", "pool").toLowerCase(Locale.ROOT))) {
+			VirtualThreadPool pool = new VirtualThreadPool();
+			metrics.gauge("invoice_server_threads_busy", "Requests running on virtual threads", pool::getThreads);
+			EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+					new EmbeddedJettyFactory().withThreadPool(pool));
+		}
 		port(8080);
 		enableCORS("*");
 		String dbPath = System.getProperty("invoice.db", "jdbc:sqlite:invoice.db");
-		InvoiceService service = new InvoiceService(new JdbcInvoiceRepository(dbPath));
+		// invoice.db.ids=blob stores UUID ids as 16-byte BLOBs; invoice.ids=random restores v4 ids
+		IdStorage idStorage = IdStorage.valueOf(System.getProperty("invoice.db.ids", "text").toUpperCase(Locale.ROOT));
+		InvoiceService service = new RecordedInvoiceService(
+				new TimedInvoiceRepository(new JdbcInvoiceRepository(dbPath, idStorage), metrics),
+				IdGenerator.named(System.getProperty("invoice.ids", "time")));
 		
-		ApiServer apiServer = new ApiServer(service);
+		// invoice.gzip.threshold is the response size in bytes above which gzip is used
+		ResponseCompression compression = new ResponseCompression(
+				Integer.getInteger("invoice.gzip.threshold", ResponseCompression.DEFAULT_THRESHOLD),
+				Integer.getInteger("invoice.gzip.level", Deflater.DEFAULT_COMPRESSION),
+				Runtime.getRuntime().availableProcessors() * 2);
+		ChangeFeed changeFeed = new ChangeFeed(ChangeFeed.DEFAULT_HISTORY, ChangeFeed.DEFAULT_BUFFER,
+				Integer.getInteger("invoice.events.maxSubscribers", DEFAULT_EVENT_SUBSCRIBERS));
+		// Initial concurrency limits; they adapt to latency from there
+		AdmissionController admission = AdmissionController.withLimits(
+				Integer.getInteger("invoice.admission.reads", AdmissionController.DEFAULT_READ_LIMIT),
+				Integer.getInteger("invoice.admission.writes", AdmissionController.DEFAULT_WRITE_LIMIT),
+				Integer.getInteger("invoice.admission.queue", AdmissionController.DEFAULT_QUEUE),
+				Long.getLong("invoice.admission.maxWaitMillis", AdmissionController.DEFAULT_MAX_WAIT_MILLIS),
+				Long.getLong("invoice.admission.targetMillis", AdmissionController.DEFAULT_TARGET_MILLIS));
+		// invoice.slowRequestMillis=0 turns the slow-request log off
+		SlowRequestLog slowRequests = new SlowRequestLog(
+				Long.getLong("invoice.slowRequestMillis", SlowRequestLog.DEFAULT_THRESHOLD_MILLIS));
+		// invoice.idempotency.persist=true also keeps responses in the database across restarts
+		IdempotencyStore idempotency = new IdempotencyStore(
+				Integer.getInteger("invoice.idempotency.maxKeys", IdempotencyStore.DEFAULT_MAX_ENTRIES),
+				Long.getLong("invoice.idempotency.ttlMillis", IdempotencyStore.DEFAULT_TTL_MILLIS),
+				IdempotencyStore.DEFAULT_MAX_WAIT_MILLIS,
+				Boolean.getBoolean("invoice.idempotency.persist") ? new JdbcIdempotencyPersistence(dbPath) : null);
+		ApiServer apiServer = new ApiServer(service, compression, changeFeed, admission, metrics, slowRequests,
+				idempotency);
 		apiServer.setupRoutes();
 	}
 	
 	private void setupRoutes() {
 
-		get("/health", (req, res) -> {
+		// Registered first so shed requests are counted too; event streams would only skew the latencies
+		before((req, res) -> {
+			if (!"/events".equals(req.pathInfo())) {
+				req.attribute(TIMING, RequestTiming.start());
+				HttpRequestEvent event = new HttpRequestEvent();
+				if (event.isEnabled()) {
+					event.begin();
+					req.attribute(HTTP_EVENT, event);
+				}
+			}
+		});
+
+		// Shed load with a fast 503 instead of letting requests pile up behind slow database calls
+		before((req, res) -> {
+			if (!needsAdmission(req)) {
+				return;
+			}
+			AdmissionController.Permit permit = admission.admit(req.requestMethod());
+			if (permit == null) {
+				res.type("application/json");
+				res.header("Retry-After", AdmissionController.RETRY_AFTER_SECONDS);
+				halt(503, InvoiceJsonWriter.error("Server busy, retry later"));
+			}
+			req.attribute(PERMIT, permit);
+		});
+
+		// Runs after exception handlers too, so every permit is returned
+		afterAfter((req, res) -> {
+			AdmissionController.Permit permit = req.attribute(PERMIT);
+			if (permit != null) {
+				permit.release();
+			}
+			RequestTiming timing = req.attribute(TIMING);
+			if (timing != null) {
+				timing.finish();
+				RequestTiming.clear();
+				// Streamed responses already carry the header; string bodies are written after this filter
+				if (!res.raw().isCommitted()) {
+					res.header("Server-Timing", timing.serverTiming());
+				}
+				String route = req.attribute(ROUTE);
+				recordRequest(req.requestMethod(), route == null ? "unmatched" : route, res.status(), timing);
+				HttpRequestEvent event = req.attribute(HTTP_EVENT);
+				if (event != null) {
+					event.end();
+					if (event.shouldCommit()) {
+						event.method = req.requestMethod();
+						event.route = route == null ? "unmatched" : route;
+						event.status = res.status();
+						event.repositoryCalls = timing.getRepositoryCalls();
+						event.queries = timing.getQueries();
+						event.connections = timing.getConnections();
+						event.commit();
+					}
+				}
+			}
+		});
+
+		get("/metrics", (req, res) -> {
+			res.type(MetricsRegistry.CONTENT_TYPE);
+			StringWriter text = new StringWriter(16 * 1024);
+			metrics.write(text);
+			return text.toString();
+		});
+
+		get("/health", measured((req, res) -> {
 			res.type("text/plain");
 			return "OK";
-		});
+		}));
 
 		exception(Exception.class, (e, req, res) -> {
 			e.printStackTrace();
 			res.type("application/json");
 			res.status(500);
-			res.body(new Gson().toJson(Map.of(
-					"error", "Internal Server Error",
-					"message", e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()
-			)));
+			res.body(InvoiceJsonWriter.error("Internal Server Error",
+					e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()));
 		});
 
 		notFound((req, res) -> {
 			res.type("application/json");
-			return new Gson().toJson(Map.of("error", "Not Found"));
+			return InvoiceJsonWriter.error("Not Found");
 		});
 
-		get("/invoices", (req, res) -> {
+		get("/stats/compression", measured((req, res) -> {
 			res.type("application/json");
-			return gson.toJson(service.getAll().stream()
-				.map(this::toDto)
-				.collect(Collectors.toList()));
-		});
+			ResponseCompression.Stats stats = compression.stats();
+			Map<String, Object> body = new LinkedHashMap<>();
+			body.put("responses", stats.getResponses());
+			body.put("compressedResponses", stats.getCompressedResponses());
+			body.put("bytesIn", stats.getBytesIn());
+			body.put("bytesOut", stats.getBytesOut());
+			body.put("ratio", stats.getRatio());
+			body.put("compressMillis", stats.getCompressNanos() / 1_000_000.0);
+			return gson.toJson(body);
+		}));
 
-		get("/invoices/:id", (req, res) -> {
+		get("/stats/admission", measured((req, res) -> {
 			res.type("application/json");
-			return service.getById(req.params(":id"))
-					.map(inv -> gson.toJson(toDto(inv)))
-					.orElseGet(() -> {
-						res.status(404);
-						return gson.toJson(Map.of("error", "Not found"));
-					});
+			Map<String, Object> body = new LinkedHashMap<>();
+			body.put("reads", admissionStats(admission.readStats()));
+			body.put("writes", admissionStats(admission.writeStats()));
+			return gson.toJson(body);
+		}));
+
+		// Server-sent events for live clients; EventSource resends Last-Event-ID on reconnect
+		get("/events", (req, res) -> {
+			ChangeFeed.Subscription subscription = changeFeed.subscribe(req.headers("Last-Event-ID"));
+			if (subscription == null) {
+				res.type("application/json");
+				res.status(503);
+				res.header("Retry-After", "5");
+				return InvoiceJsonWriter.error("Too many event subscribers");
+			}
+			res.type("text/event-stream;charset=UTF-8");
+			res.header("Cache-Control", "no-cache");
+			// Stops proxies such as nginx from buffering the stream
+			res.header("X-Accel-Buffering", "no");
+			ChangeFeed.pump(subscription, res.raw().getOutputStream(), EVENT_HEARTBEAT_MILLIS);
+			return "";
 		});
 
-		get("/search", (req, res) -> {
+		// ?fields=id,customerName and ?include=items,payments pick what is loaded and written
+		get("/invoices", measured((req, res) -> {
+			InvoiceProjection projection;
+			try {
+				projection = projection(req);
+			} catch (IllegalArgumentException e) {
+				res.type("application/json");
+				res.status(400);
+				return InvoiceJsonWriter.error(e.getMessage());
+			}
+			String etag = versions.collectionTag();
+			if (notModified(req, res, etag)) {
+				return "";
+			}
+			List<Invoice> invoices = service.getAll(projection);
+			cacheable(res, etag);
+			return writeJson(req, res, out -> InvoiceJsonWriter.writeInvoices(out, invoices, projection));
+		}));
+
+		// Incremental sync: what changed after the next value of the previous page
+		get("/invoices/changes", measured((req, res) -> {
+			long since;
+			int limit;
+			try {
+				String sinceParam = req.queryParams("since");
+				String limitParam = req.queryParams("limit");
+				since = sinceParam == null || sinceParam.isBlank() ? 0 : Long.parseLong(sinceParam.trim());
+				limit = limitParam == null || limitParam.isBlank()
+						? InvoiceService.DEFAULT_CHANGES_LIMIT : Integer.parseInt(limitParam.trim());
+			} catch (NumberFormatException e) {
+				res.type("application/json");
+				res.status(400);
+				return InvoiceJsonWriter.error("since and limit must be integers");
+			}
+			ChangeSet changes;
+			try {
+				changes = service.getChangesSince(since, limit);
+			} catch (IllegalArgumentException e) {
+				res.type("application/json");
+				res.status(400);
+				return InvoiceJsonWriter.error(e.getMessage());
+			}
+			res.header("Cache-Control", "no-store");
+			return writeJson(req, res, out -> InvoiceJsonWriter.writeChanges(out, changes));
+		}));
+
+		get("/invoices/:id", measured((req, res) -> {
 			res.type("application/json");
-			String q = req.queryParams("q");
-			return gson.toJson(service.search(q).stream()
-				.map(this::toDto)
-				.collect(Collectors.toList()));
-		});
+			InvoiceProjection projection;
+			try {
+				projection = projection(req);
+			} catch (IllegalArgumentException e) {
+				res.status(400);
+				return InvoiceJsonWriter.error(e.getMessage());
+			}
+			String id = req.params(":id");
+			String etag = versions.invoiceTag(id);
+			if (notModified(req, res, etag)) {
+				return "";
+			}
+			Optional<Invoice> invoice = service.getById(id, projection);
+			if (invoice.isEmpty()) {
+				res.status(404);
+				return InvoiceJsonWriter.error("Not found");
+			}
+			cacheable(res, etag);
+			return writeJson(req, res, out -> InvoiceJsonWriter.writeInvoice(out, invoice.get(), projection));
+		}));
+
+		get("/search", measured((req, res) -> {
+			InvoiceProjection projection;
+			try {
+				projection = projection(req);
+			} catch (IllegalArgumentException e) {
+				res.type("application/json");
+				res.status(400);
+				return InvoiceJsonWriter.error(e.getMessage());
+			}
+			String etag = versions.collectionTag();
+			if (notModified(req, res, etag)) {
+				return "";
+			}
+			List<Invoice> invoices = service.search(req.queryParams("q"), projection);
+			cacheable(res, etag);
+			return writeJson(req, res, out -> InvoiceJsonWriter.writeInvoices(out, invoices, projection));
+		}));
 
-		post("/invoices", (req, res) -> {
+		post("/invoices", measured(idempotent((req, res) -> {
 			res.type("application/json");
 			String contentType = req.contentType() == null ? "" : req.contentType().toLowerCase();
 			String customerName;
 			List<LineItem> items;
 			if (contentType.contains("application/json")) {
-				CreateInvoiceBody body = gson.fromJson(req.body(), CreateInvoiceBody.class);
+				CreateInvoiceBody body = parseBody(req, CreateInvoiceBody.class);
 				customerName = body == null ? null : (body.customerName != null ? body.customerName : req.queryParams("customerName"));
 				if (customerName == null || customerName.isBlank()) {
 					// Try fallback field name "name"
@@ -120,22 +434,40 @@ public class ApiServer {
 
 			if (customerName == null || customerName.isBlank()) {
 				res.status(400);
-				return gson.toJson(Map.of("error", "customerName is required"));
+				return InvoiceJsonWriter.error("customerName is required");
 			}
 
-			Invoice created = service.createInvoice(customerName, items);
+			Invoice created;
+			try {
+				created = service.createInvoice(customerName, items);
+			} catch (IllegalArgumentException e) {
+				// A blank customer name, a null JSON item, or an amount the repository can't store
+				res.status(400);
+				return InvoiceJsonWriter.error(e.getMessage());
+			}
 			res.status(201);
-			return gson.toJson(toDto(created));
-		});
+			return writeJson(req, res, out -> InvoiceJsonWriter.writeInvoice(out, created));
+		})));
 
-		post("/invoices/:id/items", (req, res) -> {
+		// Bulk endpoints for integrations: a JSON array in, one result per element out
+		post("/invoices:batch", measured(idempotent((req, res) -> {
+			BatchRequests.Outcome outcome = batches.createInvoices(requestReader(req));
+			return writeBatch(req, res, outcome);
+		})));
+
+		post("/payments:batch", measured(idempotent((req, res) -> {
+			BatchRequests.Outcome outcome = batches.addPayments(requestReader(req));
+			return writeBatch(req, res, outcome);
+		})));
+
+		post("/invoices/:id/items", measured(idempotent((req, res) -> {
 			res.type("application/json");
 			String id = req.params(":id");
 			String contentType = req.contentType() == null ? "" : req.contentType().toLowerCase();
 			String description;
 			BigDecimal price;
 			if (contentType.contains("application/json")) {
-				LineItem body = gson.fromJson(req.body(), LineItem.class);
+				LineItem body = parseBody(req, LineItem.class);
 				description = body == null ? null : body.getDescription();
 				price = body == null ? null : body.getPrice();
 			} else {
@@ -145,38 +477,38 @@ public class ApiServer {
 			}
 			try {
 				Invoice updated = service.addLineItem(id, description, price);
-				return gson.toJson(toDto(updated));
+				return writeJson(req, res, out -> InvoiceJsonWriter.writeInvoice(out, updated));
 			} catch (IllegalArgumentException e) {
 				res.status(400);
-				return gson.toJson(Map.of("error", e.getMessage()));
+				return InvoiceJsonWriter.error(e.getMessage());
 			}
-		});
+		})));
 
 		// Replace all items for an invoice (supports add/edit/delete in one request)
-		put("/invoices/:id/items", (req, res) -> {
+		put("/invoices/:id/items", measured(idempotent((req, res) -> {
 			res.type("application/json");
 			String id = req.params(":id");
 			String contentType = req.contentType() == null ? "" : req.contentType().toLowerCase();
 			List<LineItem> items;
 			if (contentType.contains("application/json")) {
-				UpdateItemsBody body = gson.fromJson(req.body(), UpdateItemsBody.class);
+				UpdateItemsBody body = parseBody(req, UpdateItemsBody.class);
 				items = body == null ? List.of() : (body.items == null ? List.of() : body.items);
 			} else {
 				items = List.of();
 			}
 			try {
 				Invoice updated = service.updateLineItems(id, items);
-				return gson.toJson(toDto(updated));
+				return writeJson(req, res, out -> InvoiceJsonWriter.writeInvoice(out, updated));
 			} catch (IllegalArgumentException e) {
 				res.status(400);
-				return gson.toJson(Map.of("error", e.getMessage()));
+				return InvoiceJsonWriter.error(e.getMessage());
 			}
-		});
+		})));
 
-		post("/invoices/:id/payments", (req, res) -> {
+		post("/invoices/:id/payments", measured(idempotent((req, res) -> {
 			res.type("application/json");
 			String id = req.params(":id");
-			AddPaymentBody body = gson.fromJson(req.body(), AddPaymentBody.class);
+			AddPaymentBody body = parseBody(req, AddPaymentBody.class);
 			try {
 				Invoice updated = service.addPayment(
 					id,
@@ -185,28 +517,31 @@ public class ApiServer {
 					body.date == null ? null : LocalDate.parse(body.date),
 					body.reference
 				);
-				return gson.toJson(toDto(updated));
+				return writeJson(req, res, out -> InvoiceJsonWriter.writeInvoice(out, updated));
 			} catch (IllegalArgumentException e) {
 				res.status(400);
-				return gson.toJson(Map.of("error", e.getMessage()));
+				return InvoiceJsonWriter.error(e.getMessage());
 			}
-		});
+		})));
 		
-		get("/invoices/:id/payments", (req, res) -> {
+		get("/invoices/:id/payments", measured((req, res) -> {
 			res.type("application/json");
 			String id = req.params(":id");
+			String etag = versions.invoiceTag(id);
+			if (notModified(req, res, etag)) {
+				return "";
+			}
 			try {
 				List<Payment> payments = service.getPaymentHistory(id);
-				return gson.toJson(payments.stream()
-				.map(payment -> toPaymentDto(payment))
-				.collect(Collectors.toList()));
+				cacheable(res, etag);
+				return writeJson(req, res, out -> InvoiceJsonWriter.writePayments(out, payments));
 			} catch (IllegalArgumentException e) {
 				res.status(404);
-				return gson.toJson(Map.of("error", e.getMessage()));
+				return InvoiceJsonWriter.error(e.getMessage());
 			}
-		});
+		}));
 
-		delete("/invoices/:id", (req, res) -> {
+		delete("/invoices/:id", measured(idempotent((req, res) -> {
 			res.type("application/json");
 			String id = req.params(":id");
 			try {
@@ -216,13 +551,13 @@ public class ApiServer {
 					return "";
 				} else {
 					res.status(404);
-					return gson.toJson(Map.of("error", "Not found"));
+					return InvoiceJsonWriter.error("Not found");
 				}
 			} catch (IllegalArgumentException e) {
 				res.status(400);
-				return gson.toJson(Map.of("error", e.getMessage()));
+				return InvoiceJsonWriter.error(e.getMessage());
 			}
-		});
+		})));
 
 		init();
 		awaitInitialization();
@@ -233,59 +568,278 @@ public class ApiServer {
 		options("/*", (request, response) -> {
 			response.header("Access-Control-Allow-Origin", origin);
 			response.header("Access-Control-Allow-Methods", "GET,POST,PUT,DELETE,OPTIONS");
-			response.header("Access-Control-Allow-Headers", "Content-Type,Authorization");
+			response.header("Access-Control-Allow-Headers", "Content-Type,Authorization,If-None-Match,Last-Event-ID,Idempotency-Key");
 			response.status(200);
 			return "OK";
 		});
 		before((request, response) -> {
 			response.header("Access-Control-Allow-Origin", origin);
 			response.header("Access-Control-Allow-Credentials", "true");
-			response.header("Access-Control-Allow-Headers", "Content-Type,Authorization");
+			response.header("Access-Control-Expose-Headers", "ETag,Retry-After,Server-Timing,Idempotent-Replayed");
+			response.header("Access-Control-Allow-Headers", "Content-Type,Authorization,If-None-Match,Last-Event-ID,Idempotency-Key");
 		});
 	}
 
-	private InvoiceDto toDto(Invoice inv) {
-		InvoiceDto dto = new InvoiceDto();
-		dto.id = inv.getId();
-		dto.customerName = inv.getCustomerName();
-		dto.date = inv.getDate() == null ? null : inv.getDate().toString();
-		dto.total = inv.getTotal() == null ? null : inv.getTotal().toPlainString();
-		dto.paid = inv.isPaid();
-		dto.amountPaid = inv.getAmountPaid() == null ? null : inv.getAmountPaid().toPlainString();
-		dto.remainingBalance = inv.getRemainingBalance() == null ? null : inv.getRemainingBalance().toPlainString();
-		dto.items = inv.getItems();
-		dto.paymentHistory = inv.getPaymentHistory().stream()
-			.map(this::toPaymentDto)
-			.collect(Collectors.toList());
-		return dto;
+	/**
+	 * Wraps a route so the request metrics are labelled with its pattern, such as
+	 * {@code /invoices/:id}; filters only see their own pattern.
+	 */
+	private static Route measured(Route route) {
+		return (req, res) -> {
+			req.attribute(ROUTE, req.matchedPath());
+			RequestTiming timing = RequestTiming.current();
+			if (timing == null) {
+				return route.handle(req, res);
+			}
+			timing.handlerStarted();
+			try {
+				return route.handle(req, res);
+			} finally {
+				timing.handlerEnded();
+			}
+		};
 	}
-	
-	private PaymentDto toPaymentDto(Payment payment) {
-		PaymentDto dto = new PaymentDto();
-		dto.amount = payment.getAmount().toPlainString();
-		dto.method = payment.getMethod();
-		dto.date = payment.getDate().toString();
-		dto.reference = payment.getReference();
-		return dto;
+
+	private void recordRequest(String requestMethod, String route, int status, RequestTiming timing) {
+		// Clients choose the method, so unknown ones share a label instead of adding series
+		String method = switch (requestMethod == null ? "" : requestMethod) {
+			case "GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS" -> requestMethod;
+			default -> "OTHER";
+		};
+		metrics.counter(REQUESTS, "HTTP requests by route and status",
+				"method", method, "route", route, "status", Integer.toString(status)).increment();
+		metrics.histogram(REQUEST_DURATION, "HTTP request latency by route",
+				"method", method, "route", route).record(timing.elapsedNanos());
+		if (slowRequests.record(timing, method, route, status)) {
+			metrics.counter("invoice_http_slow_requests_total", "Requests written to the slow-request log",
+					"route", route).increment();
+		}
 	}
 
-	private static class InvoiceDto {
-		String id;
-		String customerName;
-		String date;
-		String total;
-		boolean paid;
-		String amountPaid;
-		String remainingBalance;
-		List<LineItem> items;
-		List<PaymentDto> paymentHistory;
+	/**
+	 * Whether the request goes through admission control. Health checks and stats must
+	 * answer under load, and an event stream would hold its slot for as long as it is open.
+	 */
+	private static boolean needsAdmission(Request req) {
+		if ("OPTIONS".equalsIgnoreCase(req.requestMethod())) {
+			return false;
+		}
+		String path = req.pathInfo();
+		return path == null || !(path.equals("/health") || path.equals("/events") || path.equals("/metrics")
+				|| path.startsWith("/stats/"));
 	}
-	
-	private static class PaymentDto {
-		String amount;
-		String method;
-		String date;
-		String reference;
+
+	private static Map<String, Object> admissionStats(AdmissionController.Limiter.Stats stats) {
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("limit", stats.getLimit());
+		body.put("inFlight", stats.getInFlight());
+		body.put("queued", stats.getQueued());
+		body.put("admitted", stats.getAdmitted());
+		body.put("rejected", stats.getRejected());
+		body.put("timedOut", stats.getTimedOut());
+		body.put("shedRatio", stats.getShedRatio());
+		return body;
+	}
+
+	/**
+	 * Returns the form fields sorted by name, to hash a form post without consuming it.
+	 */
+	private static byte[] formFields(Request req) {
+		StringBuilder fields = new StringBuilder();
+		for (String name : new TreeSet<>(req.queryParams())) {
+			fields.append(name).append('=').append(req.queryParams(name)).append('&');
+		}
+		return fields.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static Reader requestReader(Request req) throws IOException {
+		// Idempotent requests have already been read to hash them
+		byte[] body = req.attribute(IDEMPOTENT_BODY);
+		InputStream in = body != null ? new ByteArrayInputStream(body) : req.raw().getInputStream();
+		return new InputStreamReader(in, StandardCharsets.UTF_8);
+	}
+
+	private String writeBatch(Request req, Response res, BatchRequests.Outcome outcome) throws IOException {
+		// 200 even when entries failed; a body that couldn't be read to the end is a 400
+		res.status(outcome.getError() == null ? 200 : 400);
+		return writeJson(req, res, out -> InvoiceJsonWriter.writeBatch(out, outcome));
+	}
+
+	/**
+	 * Reads the sparse fieldset from the fields and include query parameters. The
+	 * tags don't depend on it, since clients cache each URL separately.
+	 * @throws IllegalArgumentException if a field or include is not known
+	 */
+	private static InvoiceProjection projection(Request req) {
+		return InvoiceProjection.parse(req.queryParams("fields"), req.queryParams("include"));
+	}
+
+	/**
+	 * Answers 304 Not Modified if the request's If-None-Match holds the current tag.
+	 * Runs before the repository is touched.
+	 */
+	private static boolean notModified(Request req, Response res, String etag) {
+		if (!DataVersions.matches(req.headers("If-None-Match"), etag)) {
+			return false;
+		}
+		cacheable(res, etag);
+		res.status(304);
+		return true;
+	}
+
+	// no-cache lets clients store the response but makes them revalidate it with the tag
+	private static void cacheable(Response res, String etag) {
+		res.header("ETag", etag);
+		res.header("Cache-Control", "no-cache");
+	}
+
+	/**
+	 * Streams the response body straight to the servlet output, gzipped if the client
+	 * accepts it and the body is large enough. The response is committed when the
+	 * writer closes, so Spark has nothing left to send.
+	 * A response that is kept for an idempotency key is returned as a string instead.
+	 */
+	private String writeJson(Request req, Response res, JsonBody body) throws IOException {
+		res.type("application/json");
+		RequestTiming timing = req.attribute(TIMING);
+		long start = System.nanoTime();
+		try {
+			if (req.attribute(IDEMPOTENT) != null) {
+				StringWriter text = new StringWriter();
+				try (JsonWriter out = InvoiceJsonWriter.open(text)) {
+					body.write(out);
+				}
+				return text.toString();
+			}
+			if (timing != null) {
+				// Headers go out with the first bytes, so this one can't include serialisation
+				res.header("Server-Timing", timing.serverTiming());
+			}
+			// The slot stays held while streaming, but a slow reader mustn't count as server latency
+			AdmissionController.Permit permit = req.attribute(PERMIT);
+			if (permit != null) {
+				permit.handled();
+			}
+			try (JsonWriter out = InvoiceJsonWriter.open(compression.wrap(req.raw(), res.raw()))) {
+				body.write(out);
+			}
+			return "";
+		} finally {
+			if (timing != null) {
+				timing.add(RequestTiming.Phase.SERIALIZE, System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Runs a mutating route at most once per Idempotency-Key. A retry with the same
+	 * key and request gets the first response again, marked Idempotent-Replayed; a
+	 * retry that arrives while the first is still running waits for it. A waiting
+	 * retry gives its admission permit back first, so a burst of retries can't fill
+	 * the write limit; if it ends up running the request after all, it is admitted again.
+	 */
+	private Route idempotent(Route route) {
+		return (req, res) -> {
+			String key = req.headers(IDEMPOTENCY_KEY);
+			if (key == null) {
+				return route.handle(req, res);
+			}
+			res.type("application/json");
+			String contentType = req.contentType() == null ? "" : req.contentType().toLowerCase(Locale.ROOT);
+			// Reading a form body here would leave nothing for the servlet to parse parameters from
+			boolean form = contentType.contains("x-www-form-urlencoded") || contentType.contains("multipart/");
+			byte[] requestBody = form ? null : req.bodyAsBytes();
+			byte[] hashed = form ? formFields(req) : requestBody;
+			IdempotencyStore.Claim claim;
+			boolean[] waited = new boolean[1];
+			try {
+				claim = idempotency.claim(key, IdempotencyStore.requestHash(req.requestMethod(), req.pathInfo(), hashed),
+						() -> {
+							waited[0] = true;
+							AdmissionController.Permit permit = req.attribute(PERMIT);
+							if (permit != null) {
+								permit.release();
+							}
+						});
+			} catch (IllegalArgumentException e) {
+				res.status(400);
+				return InvoiceJsonWriter.error(e.getMessage());
+			}
+			switch (claim.getOutcome()) {
+				case REPLAY -> {
+					IdempotencyStore.StoredResponse stored = claim.getResponse();
+					res.status(stored.getStatus());
+					if (stored.getContentType() != null) {
+						res.type(stored.getContentType());
+					}
+					res.header("Idempotent-Replayed", "true");
+					return stored.getBody();
+				}
+				case MISMATCH -> {
+					res.status(422);
+					return InvoiceJsonWriter.error("Idempotency-Key was already used for a different request");
+				}
+				case IN_PROGRESS -> {
+					res.status(409);
+					res.header("Retry-After", AdmissionController.RETRY_AFTER_SECONDS);
+					return InvoiceJsonWriter.error("A request with this Idempotency-Key is still in progress");
+				}
+				default -> {
+				}
+			}
+			if (waited[0] && req.attribute(PERMIT) != null) {
+				// The request it waited for failed, so this one runs and needs a slot again
+				AdmissionController.Permit permit = admission.admit(req.requestMethod());
+				req.attribute(PERMIT, permit);
+				if (permit == null) {
+					claim.release();
+					res.status(503);
+					res.header("Retry-After", AdmissionController.RETRY_AFTER_SECONDS);
+					return InvoiceJsonWriter.error("Server busy, retry later");
+				}
+			}
+			if (requestBody != null) {
+				req.attribute(IDEMPOTENT_BODY, requestBody);
+			}
+			req.attribute(IDEMPOTENT, Boolean.TRUE);
+			Object body = null;
+			boolean handled = false;
+			try {
+				body = route.handle(req, res);
+				handled = true;
+			} finally {
+				if (!handled) {
+					claim.release();
+				}
+			}
+			if (res.status() >= 500) {
+				claim.release();
+			} else {
+				claim.complete(new IdempotencyStore.StoredResponse(res.status(), res.raw().getContentType(),
+						body == null ? "" : body.toString()));
+			}
+			return body;
+		};
+	}
+
+	/**
+	 * Binds the JSON request body, timed as the parse phase.
+	 */
+	private <T> T parseBody(Request req, Class<T> type) {
+		long start = System.nanoTime();
+		try {
+			return gson.fromJson(req.body(), type);
+		} finally {
+			RequestTiming timing = req.attribute(TIMING);
+			if (timing != null) {
+				timing.add(RequestTiming.Phase.PARSE, System.nanoTime() - start);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface JsonBody {
+		void write(JsonWriter out) throws IOException;
 	}
 
 	private static class CreateInvoiceBody {
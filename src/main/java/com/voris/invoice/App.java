@@ -1,9 +1,12 @@
 package com.voris.invoice;
 
+import com.voris.invoice.jfr.RecordingSummary;
+import com.voris.invoice.model.IdGenerator;
 import com.voris.invoice.model.Invoice;
 import com.voris.invoice.model.LineItem;
 import com.voris.invoice.model.Payment;
 import com.voris.invoice.repo.InMemoryInvoiceRepository;
+import com.voris.invoice.repo.IdStorage;
 import com.voris.invoice.repo.JdbcInvoiceRepository;
 import com.voris.invoice.service.InvoiceService;
 
@@ -11,7 +14,9 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 public class App {
@@ -19,12 +24,16 @@ public class App {
 
     public App() {
         String dbPath = System.getProperty("invoice.db", "jdbc:sqlite:invoice.db");
-        this.service = new InvoiceService(new JdbcInvoiceRepository(dbPath));
+        IdStorage idStorage = IdStorage.valueOf(System.getProperty("invoice.db.ids", "text").toUpperCase(Locale.ROOT));
+        this.service = new InvoiceService(new JdbcInvoiceRepository(dbPath, idStorage),
+                IdGenerator.named(System.getProperty("invoice.ids", "time")));
     }
 
     public static void main(String[] args) {
         if (args.length > 0 && args[0].equalsIgnoreCase("server")) {
             ApiServer.start();
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("jfr-summary")) {
+            RecordingSummary.main(Arrays.copyOfRange(args, 1, args.length));
         } else {
             new App().run();
         }
@@ -272,7 +281,9 @@ public class App {
                     try {
                         int index = Integer.parseInt(scanner.nextLine()) - 1;
                         if (index >= 0 && index < items.size()) {
-                            LineItem item = items.get(index);
+                            // Edit a copy and replace it, so the running totals update straight away
+                            LineItem current = items.get(index);
+                            LineItem item = new LineItem(current.getDescription(), current.getPrice());
                             System.out.print("New description (leave blank to keep current): ");
                             String newDesc = scanner.nextLine().trim();
                             if (!newDesc.isEmpty()) {
@@ -294,6 +305,7 @@ public class App {
                                 }
                             }
                             
+                            items.set(index, item);
                             service.updateInvoice(invoice);
                             System.out.println("Item updated successfully.");
                         } else {
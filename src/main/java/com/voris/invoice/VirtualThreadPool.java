@@ -0,0 +1,74 @@
+package com.voris.invoice;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool that runs every task on a new virtual thread.
+ * The Jetty 9.4 bundled with Spark only ships bounded platform-thread pools, so
+ * this adapts {@link Executors#newThreadPerTaskExecutor} to Jetty's
+ * {@link ThreadPool} contract. There is no upper bound and no idle thread:
+ * {@link #getThreads()} reports the tasks currently running and the pool is
+ * never low on threads.
+ */
+class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("api-vt-", 0).factory());
+    private final AtomicInteger active = new AtomicInteger();
+
+    @Override
+    public void execute(Runnable task) {
+        active.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            active.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        if (isStopped() || isFailed()) {
+            // A pool that was never started doesn't run doStop when stopped,
+            // so nothing else would shut the executor down
+            executor.shutdown();
+        }
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            // Keep waiting until the pool is stopped and every task has finished
+        }
+    }
+
+    @Override
+    public int getThreads() {
+        return active.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdown();
+        super.doStop();
+    }
+}
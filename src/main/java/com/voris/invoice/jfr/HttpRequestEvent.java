@@ -0,0 +1,44 @@
+package com.voris.invoice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An HTTP request handled by {@link com.voris.invoice.ApiServer}, from the first
+ * filter to the last. Event streams are not recorded.
+ */
+@Name(HttpRequestEvent.NAME)
+@Label("HTTP Request")
+@Category({"Invoice", "HTTP"})
+@Description("A request to the invoice API")
+@StackTrace(false)
+@Enabled(false)
+public class HttpRequestEvent extends Event {
+    public static final String NAME = "com.voris.invoice.HttpRequest";
+
+    @Label("Method")
+    public String method;
+
+    @Label("Route")
+    @Description("The matched route pattern, or unmatched")
+    public String route;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Repository Calls")
+    public int repositoryCalls;
+
+    @Label("Queries")
+    @Description("SQL statements run for the request")
+    public int queries;
+
+    @Label("Connections")
+    @Description("Database connections opened for the request")
+    public int connections;
+}
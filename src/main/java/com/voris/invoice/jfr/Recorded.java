@@ -0,0 +1,45 @@
+package com.voris.invoice.jfr;
+
+import com.voris.invoice.repo.BatchResult;
+import com.voris.invoice.repo.ChangeSet;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Helpers shared by the event types.
+ */
+public final class Recorded {
+    private Recorded() {
+    }
+
+    /**
+     * Counts what a repository or service call returned: the size of a list, one for
+     * an invoice or a true result, the successful entries of a batch and the changed
+     * and deleted invoices of a change set.
+     */
+    public static int rows(Object result) {
+        if (result == null || Boolean.FALSE.equals(result)) {
+            return 0;
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        if (result instanceof ChangeSet changes) {
+            return changes.getChanged().size() + changes.getDeleted().size();
+        }
+        if (result instanceof Collection<?> values) {
+            if (values.isEmpty() || !(values.iterator().next() instanceof BatchResult)) {
+                return values.size();
+            }
+            int rows = 0;
+            for (Object value : values) {
+                if (!(value instanceof BatchResult batch) || batch.isOk()) {
+                    rows++;
+                }
+            }
+            return rows;
+        }
+        return 1;
+    }
+}
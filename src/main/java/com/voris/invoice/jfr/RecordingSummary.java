@@ -0,0 +1,159 @@
+package com.voris.invoice.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Summarises the invoice events in a flight recording: for each HTTP route, service
+ * operation and repository call, how often it ran, how many failed, its latency
+ * percentiles and the rows and connections it touched.
+ * <p>
+ * Run with {@code java -cp <jar> com.voris.invoice.jfr.RecordingSummary app.jfr},
+ * or {@code ./gradlew jfrSummary -Precording=app.jfr}.
+ */
+public final class RecordingSummary {
+    private static final Map<String, String> SECTIONS = new LinkedHashMap<>();
+    static {
+        SECTIONS.put(HttpRequestEvent.NAME, "HTTP requests");
+        SECTIONS.put(ServiceEvent.NAME, "Service operations");
+        SECTIONS.put(RepositoryEvent.NAME, "Repository calls");
+    }
+
+    private final Map<String, Map<String, Group>> sections = new HashMap<>();
+
+    /**
+     * Adds an event; events of other types are ignored.
+     */
+    public void add(RecordedEvent event) {
+        String type = event.getEventType().getName();
+        long nanos = event.getDuration().toNanos();
+        switch (type) {
+            case HttpRequestEvent.NAME -> add(type, event.getString("method") + " " + event.getString("route"),
+                    nanos, event.getInt("status") >= 500, event.getInt("repositoryCalls"), event.getInt("connections"));
+            case ServiceEvent.NAME -> add(type, event.getString("operation"),
+                    nanos, event.getString("failure") != null, event.getInt("rows"), 0);
+            case RepositoryEvent.NAME -> add(type, event.getString("operation"),
+                    nanos, false, event.getInt("rows"), event.getInt("connections"));
+            default -> {
+            }
+        }
+    }
+
+    void add(String type, String key, long nanos, boolean failed, long rows, long connections) {
+        Group group = sections.computeIfAbsent(type, t -> new HashMap<>()).computeIfAbsent(key, k -> new Group(key));
+        group.add(nanos, failed, rows, connections);
+    }
+
+    /**
+     * Writes one table per event type, operations ordered by total time.
+     */
+    public void write(PrintStream out) {
+        boolean any = false;
+        for (Map.Entry<String, String> section : SECTIONS.entrySet()) {
+            Map<String, Group> groups = sections.get(section.getKey());
+            if (groups == null) {
+                continue;
+            }
+            any = true;
+            boolean http = section.getKey().equals(HttpRequestEvent.NAME);
+            out.println(section.getValue());
+            out.printf(Locale.ROOT, "  %-40s %8s %7s %11s %9s %9s %9s %10s %7s%n", "operation", "count", "errors",
+                    "total ms", "p50 ms", "p99 ms", "max ms", http ? "repo calls" : "rows", "conns");
+            List<Group> sorted = new ArrayList<>(groups.values());
+            sorted.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+            // Service events don't count connections; their repository calls do
+            boolean connections = !section.getKey().equals(ServiceEvent.NAME);
+            for (Group group : sorted) {
+                group.write(out, connections);
+            }
+            out.println();
+        }
+        if (!any) {
+            out.println("No invoice events in the recording; was it made with the invoice.jfc settings?");
+        }
+    }
+
+    /**
+     * Reads every event in a recording file.
+     */
+    public static RecordingSummary read(Path recording) throws IOException {
+        RecordingSummary summary = new RecordingSummary();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                summary.add(file.readEvent());
+            }
+        }
+        return summary;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: RecordingSummary <recording.jfr>");
+            System.exit(2);
+        }
+        Path recording = Path.of(args[0]);
+        if (!Files.isRegularFile(recording)) {
+            System.err.println("No such recording: " + recording);
+            System.exit(1);
+        }
+        try {
+            read(recording).write(System.out);
+        } catch (IOException e) {
+            System.err.println("Failed to read recording: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static final class Group {
+        final String key;
+        long[] durations = new long[16];
+        int count;
+        int failures;
+        long totalNanos;
+        long rows;
+        long connections;
+
+        Group(String key) {
+            this.key = key;
+        }
+
+        void add(long nanos, boolean failed, long rows, long connections) {
+            if (count == durations.length) {
+                durations = Arrays.copyOf(durations, count * 2);
+            }
+            durations[count++] = nanos;
+            if (failed) {
+                failures++;
+            }
+            totalNanos += nanos;
+            this.rows += rows;
+            this.connections += connections;
+        }
+
+        void write(PrintStream out, boolean withConnections) {
+            long[] sorted = Arrays.copyOf(durations, count);
+            Arrays.sort(sorted);
+            out.printf(Locale.ROOT, "  %-40s %8d %7d %11.1f %9.3f %9.3f %9.3f %10d %7s%n", key, count, failures,
+                    totalNanos / 1e6, percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6,
+                    sorted[count - 1] / 1e6, rows, withConnections ? Long.toString(connections) : "-");
+        }
+
+        /** Nearest-rank percentile of sorted values */
+        static long percentile(long[] sorted, double fraction) {
+            int rank = (int) Math.ceil(fraction * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
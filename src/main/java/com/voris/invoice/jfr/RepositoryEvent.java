@@ -0,0 +1,94 @@
+package com.voris.invoice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A repository call, recorded around the delegate by
+ * {@link com.voris.invoice.repo.TimedInvoiceRepository}.
+ */
+@Name(RepositoryEvent.NAME)
+@Label("Repository Call")
+@Category({"Invoice", "Repository"})
+@Description("A call into the invoice repository")
+@StackTrace(false)
+@Enabled(false)
+public class RepositoryEvent extends Event {
+    public static final String NAME = "com.voris.invoice.Repository";
+
+    private static final ThreadLocal<RepositoryEvent> CURRENT = new ThreadLocal<>();
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Invoice ID")
+    @Description("The invoice the call is about, if it is about one")
+    public String invoiceId;
+
+    @Label("Rows")
+    @Description("Invoices, payments or results returned or changed")
+    public int rows;
+
+    @Label("Queries")
+    @Description("SQL statements run during the call")
+    public int queries;
+
+    @Label("Connections")
+    @Description("Database connections opened during the call")
+    public int connections;
+
+    /**
+     * Starts the event and makes it the one {@link #connectionOpened()} and
+     * {@link #queryIssued()} count for on
+     * this thread. Does nothing unless the event type is enabled.
+     */
+    public void start(String operation, String invoiceId) {
+        if (!isEnabled()) {
+            return;
+        }
+        this.operation = operation;
+        this.invoiceId = invoiceId;
+        CURRENT.set(this);
+        begin();
+    }
+
+    /**
+     * Ends the event and commits it if it passes the recording's threshold.
+     */
+    public void finish(Object result) {
+        if (!isEnabled()) {
+            return;
+        }
+        CURRENT.remove();
+        end();
+        if (shouldCommit()) {
+            rows = Recorded.rows(result);
+            commit();
+        }
+    }
+
+    /**
+     * Counts a SQL statement run on this thread towards the event in progress, if any.
+     */
+    public static void queryIssued() {
+        RepositoryEvent event = CURRENT.get();
+        if (event != null) {
+            event.queries++;
+        }
+    }
+
+    /**
+     * Counts a connection opened on this thread towards the event in progress, if any.
+     */
+    public static void connectionOpened() {
+        RepositoryEvent event = CURRENT.get();
+        if (event != null) {
+            event.connections++;
+        }
+    }
+}
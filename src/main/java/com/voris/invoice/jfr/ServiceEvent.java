@@ -0,0 +1,37 @@
+package com.voris.invoice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An invoice service operation, recorded by
+ * {@link com.voris.invoice.service.RecordedInvoiceService}.
+ */
+@Name(ServiceEvent.NAME)
+@Label("Service Operation")
+@Category({"Invoice", "Service"})
+@Description("An operation on the invoice service, including validation and listeners")
+@StackTrace(false)
+@Enabled(false)
+public class ServiceEvent extends Event {
+    public static final String NAME = "com.voris.invoice.Service";
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Invoice ID")
+    public String invoiceId;
+
+    @Label("Rows")
+    @Description("Invoices, payments or results returned")
+    public int rows;
+
+    @Label("Failure")
+    @Description("Class of the exception the operation threw, if any")
+    public String failure;
+}
@@ -0,0 +1,140 @@
+package com.voris.invoice.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram covering 2^16 ns (about 66 µs) up to 2^35 ns (about 34 s),
+ * plus an overflow bucket. As in an HdrHistogram, each power-of-two range is split
+ * into {@value #SUB_BUCKETS} linear sub-buckets, so the bounds of a bucket are at
+ * most 25% apart and so is a quantile read from them. Finding the bucket is one
+ * leading-zero count and a shift.
+ * <p>
+ * Recording takes no lock: counts are spread over stripes picked by thread id and
+ * updated with atomic adds, and the stripes are only summed when the histogram is
+ * read. Stripes rather than one histogram per thread keep memory bounded when
+ * every request runs on its own virtual thread.
+ */
+public final class Histogram {
+    static final int MIN_EXPONENT = 16;
+    static final int MAX_EXPONENT = 35;
+    private static final int SUB_BITS = 2;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /**
+     * Number of bounded buckets: one for values up to 2^MIN_EXPONENT, then the
+     * sub-buckets of each higher power of two. The overflow bucket comes after them
+     */
+    static final int BUCKETS = 1 + (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int SLOTS = SUM + 1;
+    private static final int STRIPES = stripeCount();
+    private static final String[] UPPER_BOUNDS = upperBounds();
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    public Histogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(SLOTS);
+        }
+    }
+
+    private static int stripeCount() {
+        int wanted = Math.min(64, Runtime.getRuntime().availableProcessors() * 2);
+        return Integer.highestOneBit(Math.max(1, wanted - 1)) << 1;
+    }
+
+    private static String[] upperBounds() {
+        String[] bounds = new String[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            bounds[i] = BigDecimal.valueOf(upperBoundNanos(i)).movePointLeft(9).toPlainString();
+        }
+        return bounds;
+    }
+
+    static long upperBoundNanos(int bucket) {
+        if (bucket == 0) {
+            return 1L << MIN_EXPONENT;
+        }
+        int exponent = MIN_EXPONENT + 1 + (bucket - 1) / SUB_BUCKETS;
+        int sub = (bucket - 1) % SUB_BUCKETS;
+        return (1L << (exponent - 1)) + ((long) (sub + 1) << (exponent - 1 - SUB_BITS));
+    }
+
+    /**
+     * Returns the index of the smallest bucket whose upper bound is at least the value.
+     */
+    static int bucket(long nanos) {
+        if (nanos <= 1L << MIN_EXPONENT) {
+            return 0;
+        }
+        // The value lies in (2^(exponent - 1), 2^exponent]
+        int exponent = 64 - Long.numberOfLeadingZeros(nanos - 1);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS;
+        }
+        long lower = 1L << (exponent - 1);
+        int sub = (int) ((nanos - lower - 1) >> (exponent - 1 - SUB_BITS));
+        return 1 + (exponent - MIN_EXPONENT - 1) * SUB_BUCKETS + sub;
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().threadId() & (STRIPES - 1)];
+        stripe.getAndIncrement(bucket(value));
+        stripe.getAndAdd(SUM, value);
+    }
+
+    /**
+     * Sums the stripes. Recordings made while this runs may be partly included.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS + 1];
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i <= BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+            sum += stripe.get(SUM);
+        }
+        return new Snapshot(counts, sum);
+    }
+
+    /**
+     * Bucket counts and the total of all recorded values.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long sumNanos;
+
+        Snapshot(long[] counts, long sumNanos) {
+            this.counts = counts;
+            this.sumNanos = sumNanos;
+        }
+
+        public int buckets() {
+            return BUCKETS;
+        }
+
+        /** Upper bound of a bucket in seconds, formatted for the Prometheus {@code le} label */
+        public String upperBound(int bucket) {
+            return UPPER_BOUNDS[bucket];
+        }
+
+        /** Number of values at or below the bucket's upper bound */
+        public long cumulativeCount(int bucket) {
+            long total = 0;
+            for (int i = 0; i <= bucket; i++) {
+                total += counts[i];
+            }
+            return total;
+        }
+
+        public long getCount() {
+            return cumulativeCount(BUCKETS);
+        }
+
+        public long getSumNanos() {
+            return sumNanos;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.voris.invoice.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Registers garbage collection, memory, thread and allocation metrics read from
+ * the JVM's management beans at scrape time.
+ */
+public final class JvmMetrics {
+    private JvmMetrics() {
+    }
+
+    public static void register(MetricsRegistry registry) {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            registry.counter("jvm_gc_collections_total", "Garbage collections run by each collector",
+                    gc::getCollectionCount, "gc", gc.getName());
+            registry.counter("jvm_gc_collection_seconds_total", "Time spent in garbage collection by each collector",
+                    () -> gc.getCollectionTime() / 1000.0, "gc", gc.getName());
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        registry.gauge("jvm_memory_used_bytes", "Memory in use",
+                () -> memory.getHeapMemoryUsage().getUsed(), "area", "heap");
+        registry.gauge("jvm_memory_used_bytes", "Memory in use",
+                () -> memory.getNonHeapMemoryUsage().getUsed(), "area", "nonheap");
+        registry.gauge("jvm_memory_committed_bytes", "Memory committed by the JVM",
+                () -> memory.getHeapMemoryUsage().getCommitted(), "area", "heap");
+        registry.gauge("jvm_memory_committed_bytes", "Memory committed by the JVM",
+                () -> memory.getNonHeapMemoryUsage().getCommitted(), "area", "nonheap");
+        registry.gauge("jvm_memory_max_bytes", "Maximum heap size, or -1 if undefined",
+                () -> memory.getHeapMemoryUsage().getMax(), "area", "heap");
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        registry.gauge("jvm_threads_current", "Live platform threads", threads::getThreadCount);
+        // HotSpot tracks allocation per platform thread; it's -1 or throws where unsupported
+        if (threads instanceof com.sun.management.ThreadMXBean hotspot && hotspot.isThreadAllocatedMemorySupported()) {
+            registry.counter("jvm_allocated_bytes_total", "Bytes allocated by all platform threads, including ones that ended",
+                    hotspot::getTotalThreadAllocatedBytes);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.voris.invoice.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Named counters, gauges and latency histograms, written in the Prometheus text
+ * exposition format. Labels are passed as alternating names and values.
+ * <p>
+ * Looking up an existing series is a concurrent map read and updating it takes no
+ * lock: counters are {@link LongAdder}s and histograms are striped. Gauges and
+ * function counters are read only when the registry is written.
+ */
+public final class MetricsRegistry {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Returns the counter for the given labels, creating it on first use.
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, "counter").series(labels, LongAdder::new);
+    }
+
+    /**
+     * Registers a counter whose value is read from elsewhere when the registry is written.
+     */
+    public void counter(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "counter").series(labels, () -> value);
+    }
+
+    /**
+     * Registers a gauge read when the registry is written.
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").series(labels, () -> value);
+    }
+
+    /**
+     * Returns the latency histogram for the given labels, creating it on first use.
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "histogram").series(labels, Histogram::new);
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        }
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    /**
+     * Writes every metric, families sorted by name and series by labels.
+     */
+    public void write(Writer out) throws IOException {
+        for (Family family : families.values()) {
+            family.write(out);
+        }
+    }
+
+    static String labelText(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+        }
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder(32).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                switch (c) {
+                    case '\\' -> text.append("\\\\");
+                    case '"' -> text.append("\\\"");
+                    case '\n' -> text.append("\\n");
+                    default -> text.append(c);
+                }
+            }
+            text.append('"');
+        }
+        return text.append('}').toString();
+    }
+
+    static String number(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final String type;
+        final ConcurrentMap<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        Object series(String[] labels, Supplier<Object> create) {
+            String key = labelText(labels);
+            Object existing = series.get(key);
+            return existing != null ? existing : series.computeIfAbsent(key, k -> create.get());
+        }
+
+        void write(Writer out) throws IOException {
+            List<Map.Entry<String, Object>> sorted = new ArrayList<>(series.entrySet());
+            sorted.sort(Map.Entry.comparingByKey());
+            out.write("# HELP " + name + " " + help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+            out.write("# TYPE " + name + " " + type + "\n");
+            for (Map.Entry<String, Object> entry : sorted) {
+                String labels = entry.getKey();
+                Object value = entry.getValue();
+                if (value instanceof Histogram histogram) {
+                    writeHistogram(out, labels, histogram.snapshot());
+                } else if (value instanceof LongAdder adder) {
+                    out.write(name + labels + " " + adder.sum() + "\n");
+                } else {
+                    out.write(name + labels + " " + number(((DoubleSupplier) value).getAsDouble()) + "\n");
+                }
+            }
+        }
+
+        private void writeHistogram(Writer out, String labels, Histogram.Snapshot snapshot) throws IOException {
+            // le goes last inside the braces
+            String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+            for (int i = 0; i < snapshot.buckets(); i++) {
+                out.write(name + "_bucket" + prefix + "le=\"" + snapshot.upperBound(i) + "\"} "
+                        + snapshot.cumulativeCount(i) + "\n");
+            }
+            out.write(name + "_bucket" + prefix + "le=\"+Inf\"} " + snapshot.getCount() + "\n");
+            out.write(name + "_sum" + labels + " " + number(snapshot.getSumNanos() / 1e9) + "\n");
+            out.write(name + "_count" + labels + " " + snapshot.getCount() + "\n");
+        }
+    }
+}
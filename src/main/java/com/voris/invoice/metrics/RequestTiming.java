@@ -0,0 +1,222 @@
+package com.voris.invoice.metrics;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * Phase timers for one request, reported in a {@code Server-Timing} header and in
+ * the slow-request log.
+ * <p>
+ * The timing is bound to the request's thread, so the repository layer can add to
+ * it without the request being passed down. Each phase is a running total of
+ * {@link System#nanoTime()} differences:
+ * <ul>
+ *   <li>{@code route}: from the first filter until the route handler starts, which
+ *       includes waiting for admission</li>
+ *   <li>{@code parse}: reading and binding request bodies</li>
+ *   <li>{@code repo}: inside repository calls, with the number of calls, of SQL
+ *       statements run and of database connections opened</li>
+ *   <li>{@code serialize}: writing the response body</li>
+ *   <li>{@code service}: the rest of the handler's time</li>
+ * </ul>
+ * Recording costs a thread-local lookup and a clock read per phase. A header sent
+ * before the body has no serialize time.
+ */
+public final class RequestTiming {
+    public enum Phase {
+        ROUTE("route"), PARSE("parse"), SERVICE("service"), REPOSITORY("repo"), SERIALIZE("serialize");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private long handlerStartNanos;
+    private long handlerEndNanos;
+    private long endNanos;
+    private int repositoryCalls;
+    private int queries;
+    private int connections;
+
+    private RequestTiming(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Starts timing a request on the current thread.
+     */
+    public static RequestTiming start() {
+        RequestTiming timing = new RequestTiming(System.nanoTime());
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    /**
+     * Returns the timing of the request running on this thread, or null.
+     */
+    public static RequestTiming current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Unbinds the timing from the current thread, which pooled threads go on to reuse.
+     */
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Adds a repository call to the current request, if there is one.
+     */
+    public static void repositoryCall(long nanos) {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.phaseNanos[Phase.REPOSITORY.ordinal()] += nanos;
+            timing.repositoryCalls++;
+        }
+    }
+
+    /**
+     * Counts a SQL statement run for the current request, if there is one. A batch
+     * counts once.
+     */
+    public static void queryIssued() {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.queries++;
+        }
+    }
+
+    /**
+     * Counts a database connection opened for the current request, if there is one.
+     */
+    public static void connectionOpened() {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.connections++;
+        }
+    }
+
+    public void add(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    public void handlerStarted() {
+        handlerStartNanos = System.nanoTime();
+        phaseNanos[Phase.ROUTE.ordinal()] = handlerStartNanos - startNanos;
+    }
+
+    public void handlerEnded() {
+        handlerEndNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops the clock; later reports use the total up to this point.
+     */
+    public void finish() {
+        if (endNanos == 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /** Nanoseconds from the start to {@link #finish()}, or to now if not finished */
+    public long elapsedNanos() {
+        return (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+    }
+
+    public long phaseNanos(Phase phase) {
+        if (phase != Phase.SERVICE) {
+            return phaseNanos[phase.ordinal()];
+        }
+        if (handlerStartNanos == 0) {
+            return 0;
+        }
+        long handlerEnd = handlerEndNanos != 0 ? handlerEndNanos : System.nanoTime();
+        long other = phaseNanos[Phase.PARSE.ordinal()] + phaseNanos[Phase.REPOSITORY.ordinal()]
+                + phaseNanos[Phase.SERIALIZE.ordinal()];
+        return Math.max(0, handlerEnd - handlerStartNanos - other);
+    }
+
+    public int getRepositoryCalls() {
+        return repositoryCalls;
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * Returns the value of a Server-Timing header, durations in milliseconds;
+     * phases that took no time are left out.
+     */
+    public String serverTiming() {
+        StringBuilder header = new StringBuilder(128);
+        for (Phase phase : Phase.values()) {
+            long nanos = phaseNanos(phase);
+            if (nanos == 0 && !(phase == Phase.REPOSITORY && repositoryCalls > 0)) {
+                continue;
+            }
+            header.append(phase.metricName).append(";dur=").append(millis(nanos));
+            if (phase == Phase.REPOSITORY) {
+                header.append(";desc=\"").append(repositoryCalls).append(" calls, ")
+                        .append(queries).append(" queries, ")
+                        .append(connections).append(" connections\"");
+            }
+            header.append(", ");
+        }
+        return header.append("total;dur=").append(millis(elapsedNanos())).toString();
+    }
+
+    /**
+     * Returns the timing as one line of JSON for the slow-request log.
+     */
+    public String toJson(String method, String route, int status) {
+        StringWriter text = new StringWriter(256);
+        try (JsonWriter out = new JsonWriter(text)) {
+            out.beginObject();
+            out.name("method").value(method);
+            out.name("route").value(route);
+            out.name("status").value(status);
+            out.name("totalMs").jsonValue(millis(elapsedNanos()));
+            out.name("phasesMs").beginObject();
+            for (Phase phase : Phase.values()) {
+                out.name(phase.metricName).jsonValue(millis(phaseNanos(phase)));
+            }
+            out.endObject();
+            out.name("repositoryCalls").value(repositoryCalls);
+            out.name("queries").value(queries);
+            out.name("connections").value(connections);
+            out.endObject();
+        } catch (IOException e) {
+            // A StringWriter never throws
+            throw new UncheckedIOException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Formats as milliseconds with three decimals, without going through a Formatter.
+     */
+    static String millis(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        long fraction = micros % 1000;
+        return (micros / 1000) + (fraction < 10 ? ".00" : fraction < 100 ? ".0" : ".") + fraction;
+    }
+}
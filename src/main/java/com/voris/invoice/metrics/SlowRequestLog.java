@@ -0,0 +1,37 @@
+package com.voris.invoice.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Logs requests that take longer than a threshold as one line of JSON each, with
+ * their phase timings and repository call and connection counts, to the
+ * {@code com.voris.invoice.slow-requests} logger at WARNING level.
+ */
+public final class SlowRequestLog {
+    public static final long DEFAULT_THRESHOLD_MILLIS = 1000;
+
+    private static final Logger LOG = Logger.getLogger("com.voris.invoice.slow-requests");
+
+    private final long thresholdNanos;
+
+    /**
+     * @param thresholdMillis the duration from which a request is logged; 0 or less turns logging off
+     */
+    public SlowRequestLog(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Logs the request if it was slow.
+     *
+     * @return whether it was logged
+     */
+    public boolean record(RequestTiming timing, String method, String route, int status) {
+        if (timing.elapsedNanos() < thresholdNanos) {
+            return false;
+        }
+        LOG.warning(timing.toJson(method, route, status));
+        return true;
+    }
+}
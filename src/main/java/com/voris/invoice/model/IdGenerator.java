@@ -0,0 +1,41 @@
+package com.voris.invoice.model;
+
+import java.util.UUID;
+
+/**
+ * Source of unique identifiers for invoices and payments.
+ * Both built-in schemes produce canonical, lower-case UUID strings, so ids from
+ * either can be mixed in the same store.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+    String nextId();
+
+    /**
+     * Random (version 4) UUIDs. Inserts land at random positions in a B-tree index.
+     */
+    static IdGenerator random() {
+        return () -> UUID.randomUUID().toString();
+    }
+
+    /**
+     * Time-ordered (version 7) UUIDs that sort in creation order, so inserts
+     * append to the right edge of a B-tree index.
+     */
+    static IdGenerator timeOrdered() {
+        return new TimeOrderedIdGenerator();
+    }
+
+    /**
+     * Looks up a generator by name: {@code random} or {@code time}.
+     *
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static IdGenerator named(String name) {
+        return switch (name == null ? "" : name.trim().toLowerCase()) {
+            case "random" -> random();
+            case "time" -> timeOrdered();
+            default -> throw new IllegalArgumentException("Unknown id scheme: " + name);
+        };
+    }
+}
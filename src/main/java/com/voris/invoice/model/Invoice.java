@@ -2,24 +2,49 @@ package com.voris.invoice.model;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.UUID;
 
 public class Invoice {
+    // Ids for invoices created from a customer name alone; services that create
+    // invoices are given their own generator. Time-ordered, so new invoices append
+    // to the end of id indexes
+    private static final IdGenerator DEFAULT_IDS = IdGenerator.timeOrdered();
+
     private final String id;
     private String customerName;
     private LocalDate date;
-    private final List<LineItem> items = new ArrayList<>();
-    private final List<Payment> payments = new ArrayList<>();
+    // Both lists are unmodifiable and replaced on every change (copy-on-write),
+    // so they can be shared with snapshots without defensive copies of the lists.
+    // Payments are kept sorted by date, ties in the order they were added.
+    private List<LineItem> items = List.of();
+    private List<Payment> payments = List.of();
+    private final List<LineItem> itemsView = new ItemsView();
+    // Running totals, kept in step with the lists so the getters below are O(1).
+    // Appends add to them; replacing or removing items recomputes the item total so
+    // its scale stays what a fresh sum would give. Money keeps this long arithmetic;
+    // BigDecimal only appears in the public getters.
+    private Money total = Money.ZERO;
+    private Money amountPaid = Money.ZERO;
+    private Money remainingBalance = Money.ZERO;
+    // The snapshot this invoice was materialised from, reused by snapshot() while unchanged
+    private InvoiceSnapshot source;
+    // True while items holds the source snapshot's own LineItem objects. Items are
+    // mutable, so they are copied before the first access that could hand one out
+    private boolean itemsShared;
+    // The repository's change sequence number for the state this copy reflects, 0 if unknown
+    private long changeSequence;
 
     public Invoice(String customerName) {
         if (customerName == null || customerName.trim().isEmpty()) {
             throw new IllegalArgumentException("Customer name cannot be null or empty");
         }
-        this.id = UUID.randomUUID().toString();
+        this.id = DEFAULT_IDS.nextId();
         this.customerName = customerName.trim();
         this.date = LocalDate.now();
     }
@@ -40,10 +65,42 @@ public class Invoice {
         this.date = date;
     }
 
+    // Materialises an invoice that shares the snapshot's lists
+    static Invoice fromSnapshot(InvoiceSnapshot snapshot) {
+        return new Invoice(snapshot);
+    }
+
+    private Invoice(InvoiceSnapshot snapshot) {
+        this.id = snapshot.getId();
+        this.customerName = snapshot.getCustomerName();
+        this.date = snapshot.getDate();
+        this.items = snapshot.getItems();
+        this.payments = snapshot.getPayments();
+        this.source = snapshot;
+        this.itemsShared = true;
+        this.total = snapshot.getTotal();
+        this.amountPaid = snapshot.getAmountPaid();
+        this.remainingBalance = total.subtract(amountPaid);
+    }
+
     public String getId() {
         return id;
     }
 
+    /**
+     * Returns the change sequence number the repository stamped on the write this
+     * copy reflects, or 0 if the repository doesn't know. Copies of the same invoice
+     * with larger numbers are newer. A repository may report a number lower than the
+     * copy's actual one, never a higher one.
+     */
+    public long getChangeSequence() {
+        return changeSequence;
+    }
+
+    public void setChangeSequence(long changeSequence) {
+        this.changeSequence = changeSequence;
+    }
+
     public String getCustomerName() {
         return customerName;
     }
@@ -63,26 +120,123 @@ public class Invoice {
         this.date = date;
     }
 
+    /**
+     * Returns a live view of the line items. Changes made through the view replace
+     * the underlying list rather than mutating it, so snapshots taken earlier are
+     * never affected. Items are this invoice's own copies; calling their setters
+     * changes nothing stored until the invoice is saved, and the running totals only
+     * catch up at the next {@link #snapshot()}, so prefer replacing an item.
+     */
     public List<LineItem> getItems() {
-        return items;
+        return itemsView;
     }
 
     public void addItem(LineItem item) {
         if (item == null) {
             throw new IllegalArgumentException("Item cannot be null");
         }
-        this.items.add(item);
+        unshareItems();
+        this.items = append(items, item);
+        itemAppended(item);
+    }
+
+    // Copies the source snapshot's items, so callers never get hold of a stored one
+    private void unshareItems() {
+        if (!itemsShared) {
+            return;
+        }
+        List<LineItem> copies = new ArrayList<>(items.size());
+        for (LineItem item : items) {
+            copies.add(item == null ? null : item.copy());
+        }
+        items = Collections.unmodifiableList(copies);
+        itemsShared = false;
+    }
+
+    private void itemAppended(LineItem item) {
+        if (item != null && item.getPriceMoney() != null) {
+            total = total.add(item.getPriceMoney());
+            remainingBalance = total.subtract(amountPaid);
+        }
+    }
+
+    private void itemsReplaced() {
+        total = sumPrices(items);
+        remainingBalance = total.subtract(amountPaid);
+    }
+
+    static Money sumPrices(List<LineItem> items) {
+        Money sum = Money.ZERO;
+        for (LineItem item : items) {
+            if (item != null && item.getPriceMoney() != null) {
+                sum = sum.add(item.getPriceMoney());
+            }
+        }
+        return sum;
+    }
+
+    static Money sumPayments(List<Payment> payments) {
+        Money sum = Money.ZERO;
+        for (Payment payment : payments) {
+            sum = sum.add(payment.getAmountMoney());
+        }
+        return sum;
+    }
+
+    /**
+     * Captures the current state as an immutable snapshot. Lists that have not
+     * changed since this invoice was materialised are shared, not copied; otherwise
+     * the line items are copied so later changes to this invoice's items can't leak
+     * into the snapshot, and the item total is recomputed from the copies in case an
+     * item's setters were called.
+     */
+    public InvoiceSnapshot snapshot() {
+        boolean itemsUnchanged = source != null && (itemsShared || sameItems(items, source.getItems()));
+        if (itemsUnchanged
+                && payments == source.getPayments()
+                && customerName.equals(source.getCustomerName())
+                && Objects.equals(date, source.getDate())) {
+            return source;
+        }
+        InvoiceSnapshot.Builder builder = source != null
+                ? source.toBuilder()
+                : InvoiceSnapshot.builder(id, customerName, date);
+        builder.customerName(customerName).date(date);
+        if (!itemsUnchanged) {
+            List<LineItem> copies = new ArrayList<>(items.size());
+            for (LineItem item : items) {
+                copies.add(item == null ? null : item.copy());
+            }
+            builder.items(copies);
+            total = sumPrices(copies);
+            remainingBalance = total.subtract(amountPaid);
+        }
+        if (source == null || payments != source.getPayments()) {
+            builder.payments(payments);
+        }
+        return builder.totals(total, amountPaid).build();
+    }
+
+    // Compares values, not identity, so a copied but untouched item list still matches
+    private static boolean sameItems(List<LineItem> items, List<LineItem> stored) {
+        if (items.size() != stored.size()) {
+            return false;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            LineItem item = items.get(i);
+            if (item == null ? stored.get(i) != null : !item.sameAs(stored.get(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public BigDecimal getTotal() {
-        return items.stream()
-                .map(LineItem::getPrice)
-                .filter(p -> p != null)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return total.toBigDecimal();
     }
 
     public boolean isPaid() {
-        return getRemainingBalance().compareTo(BigDecimal.ZERO) <= 0;
+        return remainingBalance.signum() <= 0;
     }
 
     public LocalDate getLastPaymentDate() {
@@ -93,15 +247,14 @@ public class Invoice {
     }
 
     public BigDecimal getAmountPaid() {
-        return payments.stream()
-                .map(Payment::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return amountPaid.toBigDecimal();
     }
 
+    /**
+     * @return the payments in date order (oldest first), as an unmodifiable list
+     */
     public List<Payment> getPaymentHistory() {
-        List<Payment> sortedPayments = new ArrayList<>(payments);
-        sortedPayments.sort((p1, p2) -> p1.getDate().compareTo(p2.getDate()));
-        return sortedPayments;
+        return payments;
     }
     
     public String getPaymentMethod() {
@@ -117,9 +270,10 @@ public class Invoice {
      * @param method The payment method (e.g., CASH, CARD, BANK_TRANSFER)
      * @param when The date of the payment (if null, uses current date)
      * @param reference Optional reference for the payment
+     * @return The payment that was recorded
      * @throws IllegalArgumentException if amount is null or not positive, or if method is null/empty
      */
-    public void addPayment(BigDecimal amount, String method, LocalDate when, String reference) {
+    public Payment addPayment(BigDecimal amount, String method, LocalDate when, String reference) {
         if (amount == null) {
             throw new IllegalArgumentException("Amount cannot be null");
         }
@@ -130,22 +284,136 @@ public class Invoice {
             throw new IllegalArgumentException("Payment method cannot be null or empty");
         }
         
-        BigDecimal remainingBalance = getRemainingBalance();
-        if (amount.compareTo(remainingBalance) > 0) {
-            throw new IllegalArgumentException("Payment amount cannot exceed remaining balance");
-        }
-        
         Payment payment = new Payment(
             amount, 
             method.trim(), 
             when != null ? when : LocalDate.now(),
             reference != null ? reference : ""
         );
-        payments.add(payment);
+        if (payment.getAmountMoney().compareTo(remainingBalance) > 0) {
+            throw new IllegalArgumentException("Payment amount cannot exceed remaining balance");
+        }
+        payments = insertByDate(payments, payment);
+        amountPaid = amountPaid.add(payment.getAmountMoney());
+        remainingBalance = total.subtract(amountPaid);
+        return payment;
     }
 
     public BigDecimal getRemainingBalance() {
-        return getTotal().subtract(getAmountPaid());
+        return remainingBalance.toBigDecimal();
+    }
+
+    /**
+     * Returns a copy of the date-ordered list with the payment inserted after every
+     * payment on or before its date. Payments are normally recorded in date order,
+     * so this is usually an append.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Payment> insertByDate(List<Payment> payments, Payment payment) {
+        int index = upperBound(payments, payment.getDate());
+        if (index == payments.size()) {
+            return append(payments, payment);
+        }
+        Object[] copy = new Object[payments.size() + 1];
+        Object[] current = payments.toArray();
+        System.arraycopy(current, 0, copy, 0, index);
+        copy[index] = payment;
+        System.arraycopy(current, index, copy, index + 1, current.length - index);
+        return (List<Payment>) (List<?>) Collections.unmodifiableList(Arrays.asList(copy));
+    }
+
+    static int upperBound(List<Payment> payments, LocalDate date) {
+        int low = 0;
+        int high = payments.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (payments.get(mid).getDate().isAfter(date)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> append(List<T> list, T element) {
+        Object[] copy = Arrays.copyOf(list.toArray(), list.size() + 1);
+        copy[list.size()] = element;
+        return (List<T>) Collections.unmodifiableList(Arrays.asList(copy));
+    }
+
+    /**
+     * Write-through view over the copy-on-write item list.
+     */
+    private final class ItemsView extends AbstractList<LineItem> {
+        @Override
+        public LineItem get(int index) {
+            unshareItems();
+            return items.get(index);
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        @Override
+        public LineItem set(int index, LineItem element) {
+            unshareItems();
+            List<LineItem> copy = new ArrayList<>(items);
+            LineItem previous = copy.set(index, element);
+            items = Collections.unmodifiableList(copy);
+            itemsReplaced();
+            return previous;
+        }
+
+        @Override
+        public void add(int index, LineItem element) {
+            unshareItems();
+            if (index == items.size()) {
+                items = append(items, element);
+                itemAppended(element);
+                return;
+            }
+            List<LineItem> copy = new ArrayList<>(items);
+            copy.add(index, element);
+            items = Collections.unmodifiableList(copy);
+            itemsReplaced();
+        }
+
+        @Override
+        public LineItem remove(int index) {
+            unshareItems();
+            List<LineItem> copy = new ArrayList<>(items);
+            LineItem previous = copy.remove(index);
+            items = Collections.unmodifiableList(copy);
+            itemsReplaced();
+            return previous;
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends LineItem> c) {
+            if (c.isEmpty()) {
+                return false;
+            }
+            unshareItems();
+            List<LineItem> copy = new ArrayList<>(items.size() + c.size());
+            copy.addAll(items);
+            copy.addAll(c);
+            items = Collections.unmodifiableList(copy);
+            for (LineItem item : c) {
+                itemAppended(item);
+            }
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            items = List.of();
+            itemsShared = false;
+            itemsReplaced();
+        }
     }
 
     @Override
@@ -0,0 +1,248 @@
+package com.voris.invoice.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable, thread-safe view of an invoice at one point in time.
+ * Repositories keep snapshots instead of live {@link Invoice} objects and replace
+ * them with a single reference swap on every write, so readers never need a lock.
+ * Item and payment lists are unmodifiable and shared between snapshots (and the
+ * invoices materialised from them) until one side changes, at which point only
+ * the list that changed is copied.
+ * Line items reachable from a snapshot are shared and must be treated as read-only;
+ * replace an item instead of calling its setters. Totals are computed once, when
+ * the snapshot is built, and carried over to builders and invoices derived from it.
+ */
+public final class InvoiceSnapshot {
+    private static final Comparator<Payment> PAYMENT_ORDER = Comparator.comparing(Payment::getDate);
+
+    private final String id;
+    private final String customerName;
+    private final LocalDate date;
+    private final List<LineItem> items;
+    private final List<Payment> payments;
+    private final Money total;
+    private final Money amountPaid;
+
+    private InvoiceSnapshot(Builder builder) {
+        this.id = builder.id;
+        this.customerName = builder.customerName;
+        this.date = builder.date;
+        this.items = builder.items;
+        this.payments = builder.payments;
+        this.total = builder.total != null ? builder.total : Invoice.sumPrices(items);
+        this.amountPaid = builder.amountPaid != null ? builder.amountPaid : Invoice.sumPayments(payments);
+    }
+
+    /**
+     * Starts a snapshot for a new invoice with no items and no payments.
+     */
+    public static Builder builder(String id, String customerName, LocalDate date) {
+        return new Builder(id, null, null, List.of(), List.of())
+                .customerName(customerName)
+                .date(date);
+    }
+
+    /**
+     * Starts a builder that shares this snapshot's lists until they are changed.
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder(id, customerName, date, items, payments);
+        builder.total = total;
+        builder.amountPaid = amountPaid;
+        return builder;
+    }
+
+    /**
+     * Materialises a mutable invoice backed by this snapshot's lists.
+     * The lists are only copied if the invoice is modified.
+     */
+    public Invoice toInvoice() {
+        return Invoice.fromSnapshot(this);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * @return the line items in insertion order, as an unmodifiable list
+     */
+    public List<LineItem> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the payments in date order (oldest first), as an unmodifiable list
+     */
+    public List<Payment> getPayments() {
+        return payments;
+    }
+
+    /**
+     * @return the sum of all item prices, ignoring items without a price
+     */
+    public Money getTotal() {
+        return total;
+    }
+
+    public Money getAmountPaid() {
+        return amountPaid;
+    }
+
+    public boolean isPaid() {
+        return total.compareTo(amountPaid) <= 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        InvoiceSnapshot that = (InvoiceSnapshot) o;
+        return Objects.equals(id, that.id) &&
+               Objects.equals(customerName, that.customerName) &&
+               Objects.equals(date, that.date) &&
+               Objects.equals(items, that.items) &&
+               Objects.equals(payments, that.payments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, customerName, date, items, payments);
+    }
+
+    @Override
+    public String toString() {
+        return "InvoiceSnapshot{" +
+                "id='" + id + '\'' +
+                ", customerName='" + customerName + '\'' +
+                ", date=" + date +
+                ", items=" + items.size() +
+                ", payments=" + payments.size() +
+                '}';
+    }
+
+    /**
+     * Collects changes for a new snapshot. Lists are copied lazily, on the first
+     * change to each list, so untouched lists are shared with the base snapshot.
+     */
+    public static final class Builder {
+        private final String id;
+        private String customerName;
+        private LocalDate date;
+        private List<LineItem> items;
+        private List<Payment> payments;
+        private boolean itemsCopied;
+        private boolean paymentsCopied;
+        // Totals carried over from the base snapshot; null once the list changes
+        private Money total;
+        private Money amountPaid;
+
+        Builder(String id, String customerName, LocalDate date, List<LineItem> items, List<Payment> payments) {
+            if (id == null || id.trim().isEmpty()) {
+                throw new IllegalArgumentException("Id cannot be null or empty");
+            }
+            this.id = id;
+            this.customerName = customerName;
+            this.date = date;
+            this.items = items;
+            this.payments = payments;
+        }
+
+        public Builder customerName(String customerName) {
+            if (customerName == null || customerName.trim().isEmpty()) {
+                throw new IllegalArgumentException("Customer name cannot be null or empty");
+            }
+            this.customerName = customerName.trim();
+            return this;
+        }
+
+        public Builder date(LocalDate date) {
+            if (date == null) {
+                throw new IllegalArgumentException("Date cannot be null");
+            }
+            this.date = date;
+            return this;
+        }
+
+        public Builder addItem(LineItem item) {
+            if (item == null) {
+                throw new IllegalArgumentException("Item cannot be null");
+            }
+            if (!itemsCopied) {
+                items = new ArrayList<>(items);
+                itemsCopied = true;
+            }
+            items.add(item);
+            total = null;
+            return this;
+        }
+
+        /**
+         * Replaces all items. The given list is copied.
+         */
+        public Builder items(List<LineItem> items) {
+            this.items = new ArrayList<>(items);
+            this.itemsCopied = true;
+            this.total = null;
+            return this;
+        }
+
+        public Builder addPayment(Payment payment) {
+            if (payment == null) {
+                throw new IllegalArgumentException("Payment cannot be null");
+            }
+            if (!paymentsCopied) {
+                payments = new ArrayList<>(payments);
+                paymentsCopied = true;
+            }
+            payments.add(Invoice.upperBound(payments, payment.getDate()), payment);
+            amountPaid = null;
+            return this;
+        }
+
+        /**
+         * Replaces all payments. The given list is copied and sorted by date;
+         * payments on the same date keep their relative order.
+         */
+        public Builder payments(List<Payment> payments) {
+            this.payments = new ArrayList<>(payments);
+            this.payments.sort(PAYMENT_ORDER);
+            this.paymentsCopied = true;
+            this.amountPaid = null;
+            return this;
+        }
+
+        // Used by Invoice, which already keeps running totals for the lists it passes in
+        Builder totals(Money total, Money amountPaid) {
+            this.total = total;
+            this.amountPaid = amountPaid;
+            return this;
+        }
+
+        public InvoiceSnapshot build() {
+            if (itemsCopied) {
+                items = Collections.unmodifiableList(items);
+                itemsCopied = false;
+            }
+            if (paymentsCopied) {
+                payments = Collections.unmodifiableList(payments);
+                paymentsCopied = false;
+            }
+            return new InvoiceSnapshot(this);
+        }
+    }
+}
@@ -6,6 +6,10 @@ import java.util.Objects;
 public class LineItem {
     private String description;
     private BigDecimal price;
+    // Exact long-based copy of price used for totals; null when price is null.
+    // Transient so Gson neither writes nor reads it, which leaves it unset on
+    // items Gson builds; getPriceMoney fills it in from price
+    private transient Money priceMoney;
 
     public LineItem() {
     }
@@ -19,7 +23,23 @@ public class LineItem {
         }
         // Negative prices are allowed by tests (e.g., discounts)
         this.description = description;
-        this.price = price;
+        setPrice(price);
+    }
+
+    // Copies without re-validating, so detached or partially-filled items survive
+    LineItem copy() {
+        LineItem copy = new LineItem();
+        copy.description = description;
+        copy.price = price;
+        copy.priceMoney = priceMoney;
+        return copy;
+    }
+
+    // Exact match, scale included, unlike equals
+    boolean sameAs(LineItem other) {
+        return other != null
+                && Objects.equals(description, other.description)
+                && Objects.equals(price, other.price);
     }
 
     public String getDescription() {
@@ -35,9 +55,22 @@ public class LineItem {
     }
 
     public void setPrice(BigDecimal price) {
+        this.priceMoney = price == null ? null : Money.of(price);
         this.price = price;
     }
 
+    /**
+     * @return the price as {@link Money}, or null if no price is set
+     */
+    public Money getPriceMoney() {
+        Money money = priceMoney;
+        if (money == null && price != null) {
+            money = Money.of(price);
+            priceMoney = money;
+        }
+        return money;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,208 @@
+package com.voris.invoice.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact decimal amount stored as a long count of minor units plus a scale, so
+ * 12.50 is {@code 1250} at scale 2. Arithmetic on amounts of the same scale is
+ * plain long math; amounts of different scales are aligned to the larger scale,
+ * as {@link BigDecimal} does.
+ * <p>
+ * An amount with more than {@link #MAX_SCALE} decimal places or more than 63 bits
+ * of digits, or a sum that would overflow, is kept as a {@link BigDecimal} instead
+ * ({@link #isCompact()} is false). Such amounts are slower but still exact, so no
+ * value that a BigDecimal can hold is rejected.
+ * <p>
+ * The model keeps prices, payments and running totals as Money and converts to
+ * {@link BigDecimal} only in its public getters, for JSON, the CLI and JDBC.
+ * Amounts carry no currency; the application works in a single one.
+ */
+public final class Money implements Comparable<Money> {
+    /** Largest supported number of decimal places */
+    public static final int MAX_SCALE = 18;
+
+    public static final Money ZERO = new Money(0, 0);
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long minorUnits;
+    private final int scale;
+    private final boolean compact;
+    // The value itself when not compact; otherwise lazily created, and as BigDecimal
+    // is immutable a racy initialisation is harmless
+    private BigDecimal decimal;
+
+    private Money(long minorUnits, int scale) {
+        this.minorUnits = minorUnits;
+        this.scale = scale;
+        this.compact = true;
+    }
+
+    private Money(BigDecimal wide) {
+        this.minorUnits = 0;
+        this.scale = wide.scale();
+        this.compact = false;
+        this.decimal = wide;
+    }
+
+    /**
+     * @param minorUnits the amount in units of 10^-scale
+     * @param scale number of decimal places, between 0 and {@link #MAX_SCALE}
+     * @throws IllegalArgumentException if the scale is out of range
+     */
+    public static Money ofMinor(long minorUnits, int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be between 0 and " + MAX_SCALE + ": " + scale);
+        }
+        return minorUnits == 0 && scale == 0 ? ZERO : new Money(minorUnits, scale);
+    }
+
+    /**
+     * Converts a decimal exactly, keeping its scale. Negative scales are
+     * normalised to 0.
+     *
+     * @throws IllegalArgumentException if the value is null
+     */
+    public static Money of(BigDecimal value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Amount cannot be null");
+        }
+        BigDecimal normalised = value.scale() < 0 ? value.setScale(0) : value;
+        if (normalised.scale() > MAX_SCALE || normalised.unscaledValue().bitLength() > 63) {
+            return new Money(normalised);
+        }
+        Money money = ofMinor(normalised.unscaledValue().longValue(), normalised.scale());
+        if (normalised == value) {
+            money.decimal = value;
+        }
+        return money;
+    }
+
+    /**
+     * Whether the amount is held as a long and a scale rather than as a BigDecimal.
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * @throws IllegalStateException if the amount is not {@link #isCompact() compact}
+     */
+    public long getMinorUnits() {
+        requireCompact();
+        return minorUnits;
+    }
+
+    /**
+     * @throws IllegalStateException if the amount is not {@link #isCompact() compact}
+     */
+    public int getScale() {
+        requireCompact();
+        return scale;
+    }
+
+    private void requireCompact() {
+        if (!compact) {
+            throw new IllegalStateException("Amount has no long form: " + decimal);
+        }
+    }
+
+    public int signum() {
+        return compact ? Long.signum(minorUnits) : decimal.signum();
+    }
+
+    public Money add(Money other) {
+        if (compact && other.compact) {
+            try {
+                if (scale == other.scale) {
+                    return ofMinor(Math.addExact(minorUnits, other.minorUnits), scale);
+                }
+                int target = Math.max(scale, other.scale);
+                return ofMinor(Math.addExact(minorUnitsAt(target), other.minorUnitsAt(target)), target);
+            } catch (ArithmeticException e) {
+                // Overflowed a long; fall through to BigDecimal
+            }
+        }
+        return of(toBigDecimal().add(other.toBigDecimal()));
+    }
+
+    public Money subtract(Money other) {
+        if (compact && other.compact) {
+            try {
+                if (scale == other.scale) {
+                    return ofMinor(Math.subtractExact(minorUnits, other.minorUnits), scale);
+                }
+                int target = Math.max(scale, other.scale);
+                return ofMinor(Math.subtractExact(minorUnitsAt(target), other.minorUnitsAt(target)), target);
+            } catch (ArithmeticException e) {
+                // Overflowed a long; fall through to BigDecimal
+            }
+        }
+        return of(toBigDecimal().subtract(other.toBigDecimal()));
+    }
+
+    private long minorUnitsAt(int target) {
+        return target == scale ? minorUnits : Math.multiplyExact(minorUnits, POWERS_OF_TEN[target - scale]);
+    }
+
+    /**
+     * Compares by numeric value, ignoring scale, like {@link BigDecimal#compareTo}.
+     */
+    @Override
+    public int compareTo(Money other) {
+        if (!compact || !other.compact) {
+            return toBigDecimal().compareTo(other.toBigDecimal());
+        }
+        if (scale == other.scale) {
+            return Long.compare(minorUnits, other.minorUnits);
+        }
+        int target = Math.max(scale, other.scale);
+        try {
+            return Long.compare(minorUnitsAt(target), other.minorUnitsAt(target));
+        } catch (ArithmeticException e) {
+            // Rescaling overflowed; only happens for amounts near the long range
+            return toBigDecimal().compareTo(other.toBigDecimal());
+        }
+    }
+
+    public BigDecimal toBigDecimal() {
+        BigDecimal value = decimal;
+        if (value == null) {
+            value = BigDecimal.valueOf(minorUnits, scale);
+            decimal = value;
+        }
+        return value;
+    }
+
+    /**
+     * Equal only if both the minor units and the scale match, like {@link BigDecimal#equals}.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Money money = (Money) o;
+        if (!compact || !money.compact) {
+            // A value is only ever held one way, so mixed forms are never equal
+            return !compact && !money.compact && decimal.equals(money.decimal);
+        }
+        return minorUnits == money.minorUnits && scale == money.scale;
+    }
+
+    @Override
+    public int hashCode() {
+        return compact ? 31 * Long.hashCode(minorUnits) + scale : decimal.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
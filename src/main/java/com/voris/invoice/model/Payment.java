@@ -9,9 +9,11 @@ public class Payment {
     private final String method;
     private final LocalDate date;
     private final String reference;
+    private final transient Money amountMoney;
 
     public Payment(BigDecimal amount, String method, LocalDate date, String reference) {
         this.amount = amount;
+        this.amountMoney = amount == null ? null : Money.of(amount);
         this.method = method;
         this.date = date != null ? date : LocalDate.now();
         this.reference = reference != null ? reference : "";
@@ -21,6 +23,13 @@ public class Payment {
         return amount;
     }
 
+    /**
+     * @return the amount as {@link Money}, or null if no amount is set
+     */
+    public Money getAmountMoney() {
+        return amountMoney;
+    }
+
     public String getMethod() {
         return method;
     }
@@ -0,0 +1,51 @@
+package com.voris.invoice.model;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates version 7 UUIDs (RFC 9562): a 48-bit Unix millisecond timestamp,
+ * a 12-bit sequence and 62 random bits.
+ * Ids from one generator are strictly increasing, even within a millisecond:
+ * the timestamp and sequence share one atomic counter, which is bumped with a
+ * compare-and-set instead of a lock. When more than 4096 ids are requested in a
+ * millisecond the sequence carries into the timestamp, borrowing from the next
+ * millisecond rather than repeating or blocking.
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+    private static final int SEQUENCE_BITS = 12;
+
+    // Timestamp in the high bits, sequence in the low 12
+    private final AtomicLong state = new AtomicLong();
+
+    @Override
+    public String nextId() {
+        return next().toString();
+    }
+
+    /**
+     * Returns the next id as a {@link UUID}.
+     */
+    public UUID next() {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            long now = System.currentTimeMillis() << SEQUENCE_BITS;
+            if (now > current) {
+                // New millisecond: start the sequence at a random point in its lower half,
+                // which leaves room to count up without carrying
+                next = now | ThreadLocalRandom.current().nextInt(1 << (SEQUENCE_BITS - 1));
+            } else {
+                next = current + 1;
+            }
+        } while (!state.compareAndSet(current, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1 << SEQUENCE_BITS) - 1);
+        long msb = (timestamp << 16) | 0x7000L | sequence;
+        long lsb = (ThreadLocalRandom.current().nextLong() & 0x3FFF_FFFF_FFFF_FFFFL) | 0x8000_0000_0000_0000L;
+        return new UUID(msb, lsb);
+    }
+}
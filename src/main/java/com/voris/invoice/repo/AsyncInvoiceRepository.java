@@ -0,0 +1,45 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.Invoice;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking reads for {@link com.voris.invoice.service.AsyncInvoiceService}.
+ * A repository with a natively asynchronous driver can implement this directly;
+ * {@link #blocking} adapts any {@link InvoiceRepository} by running its calls on
+ * an executor. Futures complete exceptionally with whatever the call threw.
+ */
+public interface AsyncInvoiceRepository {
+    CompletableFuture<Optional<Invoice>> findById(String id);
+
+    CompletableFuture<List<Invoice>> findAll();
+
+    CompletableFuture<List<Invoice>> search(String query);
+
+    /**
+     * Runs each call of a blocking repository as its own task on the executor, so
+     * independent calls overlap as far as the executor and repository allow.
+     */
+    static AsyncInvoiceRepository blocking(InvoiceRepository repository, Executor executor) {
+        return new AsyncInvoiceRepository() {
+            @Override
+            public CompletableFuture<Optional<Invoice>> findById(String id) {
+                return CompletableFuture.supplyAsync(() -> repository.findById(id), executor);
+            }
+
+            @Override
+            public CompletableFuture<List<Invoice>> findAll() {
+                return CompletableFuture.supplyAsync(repository::findAll, executor);
+            }
+
+            @Override
+            public CompletableFuture<List<Invoice>> search(String query) {
+                return CompletableFuture.supplyAsync(() -> repository.search(query), executor);
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package com.voris.invoice.repo;
+
+/**
+ * Outcome of one entry of a bulk operation.
+ */
+public final class BatchResult {
+    public enum Status {
+        /** The entry was applied */
+        OK,
+        /** The entry failed validation or a business rule and was not applied */
+        REJECTED,
+        /** The entry refers to an invoice that doesn't exist */
+        NOT_FOUND
+    }
+
+    private final String invoiceId;
+    private final Status status;
+    private final String error;
+
+    private BatchResult(String invoiceId, Status status, String error) {
+        this.invoiceId = invoiceId;
+        this.status = status;
+        this.error = error;
+    }
+
+    public static BatchResult ok(String invoiceId) {
+        return new BatchResult(invoiceId, Status.OK, null);
+    }
+
+    public static BatchResult rejected(String invoiceId, String error) {
+        return new BatchResult(invoiceId, Status.REJECTED, error);
+    }
+
+    public static BatchResult notFound(String invoiceId) {
+        return new BatchResult(invoiceId, Status.NOT_FOUND, "Invoice not found with ID: " + invoiceId);
+    }
+
+    /** The invoice the entry created or changed; may be null for rejected entries */
+    public String getInvoiceId() {
+        return invoiceId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    /** Why the entry was not applied, or null if it was */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{" +
+                "invoiceId='" + invoiceId + '\'' +
+                ", status=" + status +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,126 @@
+package com.voris.invoice.repo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The change sequence of an in-memory store: the latest sequence number of every
+ * invoice, plus a tombstone for every deleted one, ordered by number.
+ * <p>
+ * Numbers are taken and entries published under one lock, so a reader never sees
+ * a number while a smaller one is still missing. Sequences start from the wall clock
+ * in seconds shifted left 20 bits, which keeps every number handed out by an earlier
+ * process below this one's floor as long as it made fewer than a million changes per
+ * second of uptime, and keeps numbers below 2^53 so JavaScript clients read them
+ * exactly. Stale cursors are answered with a reset.
+ * Tombstones are kept until their id is saved again.
+ */
+final class ChangeLog {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long floor;
+    // Guarded by lock
+    private final TreeMap<Long, Entry> bySequence = new TreeMap<>();
+    // Written under lock; concurrent so latest(id) can read it without the lock
+    private final Map<String, Long> latest = new ConcurrentHashMap<>();
+    private long sequence;
+
+    ChangeLog() {
+        this((System.currentTimeMillis() / 1000) << 20);
+    }
+
+    ChangeLog(long floor) {
+        this.floor = floor;
+        this.sequence = floor;
+    }
+
+    /**
+     * Stamps the invoice with the next sequence number; call after the change is visible.
+     */
+    long changed(String id) {
+        return record(id, false);
+    }
+
+    /**
+     * Leaves a tombstone for the invoice; call after it has been removed.
+     */
+    long deleted(String id) {
+        return record(id, true);
+    }
+
+    private long record(String id, boolean deleted) {
+        lock.lock();
+        try {
+            long stamped = ++sequence;
+            Long previous = latest.put(id, stamped);
+            if (previous != null) {
+                bySequence.remove(previous);
+            }
+            bySequence.put(stamped, new Entry(id, stamped, deleted));
+            return stamped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number last stamped on the invoice, or 0 if none was.
+     */
+    long latest(String id) {
+        Long stamped = latest.get(id);
+        return stamped == null ? 0 : stamped;
+    }
+
+    /**
+     * Returns up to limit entries after the given number, or after the floor when the
+     * number is outside the range this log handed out.
+     */
+    Page since(long since, int limit) {
+        lock.lock();
+        try {
+            boolean reset = since < floor || since > sequence;
+            List<Entry> entries = new ArrayList<>(Math.min(limit, bySequence.size()));
+            boolean more = false;
+            for (Entry entry : bySequence.tailMap(reset ? floor : since, false).values()) {
+                if (entries.size() == limit) {
+                    more = true;
+                    break;
+                }
+                entries.add(entry);
+            }
+            long next = more ? entries.get(entries.size() - 1).sequence : sequence;
+            return new Page(entries, next, more, reset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static final class Entry {
+        final String id;
+        final long sequence;
+        final boolean deleted;
+
+        Entry(String id, long sequence, boolean deleted) {
+            this.id = id;
+            this.sequence = sequence;
+            this.deleted = deleted;
+        }
+    }
+
+    static final class Page {
+        final List<Entry> entries;
+        final long next;
+        final boolean more;
+        final boolean reset;
+
+        Page(List<Entry> entries, long next, boolean more, boolean reset) {
+            this.entries = entries;
+            this.next = next;
+            this.more = more;
+            this.reset = reset;
+        }
+    }
+}
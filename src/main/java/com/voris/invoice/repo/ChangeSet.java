@@ -0,0 +1,68 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.Invoice;
+
+import java.util.List;
+
+/**
+ * One page of the changes made after a change sequence number, as returned by
+ * {@link InvoiceRepository#changesSince(long, int)}.
+ * Every committed mutation stamps the invoice it touched with the next number of a
+ * monotonic sequence; a deletion leaves a tombstone stamped the same way. Each
+ * invoice appears at most once, in its latest state.
+ */
+public final class ChangeSet {
+    private final List<Invoice> changed;
+    private final List<String> deleted;
+    private final long next;
+    private final boolean more;
+    private final boolean reset;
+
+    public ChangeSet(List<Invoice> changed, List<String> deleted, long next, boolean more, boolean reset) {
+        this.changed = List.copyOf(changed);
+        this.deleted = List.copyOf(deleted);
+        this.next = next;
+        this.more = more;
+        this.reset = reset;
+    }
+
+    /** Invoices created or changed, in sequence order */
+    public List<Invoice> getChanged() {
+        return changed;
+    }
+
+    /** Ids of deleted invoices, in sequence order */
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    /** The sequence number to pass as {@code since} on the next call */
+    public long getNext() {
+        return next;
+    }
+
+    /** Whether more changes are waiting beyond this page */
+    public boolean hasMore() {
+        return more;
+    }
+
+    /**
+     * Whether the requested sequence number was unknown to the repository, for example
+     * one handed out before a restart. The page then starts from the beginning and the
+     * caller should discard its copy and rebuild it from the pages that follow.
+     */
+    public boolean isReset() {
+        return reset;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "changed=" + changed.size() +
+                ", deleted=" + deleted.size() +
+                ", next=" + next +
+                ", more=" + more +
+                ", reset=" + reset +
+                '}';
+    }
+}
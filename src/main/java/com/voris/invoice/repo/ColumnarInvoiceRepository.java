@@ -0,0 +1,624 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.InvoiceSnapshot;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.model.Money;
+import com.voris.invoice.model.Payment;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Stores invoices column by column in primitive arrays instead of as object graphs.
+ * <p>
+ * Each invoice is a row: its date is an epoch-day int, its customer a code into a
+ * {@link StringDictionary}, and its line items and payments are ranges of shared
+ * item and payment columns. Amounts are stored as the minor units and scale of
+ * their {@link Money} form, so they round-trip exactly; amounts without a compact
+ * Money form are rejected. Amount columns can live off-heap.
+ * <p>
+ * Filters are evaluated once per distinct dictionary value and then applied by
+ * scanning int columns, and balances are summed as longs. {@link Invoice} objects
+ * are only created for the rows a method returns.
+ * <p>
+ * Rewritten invoices get fresh item and payment ranges; the old ranges are
+ * reclaimed by compaction once they make up more than half of a column.
+ * Dictionaries only grow, so they are kept for low-cardinality columns; payment
+ * references are nearly unique and are stored as plain strings, which compaction
+ * drops with their payments. Writers take an exclusive lock and readers a shared one.
+ */
+public class ColumnarInvoiceRepository implements InvoiceRepository {
+    private static final byte NULL_SCALE = Byte.MIN_VALUE;
+    private static final int MIN_COMPACTION = 1024;
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+            10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final boolean offHeap;
+
+    private final StringDictionary customers = new StringDictionary();
+    private final StringDictionary descriptions = new StringDictionary();
+    private final StringDictionary methods = new StringDictionary();
+
+    // Invoice columns, indexed by row; a null id marks a free row
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private String[] ids = new String[16];
+    private int[] customer = new int[16];
+    private int[] epochDay = new int[16];
+    private int[] itemStart = new int[16];
+    private int[] itemCount = new int[16];
+    private int[] paymentStart = new int[16];
+    private int[] paymentCount = new int[16];
+    private int rows;
+    private int[] freeRows = new int[16];
+    private int freeCount;
+
+    // Line item columns
+    private int[] itemDescription = new int[16];
+    private LongColumn itemPrice;
+    private byte[] itemScale = new byte[16];
+    private int items;
+    private int liveItems;
+
+    // Payment columns
+    private LongColumn paymentAmount;
+    private byte[] paymentScale = new byte[16];
+    private int[] paymentMethod = new int[16];
+    private int[] paymentDay = new int[16];
+    private String[] paymentReference = new String[16];
+    private int payments;
+    private int livePayments;
+
+    public ColumnarInvoiceRepository() {
+        this(false);
+    }
+
+    /**
+     * @param offHeap whether to keep the amount columns in direct memory outside the heap
+     */
+    public ColumnarInvoiceRepository(boolean offHeap) {
+        this.offHeap = offHeap;
+        this.itemPrice = newLongColumn(16);
+        this.paymentAmount = newLongColumn(16);
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    @Override
+    public Invoice save(Invoice invoice) {
+        if (invoice == null) {
+            throw new NullPointerException("Invoice cannot be null");
+        }
+        if (invoice.getItems().contains(null)) {
+            throw new NullPointerException("Invoice items cannot contain null");
+        }
+        InvoiceSnapshot snapshot = invoice.snapshot();
+        for (LineItem item : snapshot.getItems()) {
+            requireCompact(item.getPriceMoney());
+        }
+        for (Payment payment : snapshot.getPayments()) {
+            requireCompact(payment.getAmountMoney());
+        }
+        lock.writeLock().lock();
+        try {
+            Integer existing = rowById.get(snapshot.getId());
+            int row;
+            if (existing != null) {
+                row = existing;
+                liveItems -= itemCount[row];
+                livePayments -= paymentCount[row];
+            } else {
+                row = allocateRow(snapshot.getId());
+            }
+            customer[row] = customers.encode(snapshot.getCustomerName());
+            epochDay[row] = Math.toIntExact(snapshot.getDate().toEpochDay());
+            writeItems(row, snapshot.getItems());
+            writePayments(row, snapshot.getPayments());
+            compactIfSparse();
+            return invoice;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int allocateRow(String id) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            row = rows++;
+            if (row == ids.length) {
+                int size = LongColumn.grow(ids.length, row + 1);
+                ids = Arrays.copyOf(ids, size);
+                customer = Arrays.copyOf(customer, size);
+                epochDay = Arrays.copyOf(epochDay, size);
+                itemStart = Arrays.copyOf(itemStart, size);
+                itemCount = Arrays.copyOf(itemCount, size);
+                paymentStart = Arrays.copyOf(paymentStart, size);
+                paymentCount = Arrays.copyOf(paymentCount, size);
+            }
+        }
+        ids[row] = id;
+        rowById.put(id, row);
+        return row;
+    }
+
+    private void writeItems(int row, List<LineItem> list) {
+        ensureItemCapacity(items + list.size());
+        itemStart[row] = items;
+        itemCount[row] = list.size();
+        for (LineItem item : list) {
+            itemDescription[items] = descriptions.encode(item.getDescription());
+            setAmount(itemPrice, itemScale, items, item.getPriceMoney());
+            items++;
+        }
+        liveItems += list.size();
+    }
+
+    private void writePayments(int row, List<Payment> list) {
+        ensurePaymentCapacity(payments + list.size());
+        paymentStart[row] = payments;
+        paymentCount[row] = list.size();
+        for (Payment payment : list) {
+            appendPayment(payment);
+        }
+        livePayments += list.size();
+    }
+
+    private void appendPayment(Payment payment) {
+        setAmount(paymentAmount, paymentScale, payments, payment.getAmountMoney());
+        paymentMethod[payments] = methods.encode(payment.getMethod());
+        paymentDay[payments] = Math.toIntExact(payment.getDate().toEpochDay());
+        paymentReference[payments] = payment.getReference();
+        payments++;
+    }
+
+    private void ensureItemCapacity(int capacity) {
+        if (capacity > itemDescription.length) {
+            int size = LongColumn.grow(itemDescription.length, capacity);
+            itemDescription = Arrays.copyOf(itemDescription, size);
+            itemScale = Arrays.copyOf(itemScale, size);
+        }
+        itemPrice.ensureCapacity(capacity);
+    }
+
+    private void ensurePaymentCapacity(int capacity) {
+        if (capacity > paymentMethod.length) {
+            int size = LongColumn.grow(paymentMethod.length, capacity);
+            paymentScale = Arrays.copyOf(paymentScale, size);
+            paymentMethod = Arrays.copyOf(paymentMethod, size);
+            paymentDay = Arrays.copyOf(paymentDay, size);
+            paymentReference = Arrays.copyOf(paymentReference, size);
+        }
+        paymentAmount.ensureCapacity(capacity);
+    }
+
+    // Checked before any column is touched, so a rejected write leaves the row as it was
+    private static void requireCompact(Money amount) {
+        if (amount != null && !amount.isCompact()) {
+            throw new IllegalArgumentException("Amount out of range for the columnar store: " + amount);
+        }
+    }
+
+    private static void setAmount(LongColumn values, byte[] scales, int index, Money amount) {
+        if (amount == null) {
+            values.set(index, 0);
+            scales[index] = NULL_SCALE;
+            return;
+        }
+        values.set(index, amount.getMinorUnits());
+        scales[index] = (byte) amount.getScale();
+    }
+
+    private static BigDecimal getAmount(LongColumn values, byte[] scales, int index) {
+        byte scale = scales[index];
+        return scale == NULL_SCALE ? null : BigDecimal.valueOf(values.get(index), scale);
+    }
+
+    /**
+     * Rewrites the item or payment columns in row order once more than half of
+     * their entries belong to overwritten or deleted invoices.
+     */
+    private void compactIfSparse() {
+        if (items > MIN_COMPACTION && liveItems < items / 2) {
+            compactItems();
+        }
+        if (payments > MIN_COMPACTION && livePayments < payments / 2) {
+            compactPayments();
+        }
+    }
+
+    // Ranges aren't stored in row order, so compaction copies into fresh columns
+    private void compactItems() {
+        int capacity = Math.max(16, liveItems);
+        int[] description = new int[capacity];
+        LongColumn price = newLongColumn(capacity);
+        byte[] scale = new byte[capacity];
+        int next = 0;
+        for (int row = 0; row < rows; row++) {
+            if (ids[row] == null) {
+                continue;
+            }
+            int from = itemStart[row];
+            itemStart[row] = next;
+            for (int k = from, end = from + itemCount[row]; k < end; k++, next++) {
+                description[next] = itemDescription[k];
+                price.set(next, itemPrice.get(k));
+                scale[next] = itemScale[k];
+            }
+        }
+        itemDescription = description;
+        itemPrice = price;
+        itemScale = scale;
+        items = next;
+    }
+
+    private void compactPayments() {
+        int capacity = Math.max(16, livePayments);
+        LongColumn amount = newLongColumn(capacity);
+        byte[] scale = new byte[capacity];
+        int[] method = new int[capacity];
+        int[] day = new int[capacity];
+        String[] reference = new String[capacity];
+        int next = 0;
+        for (int row = 0; row < rows; row++) {
+            if (ids[row] == null) {
+                continue;
+            }
+            int from = paymentStart[row];
+            paymentStart[row] = next;
+            for (int k = from, end = from + paymentCount[row]; k < end; k++, next++) {
+                amount.set(next, paymentAmount.get(k));
+                scale[next] = paymentScale[k];
+                method[next] = paymentMethod[k];
+                day[next] = paymentDay[k];
+                reference[next] = paymentReference[k];
+            }
+        }
+        paymentAmount = amount;
+        paymentScale = scale;
+        paymentMethod = method;
+        paymentDay = day;
+        paymentReference = reference;
+        payments = next;
+    }
+
+    private LongColumn newLongColumn(int capacity) {
+        return offHeap ? LongColumn.offHeap(capacity) : LongColumn.heap(capacity);
+    }
+
+    @Override
+    public Optional<Invoice> findById(String id) {
+        lock.readLock().lock();
+        try {
+            Integer row = rowById.get(id);
+            return row == null ? Optional.empty() : Optional.of(materialise(row));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Invoice materialise(int row) {
+        List<LineItem> itemList = new ArrayList<>(itemCount[row]);
+        for (int k = itemStart[row], end = k + itemCount[row]; k < end; k++) {
+            LineItem item = new LineItem();
+            item.setDescription(descriptions.decode(itemDescription[k]));
+            item.setPrice(getAmount(itemPrice, itemScale, k));
+            itemList.add(item);
+        }
+        List<Payment> paymentList = new ArrayList<>(paymentCount[row]);
+        for (int k = paymentStart[row], end = k + paymentCount[row]; k < end; k++) {
+            paymentList.add(new Payment(
+                    getAmount(paymentAmount, paymentScale, k),
+                    methods.decode(paymentMethod[k]),
+                    LocalDate.ofEpochDay(paymentDay[k]),
+                    paymentReference[k]));
+        }
+        return InvoiceSnapshot.builder(ids[row], customers.decode(customer[row]), LocalDate.ofEpochDay(epochDay[row]))
+                .items(itemList)
+                .payments(paymentList)
+                .build()
+                .toInvoice();
+    }
+
+    @Override
+    public List<Invoice> findAll() {
+        lock.readLock().lock();
+        try {
+            List<Invoice> result = new ArrayList<>(rowById.size());
+            for (int row = 0; row < rows; row++) {
+                if (ids[row] != null) {
+                    result.add(materialise(row));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Invoice> search(String query) {
+        if (query == null) {
+            return new ArrayList<>();
+        }
+        if (query.isBlank()) {
+            return findAll();
+        }
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            boolean[] customerHit = matchingCodes(customers, value -> value.toLowerCase(Locale.ROOT).contains(q));
+            boolean[] descriptionHit = matchingCodes(descriptions, value -> value.toLowerCase(Locale.ROOT).contains(q));
+            List<Invoice> result = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                if (ids[row] != null && (customerHit[customer[row]] || anyItemMatches(row, descriptionHit))) {
+                    result.add(materialise(row));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean anyItemMatches(int row, boolean[] descriptionHit) {
+        for (int k = itemStart[row], end = k + itemCount[row]; k < end; k++) {
+            int code = itemDescription[k];
+            if (code != StringDictionary.NULL && descriptionHit[code]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates the predicate once per distinct value of the dictionary.
+     */
+    private static boolean[] matchingCodes(StringDictionary dictionary, Predicate<String> predicate) {
+        boolean[] hits = new boolean[dictionary.size()];
+        for (int code = 0; code < hits.length; code++) {
+            hits[code] = predicate.test(dictionary.decode(code));
+        }
+        return hits;
+    }
+
+    @Override
+    public List<Invoice> findByCustomer(String customerName) {
+        if (customerName == null || customerName.isBlank()) {
+            return List.of();
+        }
+        String folded = customerName.trim().toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            boolean[] hit = matchingCodes(customers, value -> value.toLowerCase(Locale.ROOT).equals(folded));
+            List<Invoice> result = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                if (ids[row] != null && hit[customer[row]]) {
+                    result.add(materialise(row));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Invoice> findByDateRange(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Date range bounds cannot be null");
+        }
+        if (from.isAfter(to)) {
+            return List.of();
+        }
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        lock.readLock().lock();
+        try {
+            List<Integer> matches = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                int day = epochDay[row];
+                if (ids[row] != null && day >= first && day <= last) {
+                    matches.add(row);
+                }
+            }
+            matches.sort((a, b) -> epochDay[a] != epochDay[b]
+                    ? Integer.compare(epochDay[a], epochDay[b])
+                    : ids[a].compareTo(ids[b]));
+            List<Invoice> result = new ArrayList<>(matches.size());
+            for (int row : matches) {
+                result.add(materialise(row));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Invoice> findUnpaid() {
+        lock.readLock().lock();
+        try {
+            List<Invoice> result = new ArrayList<>();
+            for (int row = 0; row < rows; row++) {
+                if (ids[row] != null && balanceSign(row) > 0) {
+                    result.add(materialise(row));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the sign of the row's remaining balance, summing unscaled longs at the
+     * row's largest scale and only falling back to BigDecimal on overflow.
+     */
+    private int balanceSign(int row) {
+        int scale = 0;
+        for (int k = itemStart[row], end = k + itemCount[row]; k < end; k++) {
+            if (itemScale[k] != NULL_SCALE) {
+                scale = Math.max(scale, itemScale[k]);
+            }
+        }
+        for (int k = paymentStart[row], end = k + paymentCount[row]; k < end; k++) {
+            scale = Math.max(scale, paymentScale[k]);
+        }
+        try {
+            long balance = 0;
+            for (int k = itemStart[row], end = k + itemCount[row]; k < end; k++) {
+                if (itemScale[k] != NULL_SCALE) {
+                    balance = Math.addExact(balance, rescale(itemPrice.get(k), scale - itemScale[k]));
+                }
+            }
+            for (int k = paymentStart[row], end = k + paymentCount[row]; k < end; k++) {
+                balance = Math.subtractExact(balance, rescale(paymentAmount.get(k), scale - paymentScale[k]));
+            }
+            return Long.signum(balance);
+        } catch (ArithmeticException e) {
+            return materialise(row).getRemainingBalance().signum();
+        }
+    }
+
+    // digits is never negative because the target scale is the row's largest
+    private static long rescale(long unscaled, int digits) {
+        if (digits == 0) {
+            return unscaled;
+        }
+        if (digits >= POWERS_OF_TEN.length) {
+            throw new ArithmeticException("Scale difference too large");
+        }
+        return Math.multiplyExact(unscaled, POWERS_OF_TEN[digits]);
+    }
+
+    @Override
+    public Invoice addPayment(String invoiceId, BigDecimal amount, String method, LocalDate date, String reference) {
+        if (invoiceId == null || invoiceId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invoice ID cannot be null or empty");
+        }
+        if (amount == null) {
+            throw new NullPointerException("Amount cannot be null");
+        }
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Amount must be greater than zero");
+        }
+        if (method == null) {
+            throw new NullPointerException("Payment method cannot be null");
+        }
+        requireCompact(Money.of(amount));
+        LocalDate paymentDate = (date != null) ? date : LocalDate.now();
+
+        lock.writeLock().lock();
+        try {
+            Integer row = rowById.get(invoiceId);
+            if (row == null) {
+                throw new IllegalArgumentException("Invoice not found with ID: " + invoiceId);
+            }
+            Invoice invoice = materialise(row);
+            Payment payment = invoice.addPayment(amount, method, paymentDate, reference);
+            List<Payment> history = invoice.getPaymentHistory();
+            int count = paymentCount[row];
+            if (paymentStart[row] + count == payments && history.get(count) == payment) {
+                // The row's payments are the last range and the new one sorts last, so extend in place
+                ensurePaymentCapacity(payments + 1);
+                appendPayment(payment);
+                paymentCount[row]++;
+                livePayments++;
+            } else {
+                livePayments -= count;
+                writePayments(row, history);
+                compactIfSparse();
+            }
+            return invoice;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the mutation while holding the write lock, so the read-modify-write
+     * cycle is atomic.
+     */
+    @Override
+    public Invoice update(String invoiceId, Consumer<Invoice> mutation) {
+        lock.writeLock().lock();
+        try {
+            Invoice invoice = findById(invoiceId)
+                    .orElseThrow(() -> new IllegalArgumentException("Invoice not found with ID: " + invoiceId));
+            mutation.accept(invoice);
+            return save(invoice);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+        if (id == null || id.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invoice ID cannot be null or empty");
+        }
+        lock.writeLock().lock();
+        try {
+            Integer row = rowById.remove(id);
+            if (row == null) {
+                return false;
+            }
+            liveItems -= itemCount[row];
+            livePayments -= paymentCount[row];
+            ids[row] = null;
+            itemCount[row] = 0;
+            paymentCount[row] = 0;
+            if (freeCount == freeRows.length) {
+                freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+            }
+            freeRows[freeCount++] = row;
+            compactIfSparse();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Payment> getPaymentHistory(String invoiceId) {
+        if (invoiceId == null || invoiceId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invoice ID cannot be null or empty");
+        }
+        return findById(invoiceId)
+                .map(Invoice::getPaymentHistory)
+                .orElse(Collections.emptyList());
+    }
+
+    /**
+     * Returns the number of stored invoices.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
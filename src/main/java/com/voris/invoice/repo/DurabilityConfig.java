@@ -0,0 +1,92 @@
+package com.voris.invoice.repo;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings for persisting the in-memory repository to a journal and snapshots.
+ */
+public final class DurabilityConfig {
+    /** Default number of journal records between automatic snapshots */
+    public static final int DEFAULT_SNAPSHOT_EVERY = 100_000;
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final Duration fsyncInterval;
+    private final int snapshotEvery;
+
+    private DurabilityConfig(Builder builder) {
+        this.directory = builder.directory;
+        this.fsyncPolicy = builder.fsyncPolicy;
+        this.fsyncInterval = builder.fsyncInterval;
+        this.snapshotEvery = builder.snapshotEvery;
+    }
+
+    /**
+     * Starts a configuration that keeps its files in the given directory.
+     */
+    public static Builder builder(Path directory) {
+        return new Builder(directory);
+    }
+
+    /** Directory holding the snapshot and journal segments */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /** Maximum time between forces under {@link FsyncPolicy#INTERVAL} */
+    public Duration getFsyncInterval() {
+        return fsyncInterval;
+    }
+
+    /** Journal records written before a new snapshot is taken in the background; 0 disables */
+    public int getSnapshotEvery() {
+        return snapshotEvery;
+    }
+
+    public static final class Builder {
+        private final Path directory;
+        private FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+        private Duration fsyncInterval = Duration.ofMillis(100);
+        private int snapshotEvery = DEFAULT_SNAPSHOT_EVERY;
+
+        private Builder(Path directory) {
+            if (directory == null) {
+                throw new IllegalArgumentException("Directory cannot be null");
+            }
+            this.directory = directory;
+        }
+
+        public Builder fsyncPolicy(FsyncPolicy fsyncPolicy) {
+            if (fsyncPolicy == null) {
+                throw new IllegalArgumentException("Fsync policy cannot be null");
+            }
+            this.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        public Builder fsyncInterval(Duration fsyncInterval) {
+            if (fsyncInterval == null || fsyncInterval.isNegative()) {
+                throw new IllegalArgumentException("Fsync interval must be zero or positive");
+            }
+            this.fsyncInterval = fsyncInterval;
+            return this;
+        }
+
+        public Builder snapshotEvery(int records) {
+            if (records < 0) {
+                throw new IllegalArgumentException("Snapshot interval cannot be negative");
+            }
+            this.snapshotEvery = records;
+            return this;
+        }
+
+        public DurabilityConfig build() {
+            return new DurabilityConfig(this);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.voris.invoice.repo;
+
+/**
+ * When the journal forces appended records to stable storage.
+ */
+public enum FsyncPolicy {
+    /** Force after every record; no acknowledged write is ever lost */
+    ALWAYS,
+    /** Force at most once per configured interval, and within an interval of going idle; a crash may lose the last interval of writes */
+    INTERVAL,
+    /** Never force explicitly and leave flushing to the operating system */
+    NEVER
+}
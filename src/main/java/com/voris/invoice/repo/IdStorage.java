@@ -0,0 +1,14 @@
+package com.voris.invoice.repo;
+
+/**
+ * How {@link JdbcInvoiceRepository} stores invoice and payment ids.
+ */
+public enum IdStorage {
+    /** 36-character UUID strings, as in databases created before BLOB support */
+    TEXT,
+    /**
+     * Canonical UUID ids as 16-byte BLOBs, which halves the size of every id index.
+     * Ids that are not canonical lower-case UUIDs are still stored as TEXT.
+     */
+    BLOB
+}
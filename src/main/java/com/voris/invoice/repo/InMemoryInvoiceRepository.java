@@ -1,15 +1,139 @@
 package com.voris.invoice.repo;
 
 import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.InvoiceSnapshot;
+import com.voris.invoice.model.Payment;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 
-public class InMemoryInvoiceRepository implements InvoiceRepository {
-    private final Map<String, Invoice> store = new ConcurrentHashMap<>();
+/**
+ * Keeps invoices as immutable {@link InvoiceSnapshot}s in a concurrent map.
+ * Writers build a new snapshot under the invoice's lock stripe and publish it with a
+ * single put; readers take no locks and get a fresh {@link Invoice} that shares the
+ * snapshot's lists until it is modified.
+ * <p>
+ * When created with a {@link DurabilityConfig}, every change is appended to an
+ * {@link InvoiceJournal} under the same lock stripe before it becomes visible, and
+ * the whole store is periodically written to a {@link SnapshotFile}. On start the
+ * latest snapshot is loaded and only the journal records written after it are
+ * replayed.
+ * <p>
+ * Every change is also stamped in a {@link ChangeLog} for {@link #changesSince}.
+ * Change sequence numbers are not persisted, so after a restart clients holding an
+ * older number are sent a reset.
+ */
+public class InMemoryInvoiceRepository implements InvoiceRepository, AutoCloseable {
+    private static final ParallelScanner DEFAULT_SCANNER = new ParallelScanner();
+    private static final Comparator<InvoiceSnapshot> SCAN_ORDER =
+            Comparator.comparing(InvoiceSnapshot::getDate).thenComparing(InvoiceSnapshot::getId);
+
+    private final ConcurrentHashMap<String, InvoiceSnapshot> store = new ConcurrentHashMap<>();
+    private final StripedLocks locks;
+    private final ParallelScanner scanner;
+    private final SecondaryIndexes indexes = new SecondaryIndexes();
+    private final TrigramIndex trigrams = new TrigramIndex();
+    private final ChangeLog changes = new ChangeLog();
+    private final DurabilityConfig durability;
+    private final InvoiceJournal journal;
+    private final ExecutorService checkpointer;
+    private final AtomicBoolean checkpointPending = new AtomicBoolean();
+    // Held while the snapshot is written; a ReentrantLock so virtual threads don't pin
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+
+    public InMemoryInvoiceRepository() {
+        this(StripedLocks.DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param lockStripes number of lock stripes guarding per-invoice writes
+     */
+    public InMemoryInvoiceRepository(int lockStripes) {
+        this(lockStripes, DEFAULT_SCANNER);
+    }
+
+    /**
+     * @param lockStripes number of lock stripes guarding per-invoice writes
+     * @param scanner executor for full scans that no index can answer
+     */
+    public InMemoryInvoiceRepository(int lockStripes, ParallelScanner scanner) {
+        this(lockStripes, scanner, null);
+    }
+
+    /**
+     * Creates a repository persisted to the configured directory, restoring any
+     * invoices already stored there.
+     *
+     * @param durability where and how to persist changes
+     * @throws RuntimeException if the existing files can't be read
+     */
+    public InMemoryInvoiceRepository(DurabilityConfig durability) {
+        this(StripedLocks.DEFAULT_STRIPES, DEFAULT_SCANNER, durability);
+    }
+
+    /**
+     * @param lockStripes number of lock stripes guarding per-invoice writes
+     * @param scanner executor for full scans that no index can answer
+     * @param durability where and how to persist changes, or null to keep invoices in memory only
+     */
+    public InMemoryInvoiceRepository(int lockStripes, ParallelScanner scanner, DurabilityConfig durability) {
+        this.locks = new StripedLocks(lockStripes);
+        this.scanner = scanner;
+        this.durability = durability;
+        if (durability == null) {
+            this.journal = null;
+            this.checkpointer = null;
+            return;
+        }
+        this.journal = new InvoiceJournal(durability.getDirectory(), durability.getFsyncPolicy(),
+                durability.getFsyncInterval().toNanos());
+        recover();
+        this.checkpointer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "invoice-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void recover() {
+        try {
+            long snapshotLsn = SnapshotFile.read(durability.getDirectory(), this::applySave);
+            long lastLsn = journal.replay(snapshotLsn, new InvoiceJournal.Replayer() {
+                @Override
+                public void save(long lsn, InvoiceSnapshot snapshot) {
+                    applySave(snapshot);
+                }
+
+                @Override
+                public void payment(long lsn, String invoiceId, Payment payment) {
+                    InvoiceSnapshot previous = store.get(invoiceId);
+                    if (previous != null) {
+                        applySave(previous.toBuilder().addPayment(payment).build());
+                    }
+                }
+
+                @Override
+                public void delete(long lsn, String invoiceId) {
+                    applyDelete(invoiceId);
+                }
+            });
+            journal.open(lastLsn);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to recover invoices from " + durability.getDirectory(), e);
+        }
+    }
 
     @Override
     public Invoice save(Invoice invoice) {
@@ -22,20 +146,80 @@ public class InMemoryInvoiceRepository implements InvoiceRepository {
                 throw new NullPointerException("Invoice items cannot contain null");
             }
         }
-        store.put(invoice.getId(), invoice);
-        return invoice;
+        return locks.withLock(invoice.getId(), () -> {
+            InvoiceSnapshot snapshot = invoice.snapshot();
+            if (journal != null) {
+                try {
+                    journal.appendSave(snapshot);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to journal invoice", e);
+                }
+                afterAppend();
+            }
+            invoice.setChangeSequence(store(snapshot, invoice.isPaid()));
+            return invoice;
+        });
+    }
+
+    /**
+     * @return the change sequence number stamped on the snapshot
+     */
+    private long store(InvoiceSnapshot snapshot, boolean paid) {
+        InvoiceSnapshot previous = store.put(snapshot.getId(), snapshot);
+        indexes.update(previous, snapshot, paid);
+        trigrams.update(previous, snapshot);
+        return changes.changed(snapshot.getId());
+    }
+
+    private void applySave(InvoiceSnapshot snapshot) {
+        store(snapshot, snapshot.isPaid());
+    }
+
+    private boolean applyDelete(String id) {
+        InvoiceSnapshot previous = store.remove(id);
+        if (previous == null) {
+            return false;
+        }
+        indexes.remove(previous);
+        trigrams.remove(previous);
+        changes.deleted(id);
+        return true;
     }
 
     @Override
     public Optional<Invoice> findById(String id) {
+        // Read before the snapshot, which is stamped after it is stored, so the
+        // number is never ahead of the state returned
+        long sequence = changes.latest(id);
+        InvoiceSnapshot snapshot = store.get(id);
+        if (snapshot == null) {
+            return Optional.empty();
+        }
+        Invoice invoice = snapshot.toInvoice();
+        invoice.setChangeSequence(sequence);
+        return Optional.of(invoice);
+    }
+
+    /**
+     * Returns the stored snapshot without materialising an {@link Invoice}.
+     */
+    public Optional<InvoiceSnapshot> findSnapshot(String id) {
         return Optional.ofNullable(store.get(id));
     }
 
     @Override
     public List<Invoice> findAll() {
-        return new ArrayList<>(store.values());
+        List<Invoice> result = new ArrayList<>(store.size());
+        for (InvoiceSnapshot snapshot : store.values()) {
+            result.add(snapshot.toInvoice());
+        }
+        return result;
     }
 
+    /**
+     * Matches are ordered by date, then id, whether the trigram index or a scan
+     * answered the query.
+     */
     @Override
     public List<Invoice> 
     search(String query) {
@@ -46,14 +230,104 @@ public class InMemoryInvoiceRepository implements InvoiceRepository {
             return findAll();
         }
         
-        final String q = query.trim().toLowerCase();
-        return store.values().stream()
-                .filter(inv -> inv.getCustomerName().toLowerCase().contains(q)
-                        || inv.getItems().stream().anyMatch(i ->
-                        i.getDescription() != null && 
-                        i.getDescription().toLowerCase().contains(q)
-                ))
-                .collect(Collectors.toList());
+        final String q = TrigramIndex.fold(query.trim());
+        String[] candidates = trigrams.candidates(q);
+        if (candidates == null) {
+            // Queries shorter than a trigram can't use the index
+            return filter(snapshot -> matches(snapshot, q));
+        }
+        List<InvoiceSnapshot> matches = new ArrayList<>(candidates.length);
+        for (String id : candidates) {
+            InvoiceSnapshot snapshot = store.get(id);
+            if (snapshot != null && matches(snapshot, q)) {
+                matches.add(snapshot);
+            }
+        }
+        // Same order as the scan, whichever path answered
+        matches.sort(SCAN_ORDER);
+        List<Invoice> result = new ArrayList<>(matches.size());
+        for (InvoiceSnapshot snapshot : matches) {
+            result.add(snapshot.toInvoice());
+        }
+        return result;
+    }
+
+    private static boolean matches(InvoiceSnapshot snapshot, String q) {
+        return TrigramIndex.fold(snapshot.getCustomerName()).contains(q)
+                || snapshot.getItems().stream().anyMatch(i ->
+                        i.getDescription() != null &&
+                        TrigramIndex.fold(i.getDescription()).contains(q));
+    }
+
+    /**
+     * Returns the invoices whose snapshot matches the predicate, scanning the store
+     * in parallel when it is large. Results are ordered by date, then id, regardless
+     * of how the scan was split.
+     */
+    public List<Invoice> filter(Predicate<? super InvoiceSnapshot> predicate) {
+        List<InvoiceSnapshot> matches = scanner.filter(store.values(), predicate, SCAN_ORDER);
+        List<Invoice> result = new ArrayList<>(matches.size());
+        for (InvoiceSnapshot snapshot : matches) {
+            result.add(snapshot.toInvoice());
+        }
+        return result;
+    }
+
+    /**
+     * Aggregates over every stored snapshot, in parallel when the store is large.
+     * Use this for reports instead of {@link #findAll()}, which materialises every invoice.
+     *
+     * @param collector the aggregation; its combiner must be associative
+     * @return the aggregated result
+     */
+    public <R> R aggregate(Collector<? super InvoiceSnapshot, ?, R> collector) {
+        return scanner.collect(store.values(), collector);
+    }
+
+    @Override
+    public List<Invoice> findByCustomer(String customerName) {
+        if (customerName == null || customerName.isBlank()) {
+            return List.of();
+        }
+        String folded = SecondaryIndexes.foldCustomer(customerName);
+        List<Invoice> result = new ArrayList<>();
+        for (String id : indexes.idsForCustomer(customerName)) {
+            InvoiceSnapshot snapshot = store.get(id);
+            if (snapshot != null && SecondaryIndexes.foldCustomer(snapshot.getCustomerName()).equals(folded)) {
+                result.add(snapshot.toInvoice());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Invoice> findByDateRange(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Date range bounds cannot be null");
+        }
+        if (from.isAfter(to)) {
+            return List.of();
+        }
+        List<Invoice> result = new ArrayList<>();
+        for (String id : indexes.idsInDateRange(from, to)) {
+            InvoiceSnapshot snapshot = store.get(id);
+            if (snapshot != null && !snapshot.getDate().isBefore(from) && !snapshot.getDate().isAfter(to)) {
+                result.add(snapshot.toInvoice());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Invoice> findUnpaid() {
+        List<Invoice> result = new ArrayList<>();
+        for (String id : indexes.unpaidIds()) {
+            InvoiceSnapshot snapshot = store.get(id);
+            if (snapshot != null && !snapshot.isPaid()) {
+                result.add(snapshot.toInvoice());
+            }
+        }
+        return result;
     }
 
     @Override
@@ -73,10 +347,37 @@ public class InMemoryInvoiceRepository implements InvoiceRepository {
         
         LocalDate paymentDate = (date != null) ? date : LocalDate.now();
         
-        Invoice invoice = findById(invoiceId)
-                .orElseThrow(() -> new IllegalArgumentException("Invoice not found with ID: " + invoiceId));
-        invoice.addPayment(amount, method, paymentDate, reference);
-        return save(invoice);
+        if (journal == null) {
+            return update(invoiceId, invoice -> invoice.addPayment(amount, method, paymentDate, reference));
+        }
+        // Journal just the payment rather than the whole invoice
+        return locks.withLock(invoiceId, () -> {
+            Invoice invoice = findById(invoiceId)
+                    .orElseThrow(() -> new IllegalArgumentException("Invoice not found with ID: " + invoiceId));
+            Payment payment = invoice.addPayment(amount, method, paymentDate, reference);
+            try {
+                journal.appendPayment(invoiceId, payment);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to journal payment", e);
+            }
+            afterAppend();
+            invoice.setChangeSequence(store(invoice.snapshot(), invoice.isPaid()));
+            return invoice;
+        });
+    }
+
+    /**
+     * Applies the mutation while holding the invoice's lock stripe, so concurrent
+     * updates to the same invoice are serialised and never lose writes.
+     */
+    @Override
+    public Invoice update(String invoiceId, Consumer<Invoice> mutation) {
+        return locks.withLock(invoiceId, () -> {
+            Invoice invoice = findById(invoiceId)
+                    .orElseThrow(() -> new IllegalArgumentException("Invoice not found with ID: " + invoiceId));
+            mutation.accept(invoice);
+            return save(invoice);
+        });
     }
 
     @Override
@@ -84,7 +385,129 @@ public class InMemoryInvoiceRepository implements InvoiceRepository {
         if (id == null || id.trim().isEmpty()) {
             throw new IllegalArgumentException("Invoice ID cannot be null or empty");
         }
-        return store.remove(id) != null;
+        return locks.withLock(id, () -> {
+            if (journal != null && store.containsKey(id)) {
+                try {
+                    journal.appendDelete(id);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to journal deletion", e);
+                }
+                afterAppend();
+            }
+            return applyDelete(id);
+        });
+    }
+
+    /**
+     * Reads the change log page and the current snapshot of each changed invoice.
+     * An invoice deleted after the page was read is left out; its tombstone comes
+     * in a later page.
+     */
+    @Override
+    public ChangeSet changesSince(long since, int limit) {
+        if (since < 0) {
+            throw new IllegalArgumentException("Change sequence cannot be negative");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        ChangeLog.Page page = changes.since(since, limit);
+        List<Invoice> changed = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (ChangeLog.Entry entry : page.entries) {
+            if (entry.deleted) {
+                deleted.add(entry.id);
+                continue;
+            }
+            InvoiceSnapshot snapshot = store.get(entry.id);
+            if (snapshot != null) {
+                changed.add(snapshot.toInvoice());
+            }
+        }
+        return new ChangeSet(changed, deleted, page.next, page.more, page.reset);
+    }
+
+    private void afterAppend() {
+        int every = durability.getSnapshotEvery();
+        if (every > 0 && journal.recordsInSegment() >= every && checkpointPending.compareAndSet(false, true)) {
+            checkpointer.execute(() -> {
+                try {
+                    checkpoint();
+                } finally {
+                    checkpointPending.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes a snapshot of every stored invoice and drops the journal segments it
+     * covers. Writers are only blocked while the store is copied and the journal is
+     * rotated, not while the snapshot is written. Runs automatically in the background
+     * every {@link DurabilityConfig#getSnapshotEvery()} journal records.
+     *
+     * @throws IllegalStateException if the repository is not durable
+     * @throws RuntimeException if the snapshot can't be written
+     */
+    public void checkpoint() {
+        if (journal == null) {
+            throw new IllegalStateException("Repository has no durability configured");
+        }
+        checkpointLock.lock();
+        try {
+            List<InvoiceSnapshot> invoices = new ArrayList<>(store.size());
+            long[] cut = new long[2];
+            locks.withAllLocks(() -> {
+                invoices.addAll(store.values());
+                cut[0] = journal.lastLsn();
+                try {
+                    cut[1] = journal.rotate();
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to rotate journal", e);
+                }
+                return null;
+            });
+            try {
+                SnapshotFile.write(durability.getDirectory(), cut[0], invoices);
+                journal.deleteSegmentsBefore(cut[1]);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write snapshot", e);
+            }
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * Stops background snapshots and flushes the journal. Has no effect on a
+     * repository without durability.
+     */
+    @Override
+    public void close() {
+        if (journal == null) {
+            return;
+        }
+        checkpointer.shutdown();
+        try {
+            checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+            checkpointLock.lock();
+            try {
+                journal.close();
+            } finally {
+                checkpointLock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close journal", e);
+        }
+    }
+
+    /**
+     * Returns per-stripe lock contention counters.
+     */
+    public List<StripedLocks.StripeStats> getLockStats() {
+        return locks.stats();
     }
     
     @Override
@@ -0,0 +1,126 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.InvoiceSnapshot;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.model.Payment;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of invoice snapshots and payments, shared by the journal
+ * and the snapshot file. Values are written through {@link DataOutput} and read back
+ * from a {@link ByteBuffer}, so files can be decoded straight from a memory mapping.
+ * Strings are length-prefixed UTF-8 (length -1 for null), dates are epoch days and
+ * decimals are a scale followed by the unscaled value's two's-complement bytes.
+ */
+final class InvoiceCodec {
+    private static final int NULL_DECIMAL = Integer.MIN_VALUE;
+
+    private InvoiceCodec() {
+    }
+
+    static void writeInvoice(DataOutput out, InvoiceSnapshot snapshot) throws IOException {
+        writeString(out, snapshot.getId());
+        writeString(out, snapshot.getCustomerName());
+        out.writeLong(snapshot.getDate().toEpochDay());
+        out.writeInt(snapshot.getItems().size());
+        for (LineItem item : snapshot.getItems()) {
+            writeString(out, item.getDescription());
+            writeDecimal(out, item.getPrice());
+        }
+        out.writeInt(snapshot.getPayments().size());
+        for (Payment payment : snapshot.getPayments()) {
+            writePayment(out, payment);
+        }
+    }
+
+    static InvoiceSnapshot readInvoice(ByteBuffer in) {
+        String id = readString(in);
+        String customerName = readString(in);
+        LocalDate date = LocalDate.ofEpochDay(in.getLong());
+        int itemCount = in.getInt();
+        List<LineItem> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            LineItem item = new LineItem();
+            item.setDescription(readString(in));
+            item.setPrice(readDecimal(in));
+            items.add(item);
+        }
+        int paymentCount = in.getInt();
+        List<Payment> payments = new ArrayList<>(paymentCount);
+        for (int i = 0; i < paymentCount; i++) {
+            payments.add(readPayment(in));
+        }
+        return InvoiceSnapshot.builder(id, customerName, date)
+                .items(items)
+                .payments(payments)
+                .build();
+    }
+
+    static void writePayment(DataOutput out, Payment payment) throws IOException {
+        writeDecimal(out, payment.getAmount());
+        writeString(out, payment.getMethod());
+        out.writeLong(payment.getDate().toEpochDay());
+        writeString(out, payment.getReference());
+    }
+
+    static Payment readPayment(ByteBuffer in) {
+        BigDecimal amount = readDecimal(in);
+        String method = readString(in);
+        LocalDate date = LocalDate.ofEpochDay(in.getLong());
+        String reference = readString(in);
+        return new Payment(amount, method, date, reference);
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_DECIMAL);
+            return;
+        }
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        if (unscaled.length > 255) {
+            throw new IllegalArgumentException("Decimal value too large to encode: " + value);
+        }
+        out.writeInt(value.scale());
+        out.writeByte(unscaled.length);
+        out.write(unscaled);
+    }
+
+    static BigDecimal readDecimal(ByteBuffer in) {
+        int scale = in.getInt();
+        if (scale == NULL_DECIMAL) {
+            return null;
+        }
+        byte[] unscaled = new byte[in.get() & 0xFF];
+        in.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
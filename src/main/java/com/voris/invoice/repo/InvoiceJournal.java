@@ -0,0 +1,363 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.InvoiceSnapshot;
+import com.voris.invoice.model.Payment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only operation log for the in-memory repository, split into numbered
+ * segment files ({@code journal-<segment>.log}).
+ * Each record is framed as {@code [int length][int crc32][byte type][long lsn][body]},
+ * where the log sequence number (lsn) increases by one per record across segments.
+ * Replay stops at the first short or corrupt record of a segment, which is how a
+ * write torn by a crash is discarded. A new segment is started on every open and on
+ * every {@link #rotate()}, so a checkpoint can drop whole segments once a snapshot
+ * covers them. Under {@link FsyncPolicy#INTERVAL} a background flusher forces records
+ * left unforced by an append, so a quiet journal is not left unsynced indefinitely.
+ */
+class InvoiceJournal implements Closeable {
+    static final byte SAVE = 1;
+    static final byte PAYMENT = 2;
+    static final byte DELETE = 3;
+
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * Receives replayed records in log order.
+     */
+    interface Replayer {
+        void save(long lsn, InvoiceSnapshot snapshot);
+
+        void payment(long lsn, String invoiceId, Payment payment);
+
+        void delete(long lsn, String invoiceId);
+    }
+
+    // A ReentrantLock rather than synchronized: appends do file I/O while holding it,
+    // which would pin the carrier of a virtual thread on JDK 21
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private FileChannel channel;
+    private long segment;
+    private long lastLsn;
+    private long recordsInSegment;
+    private long lastForceNanos = System.nanoTime();
+    private boolean unforced;
+    private ScheduledExecutorService flusher;
+
+    InvoiceJournal(Path directory, FsyncPolicy fsyncPolicy, long fsyncIntervalNanos) {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = fsyncIntervalNanos;
+    }
+
+    /**
+     * Replays every segment on disk, skipping records already covered by a snapshot.
+     *
+     * @param afterLsn the last lsn contained in the snapshot; older records are skipped
+     * @param replayer receives the newer records
+     * @return the highest lsn found, or afterLsn if there is nothing newer
+     */
+    long replay(long afterLsn, Replayer replayer) throws IOException {
+        long highest = afterLsn;
+        for (Path file : segments()) {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (in.size() == 0) {
+                    continue;
+                }
+                MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                highest = Math.max(highest, replaySegment(buffer, afterLsn, replayer));
+            }
+        }
+        return highest;
+    }
+
+    private static long replaySegment(ByteBuffer buffer, long afterLsn, Replayer replayer) {
+        long highest = afterLsn;
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            buffer.position(buffer.position() + length);
+            byte type = record.get();
+            long lsn = record.getLong();
+            highest = Math.max(highest, lsn);
+            if (lsn <= afterLsn) {
+                continue;
+            }
+            switch (type) {
+                case SAVE -> replayer.save(lsn, InvoiceCodec.readInvoice(record));
+                case PAYMENT -> replayer.payment(lsn, InvoiceCodec.readString(record), InvoiceCodec.readPayment(record));
+                case DELETE -> replayer.delete(lsn, InvoiceCodec.readString(record));
+                default -> throw new IllegalStateException("Unknown journal record type " + type + " at lsn " + lsn);
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Starts a fresh segment after recovery.
+     *
+     * @param lastLsn the highest lsn already applied
+     */
+    void open(long lastLsn) throws IOException {
+        lock.lock();
+        try {
+            Files.createDirectories(directory);
+            List<Path> existing = segments();
+            this.segment = existing.isEmpty() ? 1 : segmentNumber(existing.get(existing.size() - 1)) + 1;
+            this.lastLsn = lastLsn;
+            this.channel = openSegment(segment);
+            if (fsyncPolicy == FsyncPolicy.INTERVAL && fsyncIntervalNanos > 0 && flusher == null) {
+                flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "invoice-journal-flush");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                flusher.scheduleWithFixedDelay(this::flush, fsyncIntervalNanos, fsyncIntervalNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces records appended since the last force. Runs on the flusher every
+     * fsync interval; a failure is left for the next append to hit and report.
+     */
+    private void flush() {
+        lock.lock();
+        try {
+            if (channel != null && unforced) {
+                force();
+            }
+        } catch (IOException ignored) {
+            // Still unforced, so the next append retries the force and throws
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long appendSave(InvoiceSnapshot snapshot) throws IOException {
+        lock.lock();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = begin(bytes, SAVE);
+            InvoiceCodec.writeInvoice(out, snapshot);
+            return append(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long appendPayment(String invoiceId, Payment payment) throws IOException {
+        lock.lock();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            DataOutputStream out = begin(bytes, PAYMENT);
+            InvoiceCodec.writeString(out, invoiceId);
+            InvoiceCodec.writePayment(out, payment);
+            return append(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long appendDelete(String invoiceId) throws IOException {
+        lock.lock();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = begin(bytes, DELETE);
+            InvoiceCodec.writeString(out, invoiceId);
+            return append(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DataOutputStream begin(ByteArrayOutputStream bytes, byte type) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        // Header placeholder, filled in by append once the length is known
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(type);
+        out.writeLong(lastLsn + 1);
+        return out;
+    }
+
+    private long append(ByteArrayOutputStream bytes) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("Journal is not open");
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.capacity() - HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+        long start = channel.size();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            // Drop the partial record so later appends aren't hidden behind it on replay
+            channel.truncate(start);
+            throw e;
+        }
+        lastLsn++;
+        recordsInSegment++;
+        unforced = true;
+        switch (fsyncPolicy) {
+            case ALWAYS -> force();
+            case INTERVAL -> {
+                if (System.nanoTime() - lastForceNanos >= fsyncIntervalNanos) {
+                    force();
+                }
+            }
+            case NEVER -> {
+            }
+        }
+        return lastLsn;
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        lastForceNanos = System.nanoTime();
+        unforced = false;
+    }
+
+    boolean hasUnforcedRecords() {
+        lock.lock();
+        try {
+            return unforced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long lastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long recordsInSegment() {
+        lock.lock();
+        try {
+            return recordsInSegment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the current segment and starts the next one.
+     *
+     * @return the number of the new segment; every earlier segment only holds
+     *         records up to the lsn current at the time of the call
+     */
+    long rotate() throws IOException {
+        lock.lock();
+        try {
+            force();
+            channel.close();
+            segment++;
+            recordsInSegment = 0;
+            channel = openSegment(segment);
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes segments numbered below the given one.
+     */
+    void deleteSegmentsBefore(long keepFrom) throws IOException {
+        lock.lock();
+        try {
+            for (Path file : segments()) {
+                if (segmentNumber(file) < keepFrom) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (flusher != null) {
+                flusher.shutdown();
+                flusher = null;
+            }
+            if (channel != null) {
+                force();
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        Path file = directory.resolve(String.format("journal-%016d.log", number));
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> segments() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(f -> f.getFileName().toString().matches("journal-\\d{16}\\.log"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length()));
+    }
+}
@@ -0,0 +1,129 @@
+package com.voris.invoice.repo;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The parts of an invoice a caller needs: which summary fields, and whether its
+ * items and payments. Repositories use it to skip loading child rows nobody asked
+ * for, and the JSON writer to skip fields and the computations behind them.
+ * <p>
+ * Children are loaded for the derived fields too: the total needs the items, and
+ * the amount paid needs the payments, which in turn need the items because each
+ * payment is checked against the remaining balance as it is added back. An
+ * invoice loaded with a projection only has correct values for what the
+ * projection covers.
+ */
+public final class InvoiceProjection {
+    public enum Field {
+        ID("id"), CUSTOMER_NAME("customerName"), DATE("date"), TOTAL("total"), PAID("paid"),
+        AMOUNT_PAID("amountPaid"), REMAINING_BALANCE("remainingBalance");
+
+        private final String jsonName;
+
+        Field(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        public String getJsonName() {
+            return jsonName;
+        }
+    }
+
+    private static final Set<Field> NEED_ITEMS =
+            EnumSet.of(Field.TOTAL, Field.PAID, Field.AMOUNT_PAID, Field.REMAINING_BALANCE);
+    private static final Set<Field> NEED_PAYMENTS = EnumSet.of(Field.PAID, Field.AMOUNT_PAID, Field.REMAINING_BALANCE);
+
+    /** Every field with items and payments, as the API returns by default */
+    public static final InvoiceProjection ALL = new InvoiceProjection(EnumSet.allOf(Field.class), true, true);
+
+    private final Set<Field> fields;
+    private final boolean items;
+    private final boolean payments;
+
+    private InvoiceProjection(Set<Field> fields, boolean items, boolean payments) {
+        this.fields = Collections.unmodifiableSet(fields);
+        this.items = items;
+        this.payments = payments;
+    }
+
+    /**
+     * Parses the {@code fields} and {@code include} query parameters, both
+     * comma-separated. Without either the projection is {@link #ALL}. Listing
+     * fields leaves out the children unless they are included; including children
+     * without listing fields keeps every field.
+     *
+     * @param fields summary fields by JSON name, such as {@code id,customerName}, or null
+     * @param include {@code items} and/or {@code payments}, or null
+     * @throws IllegalArgumentException if a name is not known
+     */
+    public static InvoiceProjection parse(String fields, String include) {
+        boolean hasFields = fields != null && !fields.isBlank();
+        boolean hasInclude = include != null && !include.isBlank();
+        if (!hasFields && !hasInclude) {
+            return ALL;
+        }
+        Set<Field> selected = hasFields ? EnumSet.noneOf(Field.class) : EnumSet.allOf(Field.class);
+        if (hasFields) {
+            for (String name : fields.split(",")) {
+                selected.add(field(name.trim()));
+            }
+        }
+        boolean items = false;
+        boolean payments = false;
+        if (hasInclude) {
+            for (String name : include.split(",")) {
+                switch (name.trim().toLowerCase(Locale.ROOT)) {
+                    case "items" -> items = true;
+                    case "payments", "paymenthistory" -> payments = true;
+                    default -> throw new IllegalArgumentException("Unknown include: " + name.trim());
+                }
+            }
+        }
+        return new InvoiceProjection(selected, items, payments);
+    }
+
+    private static Field field(String name) {
+        for (Field field : Field.values()) {
+            if (field.jsonName.equals(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field: " + name);
+    }
+
+    public boolean has(Field field) {
+        return fields.contains(field);
+    }
+
+    /** The selected fields, iterated in the order they are written */
+    public Set<Field> getFields() {
+        return fields;
+    }
+
+    /** Whether the items are part of the output */
+    public boolean includesItems() {
+        return items;
+    }
+
+    /** Whether the payment history is part of the output */
+    public boolean includesPayments() {
+        return payments;
+    }
+
+    /** Whether the items have to be loaded, for output or for a derived field */
+    public boolean needsItems() {
+        return items || needsPayments() || !Collections.disjoint(fields, NEED_ITEMS);
+    }
+
+    /** Whether the payments have to be loaded, for output or for a derived field */
+    public boolean needsPayments() {
+        return payments || !Collections.disjoint(fields, NEED_PAYMENTS);
+    }
+
+    public boolean isAll() {
+        return items && payments && fields.size() == Field.values().length;
+    }
+}
@@ -2,8 +2,12 @@ package com.voris.invoice.repo;
 
 import com.voris.invoice.model.Invoice;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 
@@ -16,10 +20,136 @@ public interface InvoiceRepository {
 
     List<Invoice> search(String query);
 
+    /**
+     * Finds an invoice, loading only what the projection needs. The default
+     * implementation loads everything.
+     */
+    default Optional<Invoice> findById(String id, InvoiceProjection projection) {
+        return findById(id);
+    }
+
+    /**
+     * Lists all invoices, loading only what the projection needs. The default
+     * implementation loads everything.
+     */
+    default List<Invoice> findAll(InvoiceProjection projection) {
+        return findAll();
+    }
+
+    /**
+     * Searches invoices, loading only what the projection needs. The default
+     * implementation loads everything.
+     */
+    default List<Invoice> search(String query, InvoiceProjection projection) {
+        return search(query);
+    }
+
+    /**
+     * Finds invoices whose customer name matches exactly, ignoring case and surrounding whitespace.
+     * The default implementation scans {@link #findAll()}.
+     * @param customerName The customer name to match
+     * @return Matching invoices, or an empty list if the name is null or blank
+     */
+    default List<Invoice> findByCustomer(String customerName) {
+        if (customerName == null || customerName.isBlank()) {
+            return List.of();
+        }
+        String folded = customerName.trim().toLowerCase(Locale.ROOT);
+        return findAll().stream()
+                .filter(inv -> inv.getCustomerName().toLowerCase(Locale.ROOT).equals(folded))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Finds invoices dated within the given range, ordered by date.
+     * The default implementation scans {@link #findAll()}.
+     * @param from The first date to include
+     * @param to The last date to include
+     * @return Matching invoices in date order, or an empty list if from is after to
+     * @throws IllegalArgumentException if either bound is null
+     */
+    default List<Invoice> findByDateRange(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Date range bounds cannot be null");
+        }
+        return findAll().stream()
+                .filter(inv -> !inv.getDate().isBefore(from) && !inv.getDate().isAfter(to))
+                .sorted((a, b) -> a.getDate().compareTo(b.getDate()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Finds invoices that still have a remaining balance.
+     * The default implementation scans {@link #findAll()}.
+     * @return Unpaid invoices
+     */
+    default List<Invoice> findUnpaid() {
+        return findAll().stream()
+                .filter(inv -> !inv.isPaid())
+                .collect(Collectors.toList());
+    }
+
     Invoice addPayment(String invoiceId, BigDecimal amount, String method, LocalDate date, String reference);
 
+    /**
+     * Saves several invoices.
+     * The default implementation calls {@link #save(Invoice)} for each one; implementations
+     * with transactions should override it to write many invoices per transaction.
+     * @param invoices The invoices to save
+     * @return The saved invoices, in the same order
+     */
+    default List<Invoice> saveAll(List<Invoice> invoices) {
+        List<Invoice> saved = new ArrayList<>(invoices.size());
+        for (Invoice invoice : invoices) {
+            saved.add(save(invoice));
+        }
+        return saved;
+    }
+
+    /**
+     * Records several payments, each against its own invoice.
+     * One failed entry does not stop the others. An entry that would overpay its
+     * invoice, on its own or together with earlier entries, is rejected and not
+     * recorded. The default implementation calls
+     * {@link #addPayment} for each entry; implementations with transactions should
+     * override it to write many payments per transaction.
+     * @param entries The payments to record
+     * @return One result per entry, in the same order
+     */
+    default List<BatchResult> addPayments(List<PaymentEntry> entries) {
+        List<BatchResult> results = new ArrayList<>(entries.size());
+        for (PaymentEntry entry : entries) {
+            String invoiceId = entry.getInvoiceId();
+            if (findById(invoiceId).isEmpty()) {
+                results.add(BatchResult.notFound(invoiceId));
+                continue;
+            }
+            com.voris.invoice.model.Payment payment = entry.getPayment();
+            try {
+                addPayment(invoiceId, payment.getAmount(), payment.getMethod(), payment.getDate(), payment.getReference());
+                results.add(BatchResult.ok(invoiceId));
+            } catch (IllegalArgumentException e) {
+                results.add(BatchResult.rejected(invoiceId, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
     boolean deleteById(String id);
-    
+
+    /**
+     * Returns up to limit changes made after the given change sequence number, so a
+     * client can sync incrementally at a cost proportional to what changed.
+     * The default implementation doesn't track changes: it answers every call with a
+     * reset holding all invoices.
+     * @param since The {@link ChangeSet#getNext()} of the previous call, or 0 to start from the beginning
+     * @param limit The maximum number of changed and deleted invoices to return
+     * @return The page of changes
+     */
+    default ChangeSet changesSince(long since, int limit) {
+        return new ChangeSet(findAll(), List.of(), 0, false, true);
+    }
+
     /**
      * Retrieves the payment history for a specific invoice.
      * @param invoiceId The ID of the invoice to get payment history for
@@ -27,4 +157,20 @@ public interface InvoiceRepository {
      * @throws IllegalArgumentException if invoiceId is null or empty
      */
     List<com.voris.invoice.model.Payment> getPaymentHistory(String invoiceId);
+
+    /**
+     * Loads an invoice, applies the mutation and saves the result.
+     * Implementations that can serialise writers per invoice should override this
+     * so that the read-modify-write cycle is atomic.
+     * @param invoiceId The ID of the invoice to update
+     * @param mutation The change to apply to the loaded invoice
+     * @return The saved invoice
+     * @throws IllegalArgumentException if no invoice exists with the given ID
+     */
+    default Invoice update(String invoiceId, Consumer<Invoice> mutation) {
+        Invoice invoice = findById(invoiceId)
+                .orElseThrow(() -> new IllegalArgumentException("Invoice not found with ID: " + invoiceId));
+        mutation.accept(invoice);
+        return save(invoice);
+    }
 }
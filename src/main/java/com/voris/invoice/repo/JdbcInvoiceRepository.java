@@ -1,16 +1,28 @@
 package com.voris.invoice.repo;
 
+import com.voris.invoice.jfr.RepositoryEvent;
+import com.voris.invoice.metrics.RequestTiming;
+import com.voris.invoice.model.IdGenerator;
 import com.voris.invoice.model.Invoice;
 import com.voris.invoice.model.LineItem;
 import com.voris.invoice.model.Payment;
 
 import java.util.UUID;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * JDBC implementation of the InvoiceRepository interface.
@@ -19,8 +31,18 @@ import java.util.Optional;
  */
 
 public class JdbcInvoiceRepository implements InvoiceRepository {
+    private static final String HEX = "[0-9a-f]";
+    /** GLOB pattern matching canonical lower-case UUID strings */
+    private static final String UUID_GLOB = HEX.repeat(8) + "-" + HEX.repeat(4) + "-" + HEX.repeat(4) + "-"
+            + HEX.repeat(4) + "-" + HEX.repeat(12);
+
+    /** Number of invoices or payments written per transaction by the bulk operations */
+    static final int BATCH_CHUNK_SIZE = 500;
+
     /** JDBC connection URL for the SQLite database */
     private final String jdbcUrl;
+    private final IdStorage idStorage;
+    private final IdGenerator paymentIds = IdGenerator.timeOrdered();
     
     /**
      * Constructs a new JdbcInvoiceRepository with the specified JDBC URL.
@@ -30,30 +52,75 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
      */
 
     public JdbcInvoiceRepository(String jdbcUrl) {
+        this(jdbcUrl, IdStorage.TEXT);
+    }
+
+    /**
+     * Constructs a new JdbcInvoiceRepository that stores ids in the given format.
+     * With {@link IdStorage#BLOB}, UUID ids already stored as text are converted in place.
+     * 
+     * @param jdbcUrl the JDBC URL for the SQLite database
+     * @param idStorage how to store invoice and payment ids
+     */
+    public JdbcInvoiceRepository(String jdbcUrl, IdStorage idStorage) {
         this.jdbcUrl = jdbcUrl;
+        this.idStorage = idStorage;
         initializeSchema();
     }
 
     private Connection getConnection() throws SQLException {
+        // Shows per-row connections (N+1 loading) in the request's Server-Timing and slow log
+        RequestTiming.connectionOpened();
+        RepositoryEvent.connectionOpened();
         return DriverManager.getConnection(jdbcUrl);
     }
 
+    private static ResultSet query(PreparedStatement ps) throws SQLException {
+        queryIssued();
+        return ps.executeQuery();
+    }
+
+    private static ResultSet query(Statement st, String sql) throws SQLException {
+        queryIssued();
+        return st.executeQuery(sql);
+    }
+
+    private static int update(PreparedStatement ps) throws SQLException {
+        queryIssued();
+        return ps.executeUpdate();
+    }
+
+    private static int[] batch(Statement st) throws SQLException {
+        queryIssued();
+        return st.executeBatch();
+    }
+
+    // Counts statements as they run, so children loaded per invoice on one shared
+    // connection still show up as 2N+1 queries in the Server-Timing and slow log
+    private static void queryIssued() {
+        RequestTiming.queryIssued();
+        RepositoryEvent.queryIssued();
+    }
+
     /**
      * Initializes the database schema by creating required tables if they don't exist.
      * Also handles migration by dropping old columns if they exist.
      */
     private void initializeSchema() {
+        String idType = idStorage == IdStorage.BLOB ? "BLOB" : "TEXT";
+
         // SQL statement to create the invoices table
         String createInvoices = "CREATE TABLE IF NOT EXISTS invoices (" +
-                "id TEXT PRIMARY KEY, " +           // Unique identifier for the invoice
+                "id " + idType + " PRIMARY KEY, " +           // Unique identifier for the invoice
                 "customer_name TEXT NOT NULL, " +   // Name of the customer
-                "date TEXT NOT NULL" +              // Date of the invoice (stored as ISO-8601 string)
+                "date TEXT NOT NULL, " +            // Date of the invoice (stored as ISO-8601 string)
+                "change_seq INTEGER NOT NULL DEFAULT 0" + // Change sequence number of the last write
                 ")";
                 
         // SQL statement to create the payments table
         String createPayments = "CREATE TABLE IF NOT EXISTS payments (" +
-                "id TEXT PRIMARY KEY, " +           // Unique identifier for the payment
-                "invoice_id TEXT NOT NULL, " +      // Reference to the invoice
+                "id " + idType + " PRIMARY KEY, " + // Unique identifier for the payment
+                "invoice_id " + idType + " NOT NULL, " + // Reference to the invoice
                 "amount TEXT NOT NULL, " +          // Payment amount (stored as string for precision)
                 "method TEXT NOT NULL, " +          // Payment method (e.g., CASH, CREDIT_CARD)
                 "date TEXT NOT NULL, " +            // Payment date (stored as ISO-8601 string)
@@ -63,17 +130,30 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
                 
         // SQL statement to create the line_items table
         String createItems = "CREATE TABLE IF NOT EXISTS line_items (" +
-                "invoice_id TEXT NOT NULL, " +      // Reference to the invoice
+                "invoice_id " + idType + " NOT NULL, " + // Reference to the invoice
                 "description TEXT NOT NULL, " +      // Item description
                 "price TEXT, " +                    // Item price (stored as string for precision, nullable)
                 "FOREIGN KEY(invoice_id) REFERENCES invoices(id) ON DELETE CASCADE" +  // Cascade delete items when invoice is deleted
                 ")";
                 
+        // Ids of deleted invoices with the change sequence number of the deletion
+        String createTombstones = "CREATE TABLE IF NOT EXISTS invoice_tombstones (" +
+                "id " + idType + " PRIMARY KEY, " +
+                "change_seq INTEGER NOT NULL" +
+                ")";
+
         try (Connection conn = getConnection();
              Statement st = conn.createStatement()) {
             st.execute(createInvoices);
             st.execute(createPayments);
             st.execute(createItems);
+            st.execute(createTombstones);
+            addChangeSequence(conn);
+            st.execute("CREATE INDEX IF NOT EXISTS idx_invoices_change_seq ON invoices(change_seq)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_tombstones_change_seq ON invoice_tombstones(change_seq)");
+            // Secondary indexes backing findByCustomer and findByDateRange
+            st.execute("CREATE INDEX IF NOT EXISTS idx_invoices_customer ON invoices(customer_name COLLATE NOCASE)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_invoices_date ON invoices(date)");
             
             // Migration: Drop old payment columns if they exist
             try (Statement alter = conn.createStatement()) {
@@ -84,11 +164,155 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
             } catch (SQLException e) {
                 // Ignore if columns don't exist
             }
+
+            if (idStorage == IdStorage.BLOB) {
+                convertTextIdsToBlobs(conn);
+            } else if (hasBlobIds(conn)) {
+                // Text lookups would silently miss every converted invoice
+                throw new IllegalStateException("Database stores ids as BLOBs; open it with IdStorage.BLOB");
+            }
         } catch (SQLException e) {
             throw new RuntimeException("Failed initializing schema", e);
         }
     }
 
+    /**
+     * Creates the single-row change sequence counter. Databases created before change
+     * tracking get the column added and existing invoices numbered in insertion order.
+     */
+    private static void addChangeSequence(Connection conn) throws SQLException {
+        boolean hasColumn = false;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(invoices)")) {
+            while (rs.next()) {
+                hasColumn |= "change_seq".equals(rs.getString("name"));
+            }
+        }
+        try (Statement st = conn.createStatement()) {
+            if (!hasColumn) {
+                st.execute("ALTER TABLE invoices ADD COLUMN change_seq INTEGER NOT NULL DEFAULT 0");
+                st.executeUpdate("UPDATE invoices SET change_seq = rowid");
+            }
+            st.execute("CREATE TABLE IF NOT EXISTS change_sequence (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 0), " +
+                    "value INTEGER NOT NULL" +
+                    ")");
+            st.executeUpdate("INSERT OR IGNORE INTO change_sequence(id, value) " +
+                    "SELECT 0, COALESCE(MAX(change_seq), 0) FROM invoices");
+        }
+    }
+
+    /**
+     * Takes count numbers from the change sequence and returns the first.
+     * Must run inside the caller's write transaction: SQLite allows one writer at a
+     * time, so numbers are committed in the order they are taken and a reader never
+     * sees a number while a smaller one is still uncommitted.
+     */
+    private static long nextChangeSequence(Connection conn, int count) throws SQLException {
+        try (PreparedStatement increment = conn.prepareStatement("UPDATE change_sequence SET value = value + ? WHERE id = 0");
+             Statement st = conn.createStatement()) {
+            increment.setInt(1, count);
+            update(increment);
+            try (ResultSet rs = query(st, "SELECT value FROM change_sequence WHERE id = 0")) {
+                rs.next();
+                return rs.getLong(1) - count + 1;
+            }
+        }
+    }
+
+    private static boolean hasBlobIds(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = query(st, "SELECT 1 FROM invoices WHERE typeof(id) = 'blob' LIMIT 1")) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Rewrites canonical UUID ids stored as text into 16-byte BLOBs, in one transaction.
+     * SQLite stores BLOB values as-is whatever the declared column type, so tables
+     * created with TEXT ids need no schema change.
+     */
+    private void convertTextIdsToBlobs(Connection conn) throws SQLException {
+        String uuidText = "typeof(%1$s) = 'text' AND %1$s GLOB '" + UUID_GLOB + "'";
+        String toBlob = "unhex(replace(%1$s, '-', ''))";
+        conn.setAutoCommit(false);
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate(String.format("UPDATE invoices SET id = " + toBlob + " WHERE " + uuidText, "id"));
+            st.executeUpdate(String.format("UPDATE payments SET id = " + toBlob + " WHERE " + uuidText, "id"));
+            st.executeUpdate(String.format("UPDATE payments SET invoice_id = " + toBlob + " WHERE " + uuidText, "invoice_id"));
+            st.executeUpdate(String.format("UPDATE line_items SET invoice_id = " + toBlob + " WHERE " + uuidText, "invoice_id"));
+            st.executeUpdate(String.format("UPDATE invoice_tombstones SET id = " + toBlob + " WHERE " + uuidText, "id"));
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Binds an id parameter in the configured storage format.
+     */
+    private void setId(PreparedStatement ps, int index, String id) throws SQLException {
+        byte[] bytes = idStorage == IdStorage.BLOB ? uuidBytes(id) : null;
+        if (bytes != null) {
+            ps.setBytes(index, bytes);
+        } else {
+            ps.setString(index, id);
+        }
+    }
+
+    /**
+     * Reads an id column, which may hold TEXT or a 16-byte BLOB.
+     */
+    private static String readId(ResultSet rs, String column) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value instanceof byte[] bytes && bytes.length == 16) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new UUID(buffer.getLong(), buffer.getLong()).toString();
+        }
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Returns the 16 bytes of a canonical lower-case UUID string, or null for any
+     * other id so that it is stored unchanged as text and reads back identically.
+     */
+    static byte[] uuidBytes(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        long word = 0;
+        int digits = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return null;
+                }
+                continue;
+            }
+            // ASCII only: Character.digit would also accept other scripts' digits
+            int nibble;
+            if (c >= '0' && c <= '9') {
+                nibble = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                nibble = c - 'a' + 10;
+            } else {
+                return null;
+            }
+            word = (word << 4) | nibble;
+            if (++digits == 16) {
+                buffer.putLong(word);
+                word = 0;
+                digits = 0;
+            }
+        }
+        return buffer.array();
+    }
+
     /**
      * Saves an invoice to the database. If the invoice already exists, it updates it.
      * Handles saving/updating invoice details, payments, and line items in a transaction.
@@ -101,59 +325,110 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
     public Invoice save(Invoice invoice) {
         try (Connection conn = getConnection()) {
             conn.setAutoCommit(false);
+            writeInvoices(conn, List.of(invoice));
+            conn.commit();
+            return invoice;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to save invoice", e);
+        }
+    }
 
-            // Save invoice basic info
-            try (PreparedStatement upsert = conn.prepareStatement(
-                    "INSERT INTO invoices(id, customer_name, date) VALUES(?,?,?) " +
-                            "ON CONFLICT(id) DO UPDATE SET customer_name=excluded.customer_name, date=excluded.date")) {
-                upsert.setString(1, invoice.getId());
+    /**
+     * Saves invoices in transactions of up to {@link #BATCH_CHUNK_SIZE} invoices,
+     * so a large batch costs one commit per chunk rather than one per invoice.
+     * Chunks committed before a failure stay saved.
+     * 
+     * @param invoices the invoices to save
+     * @return the saved invoices
+     * @throws IllegalArgumentException if the same id appears twice
+     * @throws RuntimeException if there's an error during database operations
+     */
+    @Override
+    public List<Invoice> saveAll(List<Invoice> invoices) {
+        // writeInvoices clears all rows of a chunk before inserting, so a repeated id would duplicate children
+        Set<String> ids = new HashSet<>();
+        for (Invoice invoice : invoices) {
+            if (!ids.add(invoice.getId())) {
+                throw new IllegalArgumentException("Duplicate invoice ID in batch: " + invoice.getId());
+            }
+        }
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            for (int from = 0; from < invoices.size(); from += BATCH_CHUNK_SIZE) {
+                writeInvoices(conn, invoices.subList(from, Math.min(invoices.size(), from + BATCH_CHUNK_SIZE)));
+                conn.commit();
+            }
+            return invoices;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to save invoices", e);
+        }
+    }
+
+    /**
+     * Writes invoices with their payments and items, replacing whatever was stored
+     * for them, and stamps each with its own change sequence number. Every statement
+     * is prepared once and batched across all invoices. The caller commits.
+     */
+    private void writeInvoices(Connection conn, List<Invoice> invoices) throws SQLException {
+        long sequence = nextChangeSequence(conn, invoices.size());
+        try (PreparedStatement upsert = conn.prepareStatement(
+                "INSERT INTO invoices(id, customer_name, date, change_seq) VALUES(?,?,?,?) " +
+                        "ON CONFLICT(id) DO UPDATE SET customer_name=excluded.customer_name, date=excluded.date, " +
+                        "change_seq=excluded.change_seq");
+             PreparedStatement deleteTombstone = conn.prepareStatement(
+                     "DELETE FROM invoice_tombstones WHERE id = ?");
+             PreparedStatement deletePayments = conn.prepareStatement(
+                     "DELETE FROM payments WHERE invoice_id = ?");
+             PreparedStatement deleteItems = conn.prepareStatement(
+                     "DELETE FROM line_items WHERE invoice_id = ?")) {
+            for (Invoice invoice : invoices) {
+                // Save invoice basic info
+                setId(upsert, 1, invoice.getId());
                 upsert.setString(2, invoice.getCustomerName());
                 upsert.setString(3, invoice.getDate().toString());
-                upsert.executeUpdate();
-            }
+                upsert.setLong(4, sequence);
+                upsert.addBatch();
+                invoice.setChangeSequence(sequence++);
 
-            // Delete existing payments
-            try (PreparedStatement deletePayments = conn.prepareStatement(
-                    "DELETE FROM payments WHERE invoice_id = ?")) {
-                deletePayments.setString(1, invoice.getId());
-                deletePayments.executeUpdate();
+                // A re-created invoice is no longer deleted
+                setId(deleteTombstone, 1, invoice.getId());
+                deleteTombstone.addBatch();
+
+                // Existing payments and items are replaced below
+                setId(deletePayments, 1, invoice.getId());
+                deletePayments.addBatch();
+                setId(deleteItems, 1, invoice.getId());
+                deleteItems.addBatch();
             }
+            batch(upsert);
+            batch(deleteTombstone);
+            batch(deletePayments);
+            batch(deleteItems);
+        }
 
-            // Insert current payments
-            try (PreparedStatement insertPayment = conn.prepareStatement(
-                    "INSERT INTO payments(id, invoice_id, amount, method, date, reference) VALUES(?,?,?,?,?,?)")) {
+        try (PreparedStatement insertPayment = conn.prepareStatement(
+                "INSERT INTO payments(id, invoice_id, amount, method, date, reference) VALUES(?,?,?,?,?,?)");
+             PreparedStatement insertItem = conn.prepareStatement(
+                     "INSERT INTO line_items(invoice_id, description, price) VALUES(?,?,?)")) {
+            for (Invoice invoice : invoices) {
                 for (Payment payment : invoice.getPaymentHistory()) {
-                    insertPayment.setString(1, UUID.randomUUID().toString());
-                    insertPayment.setString(2, invoice.getId());
+                    setId(insertPayment, 1, paymentIds.nextId());
+                    setId(insertPayment, 2, invoice.getId());
                     insertPayment.setString(3, payment.getAmount().toPlainString());
                     insertPayment.setString(4, payment.getMethod());
                     insertPayment.setString(5, payment.getDate().toString());
                     insertPayment.setString(6, payment.getReference());
                     insertPayment.addBatch();
                 }
-                insertPayment.executeBatch();
-            }
-
-            try (PreparedStatement deleteItems = conn.prepareStatement("DELETE FROM line_items WHERE invoice_id = ?")) {
-                deleteItems.setString(1, invoice.getId());
-                deleteItems.executeUpdate();
-            }
-
-            try (PreparedStatement insertItem = conn.prepareStatement(
-                    "INSERT INTO line_items(invoice_id, description, price) VALUES(?,?,?)")) {
                 for (LineItem item : invoice.getItems()) {
-                    insertItem.setString(1, invoice.getId());
+                    setId(insertItem, 1, invoice.getId());
                     insertItem.setString(2, item.getDescription());
                     insertItem.setString(3, item.getPrice() == null ? null : item.getPrice().toPlainString());
                     insertItem.addBatch();
                 }
-                insertItem.executeBatch();
             }
-
-            conn.commit();
-            return invoice;
-        } catch (SQLException e) {
-            throw new RuntimeException("Failed to save invoice", e);
+            batch(insertPayment);
+            batch(insertItem);
         }
     }
 
@@ -166,13 +441,31 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
      */
     @Override
     public Optional<Invoice> findById(String id) {
+        return findById(id, InvoiceProjection.ALL);
+    }
+
+    /**
+     * Finds an invoice by its ID, querying only the child tables the projection needs.
+     *
+     * @param id the ID of the invoice to find
+     * @param projection the parts of the invoice the caller uses
+     * @return an Optional containing the found invoice, or empty if not found
+     * @throws RuntimeException if there's an error during database operations
+     */
+    @Override
+    public Optional<Invoice> findById(String id, InvoiceProjection projection) {
         try (Connection conn = getConnection()) {
-            String sql = "SELECT id, customer_name, date FROM invoices WHERE id = ?";
+            String sql = "SELECT id, customer_name, date, change_seq FROM invoices WHERE id = ?";
             PreparedStatement ps = conn.prepareStatement(sql);
-            ps.setString(1, id);
-            try (ResultSet rs = ps.executeQuery()) {
+            setId(ps, 1, id);
+            try (ResultSet rs = query(ps)) {
                 if (!rs.next()) return Optional.empty();
-                return Optional.of(mapInvoiceRow(rs, true));
+                // Children are read after the row, so they may be newer but never older
+                // than this number
+                long sequence = rs.getLong("change_seq");
+                Invoice invoice = mapInvoiceRow(conn, rs, projection);
+                invoice.setChangeSequence(sequence);
+                return Optional.of(invoice);
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to find invoice", e);
@@ -187,13 +480,25 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
      */
     @Override
     public List<Invoice> findAll() {
-        try (Connection conn = getConnection()) {
-            String sql = "SELECT id, customer_name, date FROM invoices";
-            PreparedStatement ps = conn.prepareStatement(sql);
-            ResultSet rs = ps.executeQuery();
+        return findAll(InvoiceProjection.ALL);
+    }
+
+    /**
+     * Retrieves all invoices, querying only the child tables the projection needs.
+     *
+     * @param projection the parts of the invoices the caller uses
+     * @return a list of all invoices, or an empty list if none found
+     * @throws RuntimeException if there's an error during database operations
+     */
+    @Override
+    public List<Invoice> findAll(InvoiceProjection projection) {
+        String sql = "SELECT id, customer_name, date FROM invoices";
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = query(ps)) {
             List<Invoice> list = new ArrayList<>();
             while (rs.next()) {
-                list.add(mapInvoiceRow(rs, true));
+                list.add(mapInvoiceRow(conn, rs, projection));
             }
             return list;
         } catch (SQLException e) {
@@ -210,22 +515,36 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
      */
     @Override
     public List<Invoice> search(String query) {
+        return search(query, InvoiceProjection.ALL);
+    }
+
+    /**
+     * Searches as {@link #search(String)} does, querying only the child tables the
+     * projection needs for the matches.
+     *
+     * @param query the search term (case-insensitive)
+     * @param projection the parts of the invoices the caller uses
+     * @return a list of matching invoices, or an empty list if no matches found
+     * @throws RuntimeException if there's an error during database operations
+     */
+    @Override
+    public List<Invoice> search(String query, InvoiceProjection projection) {
         if (query == null) return new ArrayList<>();
         String q = query.trim();
-        if (q.isEmpty()) return findAll();
+        if (q.isEmpty()) return findAll(projection);
 
         try (Connection conn = getConnection()) {
             String sql = "SELECT DISTINCT i.id, i.customer_name, i.date " +
                     "FROM invoices i LEFT JOIN line_items li ON i.id = li.invoice_id " +
                     "WHERE LOWER(i.customer_name) LIKE ? OR LOWER(li.description) LIKE ?";
             PreparedStatement ps = conn.prepareStatement(sql);
-            String like = "%" + q.toLowerCase() + "%";
+            String like = "%" + q.toLowerCase(Locale.ROOT) + "%";
             ps.setString(1, like);
             ps.setString(2, like);
-            try (ResultSet rs = ps.executeQuery()) {
+            try (ResultSet rs = query(ps)) {
                 List<Invoice> list = new ArrayList<>();
                 while (rs.next()) {
-                    list.add(mapInvoiceRow(rs, true));
+                    list.add(mapInvoiceRow(conn, rs, projection));
                 }
                 return list;
             }
@@ -234,10 +553,74 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
         }
     }
 
+    /**
+     * Finds invoices by customer name using the case-insensitive customer index.
+     * Note that SQLite's NOCASE collation only folds ASCII letters.
+     * 
+     * @param customerName the customer name to match
+     * @return a list of matching invoices, or an empty list if the name is null or blank
+     * @throws RuntimeException if there's an error during database operations
+     */
+    @Override
+    public List<Invoice> findByCustomer(String customerName) {
+        if (customerName == null || customerName.isBlank()) return new ArrayList<>();
+
+        try (Connection conn = getConnection()) {
+            String sql = "SELECT id, customer_name, date FROM invoices WHERE customer_name = ? COLLATE NOCASE";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, customerName.trim());
+                try (ResultSet rs = query(ps)) {
+                    List<Invoice> list = new ArrayList<>();
+                    while (rs.next()) {
+                        list.add(mapInvoiceRow(conn, rs, InvoiceProjection.ALL));
+                    }
+                    return list;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to find invoices by customer", e);
+        }
+    }
+
+    /**
+     * Finds invoices dated within the given range using the date index.
+     * Dates are stored as ISO-8601 strings, which sort chronologically.
+     * 
+     * @param from the first date to include
+     * @param to the last date to include
+     * @return a list of matching invoices ordered by date
+     * @throws IllegalArgumentException if either bound is null
+     * @throws RuntimeException if there's an error during database operations
+     */
+    @Override
+    public List<Invoice> findByDateRange(LocalDate from, LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Date range bounds cannot be null");
+        }
+
+        try (Connection conn = getConnection()) {
+            String sql = "SELECT id, customer_name, date FROM invoices WHERE date BETWEEN ? AND ? ORDER BY date, id";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, from.toString());
+                ps.setString(2, to.toString());
+                try (ResultSet rs = query(ps)) {
+                    List<Invoice> list = new ArrayList<>();
+                    while (rs.next()) {
+                        list.add(mapInvoiceRow(conn, rs, InvoiceProjection.ALL));
+                    }
+                    return list;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to find invoices by date range", e);
+        }
+    }
+
     /**
      * Deletes an invoice by its ID.
      * Due to foreign key constraints with CASCADE, this will also delete
-     * associated payments and line items.
+     * associated payments and line items. A tombstone records the deletion for
+     * {@link #changesSince}.
      * 
      * @param id the ID of the invoice to delete
      * @return true if the invoice was deleted, false if no invoice was found with the given ID
@@ -245,10 +628,25 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
      */
     @Override
     public boolean deleteById(String id) {
-        try (Connection conn = getConnection();
-             PreparedStatement st = conn.prepareStatement("DELETE FROM invoices WHERE id = ?")) {
-            st.setString(1, id);
-            return st.executeUpdate() > 0;
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement delete = conn.prepareStatement("DELETE FROM invoices WHERE id = ?");
+                 PreparedStatement tombstone = conn.prepareStatement(
+                         "INSERT OR REPLACE INTO invoice_tombstones(id, change_seq) VALUES(?,?)")) {
+                setId(delete, 1, id);
+                if (update(delete) == 0) {
+                    conn.rollback();
+                    return false;
+                }
+                setId(tombstone, 1, id);
+                tombstone.setLong(2, nextChangeSequence(conn, 1));
+                update(tombstone);
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to delete invoice", e);
         }
@@ -263,13 +661,13 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
      */
     @Override
     public List<Payment> getPaymentHistory(String invoiceId) {
-        String sql = "SELECT amount, method, date, reference FROM payments WHERE invoice_id = ? ORDER BY date";
+        String sql = "SELECT amount, method, date, reference FROM payments WHERE invoice_id = ? ORDER BY date, rowid";
         
         try (Connection conn = getConnection();
              PreparedStatement st = conn.prepareStatement(sql)) {
             
-            st.setString(1, invoiceId);
-            ResultSet rs = st.executeQuery();
+            setId(st, 1, invoiceId);
+            ResultSet rs = query(st);
             
             List<Payment> payments = new ArrayList<>();
             while (rs.next()) {
@@ -289,36 +687,38 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
     }
 
     /**
-     * Maps a database result set row to an Invoice object.
-     * Loads associated line items and payments for the invoice.
-     * 
-     * @param rs the ResultSet containing invoice data
-     * @param hasPayment whether to load payment information (can be false for performance in some cases)
-     * @return a populated Invoice object
-     * @throws SQLException if there's an error accessing the database
-     */
-    private Invoice mapInvoiceRow(ResultSet rs, boolean hasPayment) throws SQLException {
-        String id = rs.getString("id");
-        String customer = rs.getString("customer_name");
-        LocalDate date = LocalDate.parse(rs.getString("date"));
-        Invoice invoice = new Invoice(id, customer, date);
-        
-        // Load items and payments for this invoice
-        try (Connection conn = getConnection()) {
-            // Load line items first
-            List<LineItem> items = loadItems(conn, id);
-            for (LineItem item : items) {
+     * Maps an invoice row and loads the children the projection needs on the
+     * caller's connection, rather than opening one per row.
+     */
+    private Invoice mapInvoiceRow(Connection conn, ResultSet rs, InvoiceProjection projection) throws SQLException {
+        Invoice invoice = new Invoice(readId(rs, "id"), rs.getString("customer_name"),
+                LocalDate.parse(rs.getString("date")));
+        loadChildren(conn, invoice, projection);
+        return invoice;
+    }
+
+    /**
+     * Adds the stored line items and then the payments to an invoice read without them.
+     */
+    private void loadChildren(Connection conn, Invoice invoice) throws SQLException {
+        loadChildren(conn, invoice, InvoiceProjection.ALL);
+    }
+
+    /**
+     * Adds the children the projection needs; a projection of summary fields such
+     * as id and customer name queries neither table.
+     */
+    private void loadChildren(Connection conn, Invoice invoice, InvoiceProjection projection) throws SQLException {
+        if (projection.needsItems()) {
+            for (LineItem item : loadItems(conn, invoice.getId())) {
                 invoice.addItem(item);
             }
-            
-            // Then load payments
-            List<Payment> payments = loadPayments(conn, id);
-            for (Payment payment : payments) {
+        }
+        if (projection.needsPayments()) {
+            for (Payment payment : loadPayments(conn, invoice.getId())) {
                 invoice.addPayment(payment.getAmount(), payment.getMethod(), payment.getDate(), payment.getReference());
             }
         }
-        
-        return invoice;
     }
 
 
@@ -346,14 +746,15 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
                 // Add new payment
                 try (PreparedStatement ps = conn.prepareStatement(
                         "INSERT INTO payments(id, invoice_id, amount, method, date, reference) VALUES(?,?,?,?,?,?)")) {
-                    ps.setString(1, UUID.randomUUID().toString());
-                    ps.setString(2, invoiceId);
+                    setId(ps, 1, paymentIds.nextId());
+                    setId(ps, 2, invoiceId);
                     ps.setString(3, amount.toPlainString());
                     ps.setString(4, method);
                     ps.setString(5, (date != null ? date : LocalDate.now()).toString());
                     ps.setString(6, reference);
-                    ps.executeUpdate();
+                    update(ps);
                 }
+                stampInvoices(conn, List.of(invoiceId));
 
                 // Commit and return updated invoice
                 conn.commit();
@@ -368,6 +769,206 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
         }
     }
     
+    /**
+     * Records payments in transactions of up to {@link #BATCH_CHUNK_SIZE} entries.
+     * Entries whose invoice doesn't exist are reported as not found and skipped, and
+     * entries that would take an invoice's balance below zero, counting earlier
+     * entries of the same chunk, are rejected. Chunks committed before a failure
+     * stay saved.
+     * 
+     * @param entries the payments to record
+     * @return one result per entry, in the same order
+     * @throws RuntimeException if there's an error during database operations
+     */
+    @Override
+    public List<BatchResult> addPayments(List<PaymentEntry> entries) {
+        List<BatchResult> results = new ArrayList<>(entries.size());
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement exists = conn.prepareStatement("SELECT 1 FROM invoices WHERE id = ?");
+                 PreparedStatement prices = conn.prepareStatement("SELECT price FROM line_items WHERE invoice_id = ?");
+                 PreparedStatement amounts = conn.prepareStatement("SELECT amount FROM payments WHERE invoice_id = ?");
+                 PreparedStatement insert = conn.prepareStatement(
+                         "INSERT INTO payments(id, invoice_id, amount, method, date, reference) VALUES(?,?,?,?,?,?)")) {
+                for (int from = 0; from < entries.size(); from += BATCH_CHUNK_SIZE) {
+                    int to = Math.min(entries.size(), from + BATCH_CHUNK_SIZE);
+                    Set<String> paid = new LinkedHashSet<>();
+                    // Balance left on each invoice, read once per chunk and lowered by the
+                    // chunk's own payments so that entries can't overpay together
+                    Map<String, BigDecimal> remaining = new HashMap<>();
+                    for (PaymentEntry entry : entries.subList(from, to)) {
+                        String invoiceId = entry.getInvoiceId();
+                        if (!remaining.containsKey(invoiceId)) {
+                            remaining.put(invoiceId, remainingBalance(exists, prices, amounts, invoiceId));
+                        }
+                        BigDecimal balance = remaining.get(invoiceId);
+                        if (balance == null) {
+                            results.add(BatchResult.notFound(invoiceId));
+                            continue;
+                        }
+                        Payment payment = entry.getPayment();
+                        if (payment.getAmount().compareTo(balance) > 0) {
+                            results.add(BatchResult.rejected(invoiceId, "Payment amount cannot exceed remaining balance"));
+                            continue;
+                        }
+                        remaining.put(invoiceId, balance.subtract(payment.getAmount()));
+                        setId(insert, 1, paymentIds.nextId());
+                        setId(insert, 2, invoiceId);
+                        insert.setString(3, payment.getAmount().toPlainString());
+                        insert.setString(4, payment.getMethod());
+                        insert.setString(5, payment.getDate().toString());
+                        insert.setString(6, payment.getReference());
+                        insert.addBatch();
+                        paid.add(invoiceId);
+                        results.add(BatchResult.ok(invoiceId));
+                    }
+                    batch(insert);
+                    stampInvoices(conn, paid);
+                    conn.commit();
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            return results;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to add payments", e);
+        }
+    }
+
+    /**
+     * Returns what is left to pay on an invoice, summed exactly from its stored line
+     * item prices and payment amounts, or null if there is no such invoice.
+     */
+    private BigDecimal remainingBalance(PreparedStatement exists, PreparedStatement prices,
+                                        PreparedStatement amounts, String invoiceId) throws SQLException {
+        setId(exists, 1, invoiceId);
+        try (ResultSet rs = query(exists)) {
+            if (!rs.next()) {
+                return null;
+            }
+        }
+        BigDecimal balance = BigDecimal.ZERO;
+        setId(prices, 1, invoiceId);
+        try (ResultSet rs = query(prices)) {
+            while (rs.next()) {
+                String price = rs.getString(1);
+                if (price != null) {
+                    balance = balance.add(new BigDecimal(price));
+                }
+            }
+        }
+        setId(amounts, 1, invoiceId);
+        try (ResultSet rs = query(amounts)) {
+            while (rs.next()) {
+                balance = balance.subtract(new BigDecimal(rs.getString(1)));
+            }
+        }
+        return balance;
+    }
+
+    /**
+     * Stamps each invoice with its own change sequence number. The caller commits.
+     */
+    private void stampInvoices(Connection conn, Collection<String> invoiceIds) throws SQLException {
+        if (invoiceIds.isEmpty()) {
+            return;
+        }
+        long sequence = nextChangeSequence(conn, invoiceIds.size());
+        try (PreparedStatement ps = conn.prepareStatement("UPDATE invoices SET change_seq = ? WHERE id = ?")) {
+            for (String invoiceId : invoiceIds) {
+                ps.setLong(1, sequence++);
+                setId(ps, 2, invoiceId);
+                ps.addBatch();
+            }
+            batch(ps);
+        }
+    }
+
+    /**
+     * Reads the page in one transaction so it matches the sequence number returned as
+     * {@link ChangeSet#getNext()}. Changed invoices and tombstones are each read with an
+     * index range scan of at most limit + 1 rows and merged by sequence number.
+     * A number above the current sequence, for example from a replaced database, is
+     * answered with a reset.
+     *
+     * @throws RuntimeException if there's an error during database operations
+     */
+    @Override
+    public ChangeSet changesSince(long since, int limit) {
+        if (since < 0) {
+            throw new IllegalArgumentException("Change sequence cannot be negative");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long current;
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = query(st, "SELECT value FROM change_sequence WHERE id = 0")) {
+                    current = rs.next() ? rs.getLong(1) : 0;
+                }
+                boolean reset = since > current;
+                long from = reset ? 0 : since;
+
+                // Invoices and tombstone ids keyed by sequence number, which is unique across both
+                TreeMap<Long, Object> stamped = new TreeMap<>();
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT id, customer_name, date, change_seq FROM invoices WHERE change_seq > ? " +
+                                "ORDER BY change_seq LIMIT ?")) {
+                    ps.setLong(1, from);
+                    ps.setInt(2, limit + 1);
+                    try (ResultSet rs = query(ps)) {
+                        while (rs.next()) {
+                            stamped.put(rs.getLong("change_seq"), new Invoice(readId(rs, "id"),
+                                    rs.getString("customer_name"), LocalDate.parse(rs.getString("date"))));
+                        }
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT id, change_seq FROM invoice_tombstones WHERE change_seq > ? " +
+                                "ORDER BY change_seq LIMIT ?")) {
+                    ps.setLong(1, from);
+                    ps.setInt(2, limit + 1);
+                    try (ResultSet rs = query(ps)) {
+                        while (rs.next()) {
+                            stamped.put(rs.getLong("change_seq"), readId(rs, "id"));
+                        }
+                    }
+                }
+
+                List<Invoice> changed = new ArrayList<>();
+                List<String> deleted = new ArrayList<>();
+                long next = current;
+                for (Map.Entry<Long, Object> entry : stamped.entrySet()) {
+                    if (changed.size() + deleted.size() == limit) {
+                        break;
+                    }
+                    if (entry.getValue() instanceof Invoice invoice) {
+                        loadChildren(conn, invoice);
+                        changed.add(invoice);
+                    } else {
+                        deleted.add((String) entry.getValue());
+                    }
+                    next = entry.getKey();
+                }
+                boolean more = stamped.size() > limit;
+                if (!more) {
+                    next = current;
+                }
+                conn.commit();
+                return new ChangeSet(changed, deleted, next, more, reset);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read changes", e);
+        }
+    }
+
     /**
      * Loads all payments for a specific invoice.
      * 
@@ -377,10 +978,10 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
      * @throws SQLException if there's an error executing the database query
      */
     private List<Payment> loadPayments(Connection conn, String invoiceId) throws SQLException {
-        String sql = "SELECT amount, method, date, reference FROM payments WHERE invoice_id = ? ORDER BY date";
+        String sql = "SELECT amount, method, date, reference FROM payments WHERE invoice_id = ? ORDER BY date, rowid";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, invoiceId);
-            try (ResultSet rs = ps.executeQuery()) {
+            setId(ps, 1, invoiceId);
+            try (ResultSet rs = query(ps)) {
                 List<Payment> payments = new ArrayList<>();
                 while (rs.next()) {
                     BigDecimal amount = new BigDecimal(rs.getString("amount"));
@@ -405,8 +1006,8 @@ public class JdbcInvoiceRepository implements InvoiceRepository {
     private List<LineItem> loadItems(Connection conn, String invoiceId) throws SQLException {
         String sql = "SELECT description, price FROM line_items WHERE invoice_id = ?";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, invoiceId);
-            try (ResultSet rs = ps.executeQuery()) {
+            setId(ps, 1, invoiceId);
+            try (ResultSet rs = query(ps)) {
                 List<LineItem> items = new ArrayList<>();
                 while (rs.next()) {
                     String desc = rs.getString("description");
@@ -0,0 +1,103 @@
+package com.voris.invoice.repo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Growable column of primitive longs, kept either in a heap array or in a direct
+ * buffer outside the Java heap. Off-heap columns don't add to garbage collection
+ * work, which matters once a column holds tens of millions of values.
+ * Not thread-safe; callers guard access.
+ */
+abstract class LongColumn {
+    abstract long get(int index);
+
+    abstract void set(int index, long value);
+
+    /**
+     * Makes room for at least the given number of values, keeping existing ones.
+     */
+    abstract void ensureCapacity(int capacity);
+
+    static LongColumn heap(int capacity) {
+        return new Heap(capacity);
+    }
+
+    static LongColumn offHeap(int capacity) {
+        return new OffHeap(capacity);
+    }
+
+    static int grow(int current, int required) {
+        int size = Math.max(current, 16);
+        while (size < required) {
+            size = size > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE - 8 : size * 2;
+        }
+        return size;
+    }
+
+    private static final class Heap extends LongColumn {
+        private long[] values;
+
+        Heap(int capacity) {
+            this.values = new long[capacity];
+        }
+
+        @Override
+        long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        void set(int index, long value) {
+            values[index] = value;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+    }
+
+    private static final class OffHeap extends LongColumn {
+        private ByteBuffer buffer;
+
+        OffHeap(int capacity) {
+            this.buffer = allocate(capacity);
+        }
+
+        private static ByteBuffer allocate(int capacity) {
+            if (capacity > Integer.MAX_VALUE / Long.BYTES) {
+                throw new IllegalStateException("Off-heap column cannot hold " + capacity + " values");
+            }
+            return ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+        }
+
+        @Override
+        long get(int index) {
+            return buffer.getLong(index * Long.BYTES);
+        }
+
+        @Override
+        void set(int index, long value) {
+            buffer.putLong(index * Long.BYTES, value);
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            int current = buffer.capacity() / Long.BYTES;
+            if (capacity > current) {
+                int size = Math.min(grow(current, capacity), Integer.MAX_VALUE / Long.BYTES);
+                if (size < capacity) {
+                    throw new IllegalStateException("Off-heap column cannot hold " + capacity + " values");
+                }
+                ByteBuffer larger = allocate(size);
+                larger.put(buffer.duplicate().clear());
+                // The old buffer's memory is released when it is garbage collected
+                buffer = larger;
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.voris.invoice.repo;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * Runs full scans over concurrent collections on a fork-join pool.
+ * The collection's spliterator is split recursively until chunks fall below the
+ * parallelism threshold; each chunk is accumulated sequentially and partial results
+ * are combined in split order. Collections smaller than the threshold are scanned on
+ * the calling thread.
+ * Sources without an encounter order, such as {@code ConcurrentHashMap} views, hand
+ * out split chunks in no particular order, so {@link #filter} sorts its result to
+ * keep it deterministic.
+ */
+public class ParallelScanner {
+    /** Default number of elements below which a scan or chunk runs sequentially */
+    public static final int DEFAULT_THRESHOLD = 8_192;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * @param parallelism number of worker threads in the scan pool
+     * @param threshold minimum number of elements worth splitting off into a separate task
+     */
+    public ParallelScanner(int parallelism, int threshold) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.threshold = threshold;
+    }
+
+    public ParallelScanner() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_THRESHOLD);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Collects all values with the given collector, in parallel when the collection
+     * is large enough. The collector's combiner must preserve order for ordered results.
+     *
+     * @param values the collection to scan, typically a {@code ConcurrentHashMap} view
+     * @param collector how to accumulate and combine matching values
+     * @return the collector's result
+     */
+    public <V, A, R> R collect(Collection<V> values, Collector<? super V, A, R> collector) {
+        Spliterator<V> split = values.spliterator();
+        A container;
+        if (split.estimateSize() < threshold) {
+            container = collector.supplier().get();
+            A acc = container;
+            split.forEachRemaining(v -> collector.accumulator().accept(acc, v));
+        } else {
+            container = pool.invoke(new ScanTask<>(split, collector));
+        }
+        return collector.finisher().apply(container);
+    }
+
+    /**
+     * Returns the values matching the predicate, sorted by the given order.
+     *
+     * @param values the collection to scan
+     * @param predicate which values to keep
+     * @param order the result order; should be total so equal scans give equal results
+     * @return the matching values
+     */
+    public <V> List<V> filter(Collection<V> values, Predicate<? super V> predicate, Comparator<? super V> order) {
+        List<V> matches = collect(values, Collectors.filtering(predicate, Collectors.toList()));
+        matches.sort(order);
+        return matches;
+    }
+
+    /**
+     * Releases the worker threads. Scans submitted afterwards are rejected.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private final class ScanTask<V, A> extends RecursiveTask<A> {
+        private final Spliterator<V> split;
+        private final Collector<? super V, A, ?> collector;
+
+        ScanTask(Spliterator<V> split, Collector<? super V, A, ?> collector) {
+            this.split = split;
+            this.collector = collector;
+        }
+
+        @Override
+        protected A compute() {
+            if (split.estimateSize() >= threshold) {
+                Spliterator<V> prefix = split.trySplit();
+                if (prefix != null) {
+                    ScanTask<V, A> left = new ScanTask<>(prefix, collector);
+                    left.fork();
+                    A right = new ScanTask<>(split, collector).compute();
+                    return collector.combiner().apply(left.join(), right);
+                }
+            }
+            A container = collector.supplier().get();
+            split.forEachRemaining(v -> collector.accumulator().accept(container, v));
+            return container;
+        }
+    }
+}
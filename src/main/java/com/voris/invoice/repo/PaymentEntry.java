@@ -0,0 +1,31 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.Payment;
+
+/**
+ * A payment to record against an invoice, as passed to
+ * {@link InvoiceRepository#addPayments(java.util.List)}.
+ */
+public final class PaymentEntry {
+    private final String invoiceId;
+    private final Payment payment;
+
+    public PaymentEntry(String invoiceId, Payment payment) {
+        if (invoiceId == null || invoiceId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invoice ID cannot be null or empty");
+        }
+        if (payment == null) {
+            throw new IllegalArgumentException("Payment cannot be null");
+        }
+        this.invoiceId = invoiceId.trim();
+        this.payment = payment;
+    }
+
+    public String getInvoiceId() {
+        return invoiceId;
+    }
+
+    public Payment getPayment() {
+        return payment;
+    }
+}
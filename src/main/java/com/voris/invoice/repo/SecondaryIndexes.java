@@ -0,0 +1,150 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.InvoiceSnapshot;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Secondary indexes over the in-memory store: case-folded customer name,
+ * invoice date and unpaid status.
+ * Updates for a given invoice must be serialised by the caller (the repository
+ * holds the invoice's lock stripe); lookups are lock-free and may briefly see an
+ * id whose snapshot has since changed, so callers re-check the returned ids.
+ */
+class SecondaryIndexes {
+    private final Map<String, Set<String>> byCustomer = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<DateKey> byDate = new ConcurrentSkipListSet<>();
+    private final Set<String> unpaid = ConcurrentHashMap.newKeySet();
+
+    static String foldCustomer(String customerName) {
+        return customerName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Moves an invoice from its previous index entries to the current ones.
+     *
+     * @param previous the snapshot being replaced, or null for a new invoice
+     * @param current the snapshot being stored
+     * @param paid whether the current snapshot is fully paid
+     */
+    void update(InvoiceSnapshot previous, InvoiceSnapshot current, boolean paid) {
+        String id = current.getId();
+        String customer = foldCustomer(current.getCustomerName());
+        if (previous == null || !foldCustomer(previous.getCustomerName()).equals(customer)) {
+            if (previous != null) {
+                removeCustomer(foldCustomer(previous.getCustomerName()), id);
+            }
+            byCustomer.compute(customer, (key, ids) -> {
+                Set<String> set = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                set.add(id);
+                return set;
+            });
+        }
+        if (previous == null || !Objects.equals(previous.getDate(), current.getDate())) {
+            if (previous != null) {
+                byDate.remove(new DateKey(previous.getDate(), id));
+            }
+            byDate.add(new DateKey(current.getDate(), id));
+        }
+        if (paid) {
+            unpaid.remove(id);
+        } else {
+            unpaid.add(id);
+        }
+    }
+
+    void remove(InvoiceSnapshot previous) {
+        String id = previous.getId();
+        removeCustomer(foldCustomer(previous.getCustomerName()), id);
+        byDate.remove(new DateKey(previous.getDate(), id));
+        unpaid.remove(id);
+    }
+
+    private void removeCustomer(String customer, String id) {
+        // computeIfPresent is atomic per key, so an empty set is never dropped while another invoice joins it
+        byCustomer.computeIfPresent(customer, (key, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    Collection<String> idsForCustomer(String customerName) {
+        Set<String> ids = byCustomer.get(foldCustomer(customerName));
+        return ids == null ? List.of() : new ArrayList<>(ids);
+    }
+
+    /**
+     * @return ids of invoices dated within [from, to], in date order
+     */
+    List<String> idsInDateRange(LocalDate from, LocalDate to) {
+        List<String> ids = new ArrayList<>();
+        for (DateKey key : byDate.subSet(DateKey.lowest(from), true, DateKey.highest(to), true)) {
+            ids.add(key.id);
+        }
+        return ids;
+    }
+
+    Collection<String> unpaidIds() {
+        return new ArrayList<>(unpaid);
+    }
+
+    /**
+     * Composite (date, id) key, so invoices sharing a date get distinct entries
+     * and no per-date buckets need to be created or cleaned up.
+     */
+    private static final class DateKey implements Comparable<DateKey> {
+        private final LocalDate date;
+        private final String id;
+
+        DateKey(LocalDate date, String id) {
+            this.date = date;
+            this.id = id;
+        }
+
+        static DateKey lowest(LocalDate date) {
+            return new DateKey(date, "");
+        }
+
+        static DateKey highest(LocalDate date) {
+            return new DateKey(date, null);
+        }
+
+        @Override
+        public int compareTo(DateKey other) {
+            int byDate = date.compareTo(other.date);
+            if (byDate != 0) {
+                return byDate;
+            }
+            // A null id sorts after every real id and marks the upper bound of a day
+            if (id == null) {
+                return other.id == null ? 0 : 1;
+            }
+            if (other.id == null) {
+                return -1;
+            }
+            return id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            DateKey dateKey = (DateKey) o;
+            return Objects.equals(date, dateKey.date) && Objects.equals(id, dateKey.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(date, id);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.InvoiceSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Point-in-time image of the in-memory repository ({@code snapshot.bin}).
+ * Layout: {@code [int magic][int version][long lastLsn][int count]} followed by
+ * {@code count} invoices in {@link InvoiceCodec} format.
+ * Snapshots are written to a temporary file, forced and then atomically renamed, so
+ * the file on disk is always either the previous or the new complete snapshot.
+ * Loading memory-maps the file, which avoids copying it through the heap; a single
+ * mapping limits a snapshot to 2 GB.
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x494E5653; // "INVS"
+    private static final int VERSION = 1;
+    private static final String NAME = "snapshot.bin";
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot covering every journal record up to lastLsn.
+     */
+    static void write(Path directory, long lastLsn, Collection<InvoiceSnapshot> invoices) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(NAME);
+        Path temp = directory.resolve(NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream stream = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lastLsn);
+            out.writeInt(invoices.size());
+            for (InvoiceSnapshot invoice : invoices) {
+                InvoiceCodec.writeInvoice(out, invoice);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(directory);
+    }
+
+    /**
+     * Loads the latest snapshot, if any.
+     *
+     * @param consumer receives each stored invoice
+     * @return the last lsn covered by the snapshot, or 0 if there is no snapshot
+     */
+    static long read(Path directory, Consumer<InvoiceSnapshot> consumer) throws IOException {
+        Path file = directory.resolve(NAME);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an invoice snapshot: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            long lastLsn = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(InvoiceCodec.readInvoice(buffer));
+            }
+            return lastLsn;
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        // Makes the rename durable on file systems that support syncing directories
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not supported on this platform; the rename is still atomic
+        }
+    }
+}
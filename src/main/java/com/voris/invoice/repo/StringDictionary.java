@@ -0,0 +1,44 @@
+package com.voris.invoice.repo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps distinct strings to dense int codes, so a column of repeated strings can be
+ * stored as an {@code int[]} and predicates can be evaluated once per distinct value.
+ * Codes are never reused; null is encoded as -1.
+ * Not thread-safe; callers guard access.
+ */
+class StringDictionary {
+    static final int NULL = -1;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[16];
+
+    int encode(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        int next = codes.size();
+        if (next == values.length) {
+            values = Arrays.copyOf(values, next * 2);
+        }
+        values[next] = value;
+        codes.put(value, next);
+        return next;
+    }
+
+    String decode(int code) {
+        return code == NULL ? null : values[code];
+    }
+
+    /** Number of distinct values seen so far */
+    int size() {
+        return codes.size();
+    }
+}
@@ -0,0 +1,209 @@
+package com.voris.invoice.repo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of locks shared by all invoice ids.
+ * Each id hashes to one stripe, so operations on invoices that land on different
+ * stripes never contend, while the memory cost stays constant regardless of how
+ * many invoices are stored.
+ * Multi-invoice operations acquire their stripes in ascending index order, which
+ * makes them deadlock-free with respect to each other and to single-id operations.
+ */
+public class StripedLocks {
+    /** Default number of stripes used by the in-memory repository */
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] locks;
+    private final LongAdder[] acquisitions;
+    private final LongAdder[] contended;
+    private final LongAdder[] waitNanos;
+    private final int mask;
+
+    /**
+     * Creates a new set of locks.
+     *
+     * @param stripes the requested number of stripes, rounded up to a power of two
+     * @throws IllegalArgumentException if stripes is not positive
+     */
+    public StripedLocks(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.locks = new ReentrantLock[size];
+        this.acquisitions = new LongAdder[size];
+        this.contended = new LongAdder[size];
+        this.waitNanos = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+            acquisitions[i] = new LongAdder();
+            contended[i] = new LongAdder();
+            waitNanos[i] = new LongAdder();
+        }
+    }
+
+    public StripedLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public int stripeCount() {
+        return locks.length;
+    }
+
+    /**
+     * Returns the stripe index the given key maps to.
+     */
+    public int stripeFor(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Lock key cannot be null");
+        }
+        int h = key.hashCode();
+        // Spread the high bits down so similar keys don't cluster on few stripes
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+    /**
+     * Runs the action while holding the stripe for the given key.
+     *
+     * @param key the invoice id to lock
+     * @param action the work to perform under the lock
+     * @return the action's result
+     */
+    public <T> T withLock(String key, Supplier<T> action) {
+        int stripe = stripeFor(key);
+        acquire(stripe);
+        try {
+            return action.get();
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Runs the action while holding the stripes for all given keys.
+     * Stripes are taken in ascending order and each stripe is taken only once,
+     * even when several keys share it.
+     *
+     * @param keys the invoice ids to lock
+     * @param action the work to perform under the locks
+     * @return the action's result
+     */
+    public <T> T withLocks(Collection<String> keys, Supplier<T> action) {
+        boolean[] needed = new boolean[locks.length];
+        for (String key : keys) {
+            needed[stripeFor(key)] = true;
+        }
+        int[] held = new int[locks.length];
+        int count = 0;
+        try {
+            for (int stripe = 0; stripe < needed.length; stripe++) {
+                if (needed[stripe]) {
+                    acquire(stripe);
+                    held[count++] = stripe;
+                }
+            }
+            return action.get();
+        } finally {
+            while (count > 0) {
+                locks[held[--count]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs the action while holding every stripe, which blocks all writers.
+     * Keep the action short; it is meant for taking consistent cuts, not for work.
+     */
+    public <T> T withAllLocks(Supplier<T> action) {
+        int count = 0;
+        try {
+            for (; count < locks.length; count++) {
+                acquire(count);
+            }
+            return action.get();
+        } finally {
+            while (count > 0) {
+                locks[--count].unlock();
+            }
+        }
+    }
+
+    private void acquire(int stripe) {
+        ReentrantLock lock = locks[stripe];
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            contended[stripe].increment();
+            waitNanos[stripe].add(System.nanoTime() - start);
+        }
+        acquisitions[stripe].increment();
+    }
+
+    /**
+     * Returns a point-in-time copy of the contention counters for every stripe.
+     */
+    public List<StripeStats> stats() {
+        List<StripeStats> stats = new ArrayList<>(locks.length);
+        for (int i = 0; i < locks.length; i++) {
+            stats.add(new StripeStats(i, acquisitions[i].sum(), contended[i].sum(), waitNanos[i].sum()));
+        }
+        return stats;
+    }
+
+    /**
+     * Contention counters for a single stripe.
+     */
+    public static final class StripeStats {
+        private final int stripe;
+        private final long acquisitions;
+        private final long contended;
+        private final long waitNanos;
+
+        StripeStats(int stripe, long acquisitions, long contended, long waitNanos) {
+            this.stripe = stripe;
+            this.acquisitions = acquisitions;
+            this.contended = contended;
+            this.waitNanos = waitNanos;
+        }
+
+        public int getStripe() {
+            return stripe;
+        }
+
+        /** Total number of times the stripe was acquired */
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        /** Number of acquisitions that had to wait for another holder */
+        public long getContended() {
+            return contended;
+        }
+
+        /** Total time spent waiting on contended acquisitions */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "StripeStats{" +
+                    "stripe=" + stripe +
+                    ", acquisitions=" + acquisitions +
+                    ", contended=" + contended +
+                    ", waitNanos=" + waitNanos +
+                    '}';
+        }
+    }
+}
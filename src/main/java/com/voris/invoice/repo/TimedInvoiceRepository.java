@@ -0,0 +1,152 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.jfr.RepositoryEvent;
+import com.voris.invoice.metrics.Histogram;
+import com.voris.invoice.metrics.MetricsRegistry;
+import com.voris.invoice.metrics.RequestTiming;
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.Payment;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Decorates a repository with a latency histogram and an error counter per method,
+ * labelled {@code method="save"} and so on. Every method, including the interface's
+ * defaults, is forwarded so the delegate's own implementations are the ones timed.
+ * Calls made while a request is being timed also count towards its
+ * {@link RequestTiming} repository phase, and each call is a {@link RepositoryEvent}
+ * in flight recordings that enable it.
+ */
+public class TimedInvoiceRepository implements InvoiceRepository {
+    static final String DURATION = "invoice_repository_duration_seconds";
+    static final String ERRORS = "invoice_repository_errors_total";
+
+    private static final String[] METHODS = {
+            "save", "findById", "findAll", "search", "findByCustomer", "findByDateRange", "findUnpaid",
+            "addPayment", "saveAll", "addPayments", "deleteById", "changesSince", "getPaymentHistory", "update"
+    };
+
+    private final InvoiceRepository delegate;
+    private final MetricsRegistry registry;
+    private final Map<String, Histogram> timers = new HashMap<>();
+
+    public TimedInvoiceRepository(InvoiceRepository delegate, MetricsRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+        // Resolved up front so a call doesn't look anything up in the registry
+        for (String method : METHODS) {
+            timers.put(method, registry.histogram(DURATION, "Time spent in repository calls", "method", method));
+        }
+    }
+
+    private <T> T time(String method, String invoiceId, Supplier<T> call) {
+        RepositoryEvent event = new RepositoryEvent();
+        event.start(method, invoiceId);
+        long start = System.nanoTime();
+        T result = null;
+        try {
+            result = call.get();
+            return result;
+        } catch (RuntimeException e) {
+            registry.counter(ERRORS, "Repository calls that threw", "method", method).increment();
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            timers.get(method).record(nanos);
+            RequestTiming.repositoryCall(nanos);
+            event.finish(result);
+        }
+    }
+
+    @Override
+    public Invoice save(Invoice invoice) {
+        return time("save", invoice == null ? null : invoice.getId(), () -> delegate.save(invoice));
+    }
+
+    @Override
+    public Optional<Invoice> findById(String id) {
+        return time("findById", id, () -> delegate.findById(id));
+    }
+
+    @Override
+    public List<Invoice> findAll() {
+        return time("findAll", null, delegate::findAll);
+    }
+
+    @Override
+    public List<Invoice> search(String query) {
+        return time("search", null, () -> delegate.search(query));
+    }
+
+    @Override
+    public Optional<Invoice> findById(String id, InvoiceProjection projection) {
+        return time("findById", id, () -> delegate.findById(id, projection));
+    }
+
+    @Override
+    public List<Invoice> findAll(InvoiceProjection projection) {
+        return time("findAll", null, () -> delegate.findAll(projection));
+    }
+
+    @Override
+    public List<Invoice> search(String query, InvoiceProjection projection) {
+        return time("search", null, () -> delegate.search(query, projection));
+    }
+
+    @Override
+    public List<Invoice> findByCustomer(String customerName) {
+        return time("findByCustomer", null, () -> delegate.findByCustomer(customerName));
+    }
+
+    @Override
+    public List<Invoice> findByDateRange(LocalDate from, LocalDate to) {
+        return time("findByDateRange", null, () -> delegate.findByDateRange(from, to));
+    }
+
+    @Override
+    public List<Invoice> findUnpaid() {
+        return time("findUnpaid", null, delegate::findUnpaid);
+    }
+
+    @Override
+    public Invoice addPayment(String invoiceId, BigDecimal amount, String method, LocalDate date, String reference) {
+        return time("addPayment", invoiceId, () -> delegate.addPayment(invoiceId, amount, method, date, reference));
+    }
+
+    @Override
+    public List<Invoice> saveAll(List<Invoice> invoices) {
+        return time("saveAll", null, () -> delegate.saveAll(invoices));
+    }
+
+    @Override
+    public List<BatchResult> addPayments(List<PaymentEntry> entries) {
+        return time("addPayments", null, () -> delegate.addPayments(entries));
+    }
+
+    @Override
+    public boolean deleteById(String id) {
+        return time("deleteById", id, () -> delegate.deleteById(id));
+    }
+
+    @Override
+    public ChangeSet changesSince(long since, int limit) {
+        return time("changesSince", null, () -> delegate.changesSince(since, limit));
+    }
+
+    @Override
+    public List<Payment> getPaymentHistory(String invoiceId) {
+        return time("getPaymentHistory", invoiceId, () -> delegate.getPaymentHistory(invoiceId));
+    }
+
+    @Override
+    public Invoice update(String invoiceId, Consumer<Invoice> mutation) {
+        return time("update", invoiceId, () -> delegate.update(invoiceId, mutation));
+    }
+}
@@ -0,0 +1,287 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.InvoiceSnapshot;
+import com.voris.invoice.model.LineItem;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index from case-folded character trigrams to the invoices whose customer
+ * name or line item descriptions contain them.
+ * Every indexed invoice gets a small int document number, and each trigram keeps a
+ * sorted {@code int[]} posting list, so queries intersect primitive arrays instead of
+ * scanning every invoice. Matches are candidates only: callers must verify them,
+ * folding case with {@link #fold(String)} so that they agree with the index.
+ * Updates for a given invoice must be serialised by the caller; posting lists shared
+ * between invoices synchronise internally. Posting lists that become empty are
+ * dropped, and the document numbers of removed invoices are reused.
+ */
+class TrigramIndex {
+    private static final long[] NO_TRIGRAMS = new long[0];
+
+    private final Map<Long, Postings> postings = new ConcurrentHashMap<>();
+    private final Map<String, Integer> docsById = new ConcurrentHashMap<>();
+    private volatile String[] idsByDoc = new String[1024];
+    private int nextDoc;
+    // Numbers of removed documents, reused before nextDoc grows; guarded by this
+    private int[] freeDocs = new int[16];
+    private int freeCount;
+
+    /**
+     * Re-indexes an invoice, touching only the trigrams that were added or removed.
+     *
+     * @param previous the snapshot being replaced, or null for a new invoice
+     * @param current the snapshot being stored
+     */
+    void update(InvoiceSnapshot previous, InvoiceSnapshot current) {
+        int doc = docFor(current.getId());
+        long[] before = previous == null ? NO_TRIGRAMS : trigramsOf(previous);
+        long[] after = trigramsOf(current);
+        // Both arrays are sorted and distinct, so a merge walk yields the difference
+        int i = 0;
+        int j = 0;
+        while (i < before.length || j < after.length) {
+            if (j == after.length || (i < before.length && before[i] < after[j])) {
+                removePosting(before[i++], doc);
+            } else if (i == before.length || after[j] < before[i]) {
+                addPosting(after[j++], doc);
+            } else {
+                i++;
+                j++;
+            }
+        }
+    }
+
+    void remove(InvoiceSnapshot previous) {
+        Integer doc = docsById.remove(previous.getId());
+        if (doc == null) {
+            return;
+        }
+        for (long trigram : trigramsOf(previous)) {
+            removePosting(trigram, doc);
+        }
+        synchronized (this) {
+            idsByDoc[doc] = null;
+            if (freeCount == freeDocs.length) {
+                freeDocs = Arrays.copyOf(freeDocs, freeCount * 2);
+            }
+            freeDocs[freeCount++] = doc;
+        }
+    }
+
+    // Both run inside the map's per-key lock, so an add can't land in a list that a
+    // concurrent remove is dropping
+    private void addPosting(long trigram, int doc) {
+        postings.compute(trigram, (key, list) -> {
+            Postings updated = list == null ? new Postings() : list;
+            updated.add(doc);
+            return updated;
+        });
+    }
+
+    private void removePosting(long trigram, int doc) {
+        postings.computeIfPresent(trigram, (key, list) -> {
+            list.remove(doc);
+            return list.size() == 0 ? null : list;
+        });
+    }
+
+    int trigramCount() {
+        return postings.size();
+    }
+
+    /** Number of document numbers handed out, including ones free for reuse */
+    synchronized int documentCount() {
+        return nextDoc;
+    }
+
+    private int docFor(String id) {
+        Integer existing = docsById.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (this) {
+            existing = docsById.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            int doc = freeCount > 0 ? freeDocs[--freeCount] : nextDoc++;
+            String[] ids = idsByDoc;
+            if (doc == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[doc] = id;
+            idsByDoc = ids;
+            docsById.put(id, doc);
+            return doc;
+        }
+    }
+
+    /**
+     * Returns the ids of invoices containing every trigram of the query, in document
+     * number order, or null if the query is too short to use the index.
+     *
+     * @param foldedQuery a trimmed query, folded with {@link #fold(String)}
+     */
+    String[] candidates(String foldedQuery) {
+        if (foldedQuery.length() < 3) {
+            return null;
+        }
+        long[] trigrams = trigramsOf(foldedQuery, NO_TRIGRAMS);
+        Postings[] lists = new Postings[trigrams.length];
+        for (int t = 0; t < trigrams.length; t++) {
+            lists[t] = postings.get(trigrams[t]);
+            if (lists[t] == null) {
+                return new String[0];
+            }
+        }
+        // Intersect starting from the rarest trigram; only that list is copied
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+        int[] result = lists[0].toArray();
+        int size = result.length;
+        for (int t = 1; t < lists.length && size > 0; t++) {
+            size = lists[t].retainIn(result, size);
+        }
+        String[] ids = idsByDoc;
+        String[] out = new String[size];
+        int n = 0;
+        for (int k = 0; k < size; k++) {
+            int doc = result[k];
+            String id = doc < ids.length ? ids[doc] : null;
+            if (id != null) {
+                out[n++] = id;
+            }
+        }
+        return n == size ? out : Arrays.copyOf(out, n);
+    }
+
+    private static long[] trigramsOf(InvoiceSnapshot snapshot) {
+        long[] acc = trigramsOf(snapshot.getCustomerName(), NO_TRIGRAMS);
+        for (LineItem item : snapshot.getItems()) {
+            if (item != null && item.getDescription() != null) {
+                acc = trigramsOf(item.getDescription(), acc);
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * Folds case the way the index does: one char at a time with
+     * {@link Character#toLowerCase(char)}, which ignores the default locale and keeps
+     * the length. {@code String.toLowerCase()} would turn I into a dotless i under a
+     * Turkish locale, and İ into two chars under any locale, so its results could miss
+     * invoices the index returns.
+     *
+     * @return text itself if nothing changes
+     */
+    static String fold(String text) {
+        char[] folded = null;
+        for (int k = 0; k < text.length(); k++) {
+            char c = text.charAt(k);
+            char lower = Character.toLowerCase(c);
+            if (lower != c) {
+                if (folded == null) {
+                    folded = text.toCharArray();
+                }
+                folded[k] = lower;
+            }
+        }
+        return folded == null ? text : new String(folded);
+    }
+
+    /**
+     * Appends the trigrams of text to acc and returns the sorted, distinct union.
+     * Characters are folded one by one, as {@link #fold(String)} does, so no folded
+     * copy of the text is made.
+     */
+    private static long[] trigramsOf(String text, long[] acc) {
+        int count = Math.max(0, text.length() - 2);
+        if (count == 0) {
+            return acc;
+        }
+        long[] all = Arrays.copyOf(acc, acc.length + count);
+        long c1 = Character.toLowerCase(text.charAt(0));
+        long c2 = Character.toLowerCase(text.charAt(1));
+        for (int k = 2; k < text.length(); k++) {
+            long c3 = Character.toLowerCase(text.charAt(k));
+            all[acc.length + k - 2] = (c1 << 32) | (c2 << 16) | c3;
+            c1 = c2;
+            c2 = c3;
+        }
+        Arrays.sort(all);
+        int distinct = 0;
+        for (int k = 0; k < all.length; k++) {
+            if (k == 0 || all[k] != all[k - 1]) {
+                all[distinct++] = all[k];
+            }
+        }
+        return distinct == all.length ? all : Arrays.copyOf(all, distinct);
+    }
+
+    /**
+     * Sorted, growable list of document numbers.
+     */
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        synchronized void add(int doc) {
+            // Documents are numbered in insertion order, so appends are the common case
+            if (size > 0 && docs[size - 1] >= doc) {
+                int pos = Arrays.binarySearch(docs, 0, size, doc);
+                if (pos >= 0) {
+                    return;
+                }
+                insertAt(-pos - 1, doc);
+                return;
+            }
+            insertAt(size, doc);
+        }
+
+        private void insertAt(int index, int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            System.arraycopy(docs, index, docs, index + 1, size - index);
+            docs[index] = doc;
+            size++;
+        }
+
+        synchronized void remove(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+                size--;
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int[] toArray() {
+            return Arrays.copyOf(docs, size);
+        }
+
+        /**
+         * Keeps the documents of result[0..count) that also occur in this list,
+         * compacting them to the front of result, and returns how many were kept.
+         */
+        synchronized int retainIn(int[] result, int count) {
+            int kept = 0;
+            int from = 0;
+            for (int k = 0; k < count && from < size; k++) {
+                int pos = Arrays.binarySearch(docs, from, size, result[k]);
+                if (pos >= 0) {
+                    result[kept++] = result[k];
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.voris.invoice.service;
+
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.model.Payment;
+import com.voris.invoice.repo.AsyncInvoiceRepository;
+import com.voris.invoice.repo.BatchResult;
+import com.voris.invoice.repo.PaymentEntry;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link InvoiceService} operations returning {@link CompletableFuture}s, so callers
+ * can overlap independent work such as loading several invoices at once.
+ * <p>
+ * Reads go through an {@link AsyncInvoiceRepository}. Writes run the synchronous
+ * service on the executor, so validation and listeners behave exactly as they do
+ * there. Validation errors complete the future exceptionally instead of being
+ * thrown. Blocking repositories hold a thread for each call in flight; see
+ * {@link #virtualThreads()} and {@link #boundedPool(int, int)} for executors.
+ */
+public class AsyncInvoiceService {
+    private final InvoiceService service;
+    private final AsyncInvoiceRepository repository;
+    private final Executor executor;
+
+    /**
+     * Runs both reads and writes on the executor against the service's own repository.
+     */
+    public AsyncInvoiceService(InvoiceService service, Executor executor) {
+        this(service, AsyncInvoiceRepository.blocking(service.repository(), executor), executor);
+    }
+
+    /**
+     * @param repository the asynchronous view of the repository behind the service
+     */
+    public AsyncInvoiceService(InvoiceService service, AsyncInvoiceRepository repository, Executor executor) {
+        if (service == null || repository == null || executor == null) {
+            throw new IllegalArgumentException("Service, repository and executor are required");
+        }
+        this.service = service;
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    /**
+     * An executor that starts a virtual thread per task. Suits blocking repositories
+     * when the database, not the thread count, should be the limit.
+     */
+    public static ExecutorService virtualThreads() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("invoice-async-", 0).factory());
+    }
+
+    /**
+     * A fixed pool with a bounded queue. When the queue is full the submitting thread
+     * runs the task itself, which slows callers down instead of failing them.
+     */
+    public static ExecutorService boundedPool(int threads, int queueSize) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("Queue size must be positive");
+        }
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                Thread.ofPlatform().name("invoice-async-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private <T> CompletableFuture<T> write(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    public CompletableFuture<Optional<Invoice>> getById(String id) {
+        return repository.findById(id);
+    }
+
+    public CompletableFuture<List<Invoice>> getAll() {
+        return repository.findAll();
+    }
+
+    public CompletableFuture<List<Invoice>> search(String query) {
+        return repository.search(query);
+    }
+
+    /**
+     * Completes with the invoice's payments, or exceptionally with an
+     * {@link IllegalArgumentException} if the ID is blank or unknown.
+     */
+    public CompletableFuture<List<Payment>> getPaymentHistory(String invoiceId) {
+        if (invoiceId == null || invoiceId.trim().isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invoice ID cannot be null or empty"));
+        }
+        return repository.findById(invoiceId.trim()).thenApply(invoice -> invoice
+                .orElseThrow(() -> new IllegalArgumentException("Invoice not found with ID: " + invoiceId))
+                .getPaymentHistory());
+    }
+
+    public CompletableFuture<Invoice> createInvoice(String customerName, List<LineItem> items) {
+        return write(() -> service.createInvoice(customerName, items));
+    }
+
+    public CompletableFuture<Invoice> addLineItem(String invoiceId, String description, BigDecimal price) {
+        return write(() -> service.addLineItem(invoiceId, description, price));
+    }
+
+    public CompletableFuture<Invoice> addPayment(String invoiceId, BigDecimal amount, String method,
+                                                 LocalDate date, String reference) {
+        return write(() -> service.addPayment(invoiceId, amount, method, date, reference));
+    }
+
+    public CompletableFuture<Boolean> deleteInvoice(String invoiceId) {
+        return write(() -> service.deleteInvoice(invoiceId));
+    }
+
+    public CompletableFuture<Invoice> updateInvoice(Invoice invoice) {
+        return write(() -> service.updateInvoice(invoice));
+    }
+
+    public CompletableFuture<Invoice> updateLineItems(String invoiceId, List<LineItem> items) {
+        return write(() -> service.updateLineItems(invoiceId, items));
+    }
+
+    /**
+     * Saves the invoices in one call to the repository's bulk path.
+     */
+    public CompletableFuture<List<Invoice>> createInvoices(List<Invoice> invoices) {
+        return write(() -> service.createInvoices(invoices));
+    }
+
+    /**
+     * Records the payments in one call to the repository's bulk path.
+     */
+    public CompletableFuture<List<BatchResult>> addPayments(List<PaymentEntry> entries) {
+        return write(() -> service.addPayments(entries));
+    }
+
+    /**
+     * Loads several invoices concurrently, at most {@code parallelism} at a time.
+     * Duplicate IDs are loaded once.
+     * @return The invoices found, keyed by ID in the order given; unknown IDs are left out
+     */
+    public CompletableFuture<Map<String, Invoice>> getByIds(Collection<String> ids, int parallelism) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        return fanOut(distinct, parallelism, repository::findById).thenApply(found -> {
+            Map<String, Invoice> invoices = new LinkedHashMap<>();
+            for (int i = 0; i < distinct.size(); i++) {
+                String id = distinct.get(i);
+                found.get(i).ifPresent(invoice -> invoices.put(id, invoice));
+            }
+            return invoices;
+        });
+    }
+
+    /**
+     * Loads the payment history of several invoices concurrently, at most
+     * {@code parallelism} at a time. Fails if any ID is blank or unknown.
+     * @return Payments keyed by invoice ID in the order given
+     */
+    public CompletableFuture<Map<String, List<Payment>>> getPaymentHistories(Collection<String> ids, int parallelism) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        return fanOut(distinct, parallelism, this::getPaymentHistory).thenApply(histories -> {
+            Map<String, List<Payment>> payments = new LinkedHashMap<>();
+            for (int i = 0; i < distinct.size(); i++) {
+                payments.put(distinct.get(i), histories.get(i));
+            }
+            return payments;
+        });
+    }
+
+    /**
+     * Starts a call for every input, with at most {@code parallelism} in flight, and
+     * collects the results in input order. The inputs are dealt round-robin into
+     * that many lanes and each lane starts its next call when the previous one
+     * completes. The result fails with the first failure once every lane has
+     * stopped; a lane stops at its first failure.
+     */
+    public static <T, R> CompletableFuture<List<R>> fanOut(List<T> inputs, int parallelism,
+                                                           Function<? super T, CompletableFuture<R>> call) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        @SuppressWarnings("unchecked")
+        R[] results = (R[]) new Object[inputs.size()];
+        int lanes = Math.min(parallelism, inputs.size());
+        CompletableFuture<?>[] tails = new CompletableFuture<?>[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+            for (int i = lane; i < inputs.size(); i += lanes) {
+                int index = i;
+                tail = tail.thenCompose(ignored -> call.apply(inputs.get(index)))
+                        .thenAccept(result -> results[index] = result);
+            }
+            tails[lane] = tail;
+        }
+        // Lanes write distinct slots and allOf orders those writes before the read
+        return CompletableFuture.allOf(tails).thenApply(ignored -> Arrays.asList(results));
+    }
+}
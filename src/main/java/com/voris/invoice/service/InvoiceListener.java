@@ -0,0 +1,22 @@
+package com.voris.invoice.service;
+
+import com.voris.invoice.model.Invoice;
+
+/**
+ * Receives the changes made through {@link InvoiceService}.
+ * Listeners are called on the thread that made the change, after it has been saved,
+ * so they should return quickly and must not throw.
+ */
+public interface InvoiceListener {
+    /**
+     * Called after an invoice was created or changed.
+     * @param invoice The invoice as saved
+     */
+    void invoiceChanged(Invoice invoice);
+
+    /**
+     * Called after an invoice was deleted.
+     * @param invoiceId The ID of the deleted invoice
+     */
+    void invoiceDeleted(String invoiceId);
+}
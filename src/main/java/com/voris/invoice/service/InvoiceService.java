@@ -1,27 +1,88 @@
 package com.voris.invoice.service;
 
+import com.voris.invoice.model.IdGenerator;
 import com.voris.invoice.model.Invoice;
 import com.voris.invoice.model.LineItem;
 import com.voris.invoice.model.Payment;
+import com.voris.invoice.repo.BatchResult;
+import com.voris.invoice.repo.ChangeSet;
+import com.voris.invoice.repo.InvoiceProjection;
 import com.voris.invoice.repo.InvoiceRepository;
+import com.voris.invoice.repo.PaymentEntry;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class InvoiceService {
+    public static final int DEFAULT_CHANGES_LIMIT = 100;
+    public static final int MAX_CHANGES_LIMIT = 1000;
+
     private final InvoiceRepository repository;
+    private final IdGenerator ids;
+    private final List<InvoiceListener> listeners = new CopyOnWriteArrayList<>();
 
     public InvoiceService(InvoiceRepository repository) {
+        this(repository, IdGenerator.timeOrdered());
+    }
+
+    /**
+     * @param ids the generator for the ids of invoices this service creates
+     */
+    public InvoiceService(InvoiceRepository repository, IdGenerator ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("Id generator cannot be null");
+        }
         this.repository = repository;
+        this.ids = ids;
+    }
+
+    /**
+     * Returns a new, unsaved invoice dated today with an id from this service's generator.
+     */
+    public Invoice newInvoice(String customerName) {
+        if (customerName == null || customerName.trim().isEmpty()) {
+            throw new IllegalArgumentException("Customer name cannot be null or empty");
+        }
+        return new Invoice(ids.nextId(), customerName, LocalDate.now());
+    }
+
+    /**
+     * Registers a listener for every change made through this service from now on.
+     */
+    public void addListener(InvoiceListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+
+    public void removeListener(InvoiceListener listener) {
+        listeners.remove(listener);
+    }
+
+    InvoiceRepository repository() {
+        return repository;
+    }
+
+    private Invoice changed(Invoice invoice) {
+        for (InvoiceListener listener : listeners) {
+            listener.invoiceChanged(invoice);
+        }
+        return invoice;
     }
 
     public Invoice createInvoice(String customerName, List<LineItem> items) {
         if (customerName == null || customerName.trim().isEmpty()) {
             throw new IllegalArgumentException("Customer name is required and cannot be blank");
         }
-        Invoice invoice = new Invoice(customerName.trim());
+        Invoice invoice = newInvoice(customerName);
         if (items != null) {
             items.forEach(item -> {
                 if (item != null) {
@@ -29,7 +90,7 @@ public class InvoiceService {
                 }
             });
         }
-        return repository.save(invoice);
+        return changed(repository.save(invoice));
     }
 
     public Optional<Invoice> getById(String id) {
@@ -44,6 +105,46 @@ public class InvoiceService {
         return repository.search(query);
     }
 
+    /**
+     * Returns the invoice with only the parts the projection needs loaded; the other
+     * collections are empty, so the invoice is only fit for writing the projection.
+     */
+    public Optional<Invoice> getById(String id, InvoiceProjection projection) {
+        return repository.findById(id, projection);
+    }
+
+    /**
+     * Returns every invoice, loaded as far as the projection needs.
+     */
+    public List<Invoice> getAll(InvoiceProjection projection) {
+        return repository.findAll(projection);
+    }
+
+    /**
+     * Searches invoices, loading the matches as far as the projection needs.
+     */
+    public List<Invoice> search(String query, InvoiceProjection projection) {
+        return repository.search(query, projection);
+    }
+
+    /**
+     * Returns the invoices changed and deleted after a change sequence number, for
+     * clients that keep a copy and sync incrementally.
+     * @param since The next value of the previous page, or 0 for a full sync
+     * @param limit The page size; larger values are capped at {@link #MAX_CHANGES_LIMIT}
+     * @return One page of changes in sequence order
+     * @throws IllegalArgumentException if since is negative or limit is not positive
+     */
+    public ChangeSet getChangesSince(long since, int limit) {
+        if (since < 0) {
+            throw new IllegalArgumentException("Change sequence cannot be negative");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        return repository.changesSince(since, Math.min(limit, MAX_CHANGES_LIMIT));
+    }
+
     public Invoice addLineItem(String invoiceId, String description, BigDecimal price) {
         if (invoiceId == null || invoiceId.trim().isEmpty()) {
             throw new IllegalArgumentException("Invoice ID cannot be null or empty");
@@ -55,11 +156,8 @@ public class InvoiceService {
             throw new IllegalArgumentException("Price cannot be null");
         }
         
-        Invoice invoice = repository.findById(invoiceId)
-                .orElseThrow(() -> new IllegalArgumentException("Invoice not found with ID: " + invoiceId));
-                
-        invoice.addItem(new LineItem(description.trim(), price));
-        return repository.save(invoice);
+        LineItem item = new LineItem(description.trim(), price);
+        return changed(repository.update(invoiceId, invoice -> invoice.addItem(item)));
     }
 
     public Invoice addPayment(String invoiceId, BigDecimal amount, String method, LocalDate date, String reference) {
@@ -78,9 +176,82 @@ public class InvoiceService {
         if (reference == null) {
             reference = "";
         }
-        return repository.addPayment(invoiceId.trim(), amount, method.trim(), date, reference);
+        return changed(repository.addPayment(invoiceId.trim(), amount, method.trim(), date, reference));
     }
     
+    /**
+     * Saves new invoices through the repository's bulk path.
+     * Invoices are validated on construction, so this only guards against nulls.
+     * @throws IllegalArgumentException if the list or any invoice in it is null
+     */
+    public List<Invoice> createInvoices(List<Invoice> invoices) {
+        if (invoices == null) {
+            throw new IllegalArgumentException("Invoices cannot be null");
+        }
+        for (Invoice invoice : invoices) {
+            if (invoice == null) {
+                throw new IllegalArgumentException("Invoices cannot be null");
+            }
+        }
+        if (invoices.isEmpty()) {
+            return List.of();
+        }
+        List<Invoice> saved = repository.saveAll(invoices);
+        saved.forEach(this::changed);
+        return saved;
+    }
+
+    /**
+     * Records payments against several invoices through the repository's bulk path.
+     * Each entry is validated like {@link #addPayment}; invalid entries are rejected
+     * without stopping the others.
+     * @return One result per entry, in the same order
+     */
+    public List<BatchResult> addPayments(List<PaymentEntry> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Payments cannot be null");
+        }
+        BatchResult[] results = new BatchResult[entries.size()];
+        List<PaymentEntry> valid = new ArrayList<>(entries.size());
+        List<Integer> positions = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            PaymentEntry entry = entries.get(i);
+            Payment payment = entry.getPayment();
+            String error = null;
+            if (payment.getAmount() == null) {
+                error = "Amount cannot be null";
+            } else if (payment.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+                error = "Amount must be positive";
+            } else if (payment.getMethod() == null || payment.getMethod().trim().isEmpty()) {
+                error = "Payment method cannot be null or empty";
+            }
+            if (error != null) {
+                results[i] = BatchResult.rejected(entry.getInvoiceId(), error);
+                continue;
+            }
+            valid.add(new PaymentEntry(entry.getInvoiceId(), new Payment(
+                    payment.getAmount(), payment.getMethod().trim(), payment.getDate(), payment.getReference())));
+            positions.add(i);
+        }
+        if (!valid.isEmpty()) {
+            List<BatchResult> applied = repository.addPayments(valid);
+            Set<String> paid = new LinkedHashSet<>();
+            for (int i = 0; i < applied.size(); i++) {
+                results[positions.get(i)] = applied.get(i);
+                if (applied.get(i).isOk()) {
+                    paid.add(applied.get(i).getInvoiceId());
+                }
+            }
+            // The bulk path returns no invoices, so only load them when someone is listening
+            if (!listeners.isEmpty()) {
+                for (String invoiceId : paid) {
+                    repository.findById(invoiceId).ifPresent(this::changed);
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
     public List<Payment> getPaymentHistory(String invoiceId) {
         if (invoiceId == null || invoiceId.trim().isEmpty()) {
             throw new IllegalArgumentException("Invoice ID cannot be null or empty");
@@ -94,7 +265,13 @@ public class InvoiceService {
         if (invoiceId == null || invoiceId.trim().isEmpty()) {
             throw new IllegalArgumentException("Invoice ID cannot be null or empty");
         }
-        return repository.deleteById(invoiceId.trim());
+        boolean removed = repository.deleteById(invoiceId.trim());
+        if (removed) {
+            for (InvoiceListener listener : listeners) {
+                listener.invoiceDeleted(invoiceId.trim());
+            }
+        }
+        return removed;
     }
     
     public Invoice updateInvoice(Invoice invoice) {
@@ -116,17 +293,14 @@ public class InvoiceService {
             throw new IllegalArgumentException("Invoice not found with ID: " + invoice.getId());
         }
         
-        return repository.save(invoice);
+        return changed(repository.save(invoice));
     }
 
     public Invoice updateLineItems(String invoiceId, List<LineItem> items) {
         if (invoiceId == null || invoiceId.trim().isEmpty()) {
             throw new IllegalArgumentException("Invoice ID cannot be null or empty");
         }
-        Invoice invoice = repository.findById(invoiceId.trim())
-                .orElseThrow(() -> new IllegalArgumentException("Invoice not found with ID: " + invoiceId));
-
-        invoice.getItems().clear();
+        List<LineItem> replacement = new ArrayList<>();
         if (items != null) {
             for (LineItem item : items) {
                 if (item == null) continue;
@@ -136,9 +310,12 @@ public class InvoiceService {
                 if (item.getPrice() == null) {
                     throw new IllegalArgumentException("Item price cannot be null");
                 }
-                invoice.addItem(new LineItem(item.getDescription().trim(), item.getPrice()));
+                replacement.add(new LineItem(item.getDescription().trim(), item.getPrice()));
             }
         }
-        return repository.save(invoice);
+        return changed(repository.update(invoiceId.trim(), invoice -> {
+            invoice.getItems().clear();
+            replacement.forEach(invoice::addItem);
+        }));
     }
 }
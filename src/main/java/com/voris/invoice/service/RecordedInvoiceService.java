@@ -0,0 +1,140 @@
+package com.voris.invoice.service;
+
+import com.voris.invoice.jfr.Recorded;
+import com.voris.invoice.jfr.ServiceEvent;
+import com.voris.invoice.model.IdGenerator;
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.model.Payment;
+import com.voris.invoice.repo.BatchResult;
+import com.voris.invoice.repo.ChangeSet;
+import com.voris.invoice.repo.InvoiceProjection;
+import com.voris.invoice.repo.InvoiceRepository;
+import com.voris.invoice.repo.PaymentEntry;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * An {@link InvoiceService} whose operations are {@link ServiceEvent}s in flight
+ * recordings that enable them. With the event disabled an operation costs one
+ * extra check.
+ */
+public class RecordedInvoiceService extends InvoiceService {
+
+    public RecordedInvoiceService(InvoiceRepository repository) {
+        super(repository);
+    }
+
+    public RecordedInvoiceService(InvoiceRepository repository, IdGenerator ids) {
+        super(repository, ids);
+    }
+
+    private static <T> T record(String operation, String invoiceId, Supplier<T> call) {
+        ServiceEvent event = new ServiceEvent();
+        if (!event.isEnabled()) {
+            return call.get();
+        }
+        event.begin();
+        T result = null;
+        try {
+            result = call.get();
+            return result;
+        } catch (RuntimeException e) {
+            event.failure = e.getClass().getName();
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.invoiceId = invoiceId;
+                event.rows = Recorded.rows(result);
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public Invoice createInvoice(String customerName, List<LineItem> items) {
+        return record("createInvoice", null, () -> super.createInvoice(customerName, items));
+    }
+
+    @Override
+    public Optional<Invoice> getById(String id) {
+        return record("getById", id, () -> super.getById(id));
+    }
+
+    @Override
+    public List<Invoice> getAll() {
+        return record("getAll", null, super::getAll);
+    }
+
+    @Override
+    public List<Invoice> search(String query) {
+        return record("search", null, () -> super.search(query));
+    }
+
+    @Override
+    public Optional<Invoice> getById(String id, InvoiceProjection projection) {
+        return record("getById", id, () -> super.getById(id, projection));
+    }
+
+    @Override
+    public List<Invoice> getAll(InvoiceProjection projection) {
+        return record("getAll", null, () -> super.getAll(projection));
+    }
+
+    @Override
+    public List<Invoice> search(String query, InvoiceProjection projection) {
+        return record("search", null, () -> super.search(query, projection));
+    }
+
+    @Override
+    public ChangeSet getChangesSince(long since, int limit) {
+        return record("getChangesSince", null, () -> super.getChangesSince(since, limit));
+    }
+
+    @Override
+    public Invoice addLineItem(String invoiceId, String description, BigDecimal price) {
+        return record("addLineItem", invoiceId, () -> super.addLineItem(invoiceId, description, price));
+    }
+
+    @Override
+    public Invoice addPayment(String invoiceId, BigDecimal amount, String method, LocalDate date, String reference) {
+        return record("addPayment", invoiceId, () -> super.addPayment(invoiceId, amount, method, date, reference));
+    }
+
+    @Override
+    public List<Invoice> createInvoices(List<Invoice> invoices) {
+        return record("createInvoices", null, () -> super.createInvoices(invoices));
+    }
+
+    @Override
+    public List<BatchResult> addPayments(List<PaymentEntry> entries) {
+        return record("addPayments", null, () -> super.addPayments(entries));
+    }
+
+    @Override
+    public List<Payment> getPaymentHistory(String invoiceId) {
+        return record("getPaymentHistory", invoiceId, () -> super.getPaymentHistory(invoiceId));
+    }
+
+    @Override
+    public boolean deleteInvoice(String invoiceId) {
+        return record("deleteInvoice", invoiceId, () -> super.deleteInvoice(invoiceId));
+    }
+
+    @Override
+    public Invoice updateInvoice(Invoice invoice) {
+        return record("updateInvoice", invoice == null ? null : invoice.getId(),
+                () -> super.updateInvoice(invoice));
+    }
+
+    @Override
+    public Invoice updateLineItems(String invoiceId, List<LineItem> items) {
+        return record("updateLineItems", invoiceId, () -> super.updateLineItems(invoiceId, items));
+    }
+}
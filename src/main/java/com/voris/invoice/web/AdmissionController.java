@@ -0,0 +1,281 @@
+package com.voris.invoice.web;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many requests run at once so that bursts are shed with a fast 503
+ * instead of piling up behind slow database calls until every client times out.
+ * <p>
+ * Reads and writes have separate {@link Limiter}s, so a burst of slow writes can't
+ * starve cheap reads. A request that finds its limiter full waits in a short,
+ * bounded queue; when the queue is full or the wait times out it is rejected.
+ * Each limit adapts to observed latency (AIMD): it grows by one per limit's worth
+ * of requests that finish within the target latency while the limiter is busy, and
+ * shrinks by a tenth, at most once per target interval, when requests take longer.
+ * A streamed response's latency ends when streaming starts (see {@link Permit#handled()}).
+ */
+public final class AdmissionController {
+    public static final int DEFAULT_READ_LIMIT = 32;
+    public static final int DEFAULT_WRITE_LIMIT = 4;
+    public static final int DEFAULT_QUEUE = 64;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 250;
+    public static final long DEFAULT_TARGET_MILLIS = 250;
+    /** Value of the Retry-After header sent with rejections */
+    public static final String RETRY_AFTER_SECONDS = "1";
+
+    public enum Kind { READ, WRITE }
+
+    private final Limiter reads;
+    private final Limiter writes;
+
+    public AdmissionController(Limiter reads, Limiter writes) {
+        this.reads = reads;
+        this.writes = writes;
+    }
+
+    /**
+     * Creates a controller whose limits start at the given values and may grow to
+     * eight times that.
+     */
+    public static AdmissionController withLimits(int readLimit, int writeLimit, int queueSize,
+                                                 long maxWaitMillis, long targetMillis) {
+        return new AdmissionController(
+                new Limiter(readLimit, readLimit * 8, queueSize, maxWaitMillis, targetMillis),
+                new Limiter(writeLimit, writeLimit * 8, queueSize, maxWaitMillis, targetMillis));
+    }
+
+    /**
+     * GET, HEAD and OPTIONS are reads; every other method is a write.
+     */
+    public static Kind kindOf(String method) {
+        String upper = method == null ? "" : method.toUpperCase(Locale.ROOT);
+        return switch (upper) {
+            case "GET", "HEAD", "OPTIONS" -> Kind.READ;
+            default -> Kind.WRITE;
+        };
+    }
+
+    /**
+     * Admits a request, waiting in the queue if its limiter is full.
+     *
+     * @param method the HTTP method of the request
+     * @return the permit to release when the request completes, or null if it is shed
+     */
+    public Permit admit(String method) throws InterruptedException {
+        Limiter limiter = kindOf(method) == Kind.READ ? reads : writes;
+        return limiter.acquire() ? new Permit(limiter) : null;
+    }
+
+    public Limiter.Stats readStats() {
+        return reads.stats();
+    }
+
+    public Limiter.Stats writeStats() {
+        return writes.stats();
+    }
+
+    /**
+     * A slot in a limiter, held for the duration of one request.
+     */
+    public static final class Permit {
+        private final Limiter limiter;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long handledNanos;
+
+        private Permit(Limiter limiter) {
+            this.limiter = limiter;
+        }
+
+        /**
+         * Stops the latency clock while keeping the slot, for a response that is about
+         * to be streamed: how fast a client reads says nothing about server load, so a
+         * slow reader shouldn't lower the limit. Only the first call counts.
+         */
+        public void handled() {
+            if (handledNanos == 0) {
+                handledNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * Frees the slot and reports the request's latency, up to {@link #handled()}
+         * if it was called; later calls do nothing.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                long end = handledNanos != 0 ? handledNanos : System.nanoTime();
+                limiter.release(end - startNanos);
+            }
+        }
+    }
+
+    /**
+     * A concurrency limit with a bounded wait queue, adapted to latency.
+     * Guarded by a ReentrantLock so that waiting virtual threads don't pin their carrier.
+     */
+    public static final class Limiter {
+        private static final double BACKOFF = 0.9;
+
+        private final int minLimit = 1;
+        private final int maxLimit;
+        private final int queueSize;
+        private final long maxWaitNanos;
+        private final long targetNanos;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+        // Guarded by lock
+        private double limit;
+        private int inFlight;
+        private int queued;
+        private long lastDecreaseNanos;
+        private long admitted;
+        private long rejected;
+        private long timedOut;
+
+        /**
+         * @param initialLimit the number of concurrent requests allowed at first
+         * @param maxLimit the most the limit may grow to
+         * @param queueSize the number of requests that may wait for a slot
+         * @param maxWaitMillis how long a request waits for a slot before it is rejected
+         * @param targetMillis the latency above which the limit is lowered
+         */
+        public Limiter(int initialLimit, int maxLimit, int queueSize, long maxWaitMillis, long targetMillis) {
+            if (initialLimit < minLimit || maxLimit < initialLimit || queueSize < 0
+                    || maxWaitMillis < 0 || targetMillis <= 0) {
+                throw new IllegalArgumentException("Invalid admission limits");
+            }
+            this.limit = initialLimit;
+            this.maxLimit = maxLimit;
+            this.queueSize = queueSize;
+            this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+            this.lastDecreaseNanos = System.nanoTime() - targetNanos;
+        }
+
+        boolean acquire() throws InterruptedException {
+            lock.lock();
+            try {
+                // Arrivals don't overtake queued requests
+                if (queued == 0 && inFlight < (int) limit) {
+                    inFlight++;
+                    admitted++;
+                    return true;
+                }
+                if (queued >= queueSize) {
+                    rejected++;
+                    return false;
+                }
+                queued++;
+                try {
+                    long nanos = maxWaitNanos;
+                    while (inFlight >= (int) limit) {
+                        if (nanos <= 0) {
+                            timedOut++;
+                            return false;
+                        }
+                        nanos = available.awaitNanos(nanos);
+                    }
+                    inFlight++;
+                    admitted++;
+                    return true;
+                } finally {
+                    queued--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(long latencyNanos) {
+            lock.lock();
+            try {
+                boolean busy = inFlight * 2 >= (int) limit;
+                inFlight--;
+                if (latencyNanos > targetNanos) {
+                    long now = System.nanoTime();
+                    // One decrease per interval, so a burst of slow requests isn't counted many times
+                    if (now - lastDecreaseNanos >= targetNanos) {
+                        limit = Math.max(minLimit, limit * BACKOFF);
+                        lastDecreaseNanos = now;
+                    }
+                } else if (busy) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+                if (queued > 0) {
+                    available.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public Stats stats() {
+            lock.lock();
+            try {
+                return new Stats((int) limit, inFlight, queued, admitted, rejected, timedOut);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * A point-in-time copy of a limiter's state and counters.
+         */
+        public static final class Stats {
+            private final int limit;
+            private final int inFlight;
+            private final int queued;
+            private final long admitted;
+            private final long rejected;
+            private final long timedOut;
+
+            Stats(int limit, int inFlight, int queued, long admitted, long rejected, long timedOut) {
+                this.limit = limit;
+                this.inFlight = inFlight;
+                this.queued = queued;
+                this.admitted = admitted;
+                this.rejected = rejected;
+                this.timedOut = timedOut;
+            }
+
+            public int getLimit() {
+                return limit;
+            }
+
+            public int getInFlight() {
+                return inFlight;
+            }
+
+            /** Requests currently waiting for a slot */
+            public int getQueued() {
+                return queued;
+            }
+
+            public long getAdmitted() {
+                return admitted;
+            }
+
+            /** Requests turned away because the queue was full */
+            public long getRejected() {
+                return rejected;
+            }
+
+            /** Requests turned away after waiting the maximum time */
+            public long getTimedOut() {
+                return timedOut;
+            }
+
+            /** Fraction of requests shed, 0 when none arrived */
+            public double getShedRatio() {
+                long shed = rejected + timedOut;
+                long total = admitted + shed;
+                return total == 0 ? 0 : (double) shed / total;
+            }
+        }
+    }
+}
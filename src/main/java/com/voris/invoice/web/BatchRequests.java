@@ -0,0 +1,201 @@
+package com.voris.invoice.web;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.model.Payment;
+import com.voris.invoice.repo.BatchResult;
+import com.voris.invoice.repo.PaymentEntry;
+import com.voris.invoice.service.InvoiceService;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Handles the bodies of the batch endpoints.
+ * A body is a JSON array that is read one element at a time, so only the current
+ * chunk of converted entries is held in memory. Each element is converted and
+ * validated on its own; a bad element is rejected without affecting the others.
+ * Valid entries are handed to the service in chunks, which the JDBC repository
+ * writes in one transaction each.
+ * <p>
+ * Chunks already written stay written if a later part of the body turns out to be
+ * malformed or a later chunk fails to save; the outcome then carries an error and
+ * results for every element processed so far.
+ */
+public final class BatchRequests {
+    /** Default number of entries handed to the service at a time */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final InvoiceService service;
+    private final int chunkSize;
+
+    public BatchRequests(InvoiceService service, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.service = service;
+        this.chunkSize = chunkSize;
+    }
+
+    public BatchRequests(InvoiceService service) {
+        this(service, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates one invoice per element of the form
+     * {@code {"customerName": "...", "items": [{"description": "...", "price": 1.5}]}}.
+     */
+    public Outcome createInvoices(Reader body) {
+        return process(body, this::toInvoice, invoices -> {
+            List<BatchResult> results = new ArrayList<>(invoices.size());
+            for (Invoice invoice : service.createInvoices(invoices)) {
+                results.add(BatchResult.ok(invoice.getId()));
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Records one payment per element of the form
+     * {@code {"invoiceId": "...", "amount": "10.00", "method": "CARD", "date": "2024-01-31", "reference": "..."}};
+     * date and reference are optional.
+     */
+    public Outcome addPayments(Reader body) {
+        return process(body, BatchRequests::toPaymentEntry, service::addPayments);
+    }
+
+    private <T> Outcome process(Reader body, Function<JsonObject, T> convert,
+                                Function<List<T>, List<BatchResult>> apply) {
+        List<BatchResult> results = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(chunkSize);
+        List<Integer> positions = new ArrayList<>(chunkSize);
+        JsonReader reader = new JsonReader(body);
+        String error = null;
+        try {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                return new Outcome(results, "Request body must be a JSON array");
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                JsonElement element = JsonParser.parseReader(reader);
+                results.add(null);
+                T entry;
+                try {
+                    if (!element.isJsonObject()) {
+                        throw new IllegalArgumentException("Entry must be a JSON object");
+                    }
+                    entry = convert.apply(element.getAsJsonObject());
+                } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException
+                         | DateTimeParseException e) {
+                    results.set(results.size() - 1, BatchResult.rejected(null, e.getMessage()));
+                    continue;
+                }
+                chunk.add(entry);
+                positions.add(results.size() - 1);
+                if (chunk.size() == chunkSize) {
+                    error = flush(chunk, positions, results, apply);
+                    if (error != null) {
+                        return new Outcome(results, error);
+                    }
+                }
+            }
+            reader.endArray();
+        } catch (IOException | JsonParseException e) {
+            error = "Malformed JSON: " + e.getMessage();
+        }
+        // Entries read before a syntax error were valid, so they are still applied
+        String flushError = flush(chunk, positions, results, apply);
+        return new Outcome(results, error != null ? error : flushError);
+    }
+
+    private static <T> String flush(List<T> chunk, List<Integer> positions, List<BatchResult> results,
+                                    Function<List<T>, List<BatchResult>> apply) {
+        if (chunk.isEmpty()) {
+            return null;
+        }
+        String error = null;
+        try {
+            List<BatchResult> applied = apply.apply(chunk);
+            for (int i = 0; i < applied.size(); i++) {
+                results.set(positions.get(i), applied.get(i));
+            }
+        } catch (RuntimeException e) {
+            error = "Failed to save batch: " + e.getMessage();
+            for (int position : positions) {
+                results.set(position, BatchResult.rejected(null, "Not saved"));
+            }
+        }
+        chunk.clear();
+        positions.clear();
+        return error;
+    }
+
+    private Invoice toInvoice(JsonObject json) {
+        Invoice invoice = service.newInvoice(string(json, "customerName"));
+        JsonElement items = json.get("items");
+        if (items != null && !items.isJsonNull()) {
+            for (JsonElement element : items.getAsJsonArray()) {
+                JsonObject item = element.getAsJsonObject();
+                String description = string(item, "description");
+                JsonElement price = item.get("price");
+                invoice.addItem(new LineItem(description == null ? null : description.trim(),
+                        price == null || price.isJsonNull() ? null : price.getAsBigDecimal()));
+            }
+        }
+        return invoice;
+    }
+
+    private static PaymentEntry toPaymentEntry(JsonObject json) {
+        JsonElement amount = json.get("amount");
+        String date = string(json, "date");
+        Payment payment = new Payment(
+                amount == null || amount.isJsonNull() ? null : amount.getAsBigDecimal(),
+                string(json, "method"),
+                date == null ? null : LocalDate.parse(date),
+                string(json, "reference"));
+        return new PaymentEntry(string(json, "invoiceId"), payment);
+    }
+
+    private static String string(JsonObject json, String name) {
+        JsonElement value = json.get(name);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    /**
+     * Per-element results of a batch, plus an error if the batch stopped early.
+     */
+    public static final class Outcome {
+        private final List<BatchResult> results;
+        private final String error;
+
+        Outcome(List<BatchResult> results, String error) {
+            this.results = results;
+            this.error = error;
+        }
+
+        /** One result per element read, in request order */
+        public List<BatchResult> getResults() {
+            return results;
+        }
+
+        /** Why the batch stopped early, or null if every element was read */
+        public String getError() {
+            return error;
+        }
+
+        public long getSucceeded() {
+            return results.stream().filter(BatchResult::isOk).count();
+        }
+    }
+}
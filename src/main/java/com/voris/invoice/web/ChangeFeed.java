@@ -0,0 +1,276 @@
+package com.voris.invoice.web;
+
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.service.InvoiceListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes invoice changes as server-sent events.
+ * Each change becomes one pre-formatted event frame:
+ * {@code invoice-changed} carries the invoice in the same JSON as
+ * {@code GET /invoices/:id}, and {@code invoice-deleted} carries {@code {"id": "..."}}.
+ * Event ids are {@code <epoch>.<sequence>}, where the epoch is unique to this process.
+ * <p>
+ * Events are numbered when they are published, after the write has committed, so
+ * two changes to the same invoice can be published in the opposite order to their
+ * commits. The invoice JSON carries the repository's {@code changeSeq} when it has
+ * one; clients keep the largest they have seen per invoice and ignore changes that
+ * don't exceed it.
+ * <p>
+ * The feed keeps the most recent events so a reconnecting client that sends
+ * {@code Last-Event-ID} is replayed what it missed. Each subscriber has a bounded
+ * buffer; when a slow subscriber's buffer is full the oldest event is dropped.
+ * Whenever a client can't be brought up to date from events alone (its buffer
+ * overflowed, or its last id is older than the history or from a previous process),
+ * it is sent a {@code reset} event and is expected to reload the full list.
+ */
+public final class ChangeFeed implements InvoiceListener {
+    public static final int DEFAULT_HISTORY = 1024;
+    public static final int DEFAULT_BUFFER = 256;
+
+    static final String RESET_FRAME = "event: reset\ndata: {}\n\n";
+    private static final byte[] HEARTBEAT = ": keep-alive\n\n".getBytes(StandardCharsets.US_ASCII);
+    // Tells EventSource how long to wait before reconnecting
+    private static final byte[] RETRY = "retry: 3000\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final String epoch;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final String[] history;
+    private int historyCount;
+    private long lastSequence;
+    private final Set<Subscription> subscribers = new HashSet<>();
+    private boolean closed;
+
+    /**
+     * @param historySize the number of recent events kept for resuming clients
+     * @param bufferSize the number of events buffered per subscriber
+     * @param maxSubscribers the number of concurrent subscribers allowed
+     */
+    public ChangeFeed(int historySize, int bufferSize, int maxSubscribers) {
+        this(Long.toString(System.currentTimeMillis(), 36), historySize, bufferSize, maxSubscribers);
+    }
+
+    ChangeFeed(String epoch, int historySize, int bufferSize, int maxSubscribers) {
+        if (historySize <= 0 || bufferSize <= 0 || maxSubscribers <= 0) {
+            throw new IllegalArgumentException("History, buffer and subscriber limits must be positive");
+        }
+        this.epoch = epoch;
+        this.history = new String[historySize];
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    @Override
+    public void invoiceChanged(Invoice invoice) {
+        publish("invoice-changed", InvoiceJsonWriter.toJson(invoice));
+    }
+
+    @Override
+    public void invoiceDeleted(String invoiceId) {
+        publish("invoice-deleted", InvoiceJsonWriter.idJson(invoiceId));
+    }
+
+    private void publish(String type, String data) {
+        lock.lock();
+        try {
+            long sequence = ++lastSequence;
+            String frame = "id: " + epoch + "." + sequence + "\nevent: " + type + "\ndata: " + data + "\n\n";
+            history[(int) ((sequence - 1) % history.length)] = frame;
+            historyCount = Math.min(historyCount + 1, history.length);
+            for (Subscription subscriber : subscribers) {
+                subscriber.offer(frame);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a subscription.
+     *
+     * @param lastEventId the Last-Event-ID sent by a reconnecting client, or null
+     * @return the subscription, or null if the subscriber limit has been reached
+     */
+    public Subscription subscribe(String lastEventId) {
+        lock.lock();
+        try {
+            if (closed || subscribers.size() >= maxSubscribers) {
+                return null;
+            }
+            Subscription subscription = new Subscription();
+            if (lastEventId != null && !lastEventId.isBlank()) {
+                List<String> missed = missedSince(lastEventId.trim());
+                if (missed == null || missed.size() > bufferSize) {
+                    subscription.queue.add(RESET_FRAME);
+                } else {
+                    subscription.queue.addAll(missed);
+                }
+            }
+            subscribers.add(subscription);
+            return subscription;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the events after the given id, or null if they are not all in the history.
+     */
+    private List<String> missedSince(String lastEventId) {
+        int dot = lastEventId.lastIndexOf('.');
+        if (dot < 0 || !lastEventId.substring(0, dot).equals(epoch)) {
+            return null;
+        }
+        long sequence;
+        try {
+            sequence = Long.parseLong(lastEventId.substring(dot + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        long oldest = lastSequence - historyCount + 1;
+        if (sequence > lastSequence || sequence < oldest - 1) {
+            return null;
+        }
+        List<String> missed = new ArrayList<>((int) (lastSequence - sequence));
+        for (long s = sequence + 1; s <= lastSequence; s++) {
+            missed.add(history[(int) ((s - 1) % history.length)]);
+        }
+        return missed;
+    }
+
+    public int subscriberCount() {
+        lock.lock();
+        try {
+            return subscribers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends every subscription and refuses new ones.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            for (Subscription subscriber : new ArrayList<>(subscribers)) {
+                subscriber.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the subscription's events to the stream until the subscription is closed,
+     * the client goes away or the thread is interrupted. A comment line is sent when
+     * nothing happens for heartbeatMillis, which also detects disconnected clients.
+     */
+    public static void pump(Subscription subscription, OutputStream out, long heartbeatMillis) {
+        try (subscription) {
+            out.write(RETRY);
+            out.flush();
+            while (true) {
+                String frame = subscription.next(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (subscription.isClosed()) {
+                    return;
+                }
+                out.write(frame == null ? HEARTBEAT : frame.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client disconnected
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One client's view of the feed. Closing it unsubscribes.
+     */
+    public final class Subscription implements AutoCloseable {
+        // Guarded by the feed's lock
+        private final ArrayDeque<String> queue = new ArrayDeque<>();
+        private final Condition available = lock.newCondition();
+        private boolean overflowed;
+        private boolean done;
+
+        private Subscription() {
+        }
+
+        private void offer(String frame) {
+            if (queue.size() >= bufferSize) {
+                queue.pollFirst();
+                overflowed = true;
+            }
+            queue.addLast(frame);
+            available.signal();
+        }
+
+        /**
+         * Waits for the next event frame.
+         *
+         * @return the frame, the reset frame if events were dropped, or null on timeout or close
+         */
+        public String next(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lock();
+            try {
+                while (!done && queue.isEmpty() && !overflowed) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = available.awaitNanos(nanos);
+                }
+                if (done) {
+                    return null;
+                }
+                if (overflowed) {
+                    // The client missed events; tell it to reload before sending newer ones
+                    overflowed = false;
+                    return RESET_FRAME;
+                }
+                return queue.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public boolean isClosed() {
+            lock.lock();
+            try {
+                return done;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                done = true;
+                subscribers.remove(this);
+                queue.clear();
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
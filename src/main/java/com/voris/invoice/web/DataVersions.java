@@ -0,0 +1,110 @@
+package com.voris.invoice.web;
+
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.service.InvoiceListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version counters behind the API's strong ETags.
+ * Registered as an {@link InvoiceListener}, every change made through the service
+ * bumps a global version and records it as the version of the changed invoice, so collection responses are tagged with the
+ * global version and single-invoice responses with the invoice's own version.
+ * Tags also carry an epoch that is unique to this process, so tags handed out
+ * before a restart never match.
+ * <p>
+ * Callers read the tag before loading data and call {@link #changed(String)} after
+ * a mutation has been applied. A response can then carry an older tag than its
+ * data, which only costs the client one more full response; it can never carry
+ * a newer one.
+ * <p>
+ * Deleted invoices keep their entry so an old tag for a removed id can't match
+ * again. Changes made outside this process, such as by the CLI writing to the
+ * same database, are not seen.
+ */
+public final class DataVersions implements InvoiceListener {
+    private final String epoch;
+    private final AtomicLong global = new AtomicLong();
+    private final ConcurrentMap<String, Long> invoices = new ConcurrentHashMap<>();
+
+    public DataVersions() {
+        this(Long.toString(System.currentTimeMillis(), 36));
+    }
+
+    DataVersions(String epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * Records a change to the given invoice.
+     */
+    public void changed(String invoiceId) {
+        long version = global.incrementAndGet();
+        invoices.merge(invoiceId, version, Math::max);
+    }
+
+    @Override
+    public void invoiceChanged(Invoice invoice) {
+        changed(invoice.getId());
+    }
+
+    @Override
+    public void invoiceDeleted(String invoiceId) {
+        changed(invoiceId);
+    }
+
+    /**
+     * Returns the number of invoices with a recorded version, deleted ones included.
+     */
+    public int trackedInvoices() {
+        return invoices.size();
+    }
+
+    public long globalVersion() {
+        return global.get();
+    }
+
+    /**
+     * Returns the tag for collection responses such as the invoice list and search.
+     */
+    public String collectionTag() {
+        return "\"" + epoch + "." + global.get() + "\"";
+    }
+
+    /**
+     * Returns the tag for responses about a single invoice.
+     */
+    public String invoiceTag(String invoiceId) {
+        return "\"" + epoch + ".i" + invoices.getOrDefault(invoiceId, 0L) + "\"";
+    }
+
+    /**
+     * Checks an If-None-Match header against a current tag, using the weak comparison
+     * RFC 7232 prescribes for If-None-Match. {@code *} always matches, since the
+     * check runs before anything is loaded to see whether the resource exists.
+     *
+     * @param ifNoneMatch the header value, possibly null or a comma-separated list
+     * @param etag the current strong tag, including quotes
+     * @return true if the client's copy is current
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,429 @@
+package com.voris.invoice.web;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Responses to mutating requests, kept by the client's {@code Idempotency-Key} so a
+ * retried request is answered with the original response instead of being applied
+ * twice.
+ * <p>
+ * The first request with a key claims it and runs; a duplicate that arrives while
+ * it runs waits for its response instead of running alongside it. A key sent with
+ * a different request (method, path or body) is a client error. Responses are kept
+ * for a fixed time from when the key was first seen, and the oldest completed keys
+ * are dropped once the store is full. Keys whose request is still running are never
+ * dropped, since a retry would then run it a second time; the store can go over its
+ * size by the number of requests in flight, which admission control bounds. If the
+ * request fails with an exception or a server error the key is released, so a
+ * retry runs again.
+ * <p>
+ * An optional {@link Persistence} keeps completed responses across restarts; the
+ * in-memory entries stay authoritative while the process runs.
+ */
+public final class IdempotencyStore {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    // Short, because a waiting duplicate still holds a request thread
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 2_000;
+    public static final int MAX_KEY_LENGTH = 255;
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Logger LOG = Logger.getLogger(IdempotencyStore.class.getName());
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long maxWaitMillis;
+    private final Persistence persistence;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock; insertion order is also expiry order for keys first seen here
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder mismatched = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private volatile long lastPurge;
+
+    /**
+     * @param maxEntries the number of keys kept in memory
+     * @param ttlMillis how long a key is kept after it is first seen
+     * @param maxWaitMillis how long a duplicate waits for the request it duplicates
+     * @param persistence where completed responses are also kept, or null
+     */
+    public IdempotencyStore(int maxEntries, long ttlMillis, long maxWaitMillis, Persistence persistence) {
+        this(maxEntries, ttlMillis, maxWaitMillis, persistence, System::currentTimeMillis);
+    }
+
+    IdempotencyStore(int maxEntries, long ttlMillis, long maxWaitMillis, Persistence persistence, LongSupplier clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive");
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("TTL must be positive");
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Max wait cannot be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        this.persistence = persistence;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the SHA-256 of everything that makes two requests the same request.
+     */
+    public static String requestHash(String method, String path, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((method + "\n" + path + "\n").getBytes(StandardCharsets.UTF_8));
+            if (body != null) {
+                digest.update(body);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Every JDK ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Claims a key for a request, or finds the response it already got. Waits while
+     * another request holds the key, up to the store's maximum wait.
+     *
+     * @throws IllegalArgumentException if the key is blank or longer than {@link #MAX_KEY_LENGTH}
+     */
+    public Claim claim(String key, String requestHash) {
+        return claim(key, requestHash, null);
+    }
+
+    /**
+     * Claims a key as {@link #claim(String, String)} does, running onWait once
+     * before the first wait for another request, so the caller can give up
+     * resources it holds while it waits.
+     *
+     * @param onWait run before waiting, or null
+     */
+    public Claim claim(String key, String requestHash, Runnable onWait) {
+        if (key == null || key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        while (true) {
+            Entry entry = find(key);
+            if (entry == null) {
+                Entry stored = load(key);
+                Entry created = new Entry(requestHash, clock.getAsLong() + ttlMillis);
+                lock.lock();
+                try {
+                    entry = find(key);
+                    if (entry == null) {
+                        entry = stored != null ? stored : created;
+                        entries.put(key, entry);
+                        evictOverflow();
+                        if (entry == created) {
+                            executed.increment();
+                            return new Claim(Outcome.EXECUTE, this, key, entry, null);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (!entry.requestHash.equals(requestHash)) {
+                mismatched.increment();
+                return new Claim(Outcome.MISMATCH, this, key, entry, null);
+            }
+            if (onWait != null && !entry.response.isDone()) {
+                onWait.run();
+                onWait = null;
+            }
+            StoredResponse response;
+            try {
+                response = entry.response.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                busy.increment();
+                return new Claim(Outcome.IN_PROGRESS, this, key, entry, null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                busy.increment();
+                return new Claim(Outcome.IN_PROGRESS, this, key, entry, null);
+            } catch (ExecutionException e) {
+                // Entries are only ever completed normally
+                throw new IllegalStateException(e.getCause());
+            }
+            if (response != null) {
+                replayed.increment();
+                return new Claim(Outcome.REPLAY, this, key, entry, response);
+            }
+            // The request that held the key failed and released it; try to claim it again
+        }
+    }
+
+    /**
+     * Returns the live entry for a key, dropping expired ones first. An expired key
+     * whose request is still running stays until it completes.
+     */
+    private Entry find(String key) {
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            Iterator<Entry> oldest = entries.values().iterator();
+            while (oldest.hasNext()) {
+                Entry entry = oldest.next();
+                if (entry.expiresAt > now) {
+                    break;
+                }
+                if (entry.response.isDone()) {
+                    oldest.remove();
+                }
+            }
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= now && entry.response.isDone()) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Drops the oldest completed keys while the store is over its size */
+    private void evictOverflow() {
+        Iterator<Entry> oldest = entries.values().iterator();
+        while (entries.size() > maxEntries && oldest.hasNext()) {
+            if (oldest.next().response.isDone()) {
+                oldest.remove();
+            }
+        }
+    }
+
+    private Entry load(String key) {
+        if (persistence == null) {
+            return null;
+        }
+        Record record;
+        try {
+            record = persistence.load(key);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Failed to load idempotency key", e);
+            return null;
+        }
+        if (record == null || record.getCreatedMillis() + ttlMillis <= clock.getAsLong()) {
+            return null;
+        }
+        Entry entry = new Entry(record.getRequestHash(), record.getCreatedMillis() + ttlMillis);
+        entry.response.complete(record.getResponse());
+        return entry;
+    }
+
+    private void complete(String key, Entry entry, StoredResponse response) {
+        entry.response.complete(response);
+        if (persistence != null) {
+            try {
+                persistence.save(key, new Record(entry.requestHash, response, entry.expiresAt - ttlMillis));
+                long now = clock.getAsLong();
+                if (now - lastPurge >= PURGE_INTERVAL_MILLIS) {
+                    lastPurge = now;
+                    persistence.purgeBefore(now - ttlMillis);
+                }
+            } catch (RuntimeException e) {
+                // The response is already applied and kept in memory; only restarts lose it
+                LOG.log(Level.WARNING, "Failed to persist idempotency key", e);
+            }
+        }
+    }
+
+    private void release(String key, Entry entry) {
+        lock.lock();
+        try {
+            entries.remove(key, entry);
+        } finally {
+            lock.unlock();
+        }
+        entry.response.complete(null);
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Requests that claimed a key and ran */
+    public long getExecuted() {
+        return executed.sum();
+    }
+
+    /** Duplicates answered with a stored response */
+    public long getReplayed() {
+        return replayed.sum();
+    }
+
+    /** Keys reused with a different request */
+    public long getMismatched() {
+        return mismatched.sum();
+    }
+
+    /** Duplicates that gave up waiting for the request they duplicate */
+    public long getBusy() {
+        return busy.sum();
+    }
+
+    public enum Outcome {
+        /** The caller holds the key and must run the request, then complete or release the claim */
+        EXECUTE,
+        /** The request already ran; answer with {@link Claim#getResponse()} */
+        REPLAY,
+        /** The key was used for a different request */
+        MISMATCH,
+        /** The request holding the key is still running */
+        IN_PROGRESS
+    }
+
+    public static final class Claim {
+        private final Outcome outcome;
+        private final IdempotencyStore store;
+        private final String key;
+        private final Entry entry;
+        private final StoredResponse response;
+        private boolean settled;
+
+        private Claim(Outcome outcome, IdempotencyStore store, String key, Entry entry, StoredResponse response) {
+            this.outcome = outcome;
+            this.store = store;
+            this.key = key;
+            this.entry = entry;
+            this.response = response;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public StoredResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * Stores the response of a request that ran and hands it to waiting duplicates.
+         */
+        public void complete(StoredResponse response) {
+            if (outcome != Outcome.EXECUTE || settled) {
+                return;
+            }
+            settled = true;
+            store.complete(key, entry, response);
+        }
+
+        /**
+         * Gives up the key without a response, so the next request with it runs.
+         */
+        public void release() {
+            if (outcome != Outcome.EXECUTE || settled) {
+                return;
+            }
+            settled = true;
+            store.release(key, entry);
+        }
+    }
+
+    /**
+     * Status, content type and body of a response as sent the first time.
+     */
+    public static final class StoredResponse {
+        private final int status;
+        private final String contentType;
+        private final String body;
+
+        public StoredResponse(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body == null ? "" : body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * A completed key as persisted.
+     */
+    public static final class Record {
+        private final String requestHash;
+        private final StoredResponse response;
+        private final long createdMillis;
+
+        public Record(String requestHash, StoredResponse response, long createdMillis) {
+            this.requestHash = requestHash;
+            this.response = response;
+            this.createdMillis = createdMillis;
+        }
+
+        public String getRequestHash() {
+            return requestHash;
+        }
+
+        public StoredResponse getResponse() {
+            return response;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+    }
+
+    /**
+     * Durable storage for completed keys. Calls happen outside the store's lock;
+     * failures are logged and the in-memory entry is used on its own.
+     */
+    public interface Persistence {
+        /** Returns the record for a key, or null */
+        Record load(String key);
+
+        void save(String key, Record record);
+
+        /** Deletes records created before the given time */
+        void purgeBefore(long createdMillis);
+    }
+
+    private static final class Entry {
+        final String requestHash;
+        final long expiresAt;
+        // Completed with the response, or with null when the key is released
+        final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+        Entry(String requestHash, long expiresAt) {
+            this.requestHash = requestHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.voris.invoice.web;
+
+import com.google.gson.stream.JsonWriter;
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.model.Payment;
+import com.voris.invoice.repo.BatchResult;
+import com.voris.invoice.repo.ChangeSet;
+import com.voris.invoice.repo.InvoiceProjection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes API responses straight from the model with a streaming {@link JsonWriter},
+ * without building DTOs or reflecting over classes.
+ * The output matches what the API returned before: invoice amounts are strings
+ * in plain notation, item prices are plain numbers, dates are ISO yyyy-MM-dd
+ * and null fields are left out.
+ */
+public final class InvoiceJsonWriter {
+    private static final String ID = "id";
+    private static final String CUSTOMER_NAME = "customerName";
+    private static final String DATE = "date";
+    private static final String TOTAL = "total";
+    private static final String PAID = "paid";
+    private static final String AMOUNT_PAID = "amountPaid";
+    private static final String REMAINING_BALANCE = "remainingBalance";
+    private static final String ITEMS = "items";
+    private static final String PAYMENT_HISTORY = "paymentHistory";
+    private static final String CHANGE_SEQ = "changeSeq";
+    private static final String DESCRIPTION = "description";
+    private static final String PRICE = "price";
+    private static final String AMOUNT = "amount";
+    private static final String METHOD = "method";
+    private static final String REFERENCE = "reference";
+    private static final String ERROR = "error";
+    private static final String MESSAGE = "message";
+    private static final String SUCCEEDED = "succeeded";
+    private static final String FAILED = "failed";
+    private static final String RESULTS = "results";
+    private static final String INDEX = "index";
+    private static final String STATUS = "status";
+    private static final String INVOICE_ID = "invoiceId";
+    private static final String NEXT = "next";
+    private static final String HAS_MORE = "hasMore";
+    private static final String RESET = "reset";
+    private static final String CHANGED = "changed";
+    private static final String DELETED = "deleted";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private InvoiceJsonWriter() {
+    }
+
+    /**
+     * Opens a buffered UTF-8 writer on the stream. Closing it closes the stream.
+     */
+    public static JsonWriter open(OutputStream out) {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+        writer.setSerializeNulls(false);
+        return writer;
+    }
+
+    /**
+     * Opens a writer with the same settings on a character stream, for bodies built in memory.
+     */
+    public static JsonWriter open(Writer out) {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setSerializeNulls(false);
+        return writer;
+    }
+
+    public static void writeInvoices(JsonWriter out, List<Invoice> invoices) throws IOException {
+        out.beginArray();
+        for (Invoice invoice : invoices) {
+            writeInvoice(out, invoice);
+        }
+        out.endArray();
+    }
+
+    public static void writeInvoice(JsonWriter out, Invoice invoice) throws IOException {
+        out.beginObject();
+        writeSummaryFields(out, invoice);
+        out.name(ITEMS).beginArray();
+        for (LineItem item : invoice.getItems()) {
+            writeItem(out, item);
+        }
+        out.endArray();
+        out.name(PAYMENT_HISTORY);
+        writePayments(out, invoice.getPaymentHistory());
+        if (invoice.getChangeSequence() > 0) {
+            out.name(CHANGE_SEQ).value(invoice.getChangeSequence());
+        }
+        out.endObject();
+    }
+
+    public static void writeInvoices(JsonWriter out, List<Invoice> invoices, InvoiceProjection projection)
+            throws IOException {
+        if (projection.isAll()) {
+            writeInvoices(out, invoices);
+            return;
+        }
+        out.beginArray();
+        for (Invoice invoice : invoices) {
+            writeInvoice(out, invoice, projection);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Writes only the fields and children in the projection, in the same order as
+     * {@link #writeInvoice(JsonWriter, Invoice)}. Derived amounts left out are not
+     * computed.
+     */
+    public static void writeInvoice(JsonWriter out, Invoice invoice, InvoiceProjection projection) throws IOException {
+        if (projection.isAll()) {
+            writeInvoice(out, invoice);
+            return;
+        }
+        out.beginObject();
+        for (InvoiceProjection.Field field : projection.getFields()) {
+            out.name(field.getJsonName());
+            switch (field) {
+                case ID -> out.value(invoice.getId());
+                case CUSTOMER_NAME -> out.value(invoice.getCustomerName());
+                case DATE -> out.value(isoDate(invoice.getDate()));
+                case TOTAL -> out.value(plain(invoice.getTotal()));
+                case PAID -> out.value(invoice.isPaid());
+                case AMOUNT_PAID -> out.value(plain(invoice.getAmountPaid()));
+                case REMAINING_BALANCE -> out.value(plain(invoice.getRemainingBalance()));
+            }
+        }
+        if (projection.includesItems()) {
+            out.name(ITEMS).beginArray();
+            for (LineItem item : invoice.getItems()) {
+                writeItem(out, item);
+            }
+            out.endArray();
+        }
+        if (projection.includesPayments()) {
+            out.name(PAYMENT_HISTORY);
+            writePayments(out, invoice.getPaymentHistory());
+        }
+        out.endObject();
+    }
+
+    static void writeItem(JsonWriter out, LineItem item) throws IOException {
+        if (item == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(DESCRIPTION).value(item.getDescription());
+        BigDecimal price = item.getPrice();
+        if (price != null) {
+            // toPlainString is always a valid JSON number, so it can be written raw
+            out.name(PRICE).jsonValue(price.toPlainString());
+        }
+        out.endObject();
+    }
+
+    public static void writePayments(JsonWriter out, List<Payment> payments) throws IOException {
+        out.beginArray();
+        for (Payment payment : payments) {
+            out.beginObject();
+            out.name(AMOUNT).value(plain(payment.getAmount()));
+            out.name(METHOD).value(payment.getMethod());
+            out.name(DATE).value(isoDate(payment.getDate()));
+            out.name(REFERENCE).value(payment.getReference());
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    /**
+     * Writes the outcome of a batch request as
+     * {@code {"succeeded": n, "failed": n, "error": "...", "results": [{"index": 0, "status": "ok", "invoiceId": "..."}]}};
+     * the error is only present if the batch stopped early.
+     */
+    public static void writeBatch(JsonWriter out, BatchRequests.Outcome outcome) throws IOException {
+        List<BatchResult> results = outcome.getResults();
+        long succeeded = outcome.getSucceeded();
+        out.beginObject();
+        out.name(SUCCEEDED).value(succeeded);
+        out.name(FAILED).value(results.size() - succeeded);
+        out.name(ERROR).value(outcome.getError());
+        out.name(RESULTS).beginArray();
+        for (int i = 0; i < results.size(); i++) {
+            BatchResult result = results.get(i);
+            out.beginObject();
+            out.name(INDEX).value(i);
+            out.name(STATUS).value(result.getStatus().name().toLowerCase(Locale.ROOT));
+            out.name(INVOICE_ID).value(result.getInvoiceId());
+            out.name(ERROR).value(result.getError());
+            out.endObject();
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    /**
+     * Writes a page of changes as
+     * {@code {"next": n, "hasMore": false, "reset": false, "changed": [...], "deleted": ["id"]}},
+     * where each changed invoice is a summary without its items and payments.
+     */
+    public static void writeChanges(JsonWriter out, ChangeSet changes) throws IOException {
+        out.beginObject();
+        out.name(NEXT).value(changes.getNext());
+        out.name(HAS_MORE).value(changes.hasMore());
+        out.name(RESET).value(changes.isReset());
+        out.name(CHANGED).beginArray();
+        for (Invoice invoice : changes.getChanged()) {
+            writeSummary(out, invoice);
+        }
+        out.endArray();
+        out.name(DELETED).beginArray();
+        for (String id : changes.getDeleted()) {
+            out.value(id);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    /**
+     * Writes the invoice as {@link #writeInvoice} does, without items and payments.
+     */
+    static void writeSummary(JsonWriter out, Invoice invoice) throws IOException {
+        out.beginObject();
+        writeSummaryFields(out, invoice);
+        out.endObject();
+    }
+
+    private static void writeSummaryFields(JsonWriter out, Invoice invoice) throws IOException {
+        out.name(ID).value(invoice.getId());
+        out.name(CUSTOMER_NAME).value(invoice.getCustomerName());
+        out.name(DATE).value(isoDate(invoice.getDate()));
+        out.name(TOTAL).value(plain(invoice.getTotal()));
+        out.name(PAID).value(invoice.isPaid());
+        out.name(AMOUNT_PAID).value(plain(invoice.getAmountPaid()));
+        out.name(REMAINING_BALANCE).value(plain(invoice.getRemainingBalance()));
+    }
+
+    /**
+     * Returns the invoice as a JSON string, in the same form as {@link #writeInvoice}.
+     */
+    public static String toJson(Invoice invoice) {
+        StringWriter text = new StringWriter(256);
+        try (JsonWriter out = new JsonWriter(text)) {
+            out.setSerializeNulls(false);
+            writeInvoice(out, invoice);
+        } catch (IOException e) {
+            // A StringWriter never throws
+            throw new UncheckedIOException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns {@code {"id": id}} as a string.
+     */
+    public static String idJson(String id) {
+        StringWriter text = new StringWriter(64);
+        try (JsonWriter out = new JsonWriter(text)) {
+            out.beginObject();
+            out.name(ID).value(id);
+            out.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns {@code {"error": error}} as a string, for short error responses.
+     */
+    public static String error(String error) {
+        return error(error, null);
+    }
+
+    /**
+     * Returns {@code {"error": error, "message": message}} as a string, leaving out
+     * the message when it is null.
+     */
+    public static String error(String error, String message) {
+        StringWriter text = new StringWriter(64);
+        try (JsonWriter out = new JsonWriter(text)) {
+            out.setSerializeNulls(false);
+            out.beginObject();
+            out.name(ERROR).value(error);
+            out.name(MESSAGE).value(message);
+            out.endObject();
+        } catch (IOException e) {
+            // A StringWriter never throws
+            throw new UncheckedIOException(e);
+        }
+        return text.toString();
+    }
+
+    private static String plain(BigDecimal value) {
+        return value == null ? null : value.toPlainString();
+    }
+
+    /**
+     * Formats a date as yyyy-MM-dd without going through a formatter; years outside
+     * 0..9999 fall back to {@link LocalDate#toString()}.
+     */
+    static String isoDate(LocalDate date) {
+        if (date == null) {
+            return null;
+        }
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            return date.toString();
+        }
+        int month = date.getMonthValue();
+        int day = date.getDayOfMonth();
+        char[] chars = {
+                (char) ('0' + year / 1000), (char) ('0' + year / 100 % 10),
+                (char) ('0' + year / 10 % 10), (char) ('0' + year % 10), '-',
+                (char) ('0' + month / 10), (char) ('0' + month % 10), '-',
+                (char) ('0' + day / 10), (char) ('0' + day % 10)
+        };
+        return new String(chars);
+    }
+}
@@ -0,0 +1,88 @@
+package com.voris.invoice.web;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Keeps completed idempotency keys in an {@code idempotency_keys} table, normally in
+ * the invoice database, so retries are still recognised after a restart.
+ */
+public class JdbcIdempotencyPersistence implements IdempotencyStore.Persistence {
+    private final String jdbcUrl;
+
+    public JdbcIdempotencyPersistence(String jdbcUrl) {
+        this.jdbcUrl = jdbcUrl;
+        initializeSchema();
+    }
+
+    private void initializeSchema() {
+        try (Connection conn = DriverManager.getConnection(jdbcUrl);
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS idempotency_keys (" +
+                    "idempotency_key TEXT PRIMARY KEY, " +
+                    "request_hash TEXT NOT NULL, " +
+                    "status INTEGER NOT NULL, " +
+                    "content_type TEXT, " +
+                    "body TEXT NOT NULL, " +
+                    "created_at INTEGER NOT NULL" +   // Epoch milliseconds when the key was first seen
+                    ")");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_idempotency_keys_created ON idempotency_keys(created_at)");
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed initializing idempotency schema", e);
+        }
+    }
+
+    @Override
+    public IdempotencyStore.Record load(String key) {
+        String sql = "SELECT request_hash, status, content_type, body, created_at FROM idempotency_keys " +
+                "WHERE idempotency_key = ?";
+        try (Connection conn = DriverManager.getConnection(jdbcUrl);
+             PreparedStatement st = conn.prepareStatement(sql)) {
+            st.setString(1, key);
+            try (ResultSet rs = st.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                IdempotencyStore.StoredResponse response = new IdempotencyStore.StoredResponse(
+                        rs.getInt("status"), rs.getString("content_type"), rs.getString("body"));
+                return new IdempotencyStore.Record(rs.getString("request_hash"), response, rs.getLong("created_at"));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to load idempotency key", e);
+        }
+    }
+
+    @Override
+    public void save(String key, IdempotencyStore.Record record) {
+        String sql = "INSERT OR REPLACE INTO idempotency_keys " +
+                "(idempotency_key, request_hash, status, content_type, body, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+        try (Connection conn = DriverManager.getConnection(jdbcUrl);
+             PreparedStatement st = conn.prepareStatement(sql)) {
+            IdempotencyStore.StoredResponse response = record.getResponse();
+            st.setString(1, key);
+            st.setString(2, record.getRequestHash());
+            st.setInt(3, response.getStatus());
+            st.setString(4, response.getContentType());
+            st.setString(5, response.getBody());
+            st.setLong(6, record.getCreatedMillis());
+            st.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to save idempotency key", e);
+        }
+    }
+
+    @Override
+    public void purgeBefore(long createdMillis) {
+        try (Connection conn = DriverManager.getConnection(jdbcUrl);
+             PreparedStatement st = conn.prepareStatement("DELETE FROM idempotency_keys WHERE created_at < ?")) {
+            st.setLong(1, createdMillis);
+            st.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to purge idempotency keys", e);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.voris.invoice.web;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Negotiated gzip for streamed responses.
+ * A response is buffered until it grows past the threshold; smaller bodies go out
+ * uncompressed with a Content-Length, larger ones switch to gzip on the fly. The
+ * {@link Deflater}s and the buffers they work with are pooled and reused across
+ * responses instead of being allocated per request; a burst beyond the pool size
+ * gets temporary compressors that are released when the response ends.
+ * <p>
+ * Only gzip is offered: there is no pure-Java Brotli encoder to use. The ETag is
+ * shared by the plain and gzip forms of a response, which is safe because the
+ * API serves no range requests.
+ */
+public final class ResponseCompression {
+    /** Default size below which responses are sent uncompressed */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    private static final int OUTPUT_BUFFER = 8192;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final int threshold;
+    private final int level;
+    private final BlockingQueue<Compressor> pool;
+
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+
+    /**
+     * @param threshold responses up to this many bytes are sent uncompressed
+     * @param level the deflate level, 1 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param poolSize the number of compressors kept for reuse
+     * @throws IllegalArgumentException if an argument is out of range
+     */
+    public ResponseCompression(int threshold, int level, int poolSize) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        }
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < 1 || level > 9)) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9");
+        }
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        this.threshold = threshold;
+        this.level = level;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    public ResponseCompression() {
+        this(DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Returns the stream a response body should be written to. Closing it completes
+     * the response.
+     */
+    public OutputStream wrap(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader("Vary", "Accept-Encoding");
+        if (!acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            responses.increment();
+            return response.getOutputStream();
+        }
+        return compress((gzip, length) -> {
+            if (gzip) {
+                response.setHeader("Content-Encoding", "gzip");
+            } else {
+                response.setContentLength(length);
+            }
+            return response.getOutputStream();
+        });
+    }
+
+    /**
+     * Opens the real output once it is known whether the body will be compressed.
+     */
+    interface Target {
+        /**
+         * @param gzip whether the body is gzip-encoded
+         * @param length the body length for uncompressed bodies, otherwise -1
+         */
+        OutputStream open(boolean gzip, int length) throws IOException;
+    }
+
+    OutputStream compress(Target target) {
+        return new ThresholdGzipStream(target, borrow());
+    }
+
+    /**
+     * Checks whether an Accept-Encoding header allows gzip, honouring {@code q=0}.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean gzip = false;
+        boolean wildcard = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            boolean refused = false;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                if (refused) {
+                    return false;
+                }
+                gzip = true;
+            } else if (coding.equals("*")) {
+                wildcard = !refused;
+            }
+        }
+        return gzip || wildcard;
+    }
+
+    private Compressor borrow() {
+        Compressor compressor = pool.poll();
+        return compressor != null ? compressor : new Compressor(level, threshold);
+    }
+
+    private void release(Compressor compressor) {
+        compressor.deflater.reset();
+        compressor.crc.reset();
+        if (!pool.offer(compressor)) {
+            compressor.deflater.end();
+        }
+    }
+
+    /**
+     * Returns the number of idle compressors waiting in the pool.
+     */
+    public int pooledCompressors() {
+        return pool.size();
+    }
+
+    public Stats stats() {
+        return new Stats(responses.sum(), compressedResponses.sum(), bytesIn.sum(), bytesOut.sum(), compressNanos.sum());
+    }
+
+    private static final class Compressor {
+        final Deflater deflater;
+        final CRC32 crc = new CRC32();
+        final byte[] pending;
+        final byte[] output = new byte[OUTPUT_BUFFER];
+
+        Compressor(int level, int threshold) {
+            this.deflater = new Deflater(level, true);
+            this.pending = new byte[threshold];
+        }
+    }
+
+    /**
+     * Buffers up to the threshold, then writes a gzip member: the fixed header, the
+     * raw deflate stream and a trailer with the CRC-32 and length of the input.
+     */
+    private final class ThresholdGzipStream extends OutputStream {
+        private final Target target;
+        private Compressor compressor;
+        private int pendingCount;
+        private OutputStream out;
+        private long inputBytes;
+        private long nanos;
+        private boolean closed;
+
+        ThresholdGzipStream(Target target, Compressor compressor) {
+            this.target = target;
+            this.compressor = compressor;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (out == null) {
+                if (pendingCount + len <= compressor.pending.length) {
+                    System.arraycopy(b, off, compressor.pending, pendingCount, len);
+                    pendingCount += len;
+                    return;
+                }
+                out = target.open(true, -1);
+                out.write(GZIP_HEADER);
+                deflate(compressor.pending, 0, pendingCount);
+            }
+            deflate(b, off, len);
+        }
+
+        private void deflate(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            Deflater deflater = compressor.deflater;
+            compressor.crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drain(deflater);
+            }
+            inputBytes += len;
+            nanos += System.nanoTime() - start;
+        }
+
+        private void drain(Deflater deflater) throws IOException {
+            int n = deflater.deflate(compressor.output);
+            if (n > 0) {
+                out.write(compressor.output, 0, n);
+            }
+        }
+
+        private void finish() throws IOException {
+            long start = System.nanoTime();
+            Deflater deflater = compressor.deflater;
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(deflater);
+            }
+            byte[] trailer = new byte[8];
+            writeIntLe(trailer, 0, (int) compressor.crc.getValue());
+            writeIntLe(trailer, 4, (int) inputBytes);
+            out.write(trailer);
+            nanos += System.nanoTime() - start;
+            compressedResponses.increment();
+            bytesIn.add(inputBytes);
+            bytesOut.add(GZIP_HEADER.length + deflater.getBytesWritten() + trailer.length);
+            compressNanos.add(nanos);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Below the threshold there is nothing to flush yet; once compressing,
+            // deflate output is only forced at the end so the ratio isn't hurt
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (out == null) {
+                    out = target.open(false, pendingCount);
+                    out.write(compressor.pending, 0, pendingCount);
+                } else {
+                    finish();
+                }
+                responses.increment();
+            } finally {
+                release(compressor);
+                compressor = null;
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+    }
+
+    private static void writeIntLe(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+        b[off + 2] = (byte) (value >>> 16);
+        b[off + 3] = (byte) (value >>> 24);
+    }
+
+    /**
+     * Point-in-time compression counters.
+     */
+    public static final class Stats {
+        private final long responses;
+        private final long compressedResponses;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final long compressNanos;
+
+        Stats(long responses, long compressedResponses, long bytesIn, long bytesOut, long compressNanos) {
+            this.responses = responses;
+            this.compressedResponses = compressedResponses;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.compressNanos = compressNanos;
+        }
+
+        /** Number of streamed responses, compressed or not */
+        public long getResponses() {
+            return responses;
+        }
+
+        /** Number of responses sent with gzip */
+        public long getCompressedResponses() {
+            return compressedResponses;
+        }
+
+        /** Uncompressed bytes of the gzip responses */
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        /** Bytes sent for the gzip responses, including gzip framing */
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        /** Time spent compressing */
+        public long getCompressNanos() {
+            return compressNanos;
+        }
+
+        /**
+         * Returns compressed size over uncompressed size, or 1 if nothing was compressed.
+         */
+        public double getRatio() {
+            return bytesIn == 0 ? 1.0 : (double) bytesOut / bytesIn;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "responses=" + responses +
+                    ", compressedResponses=" + compressedResponses +
+                    ", bytesIn=" + bytesIn +
+                    ", bytesOut=" + bytesOut +
+                    ", compressNanos=" + compressNanos +
+                    '}';
+        }
+    }
+}
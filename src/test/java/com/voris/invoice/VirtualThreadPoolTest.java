@@ -0,0 +1,79 @@
+package com.voris.invoice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadPoolTest {
+
+    @Test
+    void execute_RunsTaskOnVirtualThread() throws Exception {
+        // Arrange
+        VirtualThreadPool pool = new VirtualThreadPool();
+        pool.start();
+        AtomicBoolean virtual = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Act
+        pool.execute(() -> {
+            virtual.set(Thread.currentThread().isVirtual());
+            done.countDown();
+        });
+
+        // Assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(virtual.get());
+        pool.stop();
+        pool.join();
+    }
+
+    @Test
+    void getThreads_WhileTasksBlock_CountsRunningTasks() throws Exception {
+        // Arrange
+        VirtualThreadPool pool = new VirtualThreadPool();
+        pool.start();
+        CountDownLatch started = new CountDownLatch(100);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            pool.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        // Assert
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(100, pool.getThreads());
+        assertFalse(pool.isLowOnThreads());
+        release.countDown();
+        pool.stop();
+        pool.join();
+        assertEquals(0, pool.getThreads());
+    }
+
+    @Test
+    void join_AfterStopWithoutStart_Returns() throws Exception {
+        // Arrange
+        VirtualThreadPool pool = new VirtualThreadPool();
+        CountDownLatch done = new CountDownLatch(1);
+        pool.execute(done::countDown);
+
+        // Act
+        pool.stop();
+        pool.join();
+
+        // Assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pool.getThreads());
+    }
+}
@@ -0,0 +1,127 @@
+package com.voris.invoice.jfr;
+
+import com.voris.invoice.metrics.MetricsRegistry;
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.repo.BatchResult;
+import com.voris.invoice.repo.InMemoryInvoiceRepository;
+import com.voris.invoice.repo.TimedInvoiceRepository;
+import com.voris.invoice.service.InvoiceService;
+import com.voris.invoice.service.RecordedInvoiceService;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordingSummaryTest {
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("invoice-", ".jfr");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void read_RecordingWithInvoiceEvents_SummarisesServiceAndRepository() throws Exception {
+        // Arrange
+        InvoiceService service = new RecordedInvoiceService(
+                new TimedInvoiceRepository(new InMemoryInvoiceRepository(), new MetricsRegistry()));
+
+        // Act
+        try (Recording recording = new Recording()) {
+            recording.enable(ServiceEvent.NAME).withThreshold(Duration.ZERO);
+            recording.enable(RepositoryEvent.NAME).withThreshold(Duration.ZERO);
+            recording.start();
+            Invoice invoice = service.createInvoice("Acme", List.of(new LineItem("Widget", BigDecimal.TEN)));
+            service.getById(invoice.getId());
+            service.getById("missing");
+            assertThrows(IllegalArgumentException.class, () -> service.deleteInvoice(" "));
+            recording.stop();
+            recording.dump(file);
+        }
+        String text = write(RecordingSummary.read(file));
+
+        // Assert
+        assertTrue(text.contains("Service operations"), text);
+        assertTrue(text.contains("Repository calls"), text);
+        assertTrue(text.matches("(?s).*\\n  getById +2 +0 .* 1 +-\\n.*"), text);
+        assertTrue(text.matches("(?s).*\\n  deleteInvoice +1 +1 .*"), text);
+        assertTrue(text.matches("(?s).*\\n  findById +2 +0 .* 1 +0\\n.*"), text);
+        assertFalse(text.contains("HTTP requests"));
+    }
+
+    @Test
+    void read_RecordingWithoutInvoiceEvents_SaysSo() throws Exception {
+        // Arrange
+        InvoiceService service = new RecordedInvoiceService(new InMemoryInvoiceRepository());
+
+        // Act
+        try (Recording recording = new Recording()) {
+            recording.start();
+            service.getAll();
+            recording.stop();
+            recording.dump(file);
+        }
+        String text = write(RecordingSummary.read(file));
+
+        // Assert
+        assertTrue(text.startsWith("No invoice events"), text);
+    }
+
+    @Test
+    void write_OrdersByTotalTimeAndReportsPercentiles() {
+        // Arrange
+        RecordingSummary summary = new RecordingSummary();
+        for (int i = 1; i <= 100; i++) {
+            summary.add(HttpRequestEvent.NAME, "GET /invoices/:id", i * 1_000_000L, i == 100, 1, 1);
+        }
+        summary.add(HttpRequestEvent.NAME, "GET /health", 1_000_000L, false, 0, 0);
+
+        // Act
+        String text = write(summary);
+
+        // Assert
+        assertTrue(text.indexOf("GET /invoices/:id") < text.indexOf("GET /health"), text);
+        assertTrue(text.contains("repo calls"), text);
+        assertTrue(text.matches("(?s).*GET /invoices/:id +100 +1 +5050\\.0 +50\\.000 +99\\.000 +100\\.000 +100 +100\\n.*"),
+                text);
+    }
+
+    @Test
+    void rows_CountsWhatCallsReturn() {
+        // Assert
+        assertEquals(0, Recorded.rows(null));
+        assertEquals(0, Recorded.rows(false));
+        assertEquals(1, Recorded.rows(true));
+        assertEquals(0, Recorded.rows(Optional.empty()));
+        assertEquals(1, Recorded.rows(new Invoice("Acme")));
+        assertEquals(2, Recorded.rows(List.of(new Invoice("Acme"), new Invoice("Beta"))));
+        assertEquals(1, Recorded.rows(List.of(BatchResult.rejected("x", "No"),
+                BatchResult.ok("y"))));
+    }
+
+    private static String write(RecordingSummary summary) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        summary.write(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
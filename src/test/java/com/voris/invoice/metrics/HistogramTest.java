@@ -0,0 +1,88 @@
+package com.voris.invoice.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+    @Test
+    void bucket_UsesSmallestBucketAtOrAboveTheValue() {
+        // Arrange
+        long min = 1L << Histogram.MIN_EXPONENT;
+
+        // Assert
+        assertEquals(0, Histogram.bucket(0));
+        assertEquals(0, Histogram.bucket(min));
+        assertEquals(1, Histogram.bucket(min + 1));
+        assertEquals(1, Histogram.bucket(min + min / 4));
+        assertEquals(2, Histogram.bucket(min + min / 4 + 1));
+        assertEquals(Histogram.SUB_BUCKETS, Histogram.bucket(2 * min));
+        assertEquals(Histogram.SUB_BUCKETS + 1, Histogram.bucket(2 * min + 1));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(1L << Histogram.MAX_EXPONENT));
+        assertEquals(Histogram.BUCKETS, Histogram.bucket((1L << Histogram.MAX_EXPONENT) + 1));
+        assertEquals(Histogram.BUCKETS, Histogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    void bucket_KeepsEveryValueWithinAQuarterOfItsUpperBound() {
+        for (long nanos = (1L << Histogram.MIN_EXPONENT) + 1; nanos <= 1L << Histogram.MAX_EXPONENT;
+             nanos += nanos / 7 + 1) {
+            // Act
+            int bucket = Histogram.bucket(nanos);
+            long upper = Histogram.upperBoundNanos(bucket);
+            long lower = Histogram.upperBoundNanos(bucket - 1);
+
+            // Assert
+            assertTrue(nanos > lower && nanos <= upper, nanos + " in bucket " + bucket);
+            assertTrue(upper <= lower + lower / 4, "bucket " + bucket + " is too wide");
+        }
+    }
+
+    @Test
+    void snapshot_ReportsCumulativeCountsAndSum() {
+        // Arrange
+        Histogram histogram = new Histogram();
+
+        // Act
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(10));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.MINUTES.toNanos(5));
+        Histogram.Snapshot snapshot = histogram.snapshot();
+
+        // Assert
+        assertEquals("0.000065536", snapshot.upperBound(0));
+        assertEquals(1, snapshot.cumulativeCount(0));
+        assertEquals(2, snapshot.cumulativeCount(Histogram.bucket(TimeUnit.MILLISECONDS.toNanos(3))));
+        assertEquals(2, snapshot.cumulativeCount(Histogram.BUCKETS - 1));
+        assertEquals(3, snapshot.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(10) + TimeUnit.MILLISECONDS.toNanos(3) + TimeUnit.MINUTES.toNanos(5),
+                snapshot.getSumNanos());
+    }
+
+    @Test
+    void record_FromManyThreads_LosesNothing() throws InterruptedException {
+        // Arrange
+        Histogram histogram = new Histogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(100_000);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Assert
+        assertEquals(80_000, histogram.snapshot().getCount());
+        assertEquals(8_000_000_000L, histogram.snapshot().getSumNanos());
+    }
+}
@@ -0,0 +1,75 @@
+package com.voris.invoice.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    private static String text(MetricsRegistry registry) throws IOException {
+        StringWriter out = new StringWriter();
+        registry.write(out);
+        return out.toString();
+    }
+
+    @Test
+    void write_CountersAndGauges_UsesPrometheusTextFormat() throws IOException {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("requests_total", "Requests", "route", "/b").add(2);
+        registry.counter("requests_total", "Requests", "route", "/a").increment();
+        registry.gauge("queue_depth", "Queued", () -> 1.5);
+
+        // Act
+        String text = text(registry);
+
+        // Assert
+        assertEquals("# HELP queue_depth Queued\n" +
+                "# TYPE queue_depth gauge\n" +
+                "queue_depth 1.5\n" +
+                "# HELP requests_total Requests\n" +
+                "# TYPE requests_total counter\n" +
+                "requests_total{route=\"/a\"} 1\n" +
+                "requests_total{route=\"/b\"} 2\n", text);
+    }
+
+    @Test
+    void write_Histogram_WritesCumulativeBucketsSumAndCount() throws IOException {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.histogram("latency_seconds", "Latency", "method", "GET").record(1_500_000_000L);
+
+        // Act
+        String text = text(registry);
+
+        // Assert
+        assertTrue(text.contains("# TYPE latency_seconds histogram\n"));
+        assertTrue(text.contains("latency_seconds_bucket{method=\"GET\",le=\"1.073741824\"} 0\n"));
+        assertTrue(text.contains("latency_seconds_bucket{method=\"GET\",le=\"1.342177280\"} 0\n"));
+        assertTrue(text.contains("latency_seconds_bucket{method=\"GET\",le=\"1.610612736\"} 1\n"));
+        assertTrue(text.contains("latency_seconds_bucket{method=\"GET\",le=\"2.147483648\"} 1\n"));
+        assertTrue(text.contains("latency_seconds_bucket{method=\"GET\",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("latency_seconds_sum{method=\"GET\"} 1.5\n"));
+        assertTrue(text.contains("latency_seconds_count{method=\"GET\"} 1\n"));
+    }
+
+    @Test
+    void counter_SameLabels_ReturnsSameSeries() {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+
+        // Act & Assert
+        assertSame(registry.counter("c", "C", "a", "1"), registry.counter("c", "C", "a", "1"));
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("c", "C"));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("d", "D", "unpaired"));
+    }
+
+    @Test
+    void labelText_EscapesQuotesBackslashesAndNewlines() {
+        // Assert
+        assertEquals("{q=\"a\\\"b\\\\c\\nd\"}", MetricsRegistry.labelText("q", "a\"b\\c\nd"));
+    }
+}
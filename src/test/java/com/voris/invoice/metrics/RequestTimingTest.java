@@ -0,0 +1,112 @@
+package com.voris.invoice.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTimingTest {
+
+    @AfterEach
+    void tearDown() {
+        RequestTiming.clear();
+    }
+
+    @Test
+    void repositoryCall_WithTimingOnThread_AddsToRepositoryPhase() {
+        // Arrange
+        RequestTiming timing = RequestTiming.start();
+
+        // Act
+        RequestTiming.repositoryCall(TimeUnit.MILLISECONDS.toNanos(2));
+        RequestTiming.repositoryCall(TimeUnit.MILLISECONDS.toNanos(3));
+        RequestTiming.queryIssued();
+        RequestTiming.queryIssued();
+        RequestTiming.queryIssued();
+        RequestTiming.connectionOpened();
+
+        // Assert
+        assertSame(timing, RequestTiming.current());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), timing.phaseNanos(RequestTiming.Phase.REPOSITORY));
+        assertEquals(2, timing.getRepositoryCalls());
+        assertEquals(3, timing.getQueries());
+        assertEquals(1, timing.getConnections());
+    }
+
+    @Test
+    void repositoryCall_WithoutTiming_IsIgnored() {
+        // Act
+        RequestTiming.repositoryCall(1000);
+        RequestTiming.queryIssued();
+        RequestTiming.connectionOpened();
+
+        // Assert
+        assertNull(RequestTiming.current());
+    }
+
+    @Test
+    void phaseNanos_Service_ExcludesOtherPhasesInsideHandler() throws InterruptedException {
+        // Arrange
+        RequestTiming timing = RequestTiming.start();
+        timing.handlerStarted();
+        Thread.sleep(5);
+        timing.add(RequestTiming.Phase.PARSE, TimeUnit.MILLISECONDS.toNanos(1));
+        RequestTiming.repositoryCall(TimeUnit.MILLISECONDS.toNanos(2));
+
+        // Act
+        timing.handlerEnded();
+        timing.finish();
+
+        // Assert
+        long service = timing.phaseNanos(RequestTiming.Phase.SERVICE);
+        assertTrue(service >= TimeUnit.MILLISECONDS.toNanos(2), "service was " + service);
+        assertTrue(service < timing.elapsedNanos() - TimeUnit.MILLISECONDS.toNanos(3) + 1);
+    }
+
+    @Test
+    void serverTiming_ListsPhasesWithRepositoryCountsAndTotal() {
+        // Arrange
+        RequestTiming timing = RequestTiming.start();
+        timing.add(RequestTiming.Phase.PARSE, 1_234_567);
+        RequestTiming.repositoryCall(5_000);
+        RequestTiming.queryIssued();
+        RequestTiming.queryIssued();
+        RequestTiming.connectionOpened();
+
+        // Act
+        timing.finish();
+        String header = timing.serverTiming();
+
+        // Assert
+        assertTrue(header.startsWith("parse;dur=1.234, repo;dur=0.005;desc=\"1 calls, 2 queries, 1 connections\", "), header);
+        assertTrue(header.matches(".*, total;dur=\\d+\\.\\d{3}"), header);
+        assertFalse(header.contains("serialize"));
+    }
+
+    @Test
+    void toJson_ReportsEveryPhase() {
+        // Arrange
+        RequestTiming timing = RequestTiming.start();
+        timing.add(RequestTiming.Phase.SERIALIZE, 40_000);
+        timing.finish();
+
+        // Act
+        String json = timing.toJson("GET", "/invoices", 200);
+
+        // Assert
+        assertTrue(json.startsWith("{\"method\":\"GET\",\"route\":\"/invoices\",\"status\":200,\"totalMs\":"), json);
+        assertTrue(json.contains("\"serialize\":0.040"), json);
+        assertTrue(json.contains("\"repo\":0.000"), json);
+        assertTrue(json.endsWith("\"repositoryCalls\":0,\"queries\":0,\"connections\":0}"), json);
+    }
+
+    @Test
+    void millis_PadsFractionToThreeDigits() {
+        // Assert
+        assertEquals("0.000", RequestTiming.millis(-5));
+        assertEquals("0.007", RequestTiming.millis(7_000));
+        assertEquals("12.050", RequestTiming.millis(12_050_000));
+    }
+}
@@ -0,0 +1,49 @@
+package com.voris.invoice.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowRequestLogTest {
+
+    @AfterEach
+    void tearDown() {
+        RequestTiming.clear();
+    }
+
+    @Test
+    void record_BelowThreshold_IsNotLogged() {
+        // Arrange
+        SlowRequestLog log = new SlowRequestLog(60_000);
+        RequestTiming timing = RequestTiming.start();
+        timing.finish();
+
+        // Act / Assert
+        assertFalse(log.record(timing, "GET", "/invoices", 200));
+    }
+
+    @Test
+    void record_AtThreshold_IsLogged() throws InterruptedException {
+        // Arrange
+        SlowRequestLog log = new SlowRequestLog(1);
+        RequestTiming timing = RequestTiming.start();
+        Thread.sleep(2);
+        timing.finish();
+
+        // Act / Assert
+        assertTrue(log.record(timing, "GET", "/invoices", 200));
+    }
+
+    @Test
+    void record_WithZeroThreshold_IsDisabled() throws InterruptedException {
+        // Arrange
+        SlowRequestLog log = new SlowRequestLog(0);
+        RequestTiming timing = RequestTiming.start();
+        Thread.sleep(2);
+        timing.finish();
+
+        // Act / Assert
+        assertFalse(log.record(timing, "GET", "/invoices", 200));
+    }
+}
@@ -0,0 +1,170 @@
+package com.voris.invoice.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvoiceSnapshotTest {
+
+    @Test
+    void snapshot_IsUnaffectedByLaterInvoiceChanges() {
+        // Arrange
+        Invoice invoice = new Invoice("Acme");
+        invoice.addItem(new LineItem("Widget", new BigDecimal("10.00")));
+        InvoiceSnapshot snapshot = invoice.snapshot();
+
+        // Act
+        invoice.addItem(new LineItem("Gadget", new BigDecimal("5.00")));
+        invoice.getItems().get(0).setPrice(new BigDecimal("99.00"));
+        invoice.setCustomerName("Renamed");
+
+        // Assert
+        assertEquals(1, snapshot.getItems().size());
+        assertEquals(0, new BigDecimal("10.00").compareTo(snapshot.getItems().get(0).getPrice()));
+        assertEquals("Acme", snapshot.getCustomerName());
+    }
+
+    @Test
+    void snapshot_ListsAreUnmodifiable() {
+        InvoiceSnapshot snapshot = new Invoice("Acme").snapshot();
+
+        assertThrows(UnsupportedOperationException.class,
+            () -> snapshot.getItems().add(new LineItem("X", BigDecimal.ONE)));
+        assertThrows(UnsupportedOperationException.class,
+            () -> snapshot.getPayments().clear());
+    }
+
+    @Test
+    void toInvoice_UnchangedInvoice_ReturnsSameSnapshot() {
+        // Arrange
+        Invoice invoice = new Invoice("Acme");
+        invoice.addItem(new LineItem("Widget", new BigDecimal("10.00")));
+        InvoiceSnapshot snapshot = invoice.snapshot();
+
+        // Act
+        Invoice materialised = snapshot.toInvoice();
+
+        // Assert
+        assertSame(snapshot, materialised.snapshot());
+        assertEquals(invoice.getId(), materialised.getId());
+        assertEquals(invoice.getItems(), materialised.getItems());
+    }
+
+    @Test
+    void toInvoice_AddingPayment_SharesUnchangedItemList() {
+        // Arrange
+        Invoice invoice = new Invoice("Acme");
+        invoice.addItem(new LineItem("Widget", new BigDecimal("10.00")));
+        InvoiceSnapshot first = invoice.snapshot();
+
+        // Act
+        Invoice materialised = first.toInvoice();
+        materialised.addPayment(new BigDecimal("4.00"), "CASH", LocalDate.of(2024, 1, 1), "");
+        InvoiceSnapshot second = materialised.snapshot();
+
+        // Assert
+        assertSame(first.getItems(), second.getItems());
+        assertTrue(first.getPayments().isEmpty());
+        assertEquals(1, second.getPayments().size());
+    }
+
+    @Test
+    void toInvoice_SettingItemPrice_ShouldLeaveSnapshotAndRecomputeTotal() {
+        // Arrange
+        Invoice invoice = new Invoice("Acme");
+        invoice.addItem(new LineItem("Widget", new BigDecimal("10.00")));
+        InvoiceSnapshot snapshot = invoice.snapshot();
+        Invoice materialised = snapshot.toInvoice();
+
+        // Act
+        materialised.getItems().get(0).setPrice(new BigDecimal("99.00"));
+        InvoiceSnapshot changed = materialised.snapshot();
+
+        // Assert
+        assertEquals(new BigDecimal("10.00"), snapshot.getItems().get(0).getPrice());
+        assertEquals(new BigDecimal("10.00"), snapshot.getTotal().toBigDecimal());
+        assertEquals(new BigDecimal("99.00"), changed.getItems().get(0).getPrice());
+        assertEquals(new BigDecimal("99.00"), changed.getTotal().toBigDecimal());
+        assertEquals(new BigDecimal("99.00"), materialised.getTotal());
+    }
+
+    @Test
+    void toInvoice_ReadingItems_ShouldStillReuseSnapshot() {
+        // Arrange
+        Invoice invoice = new Invoice("Acme");
+        invoice.addItem(new LineItem("Widget", new BigDecimal("10.00")));
+        InvoiceSnapshot snapshot = invoice.snapshot();
+        Invoice materialised = snapshot.toInvoice();
+
+        // Act
+        LineItem item = materialised.getItems().get(0);
+
+        // Assert
+        assertNotSame(snapshot.getItems().get(0), item);
+        assertSame(snapshot, materialised.snapshot());
+    }
+
+    @Test
+    void toInvoice_ClearingItems_DoesNotTouchSnapshot() {
+        // Arrange
+        Invoice invoice = new Invoice("Acme");
+        invoice.addItem(new LineItem("Widget", new BigDecimal("10.00")));
+        InvoiceSnapshot snapshot = invoice.snapshot();
+        Invoice materialised = snapshot.toInvoice();
+
+        // Act
+        materialised.getItems().clear();
+        materialised.getItems().addAll(List.of(new LineItem("A", BigDecimal.ONE), new LineItem("B", BigDecimal.TEN)));
+
+        // Assert
+        assertEquals(1, snapshot.getItems().size());
+        assertEquals(2, materialised.getItems().size());
+    }
+
+    @Test
+    void builder_AppliesChangesWithoutTouchingBase() {
+        // Arrange
+        InvoiceSnapshot base = InvoiceSnapshot.builder("inv-1", "Acme", LocalDate.of(2024, 1, 1)).build();
+
+        // Act
+        InvoiceSnapshot changed = base.toBuilder()
+                .customerName("  Beta  ")
+                .addItem(new LineItem("Widget", new BigDecimal("3.00")))
+                .build();
+
+        // Assert
+        assertEquals("Acme", base.getCustomerName());
+        assertTrue(base.getItems().isEmpty());
+        assertEquals("Beta", changed.getCustomerName());
+        assertEquals(1, changed.getItems().size());
+        assertSame(base.getPayments(), changed.getPayments());
+    }
+
+    @Test
+    void builder_WithBlankCustomerName_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class,
+            () -> InvoiceSnapshot.builder("inv-1", " ", LocalDate.now()));
+    }
+
+    @Test
+    void builder_PaymentsOutOfOrder_ShouldSortByDate() {
+        // Arrange
+        Payment late = new Payment(new BigDecimal("5.00"), "CARD", LocalDate.of(2024, 5, 2), "late");
+        Payment early = new Payment(new BigDecimal("5.00"), "CARD", LocalDate.of(2024, 5, 1), "early");
+        Payment middle = new Payment(new BigDecimal("5.00"), "CASH", LocalDate.of(2024, 5, 1), "middle");
+
+        // Act
+        InvoiceSnapshot snapshot = InvoiceSnapshot.builder("INV-1", "Acme", LocalDate.of(2024, 5, 1))
+                .payments(List.of(late, early))
+                .addPayment(middle)
+                .build();
+
+        // Assert
+        assertEquals(List.of(early, middle, late), snapshot.getPayments());
+        assertEquals(0, new BigDecimal("15.00").compareTo(snapshot.getAmountPaid().toBigDecimal()));
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -216,4 +217,66 @@ class InvoiceTest {
         // Act & Assert
         assertEquals(0, new BigDecimal("30.00").compareTo(invoice.getRemainingBalance()));
     }
+
+    @Test
+    void runningTotals_AfterRandomChanges_ShouldMatchRecomputedSums() {
+        // Arrange
+        Random random = new Random(42);
+        invoice.addItem(new LineItem("Base", new BigDecimal("1000.00")));
+
+        for (int step = 0; step < 500; step++) {
+            // Act
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(10_000) - 1_000, random.nextInt(4));
+            List<LineItem> items = invoice.getItems();
+            switch (random.nextInt(6)) {
+                case 0 -> invoice.addItem(new LineItem("Item " + step, price));
+                case 1 -> items.add(0, new LineItem("Front " + step, price));
+                case 2 -> { if (items.size() > 1) items.remove(random.nextInt(items.size())); }
+                case 3 -> { if (!items.isEmpty()) items.set(random.nextInt(items.size()), new LineItem("Set " + step, price)); }
+                case 4 -> items.addAll(List.of(new LineItem("A " + step, price), new LineItem("B " + step, price.abs())));
+                default -> {
+                    BigDecimal remaining = invoice.getRemainingBalance();
+                    if (remaining.signum() > 0) {
+                        invoice.addPayment(remaining.min(price.abs().add(BigDecimal.ONE)), "CARD", LocalDate.now(), null);
+                    }
+                }
+            }
+            if (step % 97 == 0) {
+                invoice = invoice.snapshot().toInvoice();
+            }
+
+            // Assert
+            BigDecimal total = invoice.getItems().stream()
+                    .map(LineItem::getPrice)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            BigDecimal paid = invoice.getPaymentHistory().stream()
+                    .map(Payment::getAmount)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            assertEquals(0, total.compareTo(invoice.getTotal()), "total at step " + step);
+            assertEquals(0, paid.compareTo(invoice.getAmountPaid()), "paid at step " + step);
+            assertEquals(0, total.subtract(paid).compareTo(invoice.getRemainingBalance()), "balance at step " + step);
+            assertEquals(total.subtract(paid).signum() <= 0, invoice.isPaid(), "paid flag at step " + step);
+        }
+        invoice.getItems().clear();
+        assertEquals(BigDecimal.ZERO, invoice.getTotal());
+    }
+
+    @Test
+    void addPayment_OutOfDateOrder_ShouldKeepHistorySorted() {
+        // Arrange
+        invoice.addItem(new LineItem("Item", new BigDecimal("100.00")));
+
+        // Act
+        invoice.addPayment(new BigDecimal("10.00"), "CARD", LocalDate.of(2024, 3, 10), "late");
+        invoice.addPayment(new BigDecimal("20.00"), "CASH", LocalDate.of(2024, 3, 1), "early");
+        invoice.addPayment(new BigDecimal("30.00"), "TRANSFER", LocalDate.of(2024, 3, 10), "same-day");
+
+        // Assert
+        List<Payment> history = invoice.getPaymentHistory();
+        assertEquals(List.of("early", "late", "same-day"), history.stream().map(Payment::getReference).toList());
+        assertEquals(LocalDate.of(2024, 3, 10), invoice.getLastPaymentDate());
+        assertEquals("TRANSFER", invoice.getPaymentMethod());
+        assertSame(history, invoice.getPaymentHistory());
+        assertThrows(UnsupportedOperationException.class, () -> history.remove(0));
+    }
 }
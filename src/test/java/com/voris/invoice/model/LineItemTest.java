@@ -87,6 +87,20 @@ class LineItemTest {
         assertEquals(0, newPrice.compareTo(item.getPrice()));
     }
 
+    @Test
+    void setPrice_OutOfMoneyRange_ShouldKeepExactPrice() {
+        // Arrange
+        LineItem item = new LineItem("Test Item", new BigDecimal("10.00"));
+        BigDecimal large = new BigDecimal("1e30").setScale(2);
+
+        // Act
+        item.setPrice(large);
+
+        // Assert
+        assertEquals(large, item.getPrice());
+        assertEquals(large, item.getPriceMoney().toBigDecimal());
+    }
+
     @Test
     void equals_WithSameInstance_ShouldReturnTrue() {
         // Arrange
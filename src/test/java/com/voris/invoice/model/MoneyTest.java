@@ -0,0 +1,95 @@
+package com.voris.invoice.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void of_ShouldKeepValueAndScale() {
+        // Act
+        Money money = Money.of(new BigDecimal("12.50"));
+
+        // Assert
+        assertEquals(1250, money.getMinorUnits());
+        assertEquals(2, money.getScale());
+        assertEquals(new BigDecimal("12.50"), money.toBigDecimal());
+    }
+
+    @Test
+    void of_WithNegativeScale_ShouldNormaliseToZero() {
+        // Act
+        Money money = Money.of(new BigDecimal("1E+3"));
+
+        // Assert
+        assertEquals(1000, money.getMinorUnits());
+        assertEquals(0, money.getScale());
+    }
+
+    @Test
+    void of_OutOfRange_ShouldKeepExactValue() {
+        // Arrange
+        BigDecimal large = new BigDecimal("1e30").setScale(2);
+        BigDecimal precise = new BigDecimal("0.0000000000000000001");
+
+        // Act
+        Money wideLarge = Money.of(large);
+        Money widePrecise = Money.of(precise);
+
+        // Assert
+        assertFalse(wideLarge.isCompact());
+        assertFalse(widePrecise.isCompact());
+        assertEquals(large, wideLarge.toBigDecimal());
+        assertEquals(precise, widePrecise.toBigDecimal());
+        assertThrows(IllegalArgumentException.class, () -> Money.of(null));
+    }
+
+    @Test
+    void add_DifferentScales_ShouldMatchBigDecimal() {
+        // Arrange
+        BigDecimal a = new BigDecimal("10.5");
+        BigDecimal b = new BigDecimal("-0.125");
+
+        // Act
+        Money sum = Money.of(a).add(Money.of(b));
+        Money difference = Money.of(a).subtract(Money.of(b));
+
+        // Assert
+        assertEquals(a.add(b), sum.toBigDecimal());
+        assertEquals(a.subtract(b), difference.toBigDecimal());
+    }
+
+    @Test
+    void add_Overflow_ShouldFallBackToBigDecimal() {
+        // Arrange
+        Money max = Money.ofMinor(Long.MAX_VALUE, 0);
+        Money dust = Money.of(new BigDecimal("0.000000000000000001"));
+
+        // Act
+        Money sum = max.add(Money.ofMinor(1, 2));
+        Money difference = Money.ofMinor(Long.MIN_VALUE, 0).subtract(Money.ofMinor(1, 0));
+        Money rescaled = dust.add(Money.of(BigDecimal.TEN));
+
+        // Assert
+        assertEquals(new BigDecimal(Long.MAX_VALUE).add(new BigDecimal("0.01")), sum.toBigDecimal());
+        assertEquals(new BigDecimal(Long.MIN_VALUE).subtract(BigDecimal.ONE), difference.toBigDecimal());
+        assertEquals(new BigDecimal("10.000000000000000001"), rescaled.toBigDecimal());
+        assertEquals(0, rescaled.subtract(dust).compareTo(Money.of(BigDecimal.TEN)));
+    }
+
+    @Test
+    void compareTo_ShouldIgnoreScaleButEqualsShouldNot() {
+        // Arrange
+        Money a = Money.of(new BigDecimal("1.0"));
+        Money b = Money.of(new BigDecimal("1.00"));
+
+        // Act & Assert
+        assertEquals(0, a.compareTo(b));
+        assertNotEquals(a, b);
+        assertTrue(Money.ofMinor(Long.MAX_VALUE, 0).compareTo(Money.ofMinor(1, 18)) > 0);
+        assertTrue(Money.ofMinor(-Long.MAX_VALUE, 0).compareTo(Money.ofMinor(1, 18)) < 0);
+    }
+}
@@ -0,0 +1,86 @@
+package com.voris.invoice.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedIdGeneratorTest {
+
+    @Test
+    void next_ShouldProduceVersion7UuidsWithCurrentTimestamp() {
+        // Arrange
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator();
+        long before = System.currentTimeMillis();
+
+        // Act
+        UUID id = generator.next();
+
+        // Assert
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        long timestamp = id.getMostSignificantBits() >>> 16;
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis() + 1);
+    }
+
+    @Test
+    void nextId_ManyInARow_ShouldBeStrictlyIncreasingStrings() {
+        // Arrange
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator();
+
+        // Act
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            ids.add(generator.nextId());
+        }
+
+        // Assert
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0, "ids out of order at " + i);
+        }
+        assertEquals(ids.get(0), UUID.fromString(ids.get(0)).toString());
+    }
+
+    @Test
+    void nextId_ConcurrentCallers_ShouldNeverRepeat() throws InterruptedException {
+        // Arrange
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                Set<String> local = new HashSet<>();
+                String previous = "";
+                for (int i = 0; i < 10_000; i++) {
+                    String id = generator.nextId();
+                    assertTrue(id.compareTo(previous) > 0);
+                    previous = id;
+                    local.add(id);
+                }
+                ids.addAll(local);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        // Assert
+        assertEquals(80_000, ids.size());
+    }
+
+    @Test
+    void named_UnknownScheme_ShouldThrowException() {
+        assertTrue(IdGenerator.named("random").nextId().length() == 36);
+        assertThrows(IllegalArgumentException.class, () -> IdGenerator.named("sequential"));
+    }
+}
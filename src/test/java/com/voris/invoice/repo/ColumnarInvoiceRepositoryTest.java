@@ -0,0 +1,198 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.model.Payment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarInvoiceRepositoryTest {
+    private ColumnarInvoiceRepository repository;
+    private Invoice testInvoice;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ColumnarInvoiceRepository();
+        testInvoice = new Invoice("Acme Corp");
+        testInvoice.setDate(LocalDate.of(2024, 3, 1));
+        testInvoice.addItem(new LineItem("Consulting", new BigDecimal("100.50")));
+        testInvoice.addItem(new LineItem("Discount", new BigDecimal("-0.5")));
+    }
+
+    @Test
+    void save_ThenFindById_ShouldRoundTripExactly() {
+        // Arrange
+        testInvoice.addPayment(new BigDecimal("20.000"), "CARD", LocalDate.of(2024, 3, 2), "R-1");
+
+        // Act
+        repository.save(testInvoice);
+        Invoice found = repository.findById(testInvoice.getId()).orElseThrow();
+
+        // Assert
+        assertEquals(testInvoice, found);
+        assertEquals(new BigDecimal("100.50"), found.getItems().get(0).getPrice());
+        assertEquals(new BigDecimal("20.000"), found.getPaymentHistory().get(0).getAmount());
+        assertEquals(LocalDate.of(2024, 3, 1), found.getDate());
+    }
+
+    @Test
+    void save_ExistingInvoice_ShouldReplaceItems() {
+        // Arrange
+        repository.save(testInvoice);
+        testInvoice.getItems().clear();
+        testInvoice.addItem(new LineItem("Support", new BigDecimal("5.00")));
+
+        // Act
+        repository.save(testInvoice);
+
+        // Assert
+        Invoice found = repository.findById(testInvoice.getId()).orElseThrow();
+        assertEquals(1, found.getItems().size());
+        assertEquals("Support", found.getItems().get(0).getDescription());
+        assertEquals(1, repository.size());
+    }
+
+    @Test
+    void addPayment_InterleavedInvoices_ShouldKeepEachHistory() {
+        // Arrange
+        Invoice other = new Invoice("Globex");
+        other.addItem(new LineItem("Hosting", new BigDecimal("30.00")));
+        repository.save(testInvoice);
+        repository.save(other);
+
+        // Act
+        repository.addPayment(testInvoice.getId(), new BigDecimal("10.00"), "CASH", LocalDate.of(2024, 3, 3), null);
+        repository.addPayment(other.getId(), new BigDecimal("30.00"), "CARD", LocalDate.of(2024, 3, 4), "X");
+        repository.addPayment(testInvoice.getId(), new BigDecimal("15.00"), "CARD", LocalDate.of(2024, 3, 5), null);
+
+        // Assert
+        List<Payment> history = repository.getPaymentHistory(testInvoice.getId());
+        assertEquals(2, history.size());
+        assertEquals("CASH", history.get(0).getMethod());
+        assertEquals(0, new BigDecimal("75.00").compareTo(repository.findById(testInvoice.getId()).orElseThrow().getRemainingBalance()));
+        assertTrue(repository.findById(other.getId()).orElseThrow().isPaid());
+    }
+
+    @Test
+    void addPayment_ExceedingBalance_ShouldThrowException() {
+        // Arrange
+        repository.save(testInvoice);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> repository.addPayment(testInvoice.getId(), new BigDecimal("500.00"), "CARD", null, null));
+        assertTrue(repository.getPaymentHistory(testInvoice.getId()).isEmpty());
+    }
+
+    @Test
+    void save_PriceWithoutCompactMoney_ShouldThrowAndKeepStoredRow() {
+        // Arrange
+        repository.save(testInvoice);
+        testInvoice.addItem(new LineItem("Dust", new BigDecimal("0.0000000000000000001")));
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> repository.save(testInvoice));
+        assertEquals(2, repository.findById(testInvoice.getId()).orElseThrow().getItems().size());
+        assertThrows(IllegalArgumentException.class,
+                () -> repository.addPayment(testInvoice.getId(), new BigDecimal("1e-19"), "CARD", null, null));
+        assertTrue(repository.getPaymentHistory(testInvoice.getId()).isEmpty());
+    }
+
+    @Test
+    void deleteById_ThenSave_ShouldReuseRow() {
+        // Arrange
+        repository.save(testInvoice);
+        Invoice replacement = new Invoice("Initech");
+        replacement.addItem(new LineItem("Printers", new BigDecimal("75.00")));
+
+        // Act
+        boolean deleted = repository.deleteById(testInvoice.getId());
+        repository.save(replacement);
+
+        // Assert
+        assertTrue(deleted);
+        assertFalse(repository.deleteById(testInvoice.getId()));
+        assertTrue(repository.findById(testInvoice.getId()).isEmpty());
+        assertEquals(List.of(replacement.getId()), repository.findAll().stream().map(Invoice::getId).toList());
+    }
+
+    @Test
+    void search_ShouldMatchCustomerAndItemDescriptions() {
+        // Arrange
+        Invoice other = new Invoice("Globex");
+        other.addItem(new LineItem("Consulting hours", new BigDecimal("30.00")));
+        repository.save(testInvoice);
+        repository.save(other);
+
+        // Act & Assert
+        assertEquals(2, repository.search("consult").size());
+        assertEquals(1, repository.search("ACME").size());
+        assertEquals(0, repository.search("missing").size());
+        assertEquals(1, repository.findByCustomer("  acme corp ").size());
+    }
+
+    @Test
+    void findByDateRangeAndUnpaid_ShouldUsePrimitiveColumns() {
+        // Arrange
+        Invoice paid = new Invoice("Globex");
+        paid.setDate(LocalDate.of(2024, 2, 1));
+        paid.addItem(new LineItem("Hosting", new BigDecimal("30")));
+        paid.addPayment(new BigDecimal("30.00"), "CARD", LocalDate.of(2024, 2, 2), null);
+        repository.save(testInvoice);
+        repository.save(paid);
+
+        // Act
+        List<Invoice> range = repository.findByDateRange(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31));
+        List<Invoice> unpaid = repository.findUnpaid();
+
+        // Assert
+        assertEquals(List.of(paid.getId(), testInvoice.getId()), range.stream().map(Invoice::getId).toList());
+        assertEquals(List.of(testInvoice.getId()), unpaid.stream().map(Invoice::getId).toList());
+    }
+
+    @Test
+    void save_ManyRewritesWithUniqueReferences_ShouldKeepLatestReference() {
+        // Arrange
+        String id = new Invoice("Initech").getId();
+
+        // Act: every rewrite leaves the previous payment behind for compaction
+        for (int i = 0; i < 3_000; i++) {
+            Invoice invoice = new Invoice(id, "Initech", LocalDate.of(2024, 1, 1));
+            invoice.addItem(new LineItem("Printers", new BigDecimal("75.00")));
+            invoice.addPayment(new BigDecimal("1.00"), "CARD", LocalDate.of(2024, 1, 1), "R-" + i);
+            repository.save(invoice);
+        }
+
+        // Assert
+        List<Payment> payments = repository.getPaymentHistory(id);
+        assertEquals(1, payments.size());
+        assertEquals("R-2999", payments.get(0).getReference());
+    }
+
+    @Test
+    void save_ManyRewritesOffHeap_ShouldCompactAndKeepData() {
+        // Arrange
+        ColumnarInvoiceRepository offHeap = new ColumnarInvoiceRepository(true);
+        Invoice other = new Invoice("Globex");
+        other.addItem(new LineItem("Hosting", new BigDecimal("30.00")));
+        offHeap.save(other);
+
+        // Act
+        for (int i = 0; i < 3_000; i++) {
+            offHeap.save(testInvoice);
+            offHeap.addPayment(other.getId(), new BigDecimal("0.01"), "CARD", LocalDate.of(2024, 1, 1), null);
+        }
+
+        // Assert
+        assertTrue(offHeap.isOffHeap());
+        assertEquals(testInvoice, offHeap.findById(testInvoice.getId()).orElseThrow());
+        assertEquals(3_000, offHeap.getPaymentHistory(other.getId()).size());
+        assertEquals(0, new BigDecimal("0.00").compareTo(offHeap.findById(other.getId()).orElseThrow().getRemainingBalance()));
+    }
+}
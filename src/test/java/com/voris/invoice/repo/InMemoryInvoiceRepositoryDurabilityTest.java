@@ -0,0 +1,157 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.LineItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryInvoiceRepositoryDurabilityTest {
+    private Path directory;
+    private DurabilityConfig config;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("invoice-journal-");
+        config = DurabilityConfig.builder(directory)
+                .fsyncPolicy(FsyncPolicy.NEVER)
+                .snapshotEvery(0)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static Invoice invoice(String customer, String item, String price) {
+        Invoice invoice = new Invoice(customer);
+        invoice.setDate(LocalDate.of(2024, 3, 1));
+        invoice.addItem(new LineItem(item, new BigDecimal(price)));
+        return invoice;
+    }
+
+    @Test
+    void restart_AfterSavesPaymentsAndDeletes_ShouldRestoreState() {
+        // Arrange
+        Invoice kept = invoice("Acme Corp", "Consulting", "100.00");
+        Invoice deleted = invoice("Globex", "Hosting", "50.00");
+        try (InMemoryInvoiceRepository repository = new InMemoryInvoiceRepository(config)) {
+            repository.save(kept);
+            repository.save(deleted);
+            repository.addPayment(kept.getId(), new BigDecimal("40.00"), "CARD", LocalDate.of(2024, 3, 2), "R-1");
+            repository.deleteById(deleted.getId());
+        }
+
+        // Act
+        try (InMemoryInvoiceRepository restarted = new InMemoryInvoiceRepository(config)) {
+            // Assert
+            Invoice restored = restarted.findById(kept.getId()).orElseThrow();
+            assertEquals("Acme Corp", restored.getCustomerName());
+            assertEquals(1, restored.getPaymentHistory().size());
+            assertEquals(0, new BigDecimal("60.00").compareTo(restored.getRemainingBalance()));
+            assertTrue(restarted.findById(deleted.getId()).isEmpty());
+            assertEquals(1, restarted.findByCustomer("acme corp").size());
+            assertEquals(1, restarted.search("consult").size());
+        }
+    }
+
+    @Test
+    void restart_AfterCheckpoint_ShouldLoadSnapshotAndReplayTail() throws IOException {
+        // Arrange
+        Invoice first = invoice("Acme Corp", "Consulting", "100.00");
+        Invoice second = invoice("Initech", "Printers", "75.00");
+        try (InMemoryInvoiceRepository repository = new InMemoryInvoiceRepository(config)) {
+            repository.save(first);
+            repository.checkpoint();
+            repository.save(second);
+            repository.addPayment(first.getId(), new BigDecimal("100.00"), "CASH", LocalDate.of(2024, 3, 5), null);
+        }
+
+        // Act
+        try (InMemoryInvoiceRepository restarted = new InMemoryInvoiceRepository(config)) {
+            // Assert
+            assertTrue(Files.exists(directory.resolve("snapshot.bin")));
+            assertEquals(2, restarted.findAll().size());
+            assertTrue(restarted.findById(first.getId()).orElseThrow().isPaid());
+            List<Invoice> unpaid = restarted.findUnpaid();
+            assertEquals(1, unpaid.size());
+            assertEquals(second.getId(), unpaid.get(0).getId());
+        }
+    }
+
+    @Test
+    void restart_WithTornJournalTail_ShouldKeepCompleteRecords() throws IOException {
+        // Arrange
+        Invoice invoice = invoice("Acme Corp", "Consulting", "100.00");
+        try (InMemoryInvoiceRepository repository = new InMemoryInvoiceRepository(config)) {
+            repository.save(invoice);
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(f -> f.getFileName().toString().startsWith("journal-"))
+                    .filter(f -> f.toFile().length() > 0)
+                    .findFirst()
+                    .orElseThrow();
+        }
+        // Simulate a crash half-way through writing the next record
+        Files.write(segment, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        // Act
+        try (InMemoryInvoiceRepository restarted = new InMemoryInvoiceRepository(config)) {
+            restarted.save(invoice("Globex", "Hosting", "50.00"));
+        }
+        try (InMemoryInvoiceRepository again = new InMemoryInvoiceRepository(config)) {
+            // Assert
+            assertEquals(2, again.findAll().size());
+            assertTrue(again.findById(invoice.getId()).isPresent());
+        }
+    }
+
+    @Test
+    void journal_IdleUnderIntervalPolicy_ShouldBeForcedByFlusher() throws Exception {
+        // Arrange
+        try (InvoiceJournal journal = new InvoiceJournal(directory, FsyncPolicy.INTERVAL,
+                TimeUnit.MILLISECONDS.toNanos(200))) {
+            journal.open(0);
+            journal.appendDelete("INV-1");
+            // The first append lands within the interval, so it is left unforced
+            assertTrue(journal.hasUnforcedRecords());
+
+            // Act: no further appends
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (journal.hasUnforcedRecords() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // Assert
+            assertFalse(journal.hasUnforcedRecords());
+        }
+    }
+
+    @Test
+    void checkpoint_WithoutDurability_ShouldThrowException() {
+        // Arrange
+        InMemoryInvoiceRepository repository = new InMemoryInvoiceRepository();
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, repository::checkpoint);
+    }
+}
@@ -7,8 +7,12 @@ import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -405,4 +409,362 @@ class InMemoryInvoiceRepositoryTest {
         assertEquals("Item 2", saved.getItems().get(1).getDescription());
         assertEquals("Item 3", saved.getItems().get(2).getDescription());
     }
+
+    @Test
+    void addPayment_ConcurrentPayments_ShouldNeverOverpay() throws Exception {
+        // Arrange - total is 110.00, so at most 110 payments of 1.00 can succeed
+        Invoice saved = repository.save(testInvoice);
+        testInvoice.addItem(new LineItem("Extra", new BigDecimal("100.00")));
+        repository.save(testInvoice);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+
+        // Act
+        for (int i = 0; i < 200; i++) {
+            pool.submit(() -> {
+                try {
+                    repository.addPayment(saved.getId(), new BigDecimal("1.00"), "CARD", LocalDate.now(), "");
+                } catch (IllegalArgumentException expected) {
+                    // balance exhausted
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Assert
+        Invoice result = repository.findById(saved.getId()).orElseThrow();
+        assertEquals(110, result.getPaymentHistory().size());
+        assertEquals(0, BigDecimal.ZERO.compareTo(result.getRemainingBalance()));
+        long acquisitions = repository.getLockStats().stream()
+                .mapToLong(StripedLocks.StripeStats::getAcquisitions)
+                .sum();
+        assertTrue(acquisitions >= 200);
+    }
+
+    @Test
+    void findById_ChangesWithoutSave_ShouldNotLeakIntoStore() {
+        // Arrange
+        Invoice saved = repository.save(testInvoice);
+        Invoice loaded = repository.findById(saved.getId()).orElseThrow();
+
+        // Act
+        loaded.addItem(new LineItem("Unsaved", new BigDecimal("5.00")));
+        loaded.setCustomerName("Unsaved Name");
+
+        // Assert
+        Invoice reloaded = repository.findById(saved.getId()).orElseThrow();
+        assertEquals(1, reloaded.getItems().size());
+        assertEquals("Test Customer", reloaded.getCustomerName());
+        assertEquals(reloaded.getItems(), repository.findSnapshot(saved.getId()).orElseThrow().getItems());
+    }
+
+    @Test
+    void findByCustomer_IgnoresCaseAndFollowsRenames() {
+        // Arrange
+        Invoice acme = repository.save(new Invoice("Acme Corp"));
+        repository.save(new Invoice("ACME CORP"));
+        repository.save(new Invoice("Acme Corporation"));
+
+        // Act
+        List<Invoice> before = repository.findByCustomer("  acme corp ");
+        acme.setCustomerName("Beta Ltd");
+        repository.save(acme);
+        List<Invoice> after = repository.findByCustomer("acme corp");
+
+        // Assert
+        assertEquals(2, before.size());
+        assertEquals(1, after.size());
+        assertEquals(1, repository.findByCustomer("beta ltd").size());
+        assertTrue(repository.findByCustomer(" ").isEmpty());
+    }
+
+    @Test
+    void findById_ItemSettersWithoutSave_ShouldNotChangeStoredInvoice() {
+        // Arrange
+        Invoice saved = repository.save(testInvoice);
+        Invoice loaded = repository.findById(saved.getId()).orElseThrow();
+
+        // Act
+        loaded.getItems().get(0).setPrice(new BigDecimal("99.00"));
+        loaded.getItems().get(0).setDescription("Gizmo");
+
+        // Assert
+        Invoice reloaded = repository.findById(saved.getId()).orElseThrow();
+        assertEquals("Test Item", reloaded.getItems().get(0).getDescription());
+        assertEquals(new BigDecimal("10.00"), reloaded.getItems().get(0).getPrice());
+        assertEquals(new BigDecimal("10.00"), reloaded.getTotal());
+        assertTrue(repository.search("gizmo").isEmpty());
+        assertEquals(1, repository.search("test item").size());
+    }
+
+    @Test
+    void save_AfterItemSetters_ShouldStoreConsistentTotalAndIndex() {
+        // Arrange
+        Invoice saved = repository.save(testInvoice);
+        Invoice loaded = repository.findById(saved.getId()).orElseThrow();
+        loaded.getItems().get(0).setPrice(new BigDecimal("99.00"));
+        loaded.getItems().get(0).setDescription("Gizmo");
+
+        // Act
+        repository.save(loaded);
+
+        // Assert
+        Invoice reloaded = repository.findById(saved.getId()).orElseThrow();
+        assertEquals(new BigDecimal("99.00"), reloaded.getItems().get(0).getPrice());
+        assertEquals(new BigDecimal("99.00"), reloaded.getTotal());
+        assertEquals(1, repository.search("gizmo").size());
+        assertTrue(repository.search("test item").isEmpty());
+    }
+
+    @Test
+    void findByDateRange_ReturnsInclusiveRangeInDateOrder() {
+        // Arrange
+        Invoice jan = new Invoice("id-jan", "Jan", LocalDate.of(2024, 1, 15));
+        Invoice feb = new Invoice("id-feb", "Feb", LocalDate.of(2024, 2, 1));
+        Invoice mar = new Invoice("id-mar", "Mar", LocalDate.of(2024, 3, 31));
+        repository.save(mar);
+        repository.save(jan);
+        repository.save(feb);
+
+        // Act
+        List<Invoice> results = repository.findByDateRange(LocalDate.of(2024, 1, 15), LocalDate.of(2024, 3, 1));
+
+        // Assert
+        assertEquals(List.of("id-jan", "id-feb"), results.stream().map(Invoice::getId).toList());
+        assertTrue(repository.findByDateRange(LocalDate.of(2024, 4, 1), LocalDate.of(2024, 1, 1)).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> repository.findByDateRange(null, LocalDate.now()));
+    }
+
+    @Test
+    void findByDateRange_AfterDateChangeAndDelete_ShouldReflectIndexUpdates() {
+        // Arrange
+        Invoice invoice = repository.save(new Invoice("id-1", "Acme", LocalDate.of(2024, 1, 1)));
+        invoice.setDate(LocalDate.of(2024, 6, 1));
+        repository.save(invoice);
+        Invoice other = repository.save(new Invoice("id-2", "Beta", LocalDate.of(2024, 6, 1)));
+
+        // Act
+        repository.deleteById(other.getId());
+
+        // Assert
+        assertTrue(repository.findByDateRange(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31)).isEmpty());
+        List<Invoice> june = repository.findByDateRange(LocalDate.of(2024, 6, 1), LocalDate.of(2024, 6, 1));
+        assertEquals(1, june.size());
+        assertEquals("id-1", june.get(0).getId());
+    }
+
+    @Test
+    void findUnpaid_TracksPaymentsAndDeletes() {
+        // Arrange
+        Invoice open = repository.save(testInvoice);
+        Invoice settled = new Invoice("Settled");
+        settled.addItem(new LineItem("Thing", new BigDecimal("5.00")));
+        repository.save(settled);
+        Invoice empty = repository.save(new Invoice("Nothing Owed"));
+
+        // Act
+        repository.addPayment(settled.getId(), new BigDecimal("5.00"), "CASH", LocalDate.now(), "");
+        List<Invoice> unpaid = repository.findUnpaid();
+
+        // Assert
+        assertEquals(1, unpaid.size());
+        assertEquals(open.getId(), unpaid.get(0).getId());
+        repository.deleteById(open.getId());
+        assertTrue(repository.findUnpaid().isEmpty());
+        assertTrue(repository.findById(empty.getId()).orElseThrow().isPaid());
+    }
+
+    @Test
+    void search_AfterItemReplacementAndDelete_ShouldUseCurrentContent() {
+        // Arrange
+        Invoice inv = new Invoice("Delta Partners");
+        inv.addItem(new LineItem("Consulting hours", new BigDecimal("10.00")));
+        repository.save(inv);
+        Invoice other = repository.save(new Invoice("Consulting Group"));
+
+        // Act
+        inv.getItems().clear();
+        inv.addItem(new LineItem("Licences", new BigDecimal("20.00")));
+        repository.save(inv);
+        repository.deleteById(other.getId());
+
+        // Assert
+        assertTrue(repository.search("consulting").isEmpty());
+        assertEquals(1, repository.search("LICENCE").size());
+        assertEquals(1, repository.search("delta").size());
+    }
+
+    @Test
+    void search_UnderTurkishDefaultLocale_ShouldFoldCaseLikeTheIndex() {
+        // Arrange
+        repository.save(new Invoice("Irving Industries"));
+        Locale original = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            // Act
+            List<Invoice> upper = repository.search("IRVING");
+            List<Invoice> shortUpper = repository.search("IR");
+
+            // Assert
+            assertEquals(1, upper.size());
+            assertEquals(1, shortUpper.size());
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    @Test
+    void search_WithIndexedAndShortQueries_ShouldOrderByDateThenId() {
+        // Arrange: saved newest first, so insertion order is the reverse of date order
+        Invoice march = new Invoice("Acme March");
+        march.setDate(LocalDate.of(2024, 3, 1));
+        Invoice february = new Invoice("Acme February");
+        february.setDate(LocalDate.of(2024, 2, 1));
+        Invoice january = new Invoice("Acme January");
+        january.setDate(LocalDate.of(2024, 1, 1));
+        repository.save(march);
+        repository.save(february);
+        repository.save(january);
+        List<String> expected = List.of(january.getId(), february.getId(), march.getId());
+
+        // Act
+        List<Invoice> indexed = repository.search("acme");
+        List<Invoice> scanned = repository.search("ac");
+
+        // Assert
+        assertEquals(expected, indexed.stream().map(Invoice::getId).toList());
+        assertEquals(expected, scanned.stream().map(Invoice::getId).toList());
+    }
+
+    @Test
+    void search_WithShortQuery_ShouldFallBackToScan() {
+        // Arrange
+        repository.save(new Invoice("Xy Ltd"));
+        repository.save(new Invoice("Other"));
+
+        // Act
+        List<Invoice> results = repository.search("xy");
+
+        // Assert
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    void filterAndAggregate_WithParallelScanner_ShouldMatchSequentialScanInDateIdOrder() {
+        // Arrange
+        ParallelScanner scanner = new ParallelScanner(4, 16);
+        InMemoryInvoiceRepository parallelRepo = new InMemoryInvoiceRepository(8, scanner);
+        for (int i = 0; i < 2_000; i++) {
+            Invoice inv = new Invoice("Customer " + i);
+            inv.addItem(new LineItem("Item", new BigDecimal(i % 10)));
+            parallelRepo.save(inv);
+        }
+        List<String> expected = parallelRepo.findAll().stream()
+                .filter(inv -> inv.getTotal().compareTo(new BigDecimal("5")) > 0)
+                .map(Invoice::getId)
+                .sorted()
+                .toList();
+
+        // Act
+        List<String> actual = parallelRepo.filter(s -> s.getItems().get(0).getPrice().compareTo(new BigDecimal("5")) > 0)
+                .stream()
+                .map(Invoice::getId)
+                .toList();
+        long itemCount = parallelRepo.aggregate(java.util.stream.Collectors.summingLong(s -> s.getItems().size()));
+
+        // Assert
+        assertEquals(expected, actual);
+        assertEquals(2_000, itemCount);
+        scanner.shutdown();
+    }
+
+    @Test
+    void save_StampsChangeSequenceThatFindByIdReturns() {
+        // Arrange
+        Invoice invoice = new Invoice("Versioned");
+        invoice.addItem(new LineItem("Design", new BigDecimal("10.00")));
+        long created = repository.save(invoice).getChangeSequence();
+
+        // Act
+        Invoice paid = repository.addPayment(invoice.getId(), new BigDecimal("1.00"), "CASH", null, null);
+        Invoice renamed = repository.update(invoice.getId(), i -> i.setCustomerName("Renamed"));
+
+        // Assert
+        assertTrue(created > 0);
+        assertTrue(paid.getChangeSequence() > created);
+        assertTrue(renamed.getChangeSequence() > paid.getChangeSequence());
+        assertEquals(renamed.getChangeSequence(), repository.findById(invoice.getId()).orElseThrow().getChangeSequence());
+    }
+
+    @Test
+    void changesSince_ReturnsLatestChangesAndTombstonesInSequenceOrder() {
+        // Arrange
+        Invoice first = new Invoice("First");
+        first.addItem(new LineItem("Design", new BigDecimal("10.00")));
+        Invoice second = repository.save(new Invoice("Second"));
+        Invoice third = new Invoice("Third");
+        third.addItem(new LineItem("Hosting", new BigDecimal("10.00")));
+        repository.save(first);
+        repository.save(third);
+        long cursor = repository.changesSince(0, 10).getNext();
+        repository.addPayment(first.getId(), new BigDecimal("1.00"), "CASH", null, null);
+        repository.deleteById(second.getId());
+        repository.deleteById("missing");
+        repository.addPayment(third.getId(), new BigDecimal("2.00"), "CASH", null, null);
+        repository.addPayment(first.getId(), new BigDecimal("3.00"), "CASH", null, null);
+
+        // Act
+        ChangeSet changes = repository.changesSince(cursor, 10);
+
+        // Assert
+        assertFalse(changes.isReset());
+        assertFalse(changes.hasMore());
+        assertEquals(List.of(third.getId(), first.getId()),
+                changes.getChanged().stream().map(Invoice::getId).toList());
+        assertEquals(0, changes.getChanged().get(1).getAmountPaid().compareTo(new BigDecimal("4.00")));
+        assertEquals(List.of(second.getId()), changes.getDeleted());
+        assertEquals(cursor + 4, changes.getNext());
+        assertTrue(repository.changesSince(changes.getNext(), 10).getChanged().isEmpty());
+    }
+
+    @Test
+    void changesSince_PagesWithLimitAndResetsUnknownCursors() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            repository.save(new Invoice("Customer " + i));
+        }
+
+        // Act
+        ChangeSet firstPage = repository.changesSince(0, 3);
+        ChangeSet secondPage = repository.changesSince(firstPage.getNext(), 3);
+        ChangeSet stale = repository.changesSince(1, 10);
+        ChangeSet future = repository.changesSince(secondPage.getNext() + 1, 10);
+
+        // Assert
+        assertTrue(firstPage.isReset());
+        assertTrue(firstPage.hasMore());
+        assertEquals(3, firstPage.getChanged().size());
+        assertFalse(secondPage.isReset());
+        assertFalse(secondPage.hasMore());
+        assertEquals(2, secondPage.getChanged().size());
+        assertTrue(stale.isReset());
+        assertEquals(5, stale.getChanged().size());
+        assertTrue(future.isReset());
+    }
+
+    @Test
+    void changesSince_SavedAgainAfterDelete_DropsTombstone() {
+        // Arrange
+        repository.save(testInvoice);
+        long cursor = repository.changesSince(0, 10).getNext();
+        repository.deleteById(testInvoice.getId());
+
+        // Act
+        repository.save(testInvoice);
+        ChangeSet changes = repository.changesSince(cursor, 10);
+
+        // Assert
+        assertTrue(changes.getDeleted().isEmpty());
+        assertEquals(1, changes.getChanged().size());
+    }
 }
@@ -0,0 +1,88 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.repo.InvoiceProjection.Field;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvoiceProjectionTest {
+
+    @Test
+    void parse_NoParameters_ReturnsAll() {
+        // Act
+        InvoiceProjection projection = InvoiceProjection.parse(null, " ");
+
+        // Assert
+        assertSame(InvoiceProjection.ALL, projection);
+        assertTrue(projection.isAll());
+    }
+
+    @Test
+    void parse_SummaryFields_NeedsNoChildren() {
+        // Act
+        InvoiceProjection projection = InvoiceProjection.parse("customerName, id", null);
+
+        // Assert
+        assertEquals(List.of(Field.ID, Field.CUSTOMER_NAME), List.copyOf(projection.getFields()));
+        assertFalse(projection.includesItems());
+        assertFalse(projection.includesPayments());
+        assertFalse(projection.needsItems());
+        assertFalse(projection.needsPayments());
+        assertFalse(projection.isAll());
+    }
+
+    @Test
+    void parse_Total_NeedsItemsOnly() {
+        // Act
+        InvoiceProjection projection = InvoiceProjection.parse("id,total", null);
+
+        // Assert
+        assertTrue(projection.needsItems());
+        assertFalse(projection.needsPayments());
+    }
+
+    @Test
+    void parse_RemainingBalance_NeedsItemsAndPayments() {
+        // Act
+        InvoiceProjection projection = InvoiceProjection.parse("remainingBalance", null);
+
+        // Assert
+        assertTrue(projection.needsPayments());
+        assertTrue(projection.needsItems());
+        assertFalse(projection.includesPayments());
+    }
+
+    @Test
+    void parse_IncludeWithoutFields_KeepsEveryField() {
+        // Act
+        InvoiceProjection projection = InvoiceProjection.parse(null, "items");
+
+        // Assert
+        assertEquals(Field.values().length, projection.getFields().size());
+        assertTrue(projection.includesItems());
+        assertFalse(projection.includesPayments());
+        assertFalse(projection.isAll());
+    }
+
+    @Test
+    void parse_FieldsAndPaymentHistory_IncludesPayments() {
+        // Act
+        InvoiceProjection projection = InvoiceProjection.parse("id", "paymentHistory");
+
+        // Assert
+        assertTrue(projection.has(Field.ID));
+        assertFalse(projection.has(Field.TOTAL));
+        assertTrue(projection.includesPayments());
+        assertTrue(projection.needsItems());
+    }
+
+    @Test
+    void parse_UnknownName_Throws() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> InvoiceProjection.parse("id,secret", null));
+        assertThrows(IllegalArgumentException.class, () -> InvoiceProjection.parse(null, "customer"));
+        assertThrows(IllegalArgumentException.class, () -> InvoiceProjection.parse("id,,date", null));
+    }
+}
@@ -1,5 +1,6 @@
 package com.voris.invoice.repo;
 
+import com.voris.invoice.metrics.RequestTiming;
 import com.voris.invoice.model.Invoice;
 import com.voris.invoice.model.LineItem;
 import com.voris.invoice.model.Payment;
@@ -12,7 +13,9 @@ import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -44,6 +47,69 @@ class JdbcInvoiceRepositoryTest {
         return "jdbc:sqlite:" + path.toAbsolutePath();
     }
 
+    @Test
+    void findAll_shouldSkipChildrenNotInProjection() {
+        // Arrange
+        repo.addPayment(testInvoice.getId(), new BigDecimal("10.00"), "CARD", LocalDate.now(), null);
+
+        // Act
+        List<Invoice> summaries = repo.findAll(InvoiceProjection.parse("id,customerName", null));
+        Invoice withTotal = repo.findById(testInvoice.getId(), InvoiceProjection.parse("total", null)).orElseThrow();
+        Invoice withBalance = repo.search("Test", InvoiceProjection.parse("remainingBalance", null)).get(0);
+
+        // Assert
+        assertEquals(1, summaries.size());
+        assertEquals("Test Customer", summaries.get(0).getCustomerName());
+        assertTrue(summaries.get(0).getItems().isEmpty());
+        assertEquals(2, withTotal.getItems().size());
+        assertTrue(withTotal.getPaymentHistory().isEmpty());
+        assertEquals(0, new BigDecimal("50.50").compareTo(withBalance.getRemainingBalance()));
+    }
+
+    @Test
+    void findAll_shouldCountEveryQueryOnTheSharedConnection() {
+        // Arrange
+        repo.save(new Invoice("Second Customer"));
+        RequestTiming timing = RequestTiming.start();
+
+        // Act
+        try {
+            repo.findAll();
+        } finally {
+            RequestTiming.clear();
+        }
+
+        // Assert: one query for the invoices, then items and payments for each of the two
+        assertEquals(1, timing.getConnections());
+        assertEquals(5, timing.getQueries());
+    }
+
+    @Test
+    void findByCustomerAndDateRange_shouldLoadChildrenOnOneConnection() {
+        // Arrange
+        Invoice second = new Invoice("Test Customer");
+        second.addItem(new LineItem("Test Item 3", new BigDecimal("5.00")));
+        repo.save(second);
+        RequestTiming timing = RequestTiming.start();
+
+        // Act
+        List<Invoice> byCustomer;
+        List<Invoice> byDate;
+        try {
+            byCustomer = repo.findByCustomer("test customer");
+            byDate = repo.findByDateRange(LocalDate.now().minusDays(1), LocalDate.now());
+        } finally {
+            RequestTiming.clear();
+        }
+
+        // Assert
+        assertEquals(2, byCustomer.size());
+        assertEquals(2, byDate.size());
+        assertEquals(0, new BigDecimal("60.50").compareTo(byCustomer.stream()
+                .filter(i -> i.getId().equals(testInvoice.getId())).findFirst().orElseThrow().getTotal()));
+        assertEquals(2, timing.getConnections());
+    }
+
     @Test
     void addPayment_shouldAddPaymentToInvoice() {
         // Act
@@ -136,6 +202,227 @@ class JdbcInvoiceRepositoryTest {
             )
         );
     }
-}
 
+    @Test
+    void findByCustomer_shouldMatchIgnoringCase() {
+        // Arrange
+        repo.save(new Invoice("Other Customer"));
 
+        // Act
+        List<Invoice> results = repo.findByCustomer("  test CUSTOMER ");
+
+        // Assert
+        assertEquals(1, results.size());
+        assertEquals(testInvoice.getId(), results.get(0).getId());
+        assertEquals(2, results.get(0).getItems().size());
+    }
+
+    @Test
+    void findByDateRange_shouldReturnInvoicesInDateOrder() {
+        // Arrange
+        repo.save(new Invoice("id-late", "Late", LocalDate.of(2023, 3, 1)));
+        repo.save(new Invoice("id-early", "Early", LocalDate.of(2023, 1, 1)));
+        repo.save(new Invoice("id-outside", "Outside", LocalDate.of(2022, 12, 31)));
+
+        // Act
+        List<Invoice> results = repo.findByDateRange(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 3, 1));
+
+        // Assert
+        assertEquals(2, results.size());
+        assertEquals("id-early", results.get(0).getId());
+        assertEquals("id-late", results.get(1).getId());
+    }
+
+    @Test
+    void blobIds_shouldConvertExistingTextIdsAndKeepThemReadable() {
+        // Arrange
+        repo.addPayment(testInvoice.getId(), new BigDecimal("10.00"), "CARD", LocalDate.of(2023, 1, 1), "REF");
+        Invoice legacy = new Invoice("legacy-id", "Legacy", LocalDate.of(2023, 1, 1));
+
+        // Act
+        JdbcInvoiceRepository blobRepo = new JdbcInvoiceRepository(jdbcUrlFor(tempDb), IdStorage.BLOB);
+        blobRepo.save(legacy);
+        Invoice fresh = new Invoice("Fresh Customer");
+        fresh.addItem(new LineItem("Widget", new BigDecimal("5.00")));
+        blobRepo.save(fresh);
+
+        // Assert
+        Invoice converted = blobRepo.findById(testInvoice.getId()).orElseThrow();
+        assertEquals(2, converted.getItems().size());
+        assertEquals(1, blobRepo.getPaymentHistory(testInvoice.getId()).size());
+        assertEquals("legacy-id", blobRepo.findById("legacy-id").orElseThrow().getId());
+        assertEquals(1, blobRepo.findById(fresh.getId()).orElseThrow().getItems().size());
+        assertTrue(blobRepo.deleteById(fresh.getId()));
+        assertThrows(IllegalStateException.class, () -> new JdbcInvoiceRepository(jdbcUrlFor(tempDb)));
+    }
+
+    @Test
+    void uuidBytes_shouldOnlyAcceptCanonicalLowerCaseUuids() {
+        assertEquals(16, JdbcInvoiceRepository.uuidBytes("0190b6a4-7c1e-7a2b-8c3d-4e5f60718293").length);
+        assertNull(JdbcInvoiceRepository.uuidBytes("0190B6A4-7C1E-7A2B-8C3D-4E5F60718293"));
+        assertNull(JdbcInvoiceRepository.uuidBytes("legacy-id"));
+        assertNull(JdbcInvoiceRepository.uuidBytes("0190b6a4x7c1e-7a2b-8c3d-4e5f60718293"));
+        // Fullwidth and Arabic-Indic digits are digits to Character.digit, but not hex
+        assertNull(JdbcInvoiceRepository.uuidBytes("\uFF10190b6a4-7c1e-7a2b-8c3d-4e5f60718293"));
+        assertNull(JdbcInvoiceRepository.uuidBytes("\u0660190b6a4-7c1e-7a2b-8c3d-4e5f60718293"));
+    }
+
+    @Test
+    void saveAll_moreThanOneChunk_shouldSaveEveryInvoiceWithItems() {
+        // Arrange
+        List<Invoice> invoices = new ArrayList<>();
+        for (int i = 0; i < JdbcInvoiceRepository.BATCH_CHUNK_SIZE + 3; i++) {
+            Invoice invoice = new Invoice("Bulk " + i);
+            invoice.addItem(new LineItem("Item " + i, new BigDecimal(i + ".25")));
+            invoices.add(invoice);
+        }
+
+        // Act
+        repo.saveAll(invoices);
+
+        // Assert
+        assertEquals(invoices.size() + 1, repo.findAll().size());
+        Invoice last = repo.findById(invoices.get(invoices.size() - 1).getId()).orElseThrow();
+        assertEquals(1, last.getItems().size());
+        assertEquals(0, last.getTotal().compareTo(new BigDecimal((invoices.size() - 1) + ".25")));
+    }
+
+    @Test
+    void saveAll_duplicateIds_shouldThrow() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> repo.saveAll(List.of(testInvoice, testInvoice)));
+    }
+
+    @Test
+    void addPayments_shouldRecordFoundAndReportMissingInvoices() {
+        // Arrange
+        List<PaymentEntry> entries = List.of(
+                new PaymentEntry(testInvoice.getId(), new Payment(new BigDecimal("10.00"), "CARD", LocalDate.of(2023, 1, 2), "A")),
+                new PaymentEntry("missing", new Payment(new BigDecimal("5.00"), "CASH", null, null)),
+                new PaymentEntry(testInvoice.getId(), new Payment(new BigDecimal("20.00"), "BANK", LocalDate.of(2023, 1, 1), "B")));
+
+        // Act
+        List<BatchResult> results = repo.addPayments(entries);
+
+        // Assert
+        assertEquals(List.of(BatchResult.Status.OK, BatchResult.Status.NOT_FOUND, BatchResult.Status.OK),
+                results.stream().map(BatchResult::getStatus).collect(Collectors.toList()));
+        List<Payment> history = repo.getPaymentHistory(testInvoice.getId());
+        assertEquals(2, history.size());
+        assertEquals("B", history.get(0).getReference());
+    }
+
+    @Test
+    void findAll_shouldLoadAmountsBeyondLongRangeExactly() {
+        // Arrange
+        Invoice wide = new Invoice("Wide Customer");
+        wide.addItem(new LineItem("Dust", new BigDecimal("0.0000000000000000001")));
+        wide.addItem(new LineItem("Estate", new BigDecimal("99999999999999999999.99")));
+        repo.save(wide);
+        repo.addPayment(wide.getId(), new BigDecimal("10000000000000000000"), "WIRE", LocalDate.now(), null);
+
+        // Act
+        List<Invoice> all = repo.findAll();
+        Invoice found = repo.findById(wide.getId()).orElseThrow();
+
+        // Assert
+        assertEquals(2, all.size());
+        assertEquals(new BigDecimal("99999999999999999999.9900000000000000001"), found.getTotal());
+        assertEquals(new BigDecimal("89999999999999999999.9900000000000000001"), found.getRemainingBalance());
+    }
+
+    @Test
+    void addPayments_shouldRejectEntryThatOverpays() {
+        // Arrange
+        List<PaymentEntry> entries = List.of(
+                new PaymentEntry(testInvoice.getId(), new Payment(new BigDecimal("60.51"), "CARD", null, null)));
+
+        // Act
+        List<BatchResult> results = repo.addPayments(entries);
+
+        // Assert
+        assertEquals(BatchResult.Status.REJECTED, results.get(0).getStatus());
+        assertTrue(repo.getPaymentHistory(testInvoice.getId()).isEmpty());
+        assertEquals(1, repo.findAll().size());
+    }
+
+    @Test
+    void addPayments_shouldRejectEntriesThatOverpayTogether() {
+        // Arrange
+        repo.addPayment(testInvoice.getId(), new BigDecimal("10.50"), "CASH", null, null);
+        List<PaymentEntry> entries = List.of(
+                new PaymentEntry(testInvoice.getId(), new Payment(new BigDecimal("30.00"), "CARD", null, "A")),
+                new PaymentEntry(testInvoice.getId(), new Payment(new BigDecimal("30.00"), "CARD", null, "B")),
+                new PaymentEntry(testInvoice.getId(), new Payment(new BigDecimal("20.00"), "CARD", null, "C")));
+
+        // Act
+        List<BatchResult> results = repo.addPayments(entries);
+
+        // Assert
+        assertEquals(List.of(BatchResult.Status.OK, BatchResult.Status.REJECTED, BatchResult.Status.OK),
+                results.stream().map(BatchResult::getStatus).collect(Collectors.toList()));
+        Invoice invoice = repo.findById(testInvoice.getId()).orElseThrow();
+        assertEquals(3, invoice.getPaymentHistory().size());
+        assertTrue(invoice.isPaid());
+    }
+
+    @Test
+    void save_shouldStampChangeSequenceThatFindByIdReturns() {
+        // Arrange
+        long created = testInvoice.getChangeSequence();
+
+        // Act
+        Invoice paid = repo.addPayment(testInvoice.getId(), new BigDecimal("10.00"), "CARD", null, null);
+        Invoice found = repo.findById(testInvoice.getId()).orElseThrow();
+
+        // Assert
+        assertTrue(created > 0);
+        assertTrue(paid.getChangeSequence() > created);
+        assertEquals(paid.getChangeSequence(), found.getChangeSequence());
+    }
+
+    @Test
+    void changesSince_shouldReturnChangesAndTombstonesInSequenceOrder() {
+        // Arrange
+        Invoice other = new Invoice("Other Customer");
+        other.addItem(new LineItem("Other Item", new BigDecimal("5.00")));
+        repo.save(other);
+        Invoice deleted = repo.save(new Invoice("Deleted Customer"));
+        ChangeSet initial = repo.changesSince(0, 10);
+        repo.addPayment(testInvoice.getId(), new BigDecimal("10.00"), "CARD", null, null);
+        repo.deleteById(deleted.getId());
+        repo.addPayments(List.of(new PaymentEntry(other.getId(), new Payment(new BigDecimal("1.00"), "CASH", null, null))));
+
+        // Act
+        ChangeSet changes = repo.changesSince(initial.getNext(), 10);
+
+        // Assert
+        assertEquals(3, initial.getChanged().size());
+        assertFalse(changes.isReset());
+        assertFalse(changes.hasMore());
+        assertEquals(List.of(testInvoice.getId(), other.getId()),
+                changes.getChanged().stream().map(Invoice::getId).collect(Collectors.toList()));
+        assertEquals(2, changes.getChanged().get(0).getItems().size());
+        assertEquals(List.of(deleted.getId()), changes.getDeleted());
+        assertEquals(initial.getNext() + 3, changes.getNext());
+    }
+
+    @Test
+    void changesSince_shouldPageWithLimitAndResetCursorsFromTheFuture() {
+        // Arrange
+        repo.saveAll(List.of(new Invoice("A"), new Invoice("B"), new Invoice("C")));
+
+        // Act
+        ChangeSet firstPage = repo.changesSince(0, 2);
+        ChangeSet secondPage = repo.changesSince(firstPage.getNext(), 2);
+        ChangeSet future = repo.changesSince(secondPage.getNext() + 100, 10);
+
+        // Assert
+        assertTrue(firstPage.hasMore());
+        assertEquals(2, firstPage.getChanged().size());
+        assertFalse(secondPage.hasMore());
+        assertEquals(2, secondPage.getChanged().size());
+        assertTrue(future.isReset());
+        assertEquals(4, future.getChanged().size());
+    }
+}
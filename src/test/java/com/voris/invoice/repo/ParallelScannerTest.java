@@ -0,0 +1,81 @@
+package com.voris.invoice.repo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelScannerTest {
+    private final ParallelScanner scanner = new ParallelScanner(4, 64);
+
+    @AfterEach
+    void tearDown() {
+        scanner.shutdown();
+    }
+
+    @Test
+    void constructor_WithInvalidSettings_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelScanner(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelScanner(2, 0));
+    }
+
+    @Test
+    void filter_LargeMap_IsSortedAndMatchesSequentialScan() {
+        // Arrange
+        ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            map.put("key-" + i, i);
+        }
+        List<Integer> sequential = map.values().stream()
+                .filter(v -> v % 7 == 0)
+                .sorted()
+                .collect(Collectors.toList());
+
+        // Act
+        List<Integer> parallel = scanner.filter(map.values(), v -> v % 7 == 0, Comparator.naturalOrder());
+
+        // Assert
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    void collect_OrderedSource_PreservesEncounterOrder() {
+        // Arrange
+        List<Integer> values = IntStream.range(0, 20_000).boxed().collect(Collectors.toList());
+
+        // Act
+        List<Integer> copy = scanner.collect(values, Collectors.toList());
+
+        // Assert
+        assertEquals(values, copy);
+    }
+
+    @Test
+    void collect_Aggregation_SumsAllValues() {
+        // Arrange
+        ConcurrentHashMap<Integer, Long> map = new ConcurrentHashMap<>();
+        for (int i = 1; i <= 10_000; i++) {
+            map.put(i, (long) i);
+        }
+
+        // Act
+        long sum = scanner.collect(map.values(), Collectors.summingLong(Long::longValue));
+
+        // Assert
+        assertEquals(50_005_000L, sum);
+    }
+
+    @Test
+    void collect_SmallCollection_RunsSequentially() {
+        ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
+        map.put("a", 1);
+
+        assertEquals(1, (int) scanner.collect(map.values(), Collectors.summingInt(Integer::intValue)));
+    }
+}
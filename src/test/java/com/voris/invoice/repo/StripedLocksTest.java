@@ -0,0 +1,89 @@
+package com.voris.invoice.repo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedLocksTest {
+
+    @Test
+    void constructor_RoundsStripeCountUpToPowerOfTwo() {
+        assertEquals(8, new StripedLocks(5).stripeCount());
+        assertEquals(16, new StripedLocks(16).stripeCount());
+        assertEquals(1, new StripedLocks(1).stripeCount());
+    }
+
+    @Test
+    void constructor_WithNonPositiveStripes_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new StripedLocks(0));
+    }
+
+    @Test
+    void stripeFor_IsStableForSameKey() {
+        StripedLocks locks = new StripedLocks(32);
+        assertEquals(locks.stripeFor("invoice-1"), locks.stripeFor("invoice-1"));
+        assertTrue(locks.stripeFor("invoice-1") < locks.stripeCount());
+    }
+
+    @Test
+    void withLock_CountsAcquisitionsPerStripe() {
+        // Arrange
+        StripedLocks locks = new StripedLocks(4);
+        int stripe = locks.stripeFor("abc");
+
+        // Act
+        locks.withLock("abc", () -> null);
+        locks.withLock("abc", () -> null);
+
+        // Assert
+        List<StripedLocks.StripeStats> stats = locks.stats();
+        assertEquals(4, stats.size());
+        assertEquals(2, stats.get(stripe).getAcquisitions());
+        assertEquals(0, stats.get(stripe).getContended());
+    }
+
+    @Test
+    void withLocks_TakesSharedStripeOnlyOnce() {
+        // Arrange - a single stripe means every key collides
+        StripedLocks locks = new StripedLocks(1);
+
+        // Act
+        String result = locks.withLocks(List.of("a", "b", "c"), () -> "done");
+
+        // Assert
+        assertEquals("done", result);
+        assertEquals(1, locks.stats().get(0).getAcquisitions());
+    }
+
+    @Test
+    void withLocks_OpposingKeyOrders_ShouldNotDeadlock() throws Exception {
+        // Arrange
+        StripedLocks locks = new StripedLocks(64);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch done = new CountDownLatch(2);
+
+        // Act - two threads repeatedly lock the same pair in opposite order
+        pool.submit(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                locks.withLocks(List.of("left", "right"), () -> null);
+            }
+            done.countDown();
+        });
+        pool.submit(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                locks.withLocks(List.of("right", "left"), () -> null);
+            }
+            done.countDown();
+        });
+
+        // Assert
+        assertTrue(done.await(10, TimeUnit.SECONDS), "Lock acquisition deadlocked");
+        pool.shutdownNow();
+    }
+}
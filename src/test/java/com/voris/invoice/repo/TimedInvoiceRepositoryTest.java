@@ -0,0 +1,36 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.metrics.MetricsRegistry;
+import com.voris.invoice.model.Invoice;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimedInvoiceRepositoryTest {
+
+    @Test
+    void calls_AreForwardedAndTimedPerMethod() throws IOException {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+        InvoiceRepository repository = new TimedInvoiceRepository(new InMemoryInvoiceRepository(), registry);
+        Invoice invoice = new Invoice("Acme");
+
+        // Act
+        repository.save(invoice);
+        repository.findById(invoice.getId());
+        repository.findById("missing");
+        assertThrows(IllegalArgumentException.class, () -> repository.deleteById(" "));
+        StringWriter text = new StringWriter();
+        registry.write(text);
+
+        // Assert
+        assertTrue(repository.findById(invoice.getId()).isPresent());
+        assertTrue(text.toString().contains(TimedInvoiceRepository.DURATION + "_count{method=\"save\"} 1\n"));
+        assertTrue(text.toString().contains(TimedInvoiceRepository.DURATION + "_count{method=\"findById\"} 2\n"));
+        assertTrue(text.toString().contains(TimedInvoiceRepository.DURATION + "_count{method=\"findAll\"} 0\n"));
+        assertTrue(text.toString().contains(TimedInvoiceRepository.ERRORS + "{method=\"deleteById\"} 1\n"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.voris.invoice.repo;
+
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.InvoiceSnapshot;
+import com.voris.invoice.model.LineItem;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+    private final TrigramIndex index = new TrigramIndex();
+
+    private InvoiceSnapshot snapshot(String id, String customer, String... descriptions) {
+        Invoice invoice = new Invoice(id, customer, LocalDate.of(2024, 1, 1));
+        for (String description : descriptions) {
+            invoice.addItem(new LineItem(description, BigDecimal.ONE));
+        }
+        return invoice.snapshot();
+    }
+
+    @Test
+    void candidates_ShortQuery_ReturnsNull() {
+        assertNull(index.candidates("ab"));
+    }
+
+    @Test
+    void candidates_MatchesNamesAndDescriptionsInInsertionOrder() {
+        // Arrange
+        index.update(null, snapshot("b", "Cloud Corp"));
+        index.update(null, snapshot("a", "Acme", "Cloud hosting"));
+        index.update(null, snapshot("c", "Other", "Hardware"));
+
+        // Act
+        String[] results = index.candidates("cloud");
+
+        // Assert
+        assertEquals(List.of("b", "a"), Arrays.asList(results));
+        assertEquals(0, index.candidates("zzz").length);
+    }
+
+    @Test
+    void update_ReplacesOnlyChangedTrigrams() {
+        // Arrange
+        InvoiceSnapshot before = snapshot("a", "Acme", "Consulting");
+        index.update(null, before);
+
+        // Act
+        index.update(before, snapshot("a", "Acme", "Hardware"));
+
+        // Assert
+        assertEquals(0, index.candidates("consult").length);
+        assertEquals(List.of("a"), Arrays.asList(index.candidates("hardw")));
+        assertEquals(List.of("a"), Arrays.asList(index.candidates("acme")));
+    }
+
+    @Test
+    void remove_DropsInvoiceFromAllPostings() {
+        // Arrange
+        InvoiceSnapshot snapshot = snapshot("a", "Acme", "Consulting");
+        index.update(null, snapshot);
+
+        // Act
+        index.remove(snapshot);
+
+        // Assert
+        assertEquals(0, index.candidates("acme").length);
+        assertEquals(0, index.candidates("consulting").length);
+        assertEquals(0, index.trigramCount());
+    }
+
+    @Test
+    void update_AfterRemove_ReusesDocumentNumber() {
+        // Arrange
+        InvoiceSnapshot removed = snapshot("a", "Acme");
+        index.update(null, removed);
+        index.remove(removed);
+
+        // Act
+        index.update(null, snapshot("b", "Globex"));
+
+        // Assert
+        assertEquals(1, index.documentCount());
+        assertEquals(List.of("b"), Arrays.asList(index.candidates("glob")));
+    }
+
+    @Test
+    void fold_LowerCasesPerCharIgnoringLocale() {
+        // Assert
+        assertEquals("irving", TrigramIndex.fold("IRVING"));
+        assertEquals("i", TrigramIndex.fold("\u0130"));
+        String folded = "already folded";
+        assertSame(folded, TrigramIndex.fold(folded));
+    }
+}
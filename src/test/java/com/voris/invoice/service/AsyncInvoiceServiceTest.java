@@ -0,0 +1,150 @@
+package com.voris.invoice.service;
+
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.model.Payment;
+import com.voris.invoice.repo.InMemoryInvoiceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncInvoiceServiceTest {
+    private ExecutorService executor;
+    private AsyncInvoiceService service;
+
+    @BeforeEach
+    void setUp() {
+        executor = AsyncInvoiceService.virtualThreads();
+        service = new AsyncInvoiceService(new InvoiceService(new InMemoryInvoiceRepository()), executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Invoice invoice(String customer) {
+        return service.createInvoice(customer, List.of(new LineItem("Widget", new BigDecimal("100.00")))).join();
+    }
+
+    @Test
+    void createInvoice_WithBlankCustomer_CompletesExceptionally() {
+        // Act
+        CompletableFuture<Invoice> created = service.createInvoice(" ", null);
+
+        // Assert
+        CompletionException e = assertThrows(CompletionException.class, created::join);
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    void getByIds_WithUnknownAndDuplicateIds_ReturnsFoundInvoicesInOrder() {
+        // Arrange
+        Invoice first = invoice("Acme");
+        Invoice second = invoice("Beta");
+
+        // Act
+        Map<String, Invoice> found = service.getByIds(
+                List.of(second.getId(), "missing", first.getId(), second.getId()), 2).join();
+
+        // Assert
+        assertEquals(List.of(second.getId(), first.getId()), List.copyOf(found.keySet()));
+        assertEquals("Acme", found.get(first.getId()).getCustomerName());
+    }
+
+    @Test
+    void getPaymentHistories_LoadsEachInvoicesPayments() {
+        // Arrange
+        Invoice paid = invoice("Acme");
+        Invoice unpaid = invoice("Beta");
+        service.addPayment(paid.getId(), new BigDecimal("40.00"), "card", LocalDate.of(2024, 3, 1), "r1").join();
+
+        // Act
+        Map<String, List<Payment>> histories = service.getPaymentHistories(
+                List.of(paid.getId(), unpaid.getId()), 4).join();
+
+        // Assert
+        assertEquals(1, histories.get(paid.getId()).size());
+        assertTrue(histories.get(unpaid.getId()).isEmpty());
+    }
+
+    @Test
+    void getPaymentHistory_WithUnknownId_CompletesExceptionally() {
+        // Act
+        CompletableFuture<List<Payment>> history = service.getPaymentHistory("missing");
+
+        // Assert
+        CompletionException e = assertThrows(CompletionException.class, history::join);
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    void fanOut_KeepsInputOrderAndBoundsCallsInFlight() {
+        // Arrange
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Integer> inputs = List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+        // Act
+        List<Integer> doubled = AsyncInvoiceService.fanOut(inputs, 3, n -> CompletableFuture.supplyAsync(() -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return n * 2;
+        }, executor)).join();
+
+        // Assert
+        assertEquals(List.of(2, 4, 6, 8, 10, 12, 14, 16, 18, 20), doubled);
+        assertTrue(peak.get() <= 3, "peak was " + peak.get());
+    }
+
+    @Test
+    void fanOut_WhenACallFails_Fails() {
+        // Act
+        CompletableFuture<List<Integer>> result = AsyncInvoiceService.fanOut(List.of(1, 2, 3), 2, n -> n == 2
+                ? CompletableFuture.failedFuture(new IllegalStateException("boom"))
+                : CompletableFuture.completedFuture(n));
+
+        // Assert
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void boundedPool_WhenQueueIsFull_RunsOnCaller() throws Exception {
+        // Arrange
+        ExecutorService pool = AsyncInvoiceService.boundedPool(1, 1);
+        CompletableFuture<Void> blocker = new CompletableFuture<>();
+        try {
+            pool.execute(blocker::join);
+            pool.execute(() -> { });
+            Thread[] ranOn = new Thread[1];
+
+            // Act
+            pool.execute(() -> ranOn[0] = Thread.currentThread());
+
+            // Assert
+            assertEquals(Thread.currentThread(), ranOn[0]);
+        } finally {
+            blocker.complete(null);
+            pool.shutdown();
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.voris.invoice.service;
 
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.voris.invoice.model.Invoice;
 import com.voris.invoice.model.LineItem;
+import com.voris.invoice.model.Payment;
+import com.voris.invoice.repo.BatchResult;
+import com.voris.invoice.repo.ChangeSet;
 import com.voris.invoice.repo.InMemoryInvoiceRepository;
 import com.voris.invoice.repo.InvoiceRepository;
+import com.voris.invoice.repo.PaymentEntry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,6 +17,7 @@ import org.junit.jupiter.api.Test;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,6 +36,54 @@ class InvoiceServiceTest {
         service = new InvoiceService(repository);
     }
 
+    @Test
+    void createInvoice_WithInjectedIdGenerator_ShouldUseItsIds() {
+        // Arrange
+        InvoiceService withIds = new InvoiceService(repository, () -> "INV-FIXED");
+
+        // Act
+        Invoice invoice = withIds.createInvoice("Acme Corp", null);
+
+        // Assert
+        assertEquals("INV-FIXED", invoice.getId());
+        assertTrue(repository.findById("INV-FIXED").isPresent());
+        assertThrows(IllegalArgumentException.class, () -> new InvoiceService(repository, null));
+    }
+
+    @Test
+    void createInvoice_WithItemsReadByGson_ShouldTotalTheirPrices() {
+        // Arrange: Gson fills in fields without calling the constructor or setPrice,
+        // as it does for a POST /invoices body
+        List<LineItem> items = new Gson().fromJson(
+                "[{\"description\":\"Design\",\"price\":100.50},{\"description\":\"Hosting\",\"price\":20}]",
+                new TypeToken<List<LineItem>>() { }.getType());
+
+        // Act
+        Invoice invoice = service.createInvoice("Gson Customer", items);
+        Invoice paid = service.addPayment(invoice.getId(), new BigDecimal("20.50"), "CARD", null, null);
+
+        // Assert
+        assertEquals(0, new BigDecimal("120.50").compareTo(invoice.getTotal()));
+        assertFalse(invoice.isPaid());
+        assertEquals(0, new BigDecimal("100.00").compareTo(paid.getRemainingBalance()));
+    }
+
+    @Test
+    void createInvoice_WithGsonPriceOutOfMoneyRange_ShouldKeepExactTotal() {
+        // Arrange
+        List<LineItem> items = new Gson().fromJson(
+                "[{\"description\":\"Dust\",\"price\":0.0000000000000000001},"
+                        + "{\"description\":\"Tool\",\"price\":10}]",
+                new TypeToken<List<LineItem>>() { }.getType());
+
+        // Act
+        Invoice invoice = service.createInvoice("Gson Customer", items);
+
+        // Assert
+        assertEquals(new BigDecimal("10.0000000000000000001"), invoice.getTotal());
+        assertEquals(invoice.getTotal(), service.getById(invoice.getId()).orElseThrow().getTotal());
+    }
+
     @Test
     void createInvoice_WithValidData_ShouldCreateInvoice() {
         // Arrange
@@ -436,4 +491,90 @@ class InvoiceServiceTest {
         assertTrue(fromDb.isPresent());
         assertEquals(3, fromDb.get().getItems().size());
     }
+
+    @Test
+    void createInvoices_ShouldSaveAllThroughRepository() {
+        // Arrange
+        List<Invoice> invoices = List.of(new Invoice("First"), new Invoice("Second"));
+
+        // Act
+        List<Invoice> saved = service.createInvoices(invoices);
+
+        // Assert
+        assertEquals(2, saved.size());
+        assertEquals(2, service.getAll().size());
+        assertThrows(IllegalArgumentException.class, () -> service.createInvoices(null));
+    }
+
+    @Test
+    void addPayments_WithInvalidEntries_ShouldRejectOnlyThose() {
+        // Arrange
+        Invoice invoice = service.createInvoice("Customer", List.of(new LineItem("Item", new BigDecimal("50.00"))));
+        List<PaymentEntry> entries = List.of(
+                new PaymentEntry(invoice.getId(), new Payment(BigDecimal.ZERO, "CARD", null, null)),
+                new PaymentEntry(invoice.getId(), new Payment(new BigDecimal("20.00"), " CARD ", null, null)),
+                new PaymentEntry(invoice.getId(), new Payment(new BigDecimal("5.00"), " ", null, null)));
+
+        // Act
+        List<BatchResult> results = service.addPayments(entries);
+
+        // Assert
+        assertEquals(BatchResult.Status.REJECTED, results.get(0).getStatus());
+        assertEquals(BatchResult.Status.OK, results.get(1).getStatus());
+        assertEquals(BatchResult.Status.REJECTED, results.get(2).getStatus());
+        List<Payment> history = service.getPaymentHistory(invoice.getId());
+        assertEquals(1, history.size());
+        assertEquals("CARD", history.get(0).getMethod());
+    }
+
+    @Test
+    void listener_ShouldSeeEveryChangeMadeThroughService() {
+        // Arrange
+        List<String> events = new ArrayList<>();
+        service.addListener(new InvoiceListener() {
+            @Override
+            public void invoiceChanged(Invoice invoice) {
+                events.add("changed:" + invoice.getCustomerName() + ":" + invoice.getItems().size());
+            }
+
+            @Override
+            public void invoiceDeleted(String invoiceId) {
+                events.add("deleted");
+            }
+        });
+
+        // Act
+        Invoice invoice = service.createInvoice("Customer", null);
+        service.addLineItem(invoice.getId(), "Item", new BigDecimal("10.00"));
+        service.addPayment(invoice.getId(), new BigDecimal("5.00"), "CARD", null, null);
+        service.addPayments(List.of(new PaymentEntry(invoice.getId(), new Payment(new BigDecimal("1.00"), "CASH", null, null))));
+        service.deleteInvoice(invoice.getId());
+        service.deleteInvoice(invoice.getId());
+
+        // Assert
+        assertEquals(List.of("changed:Customer:0", "changed:Customer:1", "changed:Customer:1",
+                "changed:Customer:1", "deleted"), events);
+    }
+
+    @Test
+    void getChangesSince_InvalidArguments_ShouldThrow() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> service.getChangesSince(-1, 10));
+        assertThrows(IllegalArgumentException.class, () -> service.getChangesSince(0, 0));
+    }
+
+    @Test
+    void getChangesSince_LargeLimit_ShouldCapPageSize() {
+        // Arrange
+        for (int i = 0; i < InvoiceService.MAX_CHANGES_LIMIT + 5; i++) {
+            service.createInvoice("Customer " + i, List.of());
+        }
+
+        // Act
+        ChangeSet changes = service.getChangesSince(0, Integer.MAX_VALUE);
+
+        // Assert
+        assertEquals(InvoiceService.MAX_CHANGES_LIMIT, changes.getChanged().size());
+        assertTrue(changes.hasMore());
+    }
 }
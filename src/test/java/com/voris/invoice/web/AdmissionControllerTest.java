@@ -0,0 +1,137 @@
+package com.voris.invoice.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    @Test
+    void kindOf_ClassifiesSafeMethodsAsReads() {
+        // Assert
+        assertEquals(AdmissionController.Kind.READ, AdmissionController.kindOf("GET"));
+        assertEquals(AdmissionController.Kind.READ, AdmissionController.kindOf("head"));
+        assertEquals(AdmissionController.Kind.WRITE, AdmissionController.kindOf("POST"));
+        assertEquals(AdmissionController.Kind.WRITE, AdmissionController.kindOf("DELETE"));
+        assertEquals(AdmissionController.Kind.WRITE, AdmissionController.kindOf(null));
+    }
+
+    @Test
+    void admit_FullLimiterAndQueue_RejectsWithoutWaiting() throws InterruptedException {
+        // Arrange
+        AdmissionController controller = AdmissionController.withLimits(1, 1, 0, 1_000, 1_000);
+        AdmissionController.Permit held = controller.admit("POST");
+
+        // Act
+        long start = System.nanoTime();
+        AdmissionController.Permit shed = controller.admit("POST");
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        AdmissionController.Permit read = controller.admit("GET");
+
+        // Assert
+        assertNotNull(held);
+        assertNull(shed);
+        assertTrue(waitedMillis < 500);
+        assertNotNull(read);
+        assertEquals(1, controller.writeStats().getRejected());
+        assertEquals(0.5, controller.writeStats().getShedRatio());
+    }
+
+    @Test
+    void admit_QueuedRequest_RunsWhenASlotIsReleased() throws Exception {
+        // Arrange
+        AdmissionController controller = AdmissionController.withLimits(1, 1, 4, 5_000, 5_000);
+        AdmissionController.Permit held = controller.admit("GET");
+        AtomicReference<AdmissionController.Permit> queued = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                queued.set(controller.admit("GET"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        waiter.start();
+        while (controller.readStats().getQueued() == 0) {
+            Thread.sleep(1);
+        }
+
+        // Act
+        held.release();
+        held.release();
+
+        // Assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNotNull(queued.get());
+        assertEquals(1, controller.readStats().getInFlight());
+        assertEquals(0, controller.readStats().getQueued());
+    }
+
+    @Test
+    void admit_QueueWaitExpires_CountsTimeout() throws InterruptedException {
+        // Arrange
+        AdmissionController controller = AdmissionController.withLimits(1, 1, 4, 20, 1_000);
+        controller.admit("GET");
+
+        // Act
+        AdmissionController.Permit permit = controller.admit("GET");
+
+        // Assert
+        assertNull(permit);
+        assertEquals(1, controller.readStats().getTimedOut());
+        assertEquals(0, controller.readStats().getQueued());
+    }
+
+    @Test
+    void release_AdaptsLimitToLatency() throws InterruptedException {
+        // Arrange
+        AdmissionController.Limiter limiter = new AdmissionController.Limiter(4, 8, 0, 0, 50);
+        assertTrue(limiter.acquire());
+        assertTrue(limiter.acquire());
+
+        // Act: fast requests while busy raise the limit by one per limit's worth
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.acquire());
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        int raised = limiter.stats().getLimit();
+        // A burst of slow requests lowers it once per target interval
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.acquire());
+            limiter.release(TimeUnit.SECONDS.toNanos(1));
+        }
+        int lowered = limiter.stats().getLimit();
+
+        // Assert
+        assertEquals(5, raised);
+        assertEquals(4, lowered);
+    }
+
+    @Test
+    void release_AfterHandled_ExcludesStreamingTimeFromLatency() throws InterruptedException {
+        // Arrange
+        AdmissionController controller = AdmissionController.withLimits(2, 1, 0, 0, 20);
+        AdmissionController.Permit permit = controller.admit("GET");
+
+        // Act: the handler finishes at once, then a slow client takes longer than the target
+        permit.handled();
+        Thread.sleep(60);
+        permit.release();
+
+        // Assert
+        assertEquals(2, controller.readStats().getLimit());
+        assertEquals(0, controller.readStats().getInFlight());
+    }
+
+    @Test
+    void limiter_InvalidArguments_Throws() {
+        // Assert
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionController.Limiter(0, 1, 0, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionController.Limiter(4, 2, 0, 0, 1));
+    }
+}
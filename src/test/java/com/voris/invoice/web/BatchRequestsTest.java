@@ -0,0 +1,109 @@
+package com.voris.invoice.web;
+
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.repo.BatchResult;
+import com.voris.invoice.repo.InMemoryInvoiceRepository;
+import com.voris.invoice.service.InvoiceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRequestsTest {
+    private InvoiceService service;
+    private BatchRequests batches;
+
+    @BeforeEach
+    void setUp() {
+        service = new InvoiceService(new InMemoryInvoiceRepository());
+        batches = new BatchRequests(service, 2);
+    }
+
+    private static List<BatchResult.Status> statuses(BatchRequests.Outcome outcome) {
+        return outcome.getResults().stream().map(BatchResult::getStatus).collect(Collectors.toList());
+    }
+
+    @Test
+    void createInvoices_MixedEntries_CreatesValidOnesAndRejectsOthers() {
+        // Arrange
+        String body = "[" +
+                "{\"customerName\":\"Acme\",\"items\":[{\"description\":\"Design\",\"price\":100.50}]}," +
+                "{\"customerName\":\" \"}," +
+                "{\"customerName\":\"Beta\",\"items\":[{\"description\":\"Hosting\",\"price\":\"abc\"}]}," +
+                "42," +
+                "{\"customerName\":\"Gamma\",\"items\":[{\"description\":\"Support\",\"price\":\"20\"}]}," +
+                "{\"customerName\":\"Delta\"}" +
+                "]";
+
+        // Act
+        BatchRequests.Outcome outcome = batches.createInvoices(new StringReader(body));
+
+        // Assert
+        assertNull(outcome.getError());
+        assertEquals(List.of(BatchResult.Status.OK, BatchResult.Status.REJECTED, BatchResult.Status.REJECTED,
+                BatchResult.Status.REJECTED, BatchResult.Status.OK, BatchResult.Status.OK), statuses(outcome));
+        assertEquals(3, outcome.getSucceeded());
+        assertEquals(3, service.getAll().size());
+        Invoice acme = service.getById(outcome.getResults().get(0).getInvoiceId()).orElseThrow();
+        assertEquals("Acme", acme.getCustomerName());
+        assertEquals(0, acme.getTotal().compareTo(new BigDecimal("100.50")));
+    }
+
+    @Test
+    void createInvoices_NotAnArray_ReturnsError() {
+        // Act
+        BatchRequests.Outcome outcome = batches.createInvoices(new StringReader("{\"customerName\":\"Acme\"}"));
+
+        // Assert
+        assertNotNull(outcome.getError());
+        assertTrue(outcome.getResults().isEmpty());
+        assertTrue(service.getAll().isEmpty());
+    }
+
+    @Test
+    void createInvoices_TruncatedBody_KeepsEntriesReadBeforeTheError() {
+        // Arrange
+        String body = "[{\"customerName\":\"Acme\"},{\"customerName\":\"Beta\"},{\"customerName\":\"Gam";
+
+        // Act
+        BatchRequests.Outcome outcome = batches.createInvoices(new StringReader(body));
+
+        // Assert
+        assertTrue(outcome.getError().startsWith("Malformed JSON"));
+        assertEquals(List.of(BatchResult.Status.OK, BatchResult.Status.OK), statuses(outcome));
+        assertEquals(2, service.getAll().size());
+    }
+
+    @Test
+    void addPayments_MixedEntries_ReportsPerEntryResults() {
+        // Arrange
+        Invoice invoice = service.createInvoice("Acme", List.of());
+        service.addLineItem(invoice.getId(), "Design", new BigDecimal("100.00"));
+        String id = invoice.getId();
+        String body = "[" +
+                "{\"invoiceId\":\"" + id + "\",\"amount\":\"30.00\",\"method\":\"CARD\",\"date\":\"2024-01-02\"}," +
+                "{\"invoiceId\":\"missing\",\"amount\":\"5\",\"method\":\"CASH\"}," +
+                "{\"invoiceId\":\"" + id + "\",\"amount\":\"-1\",\"method\":\"CASH\"}," +
+                "{\"invoiceId\":\"" + id + "\",\"amount\":\"10\",\"method\":\"CASH\",\"date\":\"not-a-date\"}," +
+                "{\"amount\":\"10\",\"method\":\"CASH\"}," +
+                "{\"invoiceId\":\"" + id + "\",\"amount\":20,\"method\":\" BANK \",\"reference\":\"r\"}" +
+                "]";
+
+        // Act
+        BatchRequests.Outcome outcome = batches.addPayments(new StringReader(body));
+
+        // Assert
+        assertNull(outcome.getError());
+        assertEquals(List.of(BatchResult.Status.OK, BatchResult.Status.NOT_FOUND, BatchResult.Status.REJECTED,
+                BatchResult.Status.REJECTED, BatchResult.Status.REJECTED, BatchResult.Status.OK), statuses(outcome));
+        assertEquals(id, outcome.getResults().get(2).getInvoiceId());
+        Invoice updated = service.getById(id).orElseThrow();
+        assertEquals(0, updated.getAmountPaid().compareTo(new BigDecimal("50.00")));
+        assertEquals("BANK", updated.getPaymentHistory().get(1).getMethod());
+    }
+}
@@ -0,0 +1,131 @@
+package com.voris.invoice.web;
+
+import com.voris.invoice.model.Invoice;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+
+    private static Invoice invoice(String id) {
+        return new Invoice(id, "Customer " + id, LocalDate.of(2024, 1, 1));
+    }
+
+    @Test
+    void invoiceChanged_DeliversFrameWithIdTypeAndJson() throws InterruptedException {
+        // Arrange
+        ChangeFeed feed = new ChangeFeed("e", 16, 16, 4);
+        ChangeFeed.Subscription subscription = feed.subscribe(null);
+
+        // Act
+        feed.invoiceChanged(invoice("a"));
+        feed.invoiceDeleted("b");
+
+        // Assert
+        String changed = subscription.next(1, TimeUnit.SECONDS);
+        assertTrue(changed.startsWith("id: e.1\nevent: invoice-changed\ndata: {\"id\":\"a\""));
+        assertTrue(changed.endsWith("}\n\n"));
+        assertEquals("id: e.2\nevent: invoice-deleted\ndata: {\"id\":\"b\"}\n\n", subscription.next(1, TimeUnit.SECONDS));
+        assertNull(subscription.next(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void subscribe_WithLastEventId_ReplaysMissedEvents() throws InterruptedException {
+        // Arrange
+        ChangeFeed feed = new ChangeFeed("e", 16, 16, 4);
+        feed.invoiceDeleted("a");
+        feed.invoiceDeleted("b");
+        feed.invoiceDeleted("c");
+
+        // Act
+        ChangeFeed.Subscription subscription = feed.subscribe("e.1");
+
+        // Assert
+        assertTrue(subscription.next(1, TimeUnit.SECONDS).startsWith("id: e.2\n"));
+        assertTrue(subscription.next(1, TimeUnit.SECONDS).startsWith("id: e.3\n"));
+        assertNull(subscription.next(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void subscribe_WithUnknownLastEventId_SendsReset() throws InterruptedException {
+        // Arrange
+        ChangeFeed feed = new ChangeFeed("e", 2, 16, 4);
+        for (int i = 0; i < 5; i++) {
+            feed.invoiceDeleted("id" + i);
+        }
+
+        // Act
+        ChangeFeed.Subscription tooOld = feed.subscribe("e.1");
+        ChangeFeed.Subscription otherProcess = feed.subscribe("x.4");
+        ChangeFeed.Subscription current = feed.subscribe("e.5");
+
+        // Assert
+        assertEquals(ChangeFeed.RESET_FRAME, tooOld.next(1, TimeUnit.SECONDS));
+        assertEquals(ChangeFeed.RESET_FRAME, otherProcess.next(1, TimeUnit.SECONDS));
+        assertNull(current.next(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void publish_FullBuffer_DropsOldestAndSendsResetFirst() throws InterruptedException {
+        // Arrange
+        ChangeFeed feed = new ChangeFeed("e", 16, 2, 4);
+        ChangeFeed.Subscription subscription = feed.subscribe(null);
+
+        // Act
+        feed.invoiceDeleted("a");
+        feed.invoiceDeleted("b");
+        feed.invoiceDeleted("c");
+
+        // Assert
+        assertEquals(ChangeFeed.RESET_FRAME, subscription.next(1, TimeUnit.SECONDS));
+        assertTrue(subscription.next(1, TimeUnit.SECONDS).startsWith("id: e.2\n"));
+        assertTrue(subscription.next(1, TimeUnit.SECONDS).startsWith("id: e.3\n"));
+    }
+
+    @Test
+    void subscribe_AtLimit_ReturnsNullUntilOneCloses() {
+        // Arrange
+        ChangeFeed feed = new ChangeFeed("e", 16, 16, 1);
+        ChangeFeed.Subscription first = feed.subscribe(null);
+
+        // Act
+        ChangeFeed.Subscription refused = feed.subscribe(null);
+        first.close();
+        ChangeFeed.Subscription second = feed.subscribe(null);
+
+        // Assert
+        assertNull(refused);
+        assertNotNull(second);
+        assertEquals(1, feed.subscriberCount());
+    }
+
+    @Test
+    void pump_WritesEventsUntilFeedCloses() throws Exception {
+        // Arrange
+        ChangeFeed feed = new ChangeFeed("e", 16, 16, 4);
+        ChangeFeed.Subscription subscription = feed.subscribe(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thread pump = new Thread(() -> ChangeFeed.pump(subscription, out, 20));
+        pump.start();
+
+        // Act
+        feed.invoiceDeleted("a");
+        Thread.sleep(100);
+        feed.close();
+        pump.join(5000);
+
+        // Assert
+        assertFalse(pump.isAlive());
+        String text = out.toString(StandardCharsets.UTF_8);
+        assertTrue(text.startsWith("retry: 3000\n\n"));
+        assertTrue(text.contains("event: invoice-deleted\ndata: {\"id\":\"a\"}\n\n"));
+        assertTrue(text.contains(": keep-alive\n\n"));
+        assertEquals(0, feed.subscriberCount());
+        assertNull(feed.subscribe(null));
+    }
+}
@@ -0,0 +1,67 @@
+package com.voris.invoice.web;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataVersionsTest {
+
+    @Test
+    void changed_BumpsCollectionAndInvoiceTags() {
+        // Arrange
+        DataVersions versions = new DataVersions("e");
+        String collectionBefore = versions.collectionTag();
+        String invoiceBefore = versions.invoiceTag("a");
+
+        // Act
+        versions.changed("a");
+
+        // Assert
+        assertEquals("\"e.0\"", collectionBefore);
+        assertEquals("\"e.i0\"", invoiceBefore);
+        assertEquals("\"e.1\"", versions.collectionTag());
+        assertEquals("\"e.i1\"", versions.invoiceTag("a"));
+    }
+
+    @Test
+    void changed_OtherInvoice_KeepsInvoiceTag() {
+        // Arrange
+        DataVersions versions = new DataVersions("e");
+        versions.changed("a");
+        String tag = versions.invoiceTag("a");
+
+        // Act
+        versions.changed("b");
+
+        // Assert
+        assertEquals(tag, versions.invoiceTag("a"));
+        assertNotEquals(tag, versions.invoiceTag("b"));
+        assertEquals(2, versions.globalVersion());
+    }
+
+    @Test
+    void tags_DifferentEpochs_DoNotMatch() {
+        // Arrange
+        DataVersions before = new DataVersions("old");
+        DataVersions after = new DataVersions("new");
+
+        // Act & Assert
+        assertFalse(DataVersions.matches(before.collectionTag(), after.collectionTag()));
+    }
+
+    @Test
+    void matches_HeaderForms() {
+        // Arrange
+        String etag = "\"e.3\"";
+
+        // Act & Assert
+        assertTrue(DataVersions.matches("\"e.3\"", etag));
+        assertTrue(DataVersions.matches("W/\"e.3\"", etag));
+        assertTrue(DataVersions.matches("\"e.1\", \"e.3\"", etag));
+        assertTrue(DataVersions.matches("*", etag));
+        assertFalse(DataVersions.matches("\"e.2\"", etag));
+        assertFalse(DataVersions.matches("e.3", etag));
+        assertFalse(DataVersions.matches("", etag));
+        assertFalse(DataVersions.matches(null, etag));
+    }
+}
@@ -0,0 +1,253 @@
+package com.voris.invoice.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyStoreTest {
+    private static final String HASH = IdempotencyStore.requestHash("POST", "/invoices/1/payments", new byte[] {1});
+
+    private static IdempotencyStore.StoredResponse created() {
+        return new IdempotencyStore.StoredResponse(201, "application/json", "{\"id\":\"1\"}");
+    }
+
+    @Test
+    void claim_AfterCompletion_ReplaysStoredResponse() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(10, 60_000, 1_000, null);
+        IdempotencyStore.Claim first = store.claim("key-1", HASH);
+        first.complete(created());
+
+        // Act
+        IdempotencyStore.Claim retry = store.claim("key-1", HASH);
+
+        // Assert
+        assertEquals(IdempotencyStore.Outcome.EXECUTE, first.getOutcome());
+        assertEquals(IdempotencyStore.Outcome.REPLAY, retry.getOutcome());
+        assertEquals(201, retry.getResponse().getStatus());
+        assertEquals("{\"id\":\"1\"}", retry.getResponse().getBody());
+        assertEquals(1, store.getExecuted());
+        assertEquals(1, store.getReplayed());
+    }
+
+    @Test
+    void claim_SameKeyDifferentRequest_IsMismatch() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(10, 60_000, 1_000, null);
+        store.claim("key-1", HASH).complete(created());
+        String other = IdempotencyStore.requestHash("POST", "/invoices/1/payments", new byte[] {2});
+
+        // Act
+        IdempotencyStore.Claim retry = store.claim("key-1", other);
+
+        // Assert
+        assertEquals(IdempotencyStore.Outcome.MISMATCH, retry.getOutcome());
+        assertEquals(1, store.getMismatched());
+    }
+
+    @Test
+    void claim_BlankOrLongKey_Throws() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(10, 60_000, 1_000, null);
+
+        // Act / Assert
+        assertThrows(IllegalArgumentException.class, () -> store.claim(" ", HASH));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.claim("k".repeat(IdempotencyStore.MAX_KEY_LENGTH + 1), HASH));
+    }
+
+    @Test
+    void claim_WhileFirstRequestRuns_WaitsForItsResponse() throws Exception {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(10, 60_000, 5_000, null);
+        IdempotencyStore.Claim first = store.claim("key-1", HASH);
+        AtomicReference<IdempotencyStore.Claim> duplicate = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            started.countDown();
+            duplicate.set(store.claim("key-1", HASH));
+        });
+
+        // Act
+        waiter.start();
+        started.await();
+        Thread.sleep(50);
+        first.complete(created());
+        waiter.join(5_000);
+
+        // Assert
+        assertEquals(IdempotencyStore.Outcome.REPLAY, duplicate.get().getOutcome());
+        assertEquals(1, store.getExecuted());
+    }
+
+    @Test
+    void claim_WhileFirstRequestRunsPastMaxWait_IsInProgress() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(10, 60_000, 20, null);
+        store.claim("key-1", HASH);
+
+        // Act
+        IdempotencyStore.Claim duplicate = store.claim("key-1", HASH);
+
+        // Assert
+        assertEquals(IdempotencyStore.Outcome.IN_PROGRESS, duplicate.getOutcome());
+        assertEquals(1, store.getBusy());
+    }
+
+    @Test
+    void release_LetsTheNextRequestRun() throws Exception {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(10, 60_000, 5_000, null);
+        IdempotencyStore.Claim first = store.claim("key-1", HASH);
+        AtomicReference<IdempotencyStore.Claim> duplicate = new AtomicReference<>();
+        Thread waiter = new Thread(() -> duplicate.set(store.claim("key-1", HASH)));
+        waiter.start();
+        Thread.sleep(50);
+
+        // Act
+        first.release();
+        waiter.join(5_000);
+
+        // Assert
+        assertEquals(IdempotencyStore.Outcome.EXECUTE, duplicate.get().getOutcome());
+        assertEquals(2, store.getExecuted());
+    }
+
+    @Test
+    void claim_AfterTtl_RunsAgain() {
+        // Arrange
+        AtomicLong now = new AtomicLong(1_000);
+        IdempotencyStore store = new IdempotencyStore(10, 500, 1_000, null, now::get);
+        store.claim("key-1", HASH).complete(created());
+
+        // Act
+        now.addAndGet(500);
+        IdempotencyStore.Claim retry = store.claim("key-1", HASH);
+
+        // Assert
+        assertEquals(IdempotencyStore.Outcome.EXECUTE, retry.getOutcome());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void claim_OverMaxEntries_DropsOldestKey() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(2, 60_000, 1_000, null);
+        store.claim("key-1", HASH).complete(created());
+        store.claim("key-2", HASH).complete(created());
+
+        // Act
+        store.claim("key-3", HASH).complete(created());
+
+        // Assert
+        assertEquals(2, store.size());
+        assertEquals(IdempotencyStore.Outcome.REPLAY, store.claim("key-3", HASH).getOutcome());
+        assertEquals(IdempotencyStore.Outcome.EXECUTE, store.claim("key-1", HASH).getOutcome());
+    }
+
+    @Test
+    void claim_OverMaxEntries_KeepsKeysStillRunning() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(2, 60_000, 20, null);
+        store.claim("key-1", HASH);
+        store.claim("key-2", HASH).complete(created());
+
+        // Act
+        store.claim("key-3", HASH);
+        store.claim("key-4", HASH);
+
+        // Assert: key-2 was the only completed key to drop; the running ones stay
+        assertEquals(3, store.size());
+        assertEquals(IdempotencyStore.Outcome.IN_PROGRESS, store.claim("key-1", HASH).getOutcome());
+        assertEquals(IdempotencyStore.Outcome.IN_PROGRESS, store.claim("key-3", HASH).getOutcome());
+    }
+
+    @Test
+    void claim_AfterTtlWhileRunning_IsStillInProgress() {
+        // Arrange
+        AtomicLong now = new AtomicLong(1_000);
+        IdempotencyStore store = new IdempotencyStore(10, 500, 20, null, now::get);
+        store.claim("key-1", HASH);
+
+        // Act
+        now.addAndGet(500);
+        IdempotencyStore.Claim retry = store.claim("key-1", HASH);
+
+        // Assert
+        assertEquals(IdempotencyStore.Outcome.IN_PROGRESS, retry.getOutcome());
+    }
+
+    @Test
+    void claim_WhenItHasToWait_RunsOnWaitOnce() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(10, 60_000, 20, null);
+        AtomicLong waits = new AtomicLong();
+        store.claim("key-1", HASH);
+        store.claim("key-2", HASH).complete(created());
+
+        // Act
+        store.claim("key-1", HASH, waits::incrementAndGet);
+        store.claim("key-2", HASH, waits::incrementAndGet);
+        store.claim("key-3", HASH, waits::incrementAndGet);
+
+        // Assert: only the duplicate of the running request waited
+        assertEquals(1, waits.get());
+    }
+
+    @Test
+    void claim_KeyOnlyInPersistence_ReplaysPersistedResponse() {
+        // Arrange
+        MapPersistence persistence = new MapPersistence();
+        new IdempotencyStore(10, 60_000, 1_000, persistence).claim("key-1", HASH).complete(created());
+        IdempotencyStore restarted = new IdempotencyStore(10, 60_000, 1_000, persistence);
+
+        // Act
+        IdempotencyStore.Claim retry = restarted.claim("key-1", HASH);
+
+        // Assert
+        assertEquals(IdempotencyStore.Outcome.REPLAY, retry.getOutcome());
+        assertEquals(201, retry.getResponse().getStatus());
+    }
+
+    @Test
+    void complete_WhenPersistenceFails_StillReplaysFromMemory() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(10, 60_000, 1_000, new MapPersistence() {
+            @Override
+            public void save(String key, IdempotencyStore.Record record) {
+                throw new RuntimeException("disk full");
+            }
+        });
+
+        // Act
+        store.claim("key-1", HASH).complete(created());
+
+        // Assert
+        assertEquals(IdempotencyStore.Outcome.REPLAY, store.claim("key-1", HASH).getOutcome());
+    }
+
+    private static class MapPersistence implements IdempotencyStore.Persistence {
+        final Map<String, IdempotencyStore.Record> records = new HashMap<>();
+
+        @Override
+        public IdempotencyStore.Record load(String key) {
+            return records.get(key);
+        }
+
+        @Override
+        public void save(String key, IdempotencyStore.Record record) {
+            records.put(key, record);
+        }
+
+        @Override
+        public void purgeBefore(long createdMillis) {
+            records.values().removeIf(record -> record.getCreatedMillis() < createdMillis);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.voris.invoice.web;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.voris.invoice.model.Invoice;
+import com.voris.invoice.model.LineItem;
+import com.voris.invoice.repo.ChangeSet;
+import com.voris.invoice.repo.InvoiceProjection;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvoiceJsonWriterTest {
+
+    private static String write(Invoice invoice) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonWriter out = InvoiceJsonWriter.open(bytes)) {
+            InvoiceJsonWriter.writeInvoice(out, invoice);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writeInvoice_WithItemsAndPayment_WritesAllFields() throws IOException {
+        // Arrange
+        Invoice invoice = new Invoice("inv-1", "Zoë \"Quoted\" Ltd", LocalDate.of(2024, 3, 5));
+        invoice.addItem(new LineItem("Design", new BigDecimal("100.50")));
+        invoice.addItem(new LineItem("Hosting", new BigDecimal("1E+2")));
+        invoice.addPayment(new BigDecimal("50.25"), "CARD", LocalDate.of(2024, 3, 6), "ref-1");
+
+        // Act
+        JsonObject json = JsonParser.parseString(write(invoice)).getAsJsonObject();
+
+        // Assert
+        assertEquals("inv-1", json.get("id").getAsString());
+        assertEquals("Zoë \"Quoted\" Ltd", json.get("customerName").getAsString());
+        assertEquals("2024-03-05", json.get("date").getAsString());
+        assertEquals("200.50", json.get("total").getAsString());
+        assertFalse(json.get("paid").getAsBoolean());
+        assertEquals("50.25", json.get("amountPaid").getAsString());
+        assertEquals("150.25", json.get("remainingBalance").getAsString());
+        JsonArray items = json.getAsJsonArray("items");
+        assertEquals(2, items.size());
+        assertEquals("Design", items.get(0).getAsJsonObject().get("description").getAsString());
+        assertEquals(new BigDecimal("100.50"), items.get(0).getAsJsonObject().get("price").getAsBigDecimal());
+        assertEquals("100", items.get(1).getAsJsonObject().get("price").toString());
+        assertEquals(2, items.get(0).getAsJsonObject().size());
+        JsonObject payment = json.getAsJsonArray("paymentHistory").get(0).getAsJsonObject();
+        assertEquals("50.25", payment.get("amount").getAsString());
+        assertEquals("CARD", payment.get("method").getAsString());
+        assertEquals("2024-03-06", payment.get("date").getAsString());
+        assertEquals("ref-1", payment.get("reference").getAsString());
+    }
+
+    @Test
+    void writeInvoice_WithProjection_WritesOnlySelectedParts() throws IOException {
+        // Arrange
+        Invoice invoice = new Invoice("inv-2", "Acme", LocalDate.of(2024, 3, 5));
+        invoice.addItem(new LineItem("Design", new BigDecimal("80")));
+        invoice.addPayment(new BigDecimal("30"), "CARD", LocalDate.of(2024, 3, 6), null);
+        InvoiceProjection projection = InvoiceProjection.parse("remainingBalance,id", "payments");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        // Act
+        try (JsonWriter out = InvoiceJsonWriter.open(bytes)) {
+            InvoiceJsonWriter.writeInvoices(out, List.of(invoice), projection);
+        }
+
+        // Assert
+        String json = bytes.toString(StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("[{\"id\":\"inv-2\",\"remainingBalance\":\"50\",\"paymentHistory\":["), json);
+        JsonObject written = JsonParser.parseString(json).getAsJsonArray().get(0).getAsJsonObject();
+        assertEquals(3, written.size());
+        assertEquals(1, written.getAsJsonArray("paymentHistory").size());
+    }
+
+    @Test
+    void writeInvoice_WithAllProjection_MatchesDefaultOutput() throws IOException {
+        // Arrange
+        Invoice invoice = new Invoice("inv-4", "Acme", LocalDate.of(2024, 3, 5));
+        invoice.addItem(new LineItem("Design", new BigDecimal("80")));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        // Act
+        try (JsonWriter out = InvoiceJsonWriter.open(bytes)) {
+            InvoiceJsonWriter.writeInvoice(out, invoice, InvoiceProjection.ALL);
+        }
+
+        // Assert
+        assertEquals(write(invoice), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writeInvoice_WithChangeSequence_WritesChangeSeq() throws IOException {
+        // Arrange
+        Invoice invoice = new Invoice("inv-5", "Acme", LocalDate.of(2024, 3, 5));
+        Invoice unversioned = new Invoice("inv-6", "Acme", LocalDate.of(2024, 3, 5));
+        invoice.setChangeSequence(42);
+
+        // Act
+        JsonObject json = JsonParser.parseString(write(invoice)).getAsJsonObject();
+
+        // Assert
+        assertEquals(42, json.get("changeSeq").getAsLong());
+        assertFalse(write(unversioned).contains("changeSeq"));
+    }
+
+    @Test
+    void writeInvoices_EmptyList_WritesEmptyArray() throws IOException {
+        // Arrange
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        // Act
+        try (JsonWriter out = InvoiceJsonWriter.open(bytes)) {
+            InvoiceJsonWriter.writeInvoices(out, List.of());
+        }
+
+        // Assert
+        assertEquals("[]", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writeChanges_WritesSummariesAndDeletedIds() throws IOException {
+        // Arrange
+        Invoice invoice = new Invoice("inv-3", "Acme", LocalDate.of(2024, 2, 1));
+        invoice.addItem(new LineItem("Design", new BigDecimal("12.50")));
+        ChangeSet changes = new ChangeSet(List.of(invoice), List.of("inv-9"), 42, true, false);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        // Act
+        try (JsonWriter out = InvoiceJsonWriter.open(bytes)) {
+            InvoiceJsonWriter.writeChanges(out, changes);
+        }
+
+        // Assert
+        JsonObject json = JsonParser.parseString(bytes.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals(42, json.get("next").getAsLong());
+        assertTrue(json.get("hasMore").getAsBoolean());
+        assertFalse(json.get("reset").getAsBoolean());
+        JsonObject summary = json.getAsJsonArray("changed").get(0).getAsJsonObject();
+        assertEquals("inv-3", summary.get("id").getAsString());
+        assertEquals("12.50", summary.get("total").getAsString());
+        assertFalse(summary.has("items"));
+        assertEquals("inv-9", json.getAsJsonArray("deleted").get(0).getAsString());
+    }
+
+    @Test
+    void writeInvoice_NullItemFields_OmitsThem() throws IOException {
+        // Arrange
+        Invoice invoice = new Invoice("inv-2", "Acme", LocalDate.of(2024, 1, 1));
+        invoice.getItems().add(new LineItem());
+
+        // Act
+        JsonObject json = JsonParser.parseString(write(invoice)).getAsJsonObject();
+
+        // Assert
+        assertEquals(0, json.getAsJsonArray("items").get(0).getAsJsonObject().size());
+    }
+
+    @Test
+    void isoDate_MatchesLocalDateToString() {
+        // Arrange
+        LocalDate[] dates = {
+                LocalDate.of(1, 1, 1), LocalDate.of(999, 12, 31), LocalDate.of(2024, 2, 29),
+                LocalDate.of(9999, 10, 9), LocalDate.of(10000, 1, 1), LocalDate.of(-5, 6, 7)
+        };
+
+        // Act & Assert
+        for (LocalDate date : dates) {
+            assertEquals(date.toString(), InvoiceJsonWriter.isoDate(date));
+        }
+    }
+
+    @Test
+    void error_WithMessage_WritesBothFields() {
+        // Act
+        JsonObject json = JsonParser.parseString(InvoiceJsonWriter.error("Bad", "line \"1\"")).getAsJsonObject();
+
+        // Assert
+        assertEquals("Bad", json.get("error").getAsString());
+        assertEquals("line \"1\"", json.get("message").getAsString());
+    }
+
+    @Test
+    void error_WithoutMessage_OmitsMessage() {
+        // Act
+        String json = InvoiceJsonWriter.error("Not found");
+
+        // Assert
+        assertEquals("{\"error\":\"Not found\"}", json);
+    }
+}
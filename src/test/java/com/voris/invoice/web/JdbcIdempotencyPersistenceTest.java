@@ -0,0 +1,62 @@
+package com.voris.invoice.web;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcIdempotencyPersistenceTest {
+    private Path tempDb;
+    private JdbcIdempotencyPersistence persistence;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tempDb = Files.createTempFile("idempotency-test-", ".db");
+        persistence = new JdbcIdempotencyPersistence("jdbc:sqlite:" + tempDb.toAbsolutePath());
+    }
+
+    @AfterEach
+    void cleanup() throws Exception {
+        if (tempDb != null) {
+            Files.deleteIfExists(tempDb);
+        }
+    }
+
+    @Test
+    void save_shouldBeLoadedBack() {
+        // Arrange
+        IdempotencyStore.StoredResponse response = new IdempotencyStore.StoredResponse(201, "application/json", "{}");
+
+        // Act
+        persistence.save("key-1", new IdempotencyStore.Record("hash", response, 1_000));
+        IdempotencyStore.Record loaded = persistence.load("key-1");
+
+        // Assert
+        assertNotNull(loaded);
+        assertEquals("hash", loaded.getRequestHash());
+        assertEquals(1_000, loaded.getCreatedMillis());
+        assertEquals(201, loaded.getResponse().getStatus());
+        assertEquals("application/json", loaded.getResponse().getContentType());
+        assertEquals("{}", loaded.getResponse().getBody());
+        assertNull(persistence.load("key-2"));
+    }
+
+    @Test
+    void purgeBefore_shouldDeleteOlderRecordsOnly() {
+        // Arrange
+        IdempotencyStore.StoredResponse response = new IdempotencyStore.StoredResponse(204, null, "");
+        persistence.save("old", new IdempotencyStore.Record("a", response, 1_000));
+        persistence.save("new", new IdempotencyStore.Record("b", response, 5_000));
+
+        // Act
+        persistence.purgeBefore(2_000);
+
+        // Assert
+        assertNull(persistence.load("old"));
+        assertNotNull(persistence.load("new"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.voris.invoice.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCompressionTest {
+
+    /** Records what the compressing stream asked for */
+    private static final class RecordingTarget implements ResponseCompression.Target {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Boolean gzip;
+        int length;
+
+        @Override
+        public OutputStream open(boolean gzip, int length) {
+            this.gzip = gzip;
+            this.length = length;
+            return body;
+        }
+    }
+
+    private static byte[] json(int invoices) {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < invoices; i++) {
+            if (i > 0) text.append(',');
+            text.append("{\"id\":\"").append(i).append("\",\"customerName\":\"Customer ").append(i % 7)
+                    .append("\",\"total\":\"").append(i * 3).append(".50\",\"paid\":false}");
+        }
+        return text.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void compress_BodyBelowThreshold_SentPlainWithLength() throws IOException {
+        // Arrange
+        ResponseCompression compression = new ResponseCompression(1024, Deflater.DEFAULT_COMPRESSION, 2);
+        RecordingTarget target = new RecordingTarget();
+        byte[] body = json(3);
+
+        // Act
+        try (OutputStream out = compression.compress(target)) {
+            out.write(body);
+        }
+
+        // Assert
+        assertFalse(target.gzip);
+        assertEquals(body.length, target.length);
+        assertArrayEquals(body, target.body.toByteArray());
+        assertEquals(0, compression.stats().getCompressedResponses());
+        assertEquals(1, compression.stats().getResponses());
+    }
+
+    @Test
+    void compress_BodyAboveThreshold_SentAsValidGzip() throws IOException {
+        // Arrange
+        ResponseCompression compression = new ResponseCompression(1024, Deflater.DEFAULT_COMPRESSION, 2);
+        RecordingTarget target = new RecordingTarget();
+        byte[] body = json(5000);
+
+        // Act
+        try (OutputStream out = compression.compress(target)) {
+            // Small writes first, so the switch happens with data still buffered
+            out.write(body, 0, 10);
+            out.write(body[10]);
+            out.write(body, 11, body.length - 11);
+        }
+
+        // Assert
+        assertTrue(target.gzip);
+        assertArrayEquals(body, gunzip(target.body.toByteArray()));
+        ResponseCompression.Stats stats = compression.stats();
+        assertEquals(1, stats.getCompressedResponses());
+        assertEquals(body.length, stats.getBytesIn());
+        assertEquals(target.body.size(), stats.getBytesOut());
+        assertTrue(stats.getRatio() < 0.5);
+    }
+
+    @Test
+    void compress_ReusedCompressor_ProducesIndependentStreams() throws IOException {
+        // Arrange
+        ResponseCompression compression = new ResponseCompression(16, 1, 1);
+        byte[] first = json(400);
+        byte[] second = json(50);
+
+        // Act
+        RecordingTarget a = new RecordingTarget();
+        try (OutputStream out = compression.compress(a)) {
+            out.write(first);
+        }
+        RecordingTarget b = new RecordingTarget();
+        try (OutputStream out = compression.compress(b)) {
+            out.write(second);
+        }
+
+        // Assert
+        assertArrayEquals(first, gunzip(a.body.toByteArray()));
+        assertArrayEquals(second, gunzip(b.body.toByteArray()));
+        assertEquals(2, compression.stats().getCompressedResponses());
+    }
+
+    @Test
+    void compress_WriteAfterClose_Throws() throws IOException {
+        // Arrange
+        ResponseCompression compression = new ResponseCompression();
+        OutputStream out = compression.compress(new RecordingTarget());
+        out.close();
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> out.write(1));
+    }
+
+    @Test
+    void acceptsGzip_HeaderForms() {
+        // Act & Assert
+        assertTrue(ResponseCompression.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ResponseCompression.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(ResponseCompression.acceptsGzip("*"));
+        assertFalse(ResponseCompression.acceptsGzip("gzip;q=0"));
+        assertFalse(ResponseCompression.acceptsGzip("*, gzip;q=0"));
+        assertFalse(ResponseCompression.acceptsGzip("deflate, br"));
+        assertFalse(ResponseCompression.acceptsGzip("identity"));
+        assertFalse(ResponseCompression.acceptsGzip(null));
+    }
+
+    @Test
+    void constructor_InvalidArguments_Throws() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> new ResponseCompression(-1, 6, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ResponseCompression(0, 10, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ResponseCompression(0, 6, 0));
+    }
+}